@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+/**
+ * Selects the {@link ArrayKernels} implementation on Java 17 and later. The
+ * Vector API implementation is selected if the {@code jdk.incubator.vector}
+ * module has been added to the boot layer, the processor is x86-64 or
+ * AArch64, and the preferred vector species holds at least four floats;
+ * otherwise the scalar implementation is selected. Setting the system
+ * property {@code waveformAnalysisForImageJ.scalarKernels} to {@code true}
+ * also selects the scalar implementation.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+final class ArrayKernelsLoader
+{
+	private ArrayKernelsLoader()
+	{
+	}
+
+	static ArrayKernels load()
+	{
+		String arch = System.getProperty("os.arch", "");
+		boolean isSupportedArch = arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64");
+
+		if (isSupportedArch
+			&& !Boolean.getBoolean("waveformAnalysisForImageJ.scalarKernels")
+			&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				// loaded reflectively so that the vector classes are never resolved when the module is absent
+				ArrayKernels kernels = (ArrayKernels) Class.forName("waveformAnalysisForImageJ.VectorArrayKernels").getDeclaredConstructor().newInstance();
+				if (kernels.isVectorized()) {
+					return kernels;
+				}
+			} catch (Throwable t) {
+				// fall back to scalar kernels
+			}
+		}
+
+		return new ArrayKernels();
+	}
+
+}
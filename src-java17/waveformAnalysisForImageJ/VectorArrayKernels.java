@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of {@link ArrayKernels} using the (incubating) Vector API.
+ * Whole vectors are processed with the preferred species for the processor,
+ * and the remaining elements with the scalar code. Only lane-wise
+ * {@code add}, {@code sub}, {@code mul} and {@code div} are used (in
+ * particular, no fused multiply-add), so results are identical to those of
+ * the scalar implementation.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+final class VectorArrayKernels extends ArrayKernels
+{
+	private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	VectorArrayKernels()
+	{
+	}
+
+	@Override
+	public boolean isVectorized()
+	{
+		return FLOAT_SPECIES.length() >= 4;
+	}
+
+	@Override
+	public void addScalarInPlace(double[] a, int from, int to, double value)
+	{
+		int i = from;
+		for (int upper = from + DOUBLE_SPECIES.loopBound(to - from); i < upper; i += DOUBLE_SPECIES.length()) {
+			DoubleVector.fromArray(DOUBLE_SPECIES, a, i).add(value).intoArray(a, i);
+		}
+		super.addScalarInPlace(a, i, to, value);
+	}
+
+	@Override
+	public void addScalarInPlace(float[] a, int from, int to, float value)
+	{
+		int i = from;
+		for (int upper = from + FLOAT_SPECIES.loopBound(to - from); i < upper; i += FLOAT_SPECIES.length()) {
+			FloatVector.fromArray(FLOAT_SPECIES, a, i).add(value).intoArray(a, i);
+		}
+		super.addScalarInPlace(a, i, to, value);
+	}
+
+	@Override
+	public void multiplyScalarInPlace(double[] a, int from, int to, double value)
+	{
+		int i = from;
+		for (int upper = from + DOUBLE_SPECIES.loopBound(to - from); i < upper; i += DOUBLE_SPECIES.length()) {
+			DoubleVector.fromArray(DOUBLE_SPECIES, a, i).mul(value).intoArray(a, i);
+		}
+		super.multiplyScalarInPlace(a, i, to, value);
+	}
+
+	@Override
+	public void multiplyScalarInPlace(float[] a, int from, int to, float value)
+	{
+		int i = from;
+		for (int upper = from + FLOAT_SPECIES.loopBound(to - from); i < upper; i += FLOAT_SPECIES.length()) {
+			FloatVector.fromArray(FLOAT_SPECIES, a, i).mul(value).intoArray(a, i);
+		}
+		super.multiplyScalarInPlace(a, i, to, value);
+	}
+
+	@Override
+	public void addInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = DOUBLE_SPECIES.loopBound(length); k < upper; k += DOUBLE_SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(DOUBLE_SPECIES, a, aFrom + k);
+			va.add(DoubleVector.fromArray(DOUBLE_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.addInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void addInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = FLOAT_SPECIES.loopBound(length); k < upper; k += FLOAT_SPECIES.length()) {
+			FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aFrom + k);
+			va.add(FloatVector.fromArray(FLOAT_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.addInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void subtractInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = DOUBLE_SPECIES.loopBound(length); k < upper; k += DOUBLE_SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(DOUBLE_SPECIES, a, aFrom + k);
+			va.sub(DoubleVector.fromArray(DOUBLE_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.subtractInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void subtractInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = FLOAT_SPECIES.loopBound(length); k < upper; k += FLOAT_SPECIES.length()) {
+			FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aFrom + k);
+			va.sub(FloatVector.fromArray(FLOAT_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.subtractInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void multiplyInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = DOUBLE_SPECIES.loopBound(length); k < upper; k += DOUBLE_SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(DOUBLE_SPECIES, a, aFrom + k);
+			va.mul(DoubleVector.fromArray(DOUBLE_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.multiplyInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void multiplyInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = FLOAT_SPECIES.loopBound(length); k < upper; k += FLOAT_SPECIES.length()) {
+			FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aFrom + k);
+			va.mul(FloatVector.fromArray(FLOAT_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.multiplyInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void divideInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = DOUBLE_SPECIES.loopBound(length); k < upper; k += DOUBLE_SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(DOUBLE_SPECIES, a, aFrom + k);
+			va.div(DoubleVector.fromArray(DOUBLE_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.divideInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void divideInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		int k = 0;
+		for (int upper = FLOAT_SPECIES.loopBound(length); k < upper; k += FLOAT_SPECIES.length()) {
+			FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aFrom + k);
+			va.div(FloatVector.fromArray(FLOAT_SPECIES, b, bFrom + k)).intoArray(a, aFrom + k);
+		}
+		super.divideInPlace(a, aFrom + k, b, bFrom + k, length - k);
+	}
+
+	@Override
+	public void butterflies(double[] ar, double[] ai, int i, int j, int length, double[] wr, double[] wi, int w, boolean isForward)
+	{
+		int k = 0;
+		for (int upper = DOUBLE_SPECIES.loopBound(length); k < upper; k += DOUBLE_SPECIES.length()) {
+			DoubleVector cr = DoubleVector.fromArray(DOUBLE_SPECIES, wr, w + k);
+			DoubleVector ci = DoubleVector.fromArray(DOUBLE_SPECIES, wi, w + k);
+			DoubleVector br = DoubleVector.fromArray(DOUBLE_SPECIES, ar, j + k);
+			DoubleVector bi = DoubleVector.fromArray(DOUBLE_SPECIES, ai, j + k);
+			DoubleVector tr;
+			DoubleVector ti;
+			if (isForward) {
+				tr = cr.mul(br).add(ci.mul(bi));
+				ti = cr.mul(bi).sub(ci.mul(br));
+			} else {
+				tr = cr.mul(br).sub(ci.mul(bi));
+				ti = cr.mul(bi).add(ci.mul(br));
+			}
+			DoubleVector xr = DoubleVector.fromArray(DOUBLE_SPECIES, ar, i + k);
+			DoubleVector xi = DoubleVector.fromArray(DOUBLE_SPECIES, ai, i + k);
+			xr.sub(tr).intoArray(ar, j + k);
+			xi.sub(ti).intoArray(ai, j + k);
+			xr.add(tr).intoArray(ar, i + k);
+			xi.add(ti).intoArray(ai, i + k);
+		}
+		super.butterflies(ar, ai, i + k, j + k, length - k, wr, wi, w + k, isForward);
+	}
+
+	@Override
+	public void butterflies(float[] ar, float[] ai, int i, int j, int length, float[] wr, float[] wi, int w, boolean isForward)
+	{
+		int k = 0;
+		for (int upper = FLOAT_SPECIES.loopBound(length); k < upper; k += FLOAT_SPECIES.length()) {
+			FloatVector cr = FloatVector.fromArray(FLOAT_SPECIES, wr, w + k);
+			FloatVector ci = FloatVector.fromArray(FLOAT_SPECIES, wi, w + k);
+			FloatVector br = FloatVector.fromArray(FLOAT_SPECIES, ar, j + k);
+			FloatVector bi = FloatVector.fromArray(FLOAT_SPECIES, ai, j + k);
+			FloatVector tr;
+			FloatVector ti;
+			if (isForward) {
+				tr = cr.mul(br).add(ci.mul(bi));
+				ti = cr.mul(bi).sub(ci.mul(br));
+			} else {
+				tr = cr.mul(br).sub(ci.mul(bi));
+				ti = cr.mul(bi).add(ci.mul(br));
+			}
+			FloatVector xr = FloatVector.fromArray(FLOAT_SPECIES, ar, i + k);
+			FloatVector xi = FloatVector.fromArray(FLOAT_SPECIES, ai, i + k);
+			xr.sub(tr).intoArray(ar, j + k);
+			xi.sub(ti).intoArray(ai, j + k);
+			xr.add(tr).intoArray(ar, i + k);
+			xi.add(ti).intoArray(ai, i + k);
+		}
+		super.butterflies(ar, ai, i + k, j + k, length - k, wr, wi, w + k, isForward);
+	}
+
+}
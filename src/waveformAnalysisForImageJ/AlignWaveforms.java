@@ -114,8 +114,19 @@ public class AlignWaveforms implements ExtendedPlugInFilter, DialogListener
 	 * @param from	start index (inclusive) of subsection of {@code seedWaveform} to be used for alignment
 	 * @param to end index (exclusive) of subsection of {@code seedWaveform} to be used for alignment
 	 */
-	public static void execute(final float[] waveforms, float[] seedWaveform, int from, int to)
+	public static void execute(final float[] waveforms, final float[] seedWaveform, final int from, final int to)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, seedWaveform.length, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, seedWaveform, from, to);
+			}
+		})) {
+			return;
+		}
+		
 		final int w = seedWaveform.length;
 
 		// determine number of records
@@ -124,46 +135,64 @@ public class AlignWaveforms implements ExtendedPlugInFilter, DialogListener
 		// compute padded waveform length
 		final int pw = w + WaveformUtils.amountToPadToNextPowerOf2(w);
 		
-		// initialize seed waveform copy and compute FFT
-		final double[] seedRe = new double[pw];
-		final double[] seedIm = new double[pw];
-		for (int j=from; j<to; j++) {
-			seedRe[j] = (double)seedWaveform[j];
-		}
-		WaveformUtils.fftComplexPowerOf2(seedRe, seedIm, true);
-				
-		// loop over each waveform
-		for (int i=0; i<h; i++) {
-			// compute row offset
-			int offset = i*w;
-			
-			// initialize waveform copies
-			double[] tempRe = new double[pw];
-			double[] tempIm = new double[pw];
-			for (int j=0; j<w; j++) {
-				tempRe[j] = (double)waveforms[offset+j];
-			}
-			
-			// compute cross-correlation
-			WaveformUtils.fftComplexPowerOf2(tempRe, tempIm, true);
-			double[] corrRe = new double[pw];
-			double[] corrIm = new double[pw];
-			for (int j=0; j<pw; j++) {
-				corrRe[j] = tempRe[j]*seedRe[j] + tempIm[j]*seedIm[j];
-				corrIm[j] = tempRe[j]*seedIm[j] - tempIm[j]*seedRe[j];
+		// FFT tables are shared by all records
+		final FftPlan plan = FftPlan.getInstance(pw);
+		
+		// initialize seed waveform copy and compute the non-redundant half of its spectrum
+		final int hw = pw/2;
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			final double[] seed = scratch.doubles(pw);
+			final double[] seedRe = scratch.doubles(hw+1);
+			final double[] seedIm = scratch.doubles(hw+1);
+			Arrays.fill(seed, 0, pw, 0.0);
+			for (int j=from; j<to; j++) {
+				seed[j] = (double)seedWaveform[j];
 			}
-			WaveformUtils.fftComplexPowerOf2(corrRe, corrIm, false);
-			
-			// find index of maximum value of cross-correlation array
-			int maxIndex = WaveformUtils.maxIndex(corrRe);
+			plan.realForward(seed, 0, seedRe, seedIm);
 			
-			// because of symmetry of fft, shift > pw/2 corresponds to leftward (negative) rotation
-			if (maxIndex >= pw/2) {
-				maxIndex -= pw;
+			// temporary arrays reused for each waveform
+			final double[] temp = scratch.doubles(pw);
+			final double[] tempRe = scratch.doubles(hw+1);
+			final double[] tempIm = scratch.doubles(hw+1);
+					
+			// loop over each waveform
+			for (int i=0; i<h; i++) {
+				// compute row offset
+				int offset = i*w;
+				
+				// initialize padded waveform copy
+				for (int j=0; j<w; j++) {
+					temp[j] = (double)waveforms[offset+j];
+				}
+				for (int j=w; j<pw; j++) {
+					temp[j] = 0.0;
+				}
+				
+				// compute cross-correlation (real-valued, so only half of its spectrum is needed)
+				plan.realForward(temp, 0, tempRe, tempIm);
+				for (int j=0; j<=hw; j++) {
+					double corrRe = tempRe[j]*seedRe[j] + tempIm[j]*seedIm[j];
+					double corrIm = tempRe[j]*seedIm[j] - tempIm[j]*seedRe[j];
+					tempRe[j] = corrRe;
+					tempIm[j] = corrIm;
+				}
+				plan.realInverse(tempRe, tempIm, temp, 0);
+				
+				// find index of maximum value of cross-correlation array
+				int maxIndex = WaveformUtils.maxIndex(temp, 0, pw);
+				
+				// because of symmetry of fft, shift > pw/2 corresponds to leftward (negative) rotation
+				if (maxIndex >= pw/2) {
+					maxIndex -= pw;
+				}
+				
+				// rotate waveform in place
+				WaveformUtils.rotateArrayInPlace(waveforms, maxIndex, offset, offset+w);	
 			}
-			
-			// rotate waveform in place
-			WaveformUtils.rotateArrayInPlace(waveforms, maxIndex, offset, offset+w);	
+		} finally {
+			scratch.release(mark);
 		}
 	}
 	
@@ -179,8 +208,19 @@ public class AlignWaveforms implements ExtendedPlugInFilter, DialogListener
 	 * @param from	start index (inclusive) of subsection of {@code seedWaveform} to be used for alignment
 	 * @param to end index (exclusive) of subsection of {@code seedWaveform} to be used for alignment
 	 */
-	public static void execute(double[] waveforms, double[] seedWaveform, int from, int to)
+	public static void execute(double[] waveforms, final double[] seedWaveform, final int from, final int to)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, seedWaveform.length, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, seedWaveform, from, to);
+			}
+		})) {
+			return;
+		}
+		
 		int w = seedWaveform.length;
 
 		// determine number of records
@@ -188,41 +228,59 @@ public class AlignWaveforms implements ExtendedPlugInFilter, DialogListener
 		
 		// compute padded waveform length
 		int pw = w + WaveformUtils.amountToPadToNextPowerOf2(w);
+		
+		// FFT tables are shared by all records
+		FftPlan plan = FftPlan.getInstance(pw);
 				
-		// loop over each waveform
-		for (int i=0; i<h; i++) {
-			// compute row offset
-			int offset = i*w;
-			
-			// initialize waveform copies
-			double[] tempRe = new double[pw];
-			double[] tempIm = new double[pw];
-			System.arraycopy(waveforms, offset, tempRe, 0, w);
-			double[] seedRe = new double[pw];
-			double[] seedIm = new double[pw];
-			System.arraycopy(seedWaveform, from, seedRe, from, to-from);
-			
-			// compute cross-correlation
-			WaveformUtils.fftComplexPowerOf2(tempRe, tempIm, true);
-			WaveformUtils.fftComplexPowerOf2(seedRe, seedIm, true);
-			double[] corrRe = new double[pw];
-			double[] corrIm = new double[pw];
-			for (int j=0; j<pw; j++) {
-				corrRe[j] = tempRe[j]*seedRe[j] + tempIm[j]*seedIm[j];
-				corrIm[j] = tempRe[j]*seedIm[j] - tempIm[j]*seedRe[j];
-			}
-			WaveformUtils.fftComplexPowerOf2(corrRe, corrIm, false);
+		// compute the non-redundant half of the seed spectrum
+		int hw = pw/2;
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			double[] seed = scratch.doubles(pw);
+			double[] seedRe = scratch.doubles(hw+1);
+			double[] seedIm = scratch.doubles(hw+1);
+			Arrays.fill(seed, 0, pw, 0.0);
+			System.arraycopy(seedWaveform, from, seed, from, to-from);
+			plan.realForward(seed, 0, seedRe, seedIm);
 			
-			// find index of maximum value of cross-correlation array
-			int maxIndex = WaveformUtils.maxIndex(corrRe);
-			
-			// because of symmetry of fft, shift > pw/2 corresponds to leftward (negative) rotation
-			if (maxIndex >= pw/2) {
-				maxIndex -= pw;
+			// temporary arrays reused for each waveform
+			double[] temp = scratch.doubles(pw);
+			double[] tempRe = scratch.doubles(hw+1);
+			double[] tempIm = scratch.doubles(hw+1);
+					
+			// loop over each waveform
+			for (int i=0; i<h; i++) {
+				// compute row offset
+				int offset = i*w;
+				
+				// initialize padded waveform copy
+				System.arraycopy(waveforms, offset, temp, 0, w);
+				Arrays.fill(temp, w, pw, 0.0);
+				
+				// compute cross-correlation (real-valued, so only half of its spectrum is needed)
+				plan.realForward(temp, 0, tempRe, tempIm);
+				for (int j=0; j<=hw; j++) {
+					double corrRe = tempRe[j]*seedRe[j] + tempIm[j]*seedIm[j];
+					double corrIm = tempRe[j]*seedIm[j] - tempIm[j]*seedRe[j];
+					tempRe[j] = corrRe;
+					tempIm[j] = corrIm;
+				}
+				plan.realInverse(tempRe, tempIm, temp, 0);
+				
+				// find index of maximum value of cross-correlation array
+				int maxIndex = WaveformUtils.maxIndex(temp, 0, pw);
+				
+				// because of symmetry of fft, shift > pw/2 corresponds to leftward (negative) rotation
+				if (maxIndex >= pw/2) {
+					maxIndex -= pw;
+				}
+				
+				// rotate waveform in place
+				WaveformUtils.rotateArrayInPlace(waveforms, maxIndex, offset, offset+w);	
 			}
-			
-			// rotate waveform in place
-			WaveformUtils.rotateArrayInPlace(waveforms, maxIndex, offset, offset+w);	
+		} finally {
+			scratch.release(mark);
 		}
 	}
 	
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+/**
+ * Element-wise array kernels used in the inner loops of the waveform
+ * methods: scalar and element-by-element arithmetic, and the butterflies of
+ * the radix-2 FFT. This class is the portable (scalar) implementation. When
+ * the plug-ins are run from the multi-release jar on Java 17 or later, with
+ * the {@code jdk.incubator.vector} module available (e.g., by adding
+ * {@code --add-modules jdk.incubator.vector} to the JVM options) on an x86 or
+ * ARM processor with SIMD support, {@link #INSTANCE} is instead an
+ * implementation using the Vector API. Both implementations perform the same
+ * IEEE arithmetic on each element, so their results are identical.
+ * <p>
+ * As with the corresponding methods in {@link WaveformUtils}, no error
+ * checking is performed on range limits; if they are negative or outside the
+ * range of the arrays, a runtime exception may be thrown.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public class ArrayKernels
+{
+	/**
+	 * Kernels selected for the running JVM and processor.
+	 */
+	public static final ArrayKernels INSTANCE = ArrayKernelsLoader.load();
+
+	ArrayKernels()
+	{
+	}
+
+	/**
+	 * Returns true if this implementation uses SIMD instructions.
+	 *
+	 * @return true for the Vector API implementation
+	 */
+	public boolean isVectorized()
+	{
+		return false;
+	}
+
+	/**
+	 * Adds {@code value} to elements {@code from} (inclusive) through
+	 * {@code to} (exclusive) of {@code a} in place.
+	 *
+	 * @param a     input array
+	 * @param from  initial index of the range, inclusive
+	 * @param to    final index of the range, exclusive
+	 * @param value value to add to each element
+	 */
+	public void addScalarInPlace(double[] a, int from, int to, double value)
+	{
+		for (int i = from; i < to; i++) {
+			a[i] += value;
+		}
+	}
+
+	/**
+	 * Adds {@code value} to elements {@code from} (inclusive) through
+	 * {@code to} (exclusive) of {@code a} in place.
+	 *
+	 * @param a     input array
+	 * @param from  initial index of the range, inclusive
+	 * @param to    final index of the range, exclusive
+	 * @param value value to add to each element
+	 */
+	public void addScalarInPlace(float[] a, int from, int to, float value)
+	{
+		for (int i = from; i < to; i++) {
+			a[i] += value;
+		}
+	}
+
+	/**
+	 * Multiplies elements {@code from} (inclusive) through {@code to}
+	 * (exclusive) of {@code a} by {@code value} in place.
+	 *
+	 * @param a     input array
+	 * @param from  initial index of the range, inclusive
+	 * @param to    final index of the range, exclusive
+	 * @param value value to multiply with each element
+	 */
+	public void multiplyScalarInPlace(double[] a, int from, int to, double value)
+	{
+		for (int i = from; i < to; i++) {
+			a[i] *= value;
+		}
+	}
+
+	/**
+	 * Multiplies elements {@code from} (inclusive) through {@code to}
+	 * (exclusive) of {@code a} by {@code value} in place.
+	 *
+	 * @param a     input array
+	 * @param from  initial index of the range, inclusive
+	 * @param to    final index of the range, exclusive
+	 * @param value value to multiply with each element
+	 */
+	public void multiplyScalarInPlace(float[] a, int from, int to, float value)
+	{
+		for (int i = from; i < to; i++) {
+			a[i] *= value;
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] += b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void addInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] += b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] += b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void addInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] += b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] -= b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void subtractInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] -= b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] -= b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void subtractInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] -= b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] *= b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void multiplyInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] *= b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] *= b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void multiplyInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] *= b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] /= b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void divideInPlace(double[] a, int aFrom, double[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] /= b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code a[aFrom+k] /= b[bFrom+k]} for {@code 0<=k<length}.
+	 *
+	 * @param a      array modified in place
+	 * @param aFrom  initial index in {@code a}
+	 * @param b      second operand
+	 * @param bFrom  initial index in {@code b}
+	 * @param length number of elements
+	 */
+	public void divideInPlace(float[] a, int aFrom, float[] b, int bFrom, int length)
+	{
+		for (int k = 0; k < length; k++) {
+			a[aFrom + k] /= b[bFrom + k];
+		}
+	}
+
+	/**
+	 * Computes {@code length} consecutive radix-2 butterflies in place: for
+	 * {@code 0<=k<length}, {@code t=w[k]*x[j+k]}, {@code x[j+k]=x[i+k]-t}
+	 * and {@code x[i+k]=x[i+k]+t}, where {@code x=ar+i*ai} and the twiddle
+	 * factor is {@code w[k]=wr[w+k]-i*wi[w+k]} for a forward transform, or
+	 * its conjugate for an inverse transform.
+	 *
+	 * @param ar        real part of data
+	 * @param ai        imaginary part of data
+	 * @param i         index of first element of upper butterfly inputs
+	 * @param j         index of first element of lower butterfly inputs
+	 * @param length    number of butterflies
+	 * @param wr        cosines of twiddle factor angles
+	 * @param wi        sines of twiddle factor angles
+	 * @param w         index of first twiddle factor
+	 * @param isForward set to true for forward transform
+	 */
+	public void butterflies(double[] ar, double[] ai, int i, int j, int length, double[] wr, double[] wi, int w, boolean isForward)
+	{
+		if (isForward) {
+			for (int k = 0; k < length; k++) {
+				double tr = wr[w + k] * ar[j + k] + wi[w + k] * ai[j + k];
+				double ti = wr[w + k] * ai[j + k] - wi[w + k] * ar[j + k];
+				ar[j + k] = ar[i + k] - tr;
+				ai[j + k] = ai[i + k] - ti;
+				ar[i + k] += tr;
+				ai[i + k] += ti;
+			}
+		} else {
+			for (int k = 0; k < length; k++) {
+				double tr = wr[w + k] * ar[j + k] - wi[w + k] * ai[j + k];
+				double ti = wr[w + k] * ai[j + k] + wi[w + k] * ar[j + k];
+				ar[j + k] = ar[i + k] - tr;
+				ai[j + k] = ai[i + k] - ti;
+				ar[i + k] += tr;
+				ai[i + k] += ti;
+			}
+		}
+	}
+
+	/**
+	 * Computes {@code length} consecutive radix-2 butterflies in place: for
+	 * {@code 0<=k<length}, {@code t=w[k]*x[j+k]}, {@code x[j+k]=x[i+k]-t}
+	 * and {@code x[i+k]=x[i+k]+t}, where {@code x=ar+i*ai} and the twiddle
+	 * factor is {@code w[k]=wr[w+k]-i*wi[w+k]} for a forward transform, or
+	 * its conjugate for an inverse transform.
+	 *
+	 * @param ar        real part of data
+	 * @param ai        imaginary part of data
+	 * @param i         index of first element of upper butterfly inputs
+	 * @param j         index of first element of lower butterfly inputs
+	 * @param length    number of butterflies
+	 * @param wr        cosines of twiddle factor angles
+	 * @param wi        sines of twiddle factor angles
+	 * @param w         index of first twiddle factor
+	 * @param isForward set to true for forward transform
+	 */
+	public void butterflies(float[] ar, float[] ai, int i, int j, int length, float[] wr, float[] wi, int w, boolean isForward)
+	{
+		if (isForward) {
+			for (int k = 0; k < length; k++) {
+				float tr = wr[w + k] * ar[j + k] + wi[w + k] * ai[j + k];
+				float ti = wr[w + k] * ai[j + k] - wi[w + k] * ar[j + k];
+				ar[j + k] = ar[i + k] - tr;
+				ai[j + k] = ai[i + k] - ti;
+				ar[i + k] += tr;
+				ai[i + k] += ti;
+			}
+		} else {
+			for (int k = 0; k < length; k++) {
+				float tr = wr[w + k] * ar[j + k] - wi[w + k] * ai[j + k];
+				float ti = wr[w + k] * ai[j + k] + wi[w + k] * ar[j + k];
+				ar[j + k] = ar[i + k] - tr;
+				ai[j + k] = ai[i + k] - ti;
+				ar[i + k] += tr;
+				ai[i + k] += ti;
+			}
+		}
+	}
+
+}
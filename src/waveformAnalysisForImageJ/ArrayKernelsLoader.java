@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+/**
+ * Selects the {@link ArrayKernels} implementation. This version always
+ * selects the scalar implementation; the multi-release jar contains a
+ * replacement for Java 17 and later (in {@code src-java17}) that selects the
+ * Vector API implementation when it is supported.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+final class ArrayKernelsLoader
+{
+	private ArrayKernelsLoader()
+	{
+	}
+
+	static ArrayKernels load()
+	{
+		return new ArrayKernels();
+	}
+
+}
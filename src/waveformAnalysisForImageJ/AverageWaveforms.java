@@ -85,26 +85,33 @@ public class AverageWaveforms implements ExtendedPlugInFilter
 	 *						element-by-element average of each record in {@code waveforms}
 	 *						(null if {@code waveforms==null}, {@code recordLength>waveforms.length}, or {@code recordLength<=0})
 	 */
-	public static float[] execute(float[] waveforms, int recordLength)
+	public static float[] execute(final float[] waveforms, final int recordLength)
 	{
 		if (waveforms == null || recordLength > waveforms.length || recordLength <= 0) {
 			return null;
 		}
 		
-		float[] avgWaveform = new float[recordLength];
-		int numRecords = waveforms.length/recordLength;
+		final float[] avgWaveform = new float[recordLength];
+		final int numRecords = waveforms.length/recordLength;
 		
-		// loop over elements in output average waveform
-		for (int i=0; i<recordLength; i++) {
-			
-			double sum = 0.0f;
-			
-			// loop over all input waveform values at index i
-			for (int j=0; j<numRecords; j++) {
-				sum += waveforms[j*recordLength+i];
+		// loop over elements in output average waveform; each element is
+		// independent, so ranges of elements of large inputs are processed in parallel
+		RecordPartitioner.forEachChunk(recordLength, numRecords, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int from, int to)
+			{
+				for (int i=from; i<to; i++) {
+					
+					double sum = 0.0f;
+					
+					// loop over all input waveform values at index i
+					for (int j=0; j<numRecords; j++) {
+						sum += waveforms[j*recordLength+i];
+					}
+					avgWaveform[i] = (float)(sum/numRecords);
+				}
 			}
-			avgWaveform[i] = (float)(sum/numRecords);
-		}
+		});
 		
 		return avgWaveform;
 	}
@@ -120,26 +127,33 @@ public class AverageWaveforms implements ExtendedPlugInFilter
 	 *						element-by-element average of each record in {@code waveforms}
 	 *						(null if {@code waveforms==null}, {@code recordLength>waveforms.length}, or {@code recordLength<=0})
 	 */
-	public static double[] execute(double[] waveforms, int recordLength)
+	public static double[] execute(final double[] waveforms, final int recordLength)
 	{
 		if (waveforms == null || recordLength > waveforms.length || recordLength <= 0) {
 			return null;
 		}
 		
-		double[] avgWaveform = new double[recordLength];
-		int numRecords = waveforms.length/recordLength;
+		final double[] avgWaveform = new double[recordLength];
+		final int numRecords = waveforms.length/recordLength;
 		
-		// loop over elements in output average waveform
-		for (int i=0; i<recordLength; i++) {
-			
-			double sum = 0.0;
-			
-			// loop over all input waveform values at index i
-			for (int j=0; j<numRecords; j++) {
-				sum += waveforms[j*recordLength+i];
+		// loop over elements in output average waveform; each element is
+		// independent, so ranges of elements of large inputs are processed in parallel
+		RecordPartitioner.forEachChunk(recordLength, numRecords, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int from, int to)
+			{
+				for (int i=from; i<to; i++) {
+					
+					double sum = 0.0;
+					
+					// loop over all input waveform values at index i
+					for (int j=0; j<numRecords; j++) {
+						sum += waveforms[j*recordLength+i];
+					}
+					avgWaveform[i] = sum/numRecords;
+				}
 			}
-			avgWaveform[i] = sum/numRecords;
-		}
+		});
 		
 		return avgWaveform;
 	}
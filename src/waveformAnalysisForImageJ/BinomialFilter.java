@@ -98,55 +98,74 @@ public class BinomialFilter implements ExtendedPlugInFilter, DialogListener
 	 * @param recordLength	size of each record in {@code waveforms}
 	 * @param nPasses		number of filter passes (larger numbers yield more smoothing)
 	 */
-	public static void execute(float[] waveforms, int recordLength, int nPasses)
+	public static void execute(float[] waveforms, final int recordLength, final int nPasses)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, nPasses);
+			}
+		})) {
+			return;
+		}
+		
 		if (waveforms != null && recordLength > 2 && nPasses > 0 && waveforms.length%recordLength == 0) {
 						
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
-			// loop over all records
-			for (int i=0; i<numRecords; i++) {
+			// borrow double-precision copy of current record for temporary computations with better accuracy
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				double[] currentWaveform = scratch.doubles(recordLength);
 				
-				// compute row offset
-				int offset = i*recordLength;
-				
-				// initialize double-precision copy of current record for temporary computations with better accuracy
-				double[] currentWaveform = new double[recordLength];
-				for (int k=0; k<recordLength; k++) {
-					currentWaveform[k] = waveforms[offset+k];
-				}
-				
-				// perform specified number of passes on current record
-				for (int passNumber=0; passNumber<nPasses; passNumber++) {
-					
-					// temporary variables for first and last filtered values
-					double firstValue = 0.5*(currentWaveform[0] + currentWaveform[1]);
-					double lastValue = 0.5*(currentWaveform[recordLength-2] + currentWaveform[recordLength-1]);
+				// loop over all records
+				for (int i=0; i<numRecords; i++) {
 					
-					// more temporary variables for next loop
-					double previousValue = currentWaveform[0];
-					double currentValue = currentWaveform[1];
+					// compute row offset
+					int offset = i*recordLength;
 					
-					// loop over all values of current waveform except for ends
-					for (int j=1; j<recordLength-1; j++) {
-						double filteredValue = 0.25*(previousValue + currentValue + currentValue + currentWaveform[j+1]);
-						previousValue = currentValue;
-						currentValue = currentWaveform[j+1];
-						currentWaveform[j] = filteredValue;
+					// initialize double-precision copy of current record
+					for (int k=0; k<recordLength; k++) {
+						currentWaveform[k] = waveforms[offset+k];
 					}
 					
-					// take care of endpoints
-					currentWaveform[0] = firstValue;
-					currentWaveform[recordLength-1] = lastValue;
+					// perform specified number of passes on current record
+					for (int passNumber=0; passNumber<nPasses; passNumber++) {
+						
+						// temporary variables for first and last filtered values
+						double firstValue = 0.5*(currentWaveform[0] + currentWaveform[1]);
+						double lastValue = 0.5*(currentWaveform[recordLength-2] + currentWaveform[recordLength-1]);
+						
+						// more temporary variables for next loop
+						double previousValue = currentWaveform[0];
+						double currentValue = currentWaveform[1];
+						
+						// loop over all values of current waveform except for ends
+						for (int j=1; j<recordLength-1; j++) {
+							double filteredValue = 0.25*(previousValue + currentValue + currentValue + currentWaveform[j+1]);
+							previousValue = currentValue;
+							currentValue = currentWaveform[j+1];
+							currentWaveform[j] = filteredValue;
+						}
+						
+						// take care of endpoints
+						currentWaveform[0] = firstValue;
+						currentWaveform[recordLength-1] = lastValue;
+						
+					}
 					
+					// copy results back into input array
+					for (int j=0; j<recordLength; j++) {
+						waveforms[offset+j] = (float)currentWaveform[j];
+					}
+						
 				}
-				
-				// copy results back into input array
-				for (int j=0; j<recordLength; j++) {
-					waveforms[offset+j] = (float)currentWaveform[j];
-				}
-					
+			} finally {
+				scratch.release(mark);
 			}
 			
 		}
@@ -166,8 +185,19 @@ public class BinomialFilter implements ExtendedPlugInFilter, DialogListener
 	 * @param recordLength	size of each record in {@code waveforms}
 	 * @param nPasses		number of filter passes (larger numbers yield more smoothing)
 	 */
-	public static void execute(double[] waveforms, int recordLength, int nPasses)
+	public static void execute(double[] waveforms, final int recordLength, final int nPasses)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, nPasses);
+			}
+		})) {
+			return;
+		}
+		
 		if (waveforms != null && recordLength > 2 && nPasses > 0 && waveforms.length%recordLength == 0) {
 						
 			// compute number of records
@@ -22,6 +22,7 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 	private static double samplingIntervalMicrosec = 0.0025;
 	private static double cutoffFreqMHz = 100.0;
 	private static int numPoles = 1;
+	private static int fftLengthChoiceIndex = 0;
 	private boolean isLowPass = true;
 
 	int flags = DOES_32 + DOES_STACKS + PARALLELIZE_STACKS + KEEP_PREVIEW + FINAL_PROCESSING;
@@ -54,6 +55,7 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 		gd.addNumericField("Cutoff frequency", cutoffFreqMHz, 3, 8, "MHz");
 		gd.addNumericField("Number of poles", numPoles, 0, 3, "");
 		gd.addNumericField("Sampling interval", samplingIntervalMicrosec, 4, 8, "µs");
+		gd.addChoice("FFT length", WaveformUtils.FftLength.stringValues(), WaveformUtils.FftLength.values()[fftLengthChoiceIndex].toString());
 		gd.addPreviewCheckbox(pfr);
 		gd.addDialogListener(this);
 
@@ -71,6 +73,7 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 		cutoffFreqMHz = gd.getNextNumber();
 		numPoles = (int) gd.getNextNumber();
 		samplingIntervalMicrosec = gd.getNextNumber();
+		fftLengthChoiceIndex = gd.getNextChoiceIndex();
 
 		isLowPass = (filterChoiceIndex == 0);
 
@@ -80,8 +83,16 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 	public void run(ImageProcessor ip)
 	{
 		float[] pixels = (float[])ip.getPixels();
+		WaveformUtils.FftLength fftLength = WaveformUtils.FftLength.values()[fftLengthChoiceIndex];
 		
-		execute(pixels, width, samplingIntervalMicrosec, cutoffFreqMHz, numPoles, isLowPass);
+		if (SpectrumCache.isEnabled()) {
+			// reuse the spectra of this slice if they have already been computed (e.g., by a preview)
+			int paddedWidth = fftLength.transformLength(width);
+			float[][] spectra = SpectrumCache.getPairedSpectra(imp.getID(), pfr.getSliceNumber(), pixels, width, paddedWidth);
+			execute(pixels, width, samplingIntervalMicrosec, cutoffFreqMHz, numPoles, isLowPass, paddedWidth, spectra);
+		} else {
+			execute(pixels, width, samplingIntervalMicrosec, cutoffFreqMHz, numPoles, isLowPass, fftLength);
+		}
 	}
 
 	private static double[] computeFreqDomainCoeffs(double samplingIntervalMicrosec, int length, double cutoffFreqMHz, int numPoles, boolean isLowPass)
@@ -92,12 +103,7 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 
 		double fRatio;
 		coeffs[0] = isLowPass ? 1.0 : 0.0;
-		fRatio = deltaFMHz * (length / 2) / cutoffFreqMHz;
-		if (!isLowPass) {
-			fRatio = 1.0 / fRatio;
-		}
-		coeffs[length / 2] = 1.0 / Math.hypot(1.0, WaveformUtils.pow(fRatio, 2 * numPoles));
-		for (int i = 1; i < length / 2; i++) {
+		for (int i = 1; i <= length / 2; i++) {
 			fRatio = i * deltaFMHz / cutoffFreqMHz;
 			if (!isLowPass) {
 				fRatio = 1.0 / fRatio;
@@ -109,16 +115,29 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 		return coeffs;
 	}
 
+	private static float[] computeFloatFreqDomainCoeffs(double samplingIntervalMicrosec, int length, double cutoffFreqMHz, int numPoles, boolean isLowPass)
+	{
+		double[] coeffs = computeFreqDomainCoeffs(samplingIntervalMicrosec, length, cutoffFreqMHz, numPoles, isLowPass);
+		float[] filterCoeffs = new float[coeffs.length];
+		for (int j = 0; j < coeffs.length; j++) {
+			filterCoeffs[j] = (float) coeffs[j];
+		}
+		
+		return filterCoeffs;
+	}
+
 	/**
 	 * This plug-in applies a Butterworth filter to each waveform in {@code 
 	 * waveforms}, which is assumed to be composed of a series of concatenated 
 	 * records of size {@code recordlength}.  If {@code recordlength} is not a 
 	 * power of two, the waveforms are zero-padded to the next highest
-	 * power-of-two length before Fourier transforming. The resulting
-	 * complex-valued frequency-domain data are then multiplied by the
-	 * Butterworth filter coefficients, and inverse transformed and truncated to
-	 * the original record length before being written back over the original
-	 * values. If {@code recordLength>waveforms.length}, {@code recordLength<1}, 
+	 * power-of-two length before Fourier transforming. Adjacent records are
+	 * packed into the real and imaginary parts of a single complex transform,
+	 * whose frequency-domain data are multiplied by the (real, symmetric)
+	 * Butterworth filter coefficients, and inverse transformed; the filtered
+	 * records are the real and imaginary parts of the result, and are
+	 * truncated to the original record length before being written back over
+	 * the original values. If {@code recordLength>waveforms.length}, {@code recordLength<1}, 
 	 * {@code samplingIntervalMicrosec<=0.0}, {@code cutoffFreqMHz <= 0.0}, or 
 	 * {@code numPoles=0}, the method returns without modifying {@code waveforms}.
 	 *
@@ -131,6 +150,40 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 	 */
 	public static final void execute(float[] waveforms, int recordLength, double samplingIntervalMicrosec, double cutoffFreqMHz, int numPoles, boolean isLowPass)
 	{
+		execute(waveforms, recordLength, samplingIntervalMicrosec, cutoffFreqMHz, numPoles, isLowPass, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Applies a Butterworth filter to each waveform in {@code waveforms} as
+	 * described in
+	 * {@link #execute(float[], int, double, double, int, boolean) execute},
+	 * except that each record is zero-padded to the transform length selected
+	 * by {@code fftLength} rather than always to the next power of 2. Padding
+	 * to the next 2-3-5 product, or not padding at all, avoids up to a
+	 * doubling of the transform size for record lengths just above a power of
+	 * 2.
+	 *
+	 * @param	waveforms					input waveforms concatenated into 1-D array
+	 * @param	recordLength				length of each waveform in points
+	 * @param	samplingIntervalMicrosec	sampling interval in microseconds
+	 * @param	cutoffFreqMHz				filter cutoff frequency in MHz
+	 * @param	numPoles					number of poles
+	 * @param	isLowPass					set to true for low-pass filter, false for high-pass filter
+	 * @param	fftLength					choice of FFT length used for each waveform
+	 */
+	public static final void execute(float[] waveforms, final int recordLength, final double samplingIntervalMicrosec, final double cutoffFreqMHz, final int numPoles, final boolean isLowPass, final WaveformUtils.FftLength fftLength)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, samplingIntervalMicrosec, cutoffFreqMHz, numPoles, isLowPass, fftLength);
+			}
+		})) {
+			return;
+		}
+		
 		if (recordLength > waveforms.length 
 			|| recordLength < 1 
 			|| samplingIntervalMicrosec <= 0.0 
@@ -139,44 +192,67 @@ public class ButterworthFilter implements ExtendedPlugInFilter, DialogListener
 			return;
 		}
 		
-		// pad waveforms to power-of-2 length if necessary
-		int paddedWidth = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
+		// pad waveforms to selected transform length if necessary
+		int paddedWidth = fftLength.transformLength(recordLength);
 
 		// compute filter coefficients for padded waveforms
-		double[] filterCoeffs = computeFreqDomainCoeffs(samplingIntervalMicrosec, paddedWidth, cutoffFreqMHz, numPoles, isLowPass);
-
-		// determine number of records in input array
-		int h = waveforms.length / recordLength;
-
-		// perform computations on row-by-row basis
-		for (int i = 0; i < h; i++) {
+		float[] filterCoeffs = computeFloatFreqDomainCoeffs(samplingIntervalMicrosec, paddedWidth, cutoffFreqMHz, numPoles, isLowPass);
 
-			// row offset
-			int offset = i * recordLength;
-
-			// initialize real and imaginary temporary arrays for padded data
-			double[] re = new double[paddedWidth];
-			double[] im = new double[paddedWidth];
-
-			// copy original values into temporary padded real array (imaginary portion is already initialized to zero)
-			for (int j = 0; j < recordLength; j++) {
-				re[j] = (double) waveforms[offset + j];
-			}
-
-			// filter
-			WaveformUtils.fftComplexPowerOf2(re, im, true);
-//			if (i==0) IJ.log(Arrays.toString(filterCoeffs));
-			for (int j = 0; j < paddedWidth; j++) {
-				re[j] *= filterCoeffs[j];
-				im[j] *= filterCoeffs[j];
-			}
-			WaveformUtils.fftComplexPowerOf2(re, im, false);
+		// filter records two at a time (the filter coefficients are real and symmetric)
+		WaveformUtils.freqDomainFilterPairedWaveformsInPlace(waveforms, recordLength, paddedWidth, filterCoeffs, null);
+	}
 
-			// copy data into original waveform array, truncating at original width
-			for (int j = 0; j < recordLength; j++) {
-				waveforms[offset + j] = (float) re[j];
+	/**
+	 * Applies a Butterworth filter to each waveform in {@code waveforms} as
+	 * described in
+	 * {@link #execute(float[], int, double, double, int, boolean, WaveformUtils.FftLength) execute},
+	 * using packed spectra of the waveforms that have already been computed
+	 * by {@link WaveformUtils#fftPairedWaveforms(float[], int, int)} (e.g.,
+	 * obtained from the {@link SpectrumCache}), so that only the inverse
+	 * transforms are computed. {@code pairedSpectra} is unchanged. If
+	 * {@code pairedSpectra==null}, or any of the conditions listed for
+	 * {@link #execute(float[], int, double, double, int, boolean) execute}
+	 * hold, the method returns without modifying {@code waveforms}.
+	 *
+	 * @param	waveforms					input waveforms concatenated into 1-D array
+	 * @param	recordLength				length of each waveform in points
+	 * @param	samplingIntervalMicrosec	sampling interval in microseconds
+	 * @param	cutoffFreqMHz				filter cutoff frequency in MHz
+	 * @param	numPoles					number of poles
+	 * @param	isLowPass					set to true for low-pass filter, false for high-pass filter
+	 * @param	transformLength				length of the FFT used for each waveform
+	 * @param	pairedSpectra				real and imaginary parts of the packed spectra of {@code waveforms}
+	 */
+	public static final void execute(float[] waveforms, final int recordLength, final double samplingIntervalMicrosec, final double cutoffFreqMHz, final int numPoles, final boolean isLowPass, final int transformLength, final float[][] pairedSpectra)
+	{
+		// split large inputs into chunks of records (with the spectra of those records) processed in parallel
+		if (pairedSpectra != null && RecordPartitioner.isParallel(waveforms, recordLength)) {
+			int numRecords = waveforms.length/recordLength;
+			if (WaveformUtils.pairedSpectraOfRecords(pairedSpectra, 2*((numRecords - 1)/2), numRecords, transformLength) != null) {
+				RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+				{
+					public void process(float[] records, int fromRecord)
+					{
+						float[][] spectra = WaveformUtils.pairedSpectraOfRecords(pairedSpectra, fromRecord, fromRecord + records.length/recordLength, transformLength);
+						execute(records, recordLength, samplingIntervalMicrosec, cutoffFreqMHz, numPoles, isLowPass, transformLength, spectra);
+					}
+				});
+				return;
 			}
 		}
+		
+		if (pairedSpectra == null
+			|| recordLength > waveforms.length 
+			|| recordLength < 1 
+			|| transformLength < recordLength
+			|| samplingIntervalMicrosec <= 0.0 
+			|| cutoffFreqMHz <= 0.0 
+			|| numPoles == 0) {
+			return;
+		}
+		
+		float[] filterCoeffs = computeFloatFreqDomainCoeffs(samplingIntervalMicrosec, transformLength, cutoffFreqMHz, numPoles, isLowPass);
+		WaveformUtils.freqDomainFilterPairedSpectra(pairedSpectra[0], pairedSpectra[1], waveforms, recordLength, transformLength, filterCoeffs, null);
 	}
 
 	public void setNPasses(int nPasses)
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.gui.Overlay;
+import ij.gui.Roi;
+import ij.plugin.filter.ExtendedPlugInFilter;
+import ij.plugin.filter.PlugInFilterRunner;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Detects gates in a B-scan or C-scan with a {@link GateDetector}, without
+ * the interactive preview of {@link GateCScanInteractivelySwing} and
+ * {@link GateBScanInteractively}, so that gating can be recorded and run from
+ * macros and batch jobs. Each row in the input image is assumed to represent
+ * a single waveform. The outputs are a 16-bit image of the gate start
+ * positions (one row per slice), an overlay of the input image with a polygon
+ * ROI of the gated regions of each slice, and virtual stacks of the gated
+ * segments and of the gated full-length waveforms (see {@link GatedStack}).
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public class DetectGates implements ExtendedPlugInFilter
+{
+	private static int searchStartPoint = 0;
+	private static int offsetPoint = 0;
+	private static float threshold = 0.0f;
+	private static boolean isThresholdPercentile = false;
+	private static int gateLength = 10;
+	private static int detectionMethod = GateDetector.PEAK;
+	private static boolean isBackward = false;
+	private static final String[] smoothingChoices = {"None", GateDetector.FILTERS[GateDetector.MEDIAN], GateDetector.FILTERS[GateDetector.GAUSSIAN], GateDetector.FILTERS[GateDetector.MEAN]};
+	private static int smoothingChoice = 0;
+	private static double smoothingRadius = 1.0;
+	private static boolean outputGatePositions = true;
+	private static boolean outputGateRois = false;
+	private static boolean outputGatedSegments = false;
+	private static boolean outputGatedWaveforms = false;
+	private ImagePlus imp;
+	private final int flags = DOES_8G + DOES_16 + DOES_32 + NO_CHANGES + NO_UNDO;
+
+	public int setup(String arg, ImagePlus imp)
+	{
+		this.imp = imp;
+		if (imp == null) {
+			IJ.noImage();
+			return DONE;
+		}
+		return flags;
+	}
+
+	public int showDialog(ImagePlus imp, String command, PlugInFilterRunner pfr)
+	{
+		GenericDialog gd = new GenericDialog("Detect Gates...");
+		gd.addNumericField("Start search at index", searchStartPoint, 0, 8, "");
+		gd.addNumericField("Offset from detected border", offsetPoint, 0, 8, "points");
+		gd.addNumericField("Threshold", threshold, 3, 8, "");
+		gd.addCheckbox("Percentile threshold (0-100)", isThresholdPercentile);
+		gd.addNumericField("Gate length", gateLength, 0, 8, "points");
+		gd.addChoice("Detection method:", GateDetector.DETECTION_METHODS, GateDetector.DETECTION_METHODS[detectionMethod]);
+		gd.addCheckbox("Backward search", isBackward);
+		gd.addChoice("Smoothing:", smoothingChoices, smoothingChoices[smoothingChoice]);
+		gd.addNumericField("Radius", smoothingRadius, 3, 8, "records");
+		gd.addMessage("Outputs:");
+		gd.addCheckbox("Positions image", outputGatePositions);
+		gd.addCheckbox("ROIs (overlay)", outputGateRois);
+		gd.addCheckbox("Segments (virtual stack)", outputGatedSegments);
+		gd.addCheckbox("Waveforms (virtual stack)", outputGatedWaveforms);
+		gd.showDialog();
+
+		if (gd.wasCanceled()) {
+			return DONE;
+		}
+
+		searchStartPoint = (int)gd.getNextNumber();
+		offsetPoint = (int)gd.getNextNumber();
+		threshold = (float)gd.getNextNumber();
+		isThresholdPercentile = gd.getNextBoolean();
+		gateLength = (int)gd.getNextNumber();
+		detectionMethod = gd.getNextChoiceIndex();
+		isBackward = gd.getNextBoolean();
+		smoothingChoice = gd.getNextChoiceIndex();
+		smoothingRadius = gd.getNextNumber();
+		outputGatePositions = gd.getNextBoolean();
+		outputGateRois = gd.getNextBoolean();
+		outputGatedSegments = gd.getNextBoolean();
+		outputGatedWaveforms = gd.getNextBoolean();
+		if (gd.invalidNumber()) {
+			IJ.error("Detect Gates", "Invalid input parameter");
+			return DONE;
+		}
+
+		return flags;
+	}
+
+	public void run(ImageProcessor ip)
+	{
+		GateDetector detector = new GateDetector(getParameters());
+		short[] gates = detector.detect(imp.getStack());
+		if (gates == null) {
+			IJ.error("Detect Gates", "The start of the search and the gate length must lie within the waveforms, and a percentile threshold must be from 0 to 100");
+			return;
+		}
+
+		int recordsPerFrame = imp.getHeight();
+		int numberOfFrames = imp.getStackSize();
+		String title = imp.getTitle();
+		if (outputGatePositions) {
+			new ImagePlus(title + " gate positions", new ShortProcessor(recordsPerFrame, numberOfFrames, gates, null)).show();
+		}
+		if (outputGateRois) {
+			Overlay overlay = new Overlay();
+			Roi[] rois = detector.createRois(gates, recordsPerFrame);
+			for (int s=0; s<rois.length; s++) {
+				if (numberOfFrames == 1) {
+					rois[s].setPosition(0);
+				}
+				overlay.add(rois[s]);
+			}
+			imp.setOverlay(overlay);
+		}
+		if (outputGatedSegments) {
+			new ImagePlus(title + "_gatedSegments", detector.gate(imp.getStack(), gates, false)).show();
+		}
+		if (outputGatedWaveforms) {
+			new ImagePlus(title + "_gatedWaveforms", detector.gate(imp.getStack(), gates, true)).show();
+		}
+	}
+
+	/**
+	 * Returns the gate detection parameters last used by this plug-in.
+	 *
+	 * @return gate detection parameters
+	 */
+	public static GateDetector.Parameters getParameters()
+	{
+		return new GateDetector.Parameters()
+			.setSearchStartPoint(searchStartPoint)
+			.setOffsetPoint(offsetPoint)
+			.setThreshold(threshold, isThresholdPercentile)
+			.setGateLength(gateLength)
+			.setDetectionMethod(detectionMethod)
+			.setBackward(isBackward)
+			.setSmoothing(smoothingChoice > 0 ? smoothingChoice - 1 : GateDetector.MEDIAN, smoothingChoice > 0 ? smoothingRadius : 0.0);
+	}
+
+	public void setNPasses(int nPasses) {}
+
+}
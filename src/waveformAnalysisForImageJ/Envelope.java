@@ -6,6 +6,7 @@ import ij.plugin.filter.*;
 import ij.plugin.filter.ExtendedPlugInFilter;
 import ij.process.*;
 import java.awt.*;
+import java.util.Arrays;
 
 /**
  * This plug-in filter computes the envelope (i.e., the magnitude of analytic
@@ -23,9 +24,13 @@ public class Envelope implements ExtendedPlugInFilter, DialogListener
 	private ImagePlus imp;
 	private int width;
 	private GenericDialog gd;
+	private PlugInFilterRunner pfr;
 	private static boolean subtractMean = true;
 	private static boolean logOutput = true;
+	private static int fftLengthChoiceIndex = 0;
 	private final int flags = DOES_32 + DOES_STACKS + PARALLELIZE_STACKS + KEEP_PREVIEW + FINAL_PROCESSING;
+	// number of records whose Hilbert transforms are computed together (even, so that records are paired as for all records at once)
+	private static final int BLOCK_RECORDS = 32;
 	
 	public int setup(String arg, ImagePlus imp)
 	{
@@ -47,9 +52,11 @@ public class Envelope implements ExtendedPlugInFilter, DialogListener
 
 	public int showDialog(ImagePlus imp, String command,  PlugInFilterRunner pfr)
 	{	    
+		this.pfr = pfr;
 		gd = new GenericDialog("Envelope...");
 		gd.addCheckbox("Subtract mean value", subtractMean);
 		gd.addCheckbox("20Log(10)_Output", logOutput);
+		gd.addChoice("FFT length", WaveformUtils.FftLength.stringValues(), WaveformUtils.FftLength.values()[fftLengthChoiceIndex].toString());
 		gd.addPreviewCheckbox(pfr);
 		gd.addDialogListener(this);
 
@@ -65,6 +72,7 @@ public class Envelope implements ExtendedPlugInFilter, DialogListener
 	{
 	    subtractMean = gd.getNextBoolean();
 		logOutput = gd.getNextBoolean();
+		fftLengthChoiceIndex = gd.getNextChoiceIndex();
 	    
 	    return true;
 	}
@@ -74,8 +82,15 @@ public class Envelope implements ExtendedPlugInFilter, DialogListener
 		// get pixel values of current processor
 		float[] pixels = (float[])ip.getPixels();
 			    
-		// compute envelopes
-		execute(pixels, width, subtractMean);
+		// compute envelopes, reusing the spectra of this slice if they have already been computed
+		WaveformUtils.FftLength fftLength = WaveformUtils.FftLength.values()[fftLengthChoiceIndex];
+		if (SpectrumCache.isEnabled()) {
+			int paddedWidth = fftLength.transformLength(width);
+			float[][] spectra = SpectrumCache.getPairedSpectra(imp.getID(), pfr.getSliceNumber(), pixels, width, paddedWidth);
+			execute(pixels, width, subtractMean, paddedWidth, spectra);
+		} else {
+			execute(pixels, width, subtractMean, fftLength);
+		}
 
 		// compute log values if specified
 		if (logOutput) {
@@ -102,38 +117,165 @@ public class Envelope implements ExtendedPlugInFilter, DialogListener
 	 */
 	public static final void execute(float[] waveforms, int recordLength, boolean subtractMean)
 	{
+		execute(waveforms, recordLength, subtractMean, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Computes envelope (magnitude of analytic signal) of input waveforms,
+	 * assumed to be of length {@code w} and concatenated and stored in
+	 * one-dimensional input array {@code waveforms}. Each waveform is
+	 * zero-padded to the transform length selected by {@code fftLength},
+	 * and the final output is truncated to the original length. Because the
+	 * Hilbert transform of a real waveform is real, adjacent waveforms are
+	 * transformed together as the real and imaginary parts of a single
+	 * complex FFT. Results are
+	 * computed in place. For efficiency, no error checking is performed on
+	 * validity of inputs.
+	 *
+	 * @param waveforms	   input waveforms concatenated together
+	 * @param recordLength length of each waveform in points
+	 * @param subtractMean set to true to remove any DC offset before computing
+	 *                     envelope
+	 * @param fftLength    choice of FFT length used for each waveform
+	 */
+	public static final void execute(float[] waveforms, final int recordLength, final boolean subtractMean, final WaveformUtils.FftLength fftLength)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, subtractMean, fftLength);
+			}
+		})) {
+			return;
+		}
+		
 		int numberOfRecords = waveforms.length/recordLength;
 		
-		int paddedWidth = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
-	    	    
-		// perform computations on row-by-row basis
-	    for (int i=0; i<numberOfRecords; i++) {
-			
-	        // compute row offset 
-	        int offset = i*recordLength;
+		int paddedWidth = fftLength.transformLength(recordLength);
+		
+		// frequency response of the Hilbert transform
+		float[] responseRe = new float[paddedWidth];
+		float[] responseIm = hilbertResponseFloat(paddedWidth);
+		
+		// Hilbert transforms of blocks of records are computed in borrowed arrays
+		int blockRecords = Math.min(numberOfRecords, BLOCK_RECORDS);
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			float[] meanValues = scratch.floats(blockRecords);
+			float[] hilbertTransforms = scratch.floats(blockRecords*recordLength);
 			
-			double valueToSubtract = 0.0;
-
-			// compute mean if necessary
-			if (subtractMean) {
-				valueToSubtract = WaveformUtils.mean(waveforms, offset, offset+recordLength);
+			for (int first=0; first<numberOfRecords; first+=blockRecords) {
+				int count = Math.min(blockRecords, numberOfRecords-first);
+				
+				// copy waveforms, removing mean values if necessary
+				for (int i=0; i<count; i++) {
+					int offset = (first+i)*recordLength;
+					meanValues[i] = subtractMean ? WaveformUtils.mean(waveforms, offset, offset+recordLength) : 0.0f;
+					for (int j=0; j<recordLength; j++) {
+						hilbertTransforms[i*recordLength+j] = waveforms[offset+j] - meanValues[i];
+					}
+				}
+				
+				// compute Hilbert transforms, two records per complex FFT
+				WaveformUtils.freqDomainFilterPairedWaveformsInPlace(hilbertTransforms, count, recordLength, paddedWidth, responseRe, responseIm);
+				
+				// copy magnitude of analytic signal into original waveform array
+				for (int i=0; i<count; i++) {
+					int offset = (first+i)*recordLength;
+					for (int j=0; j<recordLength; j++) {
+						double currentValue = waveforms[offset+j] - meanValues[i];
+						double hilbertValue = hilbertTransforms[i*recordLength+j];
+						waveforms[offset+j] = (float)Math.sqrt(hilbertValue*hilbertValue + currentValue*currentValue);
+					}
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+	
+	/**
+	 * Computes envelope (magnitude of analytic signal) of input waveforms as
+	 * described in
+	 * {@link #execute(float[], int, boolean, WaveformUtils.FftLength) execute},
+	 * using packed spectra of the waveforms that have already been computed
+	 * by {@link WaveformUtils#fftPairedWaveforms(float[], int, int)} (e.g.,
+	 * obtained from the {@link SpectrumCache}), so that only the inverse
+	 * transforms are computed. Since the cached spectra are those of the
+	 * original waveforms, the mean value of each waveform is removed after
+	 * filtering, by subtracting the mean value times the Hilbert transform of
+	 * a (zero-padded) constant record. {@code pairedSpectra} is unchanged.
+	 * Results are computed in place. If {@code pairedSpectra==null},
+	 * {@code recordLength<1}, or {@code transformLength<recordLength}, the
+	 * method returns without modifying {@code waveforms}.
+	 *
+	 * @param waveforms	      input waveforms concatenated together
+	 * @param recordLength    length of each waveform in points
+	 * @param subtractMean    set to true to remove any DC offset before
+	 *                        computing envelope
+	 * @param transformLength length of the FFT used for each waveform
+	 * @param pairedSpectra   real and imaginary parts of the packed spectra of
+	 *                        {@code waveforms}
+	 */
+	public static final void execute(float[] waveforms, final int recordLength, final boolean subtractMean, final int transformLength, final float[][] pairedSpectra)
+	{
+		// split large inputs into chunks of records (with the spectra of those records) processed in parallel
+		if (pairedSpectra != null && RecordPartitioner.isParallel(waveforms, recordLength)) {
+			int numRecords = waveforms.length/recordLength;
+			if (WaveformUtils.pairedSpectraOfRecords(pairedSpectra, 2*((numRecords - 1)/2), numRecords, transformLength) != null) {
+				RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+				{
+					public void process(float[] records, int fromRecord)
+					{
+						float[][] spectra = WaveformUtils.pairedSpectraOfRecords(pairedSpectra, fromRecord, fromRecord + records.length/recordLength, transformLength);
+						execute(records, recordLength, subtractMean, transformLength, spectra);
+					}
+				});
+				return;
+			}
+		}
+		
+		if (pairedSpectra == null || recordLength < 1 || transformLength < recordLength) {
+			return;
+		}
+		
+		int numberOfRecords = waveforms.length/recordLength;
+		
+		// frequency response of the Hilbert transform
+		float[] responseRe = new float[transformLength];
+		float[] responseIm = hilbertResponseFloat(transformLength);
+		
+		// compute Hilbert transforms of original waveforms from their spectra
+		float[] hilbertTransforms = new float[numberOfRecords*recordLength];
+		WaveformUtils.freqDomainFilterPairedSpectra(pairedSpectra[0], pairedSpectra[1], hilbertTransforms, recordLength, transformLength, responseRe, responseIm);
+		
+		// the Hilbert transform is linear, so the mean is removed by subtracting mean times the transform of a constant
+		float[] meanValues = new float[numberOfRecords];
+		if (subtractMean) {
+			float[] constantTransform = new float[recordLength];
+			Arrays.fill(constantTransform, 1.0f);
+			WaveformUtils.freqDomainFilterPairedWaveformsInPlace(constantTransform, recordLength, transformLength, responseRe, responseIm);
+			for (int i=0; i<numberOfRecords; i++) {
+				int offset = i*recordLength;
+				meanValues[i] = WaveformUtils.mean(waveforms, offset, offset+recordLength);
+				for (int j=0; j<recordLength; j++) {
+					hilbertTransforms[offset+j] -= meanValues[i]*constantTransform[j];
+				}
 			}
-	    	
-			// initialize temporary copy padded array
-			double[] waveformCopy = new double[paddedWidth];
+		}
+		
+		// copy magnitude of analytic signal into original waveform array
+		for (int i=0; i<numberOfRecords; i++) {
+			int offset = i*recordLength;
 			for (int j=0; j<recordLength; j++) {
-				waveformCopy[j] = waveforms[offset+j] - valueToSubtract;
+				double currentValue = waveforms[offset+j] - meanValues[i];
+				double hilbertValue = hilbertTransforms[offset+j];
+				waveforms[offset+j] = (float)Math.sqrt(hilbertValue*hilbertValue + currentValue*currentValue);
 			}
-	    		    	
-	    	// compute Hilbert Transform
-	    	WaveformUtils.fastHilbertTransformPowerOf2(waveformCopy, true);
-	    	
-	    	// copy magnitude of Hilbert Transform into original waveform array, truncating at original width
-	    	for (int j=0; j<recordLength; j++) {
-				double currentValue = waveforms[offset+j] - valueToSubtract;
-	    	    waveforms[offset+j] = (float)Math.sqrt(waveformCopy[j]*waveformCopy[j] + currentValue*currentValue);
-	    	}
-	   	}
+		}
 	}
 	
 	/**
@@ -152,40 +294,110 @@ public class Envelope implements ExtendedPlugInFilter, DialogListener
 	 */
 	public static final void execute(double[] waveforms, int recordLength, boolean subtractMean)
 	{
+		execute(waveforms, recordLength, subtractMean, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Computes envelope (magnitude of analytic signal) of input waveforms,
+	 * assumed to be of length {@code w} and concatenated and stored in
+	 * one-dimensional input array {@code waveforms}. Each waveform is
+	 * zero-padded to the transform length selected by {@code fftLength},
+	 * and the final output is truncated to the original length. Because the
+	 * Hilbert transform of a real waveform is real, adjacent waveforms are
+	 * transformed together as the real and imaginary parts of a single
+	 * complex FFT. Results are
+	 * computed in place. For efficiency, no error checking is performed on
+	 * validity of inputs.
+	 *
+	 * @param waveforms	   input waveforms concatenated together
+	 * @param recordLength length of each waveform in points
+	 * @param subtractMean set to true to remove any DC offset before computing
+	 *                     envelope
+	 * @param fftLength    choice of FFT length used for each waveform
+	 */
+	public static final void execute(double[] waveforms, final int recordLength, final boolean subtractMean, final WaveformUtils.FftLength fftLength)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, subtractMean, fftLength);
+			}
+		})) {
+			return;
+		}
+		
 		int numberOfRecords = waveforms.length/recordLength;
 		
-		int paddedWidth = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
-	    	    
-		// perform computations on row-by-row basis
-	    for (int i=0; i<numberOfRecords; i++) {
-			
-	        // compute row offset 
-	        int offset = i*recordLength;
+		int paddedWidth = fftLength.transformLength(recordLength);
+		
+		// frequency response of the Hilbert transform
+		double[] responseRe = new double[paddedWidth];
+		double[] responseIm = hilbertResponse(paddedWidth);
+		
+		// Hilbert transforms of blocks of records are computed in borrowed arrays
+		int blockRecords = Math.min(numberOfRecords, BLOCK_RECORDS);
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			double[] meanValues = scratch.doubles(blockRecords);
+			double[] hilbertTransforms = scratch.doubles(blockRecords*recordLength);
 			
-			double valueToSubtract = 0.0;
-
-			// compute mean if necessary
-			if (subtractMean) {
-				valueToSubtract = WaveformUtils.mean(waveforms, offset, offset+recordLength);
+			for (int first=0; first<numberOfRecords; first+=blockRecords) {
+				int count = Math.min(blockRecords, numberOfRecords-first);
+				
+				// copy waveforms, removing mean values if necessary
+				for (int i=0; i<count; i++) {
+					int offset = (first+i)*recordLength;
+					meanValues[i] = subtractMean ? WaveformUtils.mean(waveforms, offset, offset+recordLength) : 0.0;
+					for (int j=0; j<recordLength; j++) {
+						hilbertTransforms[i*recordLength+j] = waveforms[offset+j] - meanValues[i];
+					}
+				}
+				
+				// compute Hilbert transforms, two records per complex FFT
+				WaveformUtils.freqDomainFilterPairedWaveformsInPlace(hilbertTransforms, count, recordLength, paddedWidth, responseRe, responseIm);
+				
+				// copy magnitude of analytic signal into original waveform array
+				for (int i=0; i<count; i++) {
+					int offset = (first+i)*recordLength;
+					for (int j=0; j<recordLength; j++) {
+						double currentValue = waveforms[offset+j] - meanValues[i];
+						double hilbertValue = hilbertTransforms[i*recordLength+j];
+						waveforms[offset+j] = Math.sqrt(hilbertValue*hilbertValue + currentValue*currentValue);
+					}
+				}
 			}
-	    	
-			// initialize temporary copy padded array
-			double[] waveformCopy = new double[paddedWidth];
-			for (int j=0; j<recordLength; j++) {
-				waveformCopy[j] = waveforms[offset+j] - valueToSubtract;
-			}
-	    		    	
-	    	// compute Hilbert Transform
-	    	WaveformUtils.fastHilbertTransformPowerOf2(waveformCopy, true);
-	    	
-	    	// copy magnitude of Hilbert Transform into original waveform array, truncating at original width
-	    	for (int j=0; j<recordLength; j++) {
-				double currentValue = waveforms[offset+j] - valueToSubtract;
-	    	    waveforms[offset+j] = Math.sqrt(waveformCopy[j]*waveformCopy[j] + currentValue*currentValue);
-	    	}
-	   	}
+		} finally {
+			scratch.release(mark);
+		}
 	}
     
+	// imaginary part of the frequency response of the Hilbert transform: -i for positive and +i for negative frequencies
+	private static double[] hilbertResponse(int transformLength)
+	{
+		double[] responseIm = new double[transformLength];
+		for (int k=1; 2*k<transformLength; k++) {
+			responseIm[k] = -1.0;
+			responseIm[transformLength-k] = 1.0;
+		}
+		
+		return responseIm;
+	}
+	
+	// single-precision copy of the response, so that float and double envelopes use the same response
+	private static float[] hilbertResponseFloat(int transformLength)
+	{
+		double[] response = hilbertResponse(transformLength);
+		float[] responseIm = new float[transformLength];
+		for (int k=0; k<transformLength; k++) {
+			responseIm[k] = (float)response[k];
+		}
+		
+		return responseIm;
+	}
+	
 	public void setNPasses(int nPasses) {}
     
 }
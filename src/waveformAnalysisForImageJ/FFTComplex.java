@@ -33,6 +33,7 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
 	private static final String[] types = {"Real part", "Imaginary part"};
 	private static int typeChoice = REAL_PART;
 	private static boolean isForward = true;
+	private static int fftLengthChoiceIndex = 0;
 	private boolean hasReal, hasImag, inputImageIsReal;
 	private static final String NO_CHOICE = "< none >";
 	private final int flags = DOES_32 + DOES_STACKS + PARALLELIZE_STACKS + KEEP_PREVIEW + FINAL_PROCESSING + NO_CHANGES;
@@ -60,7 +61,6 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
         height = impInput.getHeight();
 		stackSize = impInput.getStackSize();
 		title = impInput.getTitle();
-		newWidth = width + WaveformUtils.amountToPadToNextPowerOf2(width);
 		
 		// create list of images with dimensions that match input image parameters
 		useableImageIDs = getUsableImageIDs(impInput);
@@ -80,6 +80,7 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
 		gd.addChoice("Input image \""+impInput.getTitle()+"\" is", types, types[typeChoice]);
 		gd.addChoice("If complex input, select complementary dataset", useableImageTitles, useableImageTitles[useableImageTitles.length - 1]);
 		gd.addCheckbox("Do forward transform (inverse otherwise)", isForward);
+		gd.addChoice("FFT length", WaveformUtils.FftLength.stringValues(), WaveformUtils.FftLength.values()[fftLengthChoiceIndex].toString());
 
         gd.addDialogListener(this);
 
@@ -89,6 +90,7 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
         }
 
 		transformTitle = title + " FFT_" + (isForward ? "forward" : "inverse");
+		newWidth = WaveformUtils.FftLength.values()[fftLengthChoiceIndex].transformLength(width);
 		
 		// create output real and imaginary images and get references to stacks
 		impRealOutput = IJ.createImage(transformTitle+", real part", "32-bit", newWidth, height, stackSize);
@@ -104,6 +106,7 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
         typeChoice = gd.getNextChoiceIndex();
 		int choiceIndex = gd.getNextChoiceIndex();
 		isForward = gd.getNextBoolean();
+		fftLengthChoiceIndex = gd.getNextChoiceIndex();
 				
 		inputImageIsReal = (typeChoice == REAL_PART);
 		if (inputImageIsReal) {
@@ -153,7 +156,7 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
 			}
 		}
 		
-		float[][] transform = execute(pixelsRealInput, pixelsImagInput, isForward, width);
+		float[][] transform = execute(pixelsRealInput, pixelsImagInput, isForward, width, WaveformUtils.FftLength.values()[fftLengthChoiceIndex]);
 		
 		System.arraycopy(transform[0], 0, pixelsRealOutput, 0, newWidth*height);
 		System.arraycopy(transform[1], 0, pixelsImagOutput, 0, newWidth*height);
@@ -188,44 +191,72 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
 	 *						
 	 */
 	public static float[][] execute(float[] realWaveforms, float[] imagWaveforms, boolean isForward, int recordLength)
+	{
+		return execute(realWaveforms, imagWaveforms, isForward, recordLength, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Computes FFT of all complex waveforms represented in {@code realWaveforms}
+	 * and {@code imagWaveforms} as described in
+	 * {@link #execute(float[], float[], boolean, int) execute}, except that input
+	 * records are zero-padded to the transform length selected by
+	 * {@code fftLength}, which may be the record length itself. The size of
+	 * each output record is {@code fftLength.transformLength(recordLength)}.
+	 * 
+	 * @param realWaveforms	one-dimensional array composed of a series of 
+	 *						concatenated records, each of size equal to {@code recordLength},
+	 *						representing the real part of the input signals
+	 * @param imagWaveforms	one-dimensional array composed of a series of 
+	 *						concatenated records, each of size equal to {@code recordLength},
+	 *						representing the imaginary part of the input signals
+	 * @param isForward		{@code true} for forward transform, {@code false} for inverse
+	 * @param recordLength	size of each record in {@code realWaveforms} and {@code imagWaveforms} 
+	 * @param fftLength		choice of FFT length used for each record
+	 * @return				two-dimensional array of size {@code 2*numberOfRecords*paddedRecordLength}, 
+	 *						whose first element comprises the concatenated padded 
+	 *						real part of the transforms, and whose second element
+	 *						comprises the concatenated padded imaginary part of the transforms
+	 *						
+	 */
+	public static float[][] execute(final float[] realWaveforms, final float[] imagWaveforms, final boolean isForward, final int recordLength, WaveformUtils.FftLength fftLength)
 	{
 		// compute number of records
 		int numRecords = realWaveforms.length/recordLength;
 		
 		// compute padded record length
-		int paddedRecordLength = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
+		final int paddedRecordLength = fftLength.transformLength(recordLength);
 		
 		// initialize output array
-		float[][] output = new float[2][paddedRecordLength*numRecords];
+		final float[][] output = new float[2][paddedRecordLength*numRecords];
 		
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.numThreads(numRecords, paddedRecordLength) > 1) {
+			RecordPartitioner.forEachChunk(numRecords, paddedRecordLength, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					float[] re = new float[(toRecord-fromRecord)*paddedRecordLength];
+					float[] im = new float[re.length];
+					for (int i=fromRecord; i<toRecord; i++) {
+						System.arraycopy(realWaveforms, i*recordLength, re, (i-fromRecord)*paddedRecordLength, recordLength);
+						System.arraycopy(imagWaveforms, i*recordLength, im, (i-fromRecord)*paddedRecordLength, recordLength);
+					}
+					WaveformUtils.fftComplexMultipleWaveformsInPlace(re, im, paddedRecordLength, isForward);
+					System.arraycopy(re, 0, output[0], fromRecord*paddedRecordLength, re.length);
+					System.arraycopy(im, 0, output[1], fromRecord*paddedRecordLength, im.length);
+				}
+			});
+			return output;
+		}
+		
+		// copy input records into zero-padded output records
 		for (int i=0; i<numRecords; i++) {
-			
-			// compute offsets for input and output arrays
-			int offset1 = i*recordLength;
-			int offset2 = i*paddedRecordLength;
-			
-			// initialize temporary real and imaginary waveforms
-			double[] ar = new double[paddedRecordLength];
-			double[] ai = new double[paddedRecordLength];
-
-			// copy values into current temporary real and imaginary waveforms
-			for (int j=0; j<recordLength; j++) {
-				ar[j] = realWaveforms[offset1+j];
-				ai[j] = imagWaveforms[offset1+j];
-			}
-			
-			// perform FFT
-			WaveformUtils.fftComplexPowerOf2(ar, ai, isForward);
-			
-			// write values into output array
-			for (int j=0; j<paddedRecordLength; j++) {
-				output[0][offset2+j] = (float)ar[j];
-			}
-			for (int j=0; j<paddedRecordLength; j++) {
-				output[1][offset2+j] = (float)ai[j];
-			}
-			
+			System.arraycopy(realWaveforms, i*recordLength, output[0], i*paddedRecordLength, recordLength);
+			System.arraycopy(imagWaveforms, i*recordLength, output[1], i*paddedRecordLength, recordLength);
 		}
+		
+		// transform all records in batches
+		WaveformUtils.fftComplexMultipleWaveformsInPlace(output[0], output[1], paddedRecordLength, isForward);
 
 		return output;
 	}
@@ -259,38 +290,72 @@ public class FFTComplex implements ExtendedPlugInFilter, DialogListener
 	 *						
 	 */
 	public static double[][] execute(double[] realWaveforms, double[] imagWaveforms, boolean isForward, int recordLength)
+	{
+		return execute(realWaveforms, imagWaveforms, isForward, recordLength, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Computes FFT of all complex waveforms represented in {@code realWaveforms}
+	 * and {@code imagWaveforms} as described in
+	 * {@link #execute(double[], double[], boolean, int) execute}, except that input
+	 * records are zero-padded to the transform length selected by
+	 * {@code fftLength}, which may be the record length itself. The size of
+	 * each output record is {@code fftLength.transformLength(recordLength)}.
+	 * 
+	 * @param realWaveforms	one-dimensional array composed of a series of 
+	 *						concatenated records, each of size equal to {@code recordLength},
+	 *						representing the real part of the input signals
+	 * @param imagWaveforms	one-dimensional array composed of a series of 
+	 *						concatenated records, each of size equal to {@code recordLength},
+	 *						representing the imaginary part of the input signals
+	 * @param isForward		{@code true} for forward transform, {@code false} for inverse
+	 * @param recordLength	size of each record in {@code realWaveforms} and {@code imagWaveforms} 
+	 * @param fftLength		choice of FFT length used for each record
+	 * @return				two-dimensional array of size {@code 2*numberOfRecords*paddedRecordLength}, 
+	 *						whose first element comprises the concatenated padded 
+	 *						real part of the transforms, and whose second element
+	 *						comprises the concatenated padded imaginary part of the transforms
+	 *						
+	 */
+	public static double[][] execute(final double[] realWaveforms, final double[] imagWaveforms, final boolean isForward, final int recordLength, WaveformUtils.FftLength fftLength)
 	{
 		// compute number of records
 		int numRecords = realWaveforms.length/recordLength;
 		
 		// compute padded record length
-		int paddedRecordLength = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
+		final int paddedRecordLength = fftLength.transformLength(recordLength);
 		
 		// initialize output array
-		double[][] output = new double[2][paddedRecordLength*numRecords];
+		final double[][] output = new double[2][paddedRecordLength*numRecords];
+		
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.numThreads(numRecords, paddedRecordLength) > 1) {
+			RecordPartitioner.forEachChunk(numRecords, paddedRecordLength, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					double[] re = new double[(toRecord-fromRecord)*paddedRecordLength];
+					double[] im = new double[re.length];
+					for (int i=fromRecord; i<toRecord; i++) {
+						System.arraycopy(realWaveforms, i*recordLength, re, (i-fromRecord)*paddedRecordLength, recordLength);
+						System.arraycopy(imagWaveforms, i*recordLength, im, (i-fromRecord)*paddedRecordLength, recordLength);
+					}
+					WaveformUtils.fftComplexMultipleWaveformsInPlace(re, im, paddedRecordLength, isForward);
+					System.arraycopy(re, 0, output[0], fromRecord*paddedRecordLength, re.length);
+					System.arraycopy(im, 0, output[1], fromRecord*paddedRecordLength, im.length);
+				}
+			});
+			return output;
+		}
 		
+		// copy input records into zero-padded output records
 		for (int i=0; i<numRecords; i++) {
-			
-			// compute offsets for input and output arrays
-			int offset1 = i*recordLength;
-			int offset2 = i*paddedRecordLength;
-			
-			// initialize temporary real and imaginary waveforms
-			double[] ar = new double[paddedRecordLength];
-			double[] ai = new double[paddedRecordLength];
-
-			// copy values into current temporary real and imaginary waveforms
-			System.arraycopy(realWaveforms, offset1, ar, 0, recordLength);
-			System.arraycopy(imagWaveforms, offset1, ai, 0, recordLength);
-			
-			// perform FFT
-			WaveformUtils.fftComplexPowerOf2(ar, ai, isForward);
-			
-			// write values into output array
-			System.arraycopy(ar, 0, output[0], offset2, paddedRecordLength);
-			System.arraycopy(ai, 0, output[1], offset2, paddedRecordLength);
-			
+			System.arraycopy(realWaveforms, i*recordLength, output[0], i*paddedRecordLength, recordLength);
+			System.arraycopy(imagWaveforms, i*recordLength, output[1], i*paddedRecordLength, recordLength);
 		}
+		
+		// transform all records in batches
+		WaveformUtils.fftComplexMultipleWaveformsInPlace(output[0], output[1], paddedRecordLength, isForward);
 
 		return output;
 	}	
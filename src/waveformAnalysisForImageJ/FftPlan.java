@@ -0,0 +1,1301 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed tables for complex FFTs of a single, arbitrary length. Three
+ * algorithms are used, depending on the length {@code n}:
+ * <ul>
+ * <li>powers of 2 less than {@link #STOCKHAM_THRESHOLD} use an in-place
+ * radix-2 transform with a precomputed bit-reversal permutation;</li>
+ * <li>larger powers of 2, and other lengths whose prime factors are all 2,
+ * 3, 5 or 7, use a self-sorting (Stockham) mixed-radix transform, which
+ * needs no bit-reversal pass and accesses memory in long unit-stride runs,
+ * so it is several times faster than the radix-2 transform for records that
+ * do not fit in cache;</li>
+ * <li>all remaining lengths (e.g. primes) use Bluestein's chirp-z algorithm,
+ * which expresses the transform as a circular convolution computed with
+ * power-of-2 FFTs.</li>
+ * </ul>
+ * All three have O(n&nbsp;log&nbsp;n) cost, so records do not need to be
+ * padded to a power of 2; {@link WaveformUtils#nextFastFftLength(int)} gives
+ * the next length that avoids the (roughly 4-6 times slower) Bluestein path.
+ * Real-valued data may be transformed to and
+ * from the {@code n/2+1} unique bins of its spectrum with
+ * {@link #realForward(double[], int, double[], double[]) realForward} and
+ * {@link #realInverse(double[], double[], double[], int) realInverse}, which
+ * use a complex transform of half the length. Several records of the same
+ * length may be transformed together with
+ * {@link #transformInterleaved(double[], double[], int, boolean)
+ * transformInterleaved}. Each transform has a single-precision counterpart
+ * operating on {@code float[]} arrays, so that 32-bit image data can be
+ * processed without widening copies; power-of-2 lengths less than
+ * {@link #STOCKHAM_THRESHOLD} are computed entirely in single precision,
+ * while other lengths are computed in double precision internally. Plans are
+ * immutable, so a single instance may be shared by any number of threads.
+ * Instances are obtained through {@link #getInstance(int) getInstance}, which
+ * keeps the most recently used plans in a cache, within a memory budget, so
+ * that the tables for a given length are computed only once no matter how
+ * many records are transformed.
+ * Normalization is consistent with NI LabVIEW&reg FFT implementation (and
+ * with {@link WaveformUtils#fftComplexPowerOf2(double[], double[], boolean)}).
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class FftPlan
+{
+	/**
+	 * Default memory budget of the plan cache in bytes.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024L * 1024L;
+
+	private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private static long memoryUsed = 0L;
+	private static final Map<Integer, FftPlan> cache = new LinkedHashMap<Integer, FftPlan>(16, 0.75f, true);
+
+	/**
+	 * Smallest power-of-2 length transformed with the self-sorting algorithm
+	 * rather than the in-place radix-2 algorithm
+	 */
+	public static final int STOCKHAM_THRESHOLD = 4096;
+
+	// radix-2 stages combining transforms of at least this length use the contiguous butterfly kernels
+	private static final int KERNEL_SPAN = 8;
+
+	private static final int RADIX_2 = 0;
+	private static final int MIXED_RADIX = 1;
+	private static final int BLUESTEIN = 2;
+
+	private final int n;
+	private final int algorithm;
+
+	// exp(2*pi*i*k/n); n/2 entries, or n entries for the mixed-radix algorithm
+	private final double[] cosTable;
+	private final double[] sinTable;
+	// single-precision copies; radix-2 algorithm only
+	private final float[] cosTableFloat;
+	private final float[] sinTableFloat;
+
+	// radix-2 algorithm; twiddle factors of the stage combining transforms of
+	// length m are stored contiguously at indices m through 2m-1
+	private final int[] bitReversedIndices;
+	private final double[] stageCosTable;
+	private final double[] stageSinTable;
+	private final float[] stageCosTableFloat;
+	private final float[] stageSinTableFloat;
+
+	// mixed-radix algorithm
+	private final int[] factors;
+
+	// Bluestein algorithm: chirp exp(-pi*i*k^2/n), and FFT of its conjugate
+	// arranged for circular convolution of length m=convolutionPlan.length()
+	private final double[] chirpRe;
+	private final double[] chirpIm;
+	private final double[] filterRe;
+	private final double[] filterIm;
+	private final FftPlan convolutionPlan;
+
+	private volatile FftPlan halfPlan;
+
+	private FftPlan(int n)
+	{
+		this.n = n;
+		int halfN = n / 2;
+
+		int[] smallFactors = factorize(n);
+		if (WaveformUtils.isPowerOf2(n) && n < STOCKHAM_THRESHOLD) {
+			algorithm = RADIX_2;
+		} else if (smallFactors != null) {
+			algorithm = MIXED_RADIX;
+		} else {
+			algorithm = BLUESTEIN;
+		}
+
+		// twiddle factors exp(2*pi*i*k/n), computed directly rather than by recursion
+		int tableLength = (algorithm == MIXED_RADIX) ? n : halfN;
+		cosTable = new double[tableLength];
+		sinTable = new double[tableLength];
+		for (int k = 0; k < tableLength; k++) {
+			double theta = 2.0 * Math.PI * k / n;
+			cosTable[k] = Math.cos(theta);
+			sinTable[k] = Math.sin(theta);
+		}
+
+		if (algorithm == RADIX_2) {
+			// single-precision copies, used only by the single-precision radix-2 transform
+			cosTableFloat = new float[tableLength];
+			sinTableFloat = new float[tableLength];
+			for (int k = 0; k < tableLength; k++) {
+				cosTableFloat[k] = (float) cosTable[k];
+				sinTableFloat[k] = (float) sinTable[k];
+			}
+
+			// bit-reversal permutation
+			bitReversedIndices = new int[n];
+			int j = 0;
+			for (int i = 0; i < n; i++) {
+				bitReversedIndices[i] = j;
+				int m = halfN;
+				while (m >= 1 && j >= m) {
+					j -= m;
+					m /= 2;
+				}
+				j += m;
+			}
+
+			// copies of the twiddle factors used by each stage, so that the values are identical
+			stageCosTable = new double[n];
+			stageSinTable = new double[n];
+			stageCosTableFloat = new float[n];
+			stageSinTableFloat = new float[n];
+			for (int mmax = 1, tableStep = halfN; mmax < n; mmax *= 2, tableStep /= 2) {
+				for (int m = 0; m < mmax; m++) {
+					stageCosTable[mmax + m] = cosTable[m * tableStep];
+					stageSinTable[mmax + m] = sinTable[m * tableStep];
+					stageCosTableFloat[mmax + m] = cosTableFloat[m * tableStep];
+					stageSinTableFloat[mmax + m] = sinTableFloat[m * tableStep];
+				}
+			}
+		} else {
+			cosTableFloat = sinTableFloat = null;
+			bitReversedIndices = null;
+			stageCosTable = stageSinTable = null;
+			stageCosTableFloat = stageSinTableFloat = null;
+		}
+
+		factors = (algorithm == MIXED_RADIX) ? smallFactors : null;
+
+		if (algorithm == BLUESTEIN) {
+			int m = Integer.highestOneBit(2 * n - 1);
+			if (m < 2 * n - 1) {
+				m *= 2;
+			}
+			convolutionPlan = getInstance(m);
+
+			// k^2 is reduced modulo 2n before scaling to keep the chirp phase accurate for large k
+			chirpRe = new double[n];
+			chirpIm = new double[n];
+			long twoN = 2L * n;
+			for (int k = 0; k < n; k++) {
+				double theta = Math.PI * (((long) k * k) % twoN) / n;
+				chirpRe[k] = Math.cos(theta);
+				chirpIm[k] = -Math.sin(theta);
+			}
+
+			filterRe = new double[m];
+			filterIm = new double[m];
+			filterRe[0] = chirpRe[0];
+			filterIm[0] = -chirpIm[0];
+			for (int k = 1; k < n; k++) {
+				filterRe[k] = filterRe[m - k] = chirpRe[k];
+				filterIm[k] = filterIm[m - k] = -chirpIm[k];
+			}
+			convolutionPlan.transform(filterRe, filterIm, 0, true);
+		} else {
+			convolutionPlan = null;
+			chirpRe = chirpIm = filterRe = filterIm = null;
+		}
+	}
+
+	/**
+	 * Splits {@code n} into radix-4, 2, 3, 5 and 7 factors.
+	 *
+	 * @return factors of {@code n}, or {@code null} if {@code n} has any other
+	 *         prime factor
+	 */
+	private static int[] factorize(int n)
+	{
+		int[] f = new int[32];
+		int count = 0;
+		int remainder = n;
+		for (int radix : new int[]{4, 2, 3, 5, 7}) {
+			while (remainder % radix == 0) {
+				f[count++] = radix;
+				remainder /= radix;
+			}
+		}
+		if (remainder != 1) {
+			return null;
+		}
+		int[] result = new int[count];
+		System.arraycopy(f, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Returns a plan for complex FFTs of length {@code n}, creating it if
+	 * necessary. The most recently requested plans are cached, within the
+	 * memory budget. Plans are created without holding the lock of the cache,
+	 * so that plans of other lengths are returned meanwhile; if two threads
+	 * create a plan of the same length, the plan cached first is returned to
+	 * both. This method is thread-safe.
+	 *
+	 * @param n transform length; any positive integer
+	 * @return plan for transforms of length {@code n}, or {@code null} if
+	 *         {@code n<1}
+	 */
+	public static FftPlan getInstance(int n)
+	{
+		if (n < 1) {
+			return null;
+		}
+
+		Integer key = Integer.valueOf(n);
+		synchronized (FftPlan.class) {
+			FftPlan plan = cache.get(key);
+			if (plan != null) {
+				return plan;
+			}
+		}
+
+		FftPlan plan = new FftPlan(n);
+
+		synchronized (FftPlan.class) {
+			FftPlan cachedPlan = cache.get(key);
+			if (cachedPlan != null) {
+				return cachedPlan;
+			}
+			long size = plan.getMemorySize();
+			if (size <= memoryBudget) {
+				cache.put(key, plan);
+				memoryUsed += size;
+				evict();
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the maximum total size of the cached plans in bytes.
+	 *
+	 * @return memory budget in bytes
+	 */
+	public static synchronized long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the maximum total size of the cached plans in bytes, evicting the
+	 * least recently used plans if necessary. Negative values are ignored.
+	 *
+	 * @param bytes memory budget in bytes
+	 */
+	public static synchronized void setMemoryBudget(long bytes)
+	{
+		if (bytes >= 0L) {
+			memoryBudget = bytes;
+			evict();
+		}
+	}
+
+	/**
+	 * Returns the total size of the cached plans in bytes.
+	 *
+	 * @return memory used in bytes
+	 */
+	public static synchronized long getMemoryUsed()
+	{
+		return memoryUsed;
+	}
+
+	private static void evict()
+	{
+		Iterator<FftPlan> iterator = cache.values().iterator();
+		while (memoryUsed > memoryBudget && iterator.hasNext()) {
+			memoryUsed -= iterator.next().getMemorySize();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the size of the tables of this plan in bytes, not including
+	 * the plans of other lengths it uses.
+	 *
+	 * @return memory size in bytes
+	 */
+	public long getMemorySize()
+	{
+		long size = 8L * (cosTable.length + sinTable.length);
+		if (algorithm == RADIX_2) {
+			size += 4L * (cosTableFloat.length + sinTableFloat.length + bitReversedIndices.length);
+			size += 8L * (stageCosTable.length + stageSinTable.length);
+			size += 4L * (stageCosTableFloat.length + stageSinTableFloat.length);
+		} else if (algorithm == MIXED_RADIX) {
+			size += 4L * factors.length;
+		} else {
+			size += 8L * (chirpRe.length + chirpIm.length + filterRe.length + filterIm.length);
+		}
+		return size;
+	}
+
+	/**
+	 * @return transform length of this plan
+	 */
+	public int length()
+	{
+		return n;
+	}
+
+	/**
+	 * Computes complex FFT of real and imaginary input arrays (in place).
+	 * {@code ar} and {@code ai} must both have length equal to
+	 * {@link #length()}, otherwise a runtime exception may be thrown.
+	 *
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param isForward true for forward FFT, false for inverse FFT
+	 */
+	public void transform(double[] ar, double[] ai, boolean isForward)
+	{
+		transform(ar, ai, 0, isForward);
+	}
+
+	/**
+	 * Computes complex FFT of real and imaginary input arrays (in place)
+	 * within the range {@code [from, from+length())}. For efficiency, no error
+	 * checking is performed on range limits; if the range extends outside
+	 * either array, a runtime exception may be thrown.
+	 *
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param from      initial index of the range to transform, inclusive
+	 * @param isForward true for forward FFT, false for inverse FFT
+	 */
+	public void transform(double[] ar, double[] ai, int from, boolean isForward)
+	{
+		switch (algorithm) {
+			case RADIX_2:
+				radix2Transform(ar, ai, from, isForward);
+				break;
+			case MIXED_RADIX:
+				mixedRadixTransform(ar, ai, from, isForward);
+				break;
+			default:
+				bluesteinTransform(ar, ai, from, isForward);
+		}
+	}
+
+	/**
+	 * Computes complex FFT of single-precision real and imaginary input arrays
+	 * (in place). {@code ar} and {@code ai} must both have length equal to
+	 * {@link #length()}, otherwise a runtime exception may be thrown.
+	 *
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param isForward true for forward FFT, false for inverse FFT
+	 */
+	public void transform(float[] ar, float[] ai, boolean isForward)
+	{
+		transform(ar, ai, 0, isForward);
+	}
+
+	/**
+	 * Computes complex FFT of single-precision real and imaginary input arrays
+	 * (in place) within the range {@code [from, from+length())}. Power-of-2
+	 * lengths less than {@link #STOCKHAM_THRESHOLD} are computed in single
+	 * precision; other lengths are computed in double precision and rounded.
+	 * For efficiency, no error checking is performed on range limits; if the
+	 * range extends outside either array, a runtime exception may be thrown.
+	 *
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param from      initial index of the range to transform, inclusive
+	 * @param isForward true for forward FFT, false for inverse FFT
+	 */
+	public void transform(float[] ar, float[] ai, int from, boolean isForward)
+	{
+		if (algorithm == RADIX_2) {
+			radix2Transform(ar, ai, from, isForward);
+			return;
+		}
+
+		// other lengths are computed in double precision
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			double[] xr = scratch.doubles(n);
+			double[] xi = scratch.doubles(n);
+			for (int i = 0; i < n; i++) {
+				xr[i] = ar[from + i];
+				xi[i] = ai[from + i];
+			}
+			transform(xr, xi, 0, isForward);
+			for (int i = 0; i < n; i++) {
+				ar[from + i] = (float) xr[i];
+				ai[from + i] = (float) xi[i];
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes complex FFTs of {@code count} records (in place) stored in
+	 * interleaved order, so that element {@code k} of record {@code r} is at
+	 * index {@code k*count+r} of {@code ar} and {@code ai}, which must each
+	 * have at least {@code length()*count} elements. For power-of-2 lengths
+	 * less than {@link #STOCKHAM_THRESHOLD} each butterfly is applied to all records in a single contiguous inner
+	 * loop, which amortizes twiddle factor and index computation over the
+	 * records and allows the loop to be compiled to SIMD instructions.
+	 * Butterflies are applied two stages at a time (radix 4) to halve the
+	 * number of passes over the data. Other lengths are transformed record by
+	 * record. Results agree with those of
+	 * {@link #transform(double[], double[], boolean) transform} to within
+	 * rounding error.
+	 *
+	 * @param ar        real parts of the interleaved records
+	 * @param ai        imaginary parts of the interleaved records
+	 * @param count     number of interleaved records
+	 * @param isForward true for forward FFT, false for inverse FFT
+	 */
+	public void transformInterleaved(double[] ar, double[] ai, int count, boolean isForward)
+	{
+		if (count == 1) {
+			transform(ar, ai, 0, isForward);
+		} else if (algorithm == RADIX_2) {
+			radix2TransformInterleaved(ar, ai, count, isForward);
+		} else {
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				double[] xr = scratch.doubles(n);
+				double[] xi = scratch.doubles(n);
+				for (int r = 0; r < count; r++) {
+					for (int k = 0, index = r; k < n; k++, index += count) {
+						xr[k] = ar[index];
+						xi[k] = ai[index];
+					}
+					transform(xr, xi, 0, isForward);
+					for (int k = 0, index = r; k < n; k++, index += count) {
+						ar[index] = xr[k];
+						ai[index] = xi[k];
+					}
+				}
+			} finally {
+				scratch.release(mark);
+			}
+		}
+	}
+
+	private void radix2TransformInterleaved(double[] ar, double[] ai, int count, boolean isForward)
+	{
+		final int[] rev = bitReversedIndices;
+		final double[] cos = cosTable;
+		final double[] sin = sinTable;
+
+		// bit-reversal reordering of whole blocks of records
+		for (int i = 0; i < n; i++) {
+			int j = rev[i];
+			if (j > i) {
+				int ii = i * count;
+				int jj = j * count;
+				for (int r = 0; r < count; r++) {
+					double tempr = ar[jj + r];
+					double tempi = ai[jj + r];
+					ar[jj + r] = ar[ii + r];
+					ai[jj + r] = ai[ii + r];
+					ar[ii + r] = tempr;
+					ai[ii + r] = tempi;
+				}
+			}
+		}
+
+		// the forward transform uses exp(-2*pi*i*k/n)
+		double sign = isForward ? -1.0 : 1.0;
+
+		// a single radix-2 stage if log2(n) is odd, then radix-4 stages, so
+		// that the (typically cache-exceeding) data are swept half as often
+		int mmax = 1;
+		if (Integer.numberOfTrailingZeros(n) % 2 != 0) {
+			for (int i = 0; i < n; i += 2) {
+				int ii = i * count;
+				int jj = ii + count;
+				for (int r = 0; r < count; r++) {
+					double tr = ar[jj + r];
+					double ti = ai[jj + r];
+					ar[jj + r] = ar[ii + r] - tr;
+					ai[jj + r] = ai[ii + r] - ti;
+					ar[ii + r] += tr;
+					ai[ii + r] += ti;
+				}
+			}
+			mmax = 2;
+		}
+
+		for (; mmax < n; mmax *= 4) {
+			int istep = 4 * mmax;
+			int tableStep = n / istep;
+			for (int m = 0; m < mmax; m++) {
+				// v=exp(sign*2*pi*i*m/istep) for the second stage, w=v^2 for the first
+				double vr = cos[m * tableStep];
+				double vi = sign * sin[m * tableStep];
+				double wr = cos[2 * m * tableStep];
+				double wi = sign * sin[2 * m * tableStep];
+				for (int i = m; i < n; i += istep) {
+					int i0 = i * count;
+					int i1 = i0 + mmax * count;
+					int i2 = i1 + mmax * count;
+					int i3 = i2 + mmax * count;
+					for (int r = 0; r < count; r++) {
+						// first stage: pairs (i0,i1) and (i2,i3) with twiddle w
+						double tr = wr * ar[i1 + r] - wi * ai[i1 + r];
+						double ti = wr * ai[i1 + r] + wi * ar[i1 + r];
+						double a0r = ar[i0 + r] + tr;
+						double a0i = ai[i0 + r] + ti;
+						double a1r = ar[i0 + r] - tr;
+						double a1i = ai[i0 + r] - ti;
+						tr = wr * ar[i3 + r] - wi * ai[i3 + r];
+						ti = wr * ai[i3 + r] + wi * ar[i3 + r];
+						double a2r = ar[i2 + r] + tr;
+						double a2i = ai[i2 + r] + ti;
+						double a3r = ar[i2 + r] - tr;
+						double a3i = ai[i2 + r] - ti;
+
+						// second stage: pairs (i0,i2) with twiddle v, (i1,i3) with v*exp(sign*pi*i/2)
+						tr = vr * a2r - vi * a2i;
+						ti = vr * a2i + vi * a2r;
+						ar[i0 + r] = a0r + tr;
+						ai[i0 + r] = a0i + ti;
+						ar[i2 + r] = a0r - tr;
+						ai[i2 + r] = a0i - ti;
+						tr = -sign * (vr * a3i + vi * a3r);
+						ti = sign * (vr * a3r - vi * a3i);
+						ar[i1 + r] = a1r + tr;
+						ai[i1 + r] = a1i + ti;
+						ar[i3 + r] = a1r - tr;
+						ai[i3 + r] = a1i - ti;
+					}
+				}
+			}
+		}
+
+		if (!isForward) {
+			double scale = 1.0 / n;
+			for (int i = 0, end = n * count; i < end; i++) {
+				ar[i] *= scale;
+				ai[i] *= scale;
+			}
+		}
+	}
+
+	private void radix2Transform(double[] ar, double[] ai, int from, boolean isForward)
+	{
+		final int[] rev = bitReversedIndices;
+		final double[] cos = cosTable;
+		final double[] sin = sinTable;
+
+		// bit-reversal reordering, scaling inverse transform as we go
+		if (isForward) {
+			for (int i = 0; i < n; i++) {
+				int j = rev[i];
+				if (j > i) {
+					int ii = i + from;
+					int jj = j + from;
+					double tempr = ar[jj];
+					double tempi = ai[jj];
+					ar[jj] = ar[ii];
+					ai[jj] = ai[ii];
+					ar[ii] = tempr;
+					ai[ii] = tempi;
+				}
+			}
+		} else {
+			double scale = 1.0 / n;
+			for (int i = 0; i < n; i++) {
+				int j = rev[i];
+				int ii = i + from;
+				if (j > i) {
+					int jj = j + from;
+					double tempr = ar[jj] * scale;
+					double tempi = ai[jj] * scale;
+					ar[jj] = ar[ii] * scale;
+					ai[jj] = ai[ii] * scale;
+					ar[ii] = tempr;
+					ai[ii] = tempi;
+				} else if (j == i) {
+					ar[ii] *= scale;
+					ai[ii] *= scale;
+				}
+			}
+		}
+
+		// the forward transform uses exp(-2*pi*i*k/n)
+		double sign = isForward ? -1.0 : 1.0;
+
+		int mmax = 1;
+		for (int tableStep = n / 2; mmax < n && mmax < KERNEL_SPAN; mmax *= 2, tableStep /= 2) {
+			int istep = 2 * mmax;
+			for (int m = 0; m < mmax; m++) {
+				double wr = cos[m * tableStep];
+				double wi = sign * sin[m * tableStep];
+				for (int i = m + from, end = n + from; i < end; i += istep) {
+					int j = i + mmax;
+					double tr = wr * ar[j] - wi * ai[j];
+					double ti = wr * ai[j] + wi * ar[j];
+					ar[j] = ar[i] - tr;
+					ai[j] = ai[i] - ti;
+					ar[i] += tr;
+					ai[i] += ti;
+				}
+			}
+		}
+
+		// later stages: runs of mmax butterflies with contiguous data and twiddle factors
+		ArrayKernels kernels = ArrayKernels.INSTANCE;
+		for (; mmax < n; mmax *= 2) {
+			for (int i = from, end = n + from; i < end; i += 2 * mmax) {
+				kernels.butterflies(ar, ai, i, i + mmax, mmax, stageCosTable, stageSinTable, mmax, isForward);
+			}
+		}
+	}
+
+	private void radix2Transform(float[] ar, float[] ai, int from, boolean isForward)
+	{
+		final int[] rev = bitReversedIndices;
+		final float[] cos = cosTableFloat;
+		final float[] sin = sinTableFloat;
+
+		// bit-reversal reordering, scaling inverse transform as we go
+		if (isForward) {
+			for (int i = 0; i < n; i++) {
+				int j = rev[i];
+				if (j > i) {
+					int ii = i + from;
+					int jj = j + from;
+					float tempr = ar[jj];
+					float tempi = ai[jj];
+					ar[jj] = ar[ii];
+					ai[jj] = ai[ii];
+					ar[ii] = tempr;
+					ai[ii] = tempi;
+				}
+			}
+		} else {
+			float scale = 1.0f / n;
+			for (int i = 0; i < n; i++) {
+				int j = rev[i];
+				int ii = i + from;
+				if (j > i) {
+					int jj = j + from;
+					float tempr = ar[jj] * scale;
+					float tempi = ai[jj] * scale;
+					ar[jj] = ar[ii] * scale;
+					ai[jj] = ai[ii] * scale;
+					ar[ii] = tempr;
+					ai[ii] = tempi;
+				} else if (j == i) {
+					ar[ii] *= scale;
+					ai[ii] *= scale;
+				}
+			}
+		}
+
+		// the forward transform uses exp(-2*pi*i*k/n)
+		float sign = isForward ? -1.0f : 1.0f;
+
+		int mmax = 1;
+		for (int tableStep = n / 2; mmax < n && mmax < KERNEL_SPAN; mmax *= 2, tableStep /= 2) {
+			int istep = 2 * mmax;
+			for (int m = 0; m < mmax; m++) {
+				float wr = cos[m * tableStep];
+				float wi = sign * sin[m * tableStep];
+				for (int i = m + from, end = n + from; i < end; i += istep) {
+					int j = i + mmax;
+					float tr = wr * ar[j] - wi * ai[j];
+					float ti = wr * ai[j] + wi * ar[j];
+					ar[j] = ar[i] - tr;
+					ai[j] = ai[i] - ti;
+					ar[i] += tr;
+					ai[i] += ti;
+				}
+			}
+		}
+
+		// later stages: runs of mmax butterflies with contiguous data and twiddle factors
+		ArrayKernels kernels = ArrayKernels.INSTANCE;
+		for (; mmax < n; mmax *= 2) {
+			for (int i = from, end = n + from; i < end; i += 2 * mmax) {
+				kernels.butterflies(ar, ai, i, i + mmax, mmax, stageCosTableFloat, stageSinTableFloat, mmax, isForward);
+			}
+		}
+	}
+
+	private void mixedRadixTransform(double[] ar, double[] ai, int from, boolean isForward)
+	{
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			// the input arrays serve as one of the two ping-pong buffers when possible
+			double[] xr;
+			double[] xi;
+			if (from == 0) {
+				xr = ar;
+				xi = ai;
+			} else {
+				xr = scratch.doubles(n);
+				xi = scratch.doubles(n);
+				System.arraycopy(ar, from, xr, 0, n);
+				System.arraycopy(ai, from, xi, 0, n);
+			}
+			double[] yr = scratch.doubles(n);
+			double[] yi = scratch.doubles(n);
+
+			double sign = isForward ? -1.0 : 1.0;
+
+			// each pass combines p transforms of length ls into transforms of length ls*p
+			int ls = 1;
+			for (int p : factors) {
+				int r = n / (ls * p);
+				switch (p) {
+					case 2:
+						pass2(xr, xi, yr, yi, ls, r, sign);
+						break;
+					case 4:
+						pass4(xr, xi, yr, yi, ls, r, sign);
+						break;
+					default:
+						passGeneric(xr, xi, yr, yi, p, ls, r, sign);
+				}
+				double[] temp = xr;
+				xr = yr;
+				yr = temp;
+				temp = xi;
+				xi = yi;
+				yi = temp;
+				ls *= p;
+			}
+
+			if (isForward) {
+				if (xr != ar) {
+					System.arraycopy(xr, 0, ar, from, n);
+					System.arraycopy(xi, 0, ai, from, n);
+				}
+			} else {
+				double scale = 1.0 / n;
+				for (int i = 0; i < n; i++) {
+					ar[from + i] = xr[i] * scale;
+					ai[from + i] = xi[i] * scale;
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/*
+	 * Stockham passes: element k1 of the length-ls transform of subsequence t
+	 * is stored at index k1*r*p+t of the input; element k of the combined
+	 * length-ls*p transform is written to index k*r+t of the output.
+	 */
+	private void pass2(double[] xr, double[] xi, double[] yr, double[] yi, int ls, int r, double sign)
+	{
+		final int half = ls * r;
+		for (int k1 = 0; k1 < ls; k1++) {
+			double wr = cosTable[k1 * r];
+			double wi = sign * sinTable[k1 * r];
+			int in0 = 2 * k1 * r;
+			int in1 = in0 + r;
+			int out0 = k1 * r;
+			int out1 = out0 + half;
+			for (int t = 0; t < r; t++) {
+				double br = xr[in1 + t] * wr - xi[in1 + t] * wi;
+				double bi = xr[in1 + t] * wi + xi[in1 + t] * wr;
+				double ar0 = xr[in0 + t];
+				double ai0 = xi[in0 + t];
+				yr[out0 + t] = ar0 + br;
+				yi[out0 + t] = ai0 + bi;
+				yr[out1 + t] = ar0 - br;
+				yi[out1 + t] = ai0 - bi;
+			}
+		}
+	}
+
+	private void pass4(double[] xr, double[] xi, double[] yr, double[] yi, int ls, int r, double sign)
+	{
+		final int quarter = ls * r;
+		for (int k1 = 0; k1 < ls; k1++) {
+			double w1r = cosTable[k1 * r];
+			double w1i = sign * sinTable[k1 * r];
+			double w2r = cosTable[2 * k1 * r];
+			double w2i = sign * sinTable[2 * k1 * r];
+			double w3r = cosTable[3 * k1 * r];
+			double w3i = sign * sinTable[3 * k1 * r];
+			int in0 = 4 * k1 * r;
+			int out0 = k1 * r;
+			for (int t = 0; t < r; t++) {
+				int i0 = in0 + t;
+				int i1 = i0 + r;
+				int i2 = i1 + r;
+				int i3 = i2 + r;
+				double a0r = xr[i0];
+				double a0i = xi[i0];
+				double a1r = xr[i1] * w1r - xi[i1] * w1i;
+				double a1i = xr[i1] * w1i + xi[i1] * w1r;
+				double a2r = xr[i2] * w2r - xi[i2] * w2i;
+				double a2i = xr[i2] * w2i + xi[i2] * w2r;
+				double a3r = xr[i3] * w3r - xi[i3] * w3i;
+				double a3i = xr[i3] * w3i + xi[i3] * w3r;
+
+				double sumEvenR = a0r + a2r;
+				double sumEvenI = a0i + a2i;
+				double difEvenR = a0r - a2r;
+				double difEvenI = a0i - a2i;
+				double sumOddR = a1r + a3r;
+				double sumOddI = a1i + a3i;
+
+				// (a1-a3) multiplied by exp(sign*pi*i/2)
+				double rotR = -sign * (a1i - a3i);
+				double rotI = sign * (a1r - a3r);
+
+				int o0 = out0 + t;
+				int o1 = o0 + quarter;
+				int o2 = o1 + quarter;
+				int o3 = o2 + quarter;
+				yr[o0] = sumEvenR + sumOddR;
+				yi[o0] = sumEvenI + sumOddI;
+				yr[o1] = difEvenR + rotR;
+				yi[o1] = difEvenI + rotI;
+				yr[o2] = sumEvenR - sumOddR;
+				yi[o2] = sumEvenI - sumOddI;
+				yr[o3] = difEvenR - rotR;
+				yi[o3] = difEvenI - rotI;
+			}
+		}
+	}
+
+	private void passGeneric(double[] xr, double[] xi, double[] yr, double[] yi, int p, int ls, int r, double sign)
+	{
+		// p-th roots of unity (temporaries are borrowed from the pool of the calling transform)
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			double[] rootR = scratch.doubles(p);
+			double[] rootI = scratch.doubles(p);
+			for (int q = 0; q < p; q++) {
+				rootR[q] = Math.cos(2.0 * Math.PI * q / p);
+				rootI[q] = sign * Math.sin(2.0 * Math.PI * q / p);
+			}
+
+			double[] wr = scratch.doubles(p);
+			double[] wi = scratch.doubles(p);
+			double[] ar = scratch.doubles(p);
+			double[] ai = scratch.doubles(p);
+			final int stride = ls * r;
+
+			for (int k1 = 0; k1 < ls; k1++) {
+				for (int j = 0; j < p; j++) {
+					wr[j] = cosTable[j * k1 * r];
+					wi[j] = sign * sinTable[j * k1 * r];
+				}
+				int in0 = p * k1 * r;
+				int out0 = k1 * r;
+				for (int t = 0; t < r; t++) {
+					for (int j = 0; j < p; j++) {
+						int index = in0 + j * r + t;
+						ar[j] = xr[index] * wr[j] - xi[index] * wi[j];
+						ai[j] = xr[index] * wi[j] + xi[index] * wr[j];
+					}
+					for (int k2 = 0; k2 < p; k2++) {
+						double sumR = ar[0];
+						double sumI = ai[0];
+						for (int j = 1, q = k2; j < p; j++, q = (q + k2) % p) {
+							sumR += ar[j] * rootR[q] - ai[j] * rootI[q];
+							sumI += ar[j] * rootI[q] + ai[j] * rootR[q];
+						}
+						yr[out0 + k2 * stride + t] = sumR;
+						yi[out0 + k2 * stride + t] = sumI;
+					}
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	private void bluesteinTransform(double[] ar, double[] ai, int from, boolean isForward)
+	{
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		try {
+			// the inverse transform is the conjugate of the forward transform of the conjugate
+			double conj = isForward ? 1.0 : -1.0;
+			int m = convolutionPlan.length();
+			double[] wr = scratch.doubles(m);
+			double[] wi = scratch.doubles(m);
+
+			// multiply input by chirp, and zero-pad to the convolution length
+			for (int k = 0; k < n; k++) {
+				double xr = ar[from + k];
+				double xi = conj * ai[from + k];
+				wr[k] = xr * chirpRe[k] - xi * chirpIm[k];
+				wi[k] = xr * chirpIm[k] + xi * chirpRe[k];
+			}
+			Arrays.fill(wr, n, m, 0.0);
+			Arrays.fill(wi, n, m, 0.0);
+
+			// circular convolution with conjugate chirp
+			convolutionPlan.transform(wr, wi, 0, true);
+			for (int k = 0; k < m; k++) {
+				double tr = wr[k] * filterRe[k] - wi[k] * filterIm[k];
+				wi[k] = wr[k] * filterIm[k] + wi[k] * filterRe[k];
+				wr[k] = tr;
+			}
+			convolutionPlan.transform(wr, wi, 0, false);
+
+			// multiply output by chirp
+			double scale = isForward ? 1.0 : 1.0 / n;
+			for (int k = 0; k < n; k++) {
+				double yr = wr[k] * chirpRe[k] - wi[k] * chirpIm[k];
+				double yi = wr[k] * chirpIm[k] + wi[k] * chirpRe[k];
+				ar[from + k] = yr * scale;
+				ai[from + k] = conj * yi * scale;
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes the non-redundant half of the FFT of real-valued data of length
+	 * {@link #length()} beginning at index {@code from} of {@code a}. Bins
+	 * {@code 0} through {@code n/2} of the spectrum are written to
+	 * {@code re} and {@code im}, which must each have at least
+	 * {@code n/2+1} elements; the remaining bins follow from conjugate
+	 * symmetry. {@code a} is left unchanged unless it is the same array as
+	 * {@code re}, which is permitted when {@code from==0}. For even lengths
+	 * the transform is computed with a single complex FFT of length
+	 * {@code n/2}; odd lengths use a complex FFT of length {@code n}.
+	 *
+	 * @param a    input array containing the real-valued waveform
+	 * @param from initial index of the waveform in {@code a}, inclusive
+	 * @param re   output array for the real part of bins {@code 0..n/2}
+	 * @param im   output array for the imaginary part of bins
+	 *             {@code 0..n/2}
+	 */
+	public void realForward(double[] a, int from, double[] re, double[] im)
+	{
+		if (n % 2 != 0) {
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				double[] xr = scratch.doubles(n);
+				double[] xi = scratch.doubles(n);
+				System.arraycopy(a, from, xr, 0, n);
+				Arrays.fill(xi, 0, n, 0);
+				transform(xr, xi, 0, true);
+				System.arraycopy(xr, 0, re, 0, n / 2 + 1);
+				System.arraycopy(xi, 0, im, 0, n / 2 + 1);
+			} finally {
+				scratch.release(mark);
+			}
+			return;
+		}
+
+		final int h = n / 2;
+		final double[] cos = cosTable;
+		final double[] sin = sinTable;
+
+		// pack even and odd samples into real and imaginary parts of a half-length sequence
+		for (int k = 0; k < h; k++) {
+			re[k] = a[from + 2 * k];
+			im[k] = a[from + 2 * k + 1];
+		}
+
+		getHalfPlan().transform(re, im, 0, true);
+
+		// separate the transforms of the even and odd samples and combine them
+		for (int k = 1, m = h - 1; k <= m; k++, m--) {
+			double zkr = re[k], zki = im[k];
+			double zmr = re[m], zmi = im[m];
+
+			double er = 0.5 * (zkr + zmr);
+			double ei = 0.5 * (zki - zmi);
+			double or = 0.5 * (zki + zmi);
+			double oi = -0.5 * (zkr - zmr);
+			re[k] = er + cos[k] * or + sin[k] * oi;
+			im[k] = ei + cos[k] * oi - sin[k] * or;
+
+			er = 0.5 * (zmr + zkr);
+			ei = 0.5 * (zmi - zki);
+			or = 0.5 * (zmi + zki);
+			oi = -0.5 * (zmr - zkr);
+			re[m] = er + cos[m] * or + sin[m] * oi;
+			im[m] = ei + cos[m] * oi - sin[m] * or;
+		}
+
+		double z0r = re[0];
+		double z0i = im[0];
+		re[0] = z0r + z0i;
+		im[0] = 0.0;
+		re[h] = z0r - z0i;
+		im[h] = 0.0;
+	}
+
+	/**
+	 * Computes the real-valued inverse FFT of length {@link #length()} from
+	 * bins {@code 0} through {@code n/2} of a conjugate-symmetric spectrum, as
+	 * produced by {@link #realForward(double[], int, double[], double[])
+	 * realForward}, and writes the result to {@code a} beginning at index
+	 * {@code from}. The imaginary parts of bins {@code 0} and {@code n/2} are
+	 * ignored (for even {@code n}). The contents of {@code re} and {@code im}
+	 * may be used as workspace and overwritten. {@code a} may be the same array as
+	 * {@code re} when {@code from==0}.
+	 *
+	 * @param re   real part of bins {@code 0..n/2}; overwritten
+	 * @param im   imaginary part of bins {@code 0..n/2}; overwritten
+	 * @param a    output array for the real-valued waveform
+	 * @param from initial index of the waveform in {@code a}, inclusive
+	 */
+	public void realInverse(double[] re, double[] im, double[] a, int from)
+	{
+		if (n % 2 != 0) {
+			// rebuild the full conjugate-symmetric spectrum
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				double[] xr = scratch.doubles(n);
+				double[] xi = scratch.doubles(n);
+				xr[0] = re[0];
+				xi[0] = 0;
+				for (int k = 1; k <= n / 2; k++) {
+					xr[k] = xr[n - k] = re[k];
+					xi[k] = im[k];
+					xi[n - k] = -im[k];
+				}
+				transform(xr, xi, 0, false);
+				System.arraycopy(xr, 0, a, from, n);
+			} finally {
+				scratch.release(mark);
+			}
+			return;
+		}
+
+		final int h = n / 2;
+		final double[] cos = cosTable;
+		final double[] sin = sinTable;
+
+		// recombine into the spectrum of the packed half-length sequence
+		double x0r = re[0];
+		double xhr = re[h];
+		re[0] = 0.5 * (x0r + xhr);
+		im[0] = 0.5 * (x0r - xhr);
+
+		for (int k = 1, m = h - 1; k <= m; k++, m--) {
+			double xkr = re[k], xki = im[k];
+			double xmr = re[m], xmi = im[m];
+
+			double er = 0.5 * (xkr + xmr);
+			double ei = 0.5 * (xki - xmi);
+			double dr = 0.5 * (xkr - xmr);
+			double di = 0.5 * (xki + xmi);
+			double or = dr * cos[k] - di * sin[k];
+			double oi = dr * sin[k] + di * cos[k];
+			re[k] = er - oi;
+			im[k] = ei + or;
+
+			er = 0.5 * (xmr + xkr);
+			ei = 0.5 * (xmi - xki);
+			dr = 0.5 * (xmr - xkr);
+			di = 0.5 * (xmi + xki);
+			or = dr * cos[m] - di * sin[m];
+			oi = dr * sin[m] + di * cos[m];
+			re[m] = er - oi;
+			im[m] = ei + or;
+		}
+
+		getHalfPlan().transform(re, im, 0, false);
+
+		// unpack in reverse order so that a may share storage with re
+		for (int k = h - 1; k >= 0; k--) {
+			double zi = im[k];
+			a[from + 2 * k] = re[k];
+			a[from + 2 * k + 1] = zi;
+		}
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #realForward(double[], int, double[], double[]) realForward}.
+	 *
+	 * @param a    input array containing the real-valued waveform
+	 * @param from initial index of the waveform in {@code a}, inclusive
+	 * @param re   output array for the real part of bins {@code 0..n/2}
+	 * @param im   output array for the imaginary part of bins
+	 *             {@code 0..n/2}
+	 */
+	public void realForward(float[] a, int from, float[] re, float[] im)
+	{
+		if (n % 2 != 0) {
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				float[] xr = scratch.floats(n);
+				float[] xi = scratch.floats(n);
+				System.arraycopy(a, from, xr, 0, n);
+				Arrays.fill(xi, 0, n, 0);
+				transform(xr, xi, 0, true);
+				System.arraycopy(xr, 0, re, 0, n / 2 + 1);
+				System.arraycopy(xi, 0, im, 0, n / 2 + 1);
+			} finally {
+				scratch.release(mark);
+			}
+			return;
+		}
+
+		final int h = n / 2;
+		// the twiddle factors are rounded here, as only radix-2 plans keep single-precision tables
+		final double[] cos = cosTable;
+		final double[] sin = sinTable;
+
+		// pack even and odd samples into real and imaginary parts of a half-length sequence
+		for (int k = 0; k < h; k++) {
+			re[k] = a[from + 2 * k];
+			im[k] = a[from + 2 * k + 1];
+		}
+
+		getHalfPlan().transform(re, im, 0, true);
+
+		// separate the transforms of the even and odd samples and combine them
+		for (int k = 1, m = h - 1; k <= m; k++, m--) {
+			float zkr = re[k], zki = im[k];
+			float zmr = re[m], zmi = im[m];
+			float ck = (float) cos[k], sk = (float) sin[k];
+			float cm = (float) cos[m], sm = (float) sin[m];
+
+			float er = 0.5f * (zkr + zmr);
+			float ei = 0.5f * (zki - zmi);
+			float or = 0.5f * (zki + zmi);
+			float oi = -0.5f * (zkr - zmr);
+			re[k] = er + ck * or + sk * oi;
+			im[k] = ei + ck * oi - sk * or;
+
+			er = 0.5f * (zmr + zkr);
+			ei = 0.5f * (zmi - zki);
+			or = 0.5f * (zmi + zki);
+			oi = -0.5f * (zmr - zkr);
+			re[m] = er + cm * or + sm * oi;
+			im[m] = ei + cm * oi - sm * or;
+		}
+
+		float z0r = re[0];
+		float z0i = im[0];
+		re[0] = z0r + z0i;
+		im[0] = 0.0f;
+		re[h] = z0r - z0i;
+		im[h] = 0.0f;
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #realInverse(double[], double[], double[], int) realInverse}.
+	 *
+	 * @param re   real part of bins {@code 0..n/2}; overwritten
+	 * @param im   imaginary part of bins {@code 0..n/2}; overwritten
+	 * @param a    output array for the real-valued waveform
+	 * @param from initial index of the waveform in {@code a}, inclusive
+	 */
+	public void realInverse(float[] re, float[] im, float[] a, int from)
+	{
+		if (n % 2 != 0) {
+			// rebuild the full conjugate-symmetric spectrum
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				float[] xr = scratch.floats(n);
+				float[] xi = scratch.floats(n);
+				xr[0] = re[0];
+				xi[0] = 0;
+				for (int k = 1; k <= n / 2; k++) {
+					xr[k] = xr[n - k] = re[k];
+					xi[k] = im[k];
+					xi[n - k] = -im[k];
+				}
+				transform(xr, xi, 0, false);
+				System.arraycopy(xr, 0, a, from, n);
+			} finally {
+				scratch.release(mark);
+			}
+			return;
+		}
+
+		final int h = n / 2;
+		// the twiddle factors are rounded here, as only radix-2 plans keep single-precision tables
+		final double[] cos = cosTable;
+		final double[] sin = sinTable;
+
+		// recombine into the spectrum of the packed half-length sequence
+		float x0r = re[0];
+		float xhr = re[h];
+		re[0] = 0.5f * (x0r + xhr);
+		im[0] = 0.5f * (x0r - xhr);
+
+		for (int k = 1, m = h - 1; k <= m; k++, m--) {
+			float xkr = re[k], xki = im[k];
+			float xmr = re[m], xmi = im[m];
+			float ck = (float) cos[k], sk = (float) sin[k];
+			float cm = (float) cos[m], sm = (float) sin[m];
+
+			float er = 0.5f * (xkr + xmr);
+			float ei = 0.5f * (xki - xmi);
+			float dr = 0.5f * (xkr - xmr);
+			float di = 0.5f * (xki + xmi);
+			float or = dr * ck - di * sk;
+			float oi = dr * sk + di * ck;
+			re[k] = er - oi;
+			im[k] = ei + or;
+
+			er = 0.5f * (xmr + xkr);
+			ei = 0.5f * (xmi - xki);
+			dr = 0.5f * (xmr - xkr);
+			di = 0.5f * (xmi + xki);
+			or = dr * cm - di * sm;
+			oi = dr * sm + di * cm;
+			re[m] = er - oi;
+			im[m] = ei + or;
+		}
+
+		getHalfPlan().transform(re, im, 0, false);
+
+		// unpack in reverse order so that a may share storage with re
+		for (int k = h - 1; k >= 0; k--) {
+			float zi = im[k];
+			a[from + 2 * k] = re[k];
+			a[from + 2 * k + 1] = zi;
+		}
+	}
+
+	private FftPlan getHalfPlan()
+	{
+		FftPlan plan = halfPlan;
+		if (plan == null) {
+			plan = getInstance(n / 2);
+			halfPlan = plan;
+		}
+		return plan;
+	}
+
+}
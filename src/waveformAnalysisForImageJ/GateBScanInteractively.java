@@ -2,6 +2,7 @@ package waveformAnalysisForImageJ;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.WindowManager;
 import ij.gui.DialogListener;
 import ij.gui.GenericDialog;
@@ -26,6 +27,8 @@ import java.util.Arrays;
  * horizontal line of the input image is assumed to represent an individual
  * record. Gate positions are set by searching for the first peak (or nadir)
  * above (or below) a desired threshold level, or the first threshold crossing.
+ * The threshold may be given directly, or as a percentile of the image pixel
+ * values, which is estimated with a {@link QuantileSketch}.
  * The output can be either a new image comprised of the gated waveform
  * segments, the original waveforms set to zero outside the gates, a single ROI
  * corresponding to the gated portion of each individual record, a single
@@ -48,6 +51,11 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 	private static int offsetIndex = 0;
 	private static int gateLengthPoints = 10;
 	private static float threshold = 0.0f;
+	private static boolean isThresholdPercentile = false;
+	private QuantileSketch pixelSketch = null;
+	private GateIndex gateIndex;	// peak index of the B-scan, built on the first preview and reused by later ones
+	private GateDetector detector;
+	private short[] detectedPositions;
 	private static int smoothingRadius = 1;
 	private String[] suitableImageTitles;
 	private static final int POS_THRESHOLD = 0, NEG_THRESHOLD = 1, POS_PEAK = 2, NEG_PEAK = 3;
@@ -96,6 +104,9 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		recordLength = imp.getWidth();
 		numberOfRecords = imp.getHeight();
 		gatePositions = new int[numberOfRecords];
+		// the pixels cannot be changed while the dialog is open, so the index needs no invalidation
+		gateIndex = GateIndex.create(new ImagePlus(imp.getTitle(), processor));
+		detectedPositions = new short[numberOfRecords];
 		suitableImageTitles = getMatchingImages();		
 				
 		return flags;
@@ -108,6 +119,7 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		gd.addNumericField("Start search at index", autoStartSearchIndex, 0, 8, "");
 		gd.addNumericField("Offset from detected border", offsetIndex, 0, 8, "points");
 		gd.addNumericField("Threshold", threshold, 3, 8, "");
+		gd.addCheckbox("Threshold is percentile of image (0-100)", isThresholdPercentile);
 		gd.addNumericField("Gate length", gateLengthPoints, 0, 8, "points");
 		gd.addChoice("Detection method:", detectionTypes, detectionTypes[detectionChoice]);
 		gd.addNumericField("Smoothing radius", smoothingRadius, 0, 8, "points");
@@ -137,6 +149,7 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		autoStartSearchIndex = (int)gd.getNextNumber();
 		offsetIndex = (int)gd.getNextNumber();
 		threshold = (float)gd.getNextNumber();
+		isThresholdPercentile = gd.getNextBoolean();
 		gateLengthPoints = (int)gd.getNextNumber();		
 		detectionChoice = gd.getNextChoiceIndex();
 		smoothingRadius = (int)gd.getNextNumber();
@@ -151,9 +164,11 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		windowParameterTextField.setEnabled(isWindowFunctionApplied && WaveformUtils.WindowType.values()[windowChoice].usesParameter());
 		
 		return (!gd.invalidNumber() 
+				&& recordLength <= Short.MAX_VALUE
 				&& (autoStartSearchIndex >= 0 && autoStartSearchIndex < recordLength-1)
 				&& (gateLengthPoints > 0 && gateLengthPoints <= recordLength )
-				&& (smoothingRadius >= 0 && smoothingRadius <= numberOfRecords));
+				&& (smoothingRadius >= 0 && smoothingRadius <= numberOfRecords)
+				&& (!isThresholdPercentile || (threshold >= 0.0f && threshold <= 100.0f)));
 
 	}
 		
@@ -177,14 +192,14 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 			if (signalOutputChoice == GATED_SEGMENTS) {
 				ImagePlus gatedImage = IJ.createImage(altImage.getTitle()+" gated segments", "32-bit", gateLengthPoints, numberOfRecords, 1);
 				ImageProcessor gatedImageProcessor = gatedImage.getProcessor();
-				float[] gatedPixels = gateSegments(altImage, gatePositions, gateLengthPoints, weights);
+				float[] gatedPixels = gateWaveforms(altImage, gatePositions, gateLengthPoints, weights, false);
 				gatedImageProcessor.setPixels(gatedPixels);
 				gatedImage.show();
 				IJ.resetMinAndMax();
 			} else if (signalOutputChoice == GATED_WAVEFORMS) {
 				ImagePlus gatedImage = IJ.createImage(altImage.getTitle() + " gated waveforms", "32-bit", recordLength, numberOfRecords, 1);
 				ImageProcessor gatedImageProcessor = gatedImage.getProcessor();
-				float[] gatedPixels = gateWaveforms(altImage, gatePositions, gateLengthPoints, weights);
+				float[] gatedPixels = gateWaveforms(altImage, gatePositions, gateLengthPoints, weights, true);
 				gatedImageProcessor.setPixels(gatedPixels);
 				gatedImage.show();
 				IJ.resetMinAndMax();			
@@ -206,7 +221,11 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 	public void run(ImageProcessor ip)
 	{		
 		// All this does is display a ROI showing gate/border values; the actual output is performed in the "final" processing step
-		gatePositions = medianFilter1D(computeGateStartPositions(pixels, recordLength, numberOfRecords, autoStartSearchIndex, offsetIndex, threshold), smoothingRadius);
+		int[] gateStartPositions = computeGateStartPositions(numberOfRecords, autoStartSearchIndex, offsetIndex, thresholdLevel());
+		if (gateStartPositions == null) {
+			return;
+		}
+		gatePositions = medianFilter1D(gateStartPositions, smoothingRadius);
 		if (roiOutputChoice == BORDER_LINE_ROI) {	
 			drawBorder(imp, gatePositions);
 		}
@@ -215,61 +234,27 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		}
 	}
 
-	// Extract gated waveform segments and apply window function if necessary
-	private float[] gateSegments(ImagePlus imp, int[] gateStartPositions, int gateLength, float[] weights)
+	// Returns the threshold, converting a percentile to the corresponding pixel value; the image is sketched once and reused while previewing
+	private float thresholdLevel()
 	{
-		float[] pix = (float[]) (imp.getProcessor()).getPixels();
-		int h = imp.getHeight();
-		int w = imp.getWidth();
-		float[] gatedArray = new float[h * gateLength];
-
-		for (int i = 0; i < h; i++) {
-			int offset1 = i*w;
-			int offset2 = i*gateLength;
-			if (gateStartPositions[i] < 0) {	// gate position set to -1, so no boundary detected; just set start of gate to 0
-				for (int j=0; j<gateLength; j++) {
-					gatedArray[offset2+j] = weights[j]*pix[offset1+j];
-				}
-			} else if (gateStartPositions[i] + gateLength > w) { // end of gate set past end of waveform, so just pad with zeroes
-				for (int j=0; j<w-gateStartPositions[i]; j++) {
-					gatedArray[offset2+j] = weights[j]*pix[offset1+gateStartPositions[i]+j];
-				}
-			} else {	// gate is within waveform limits
-				for (int j=0; j<gateLength; j++) {
-					gatedArray[offset2+j] = weights[j]*pix[offset1+gateStartPositions[i]+j];
-				}
-			}
+		if (!isThresholdPercentile) {
+			return threshold;
 		}
-		
-		return gatedArray;
+		if (pixelSketch == null) {
+			pixelSketch = new QuantileSketch();
+			pixelSketch.add(pixels, 0, pixels.length);
+		}
+		return (float)pixelSketch.quantile(threshold/100.0);
 	}
 
-	// Gate waveforms and apply window function if necessary
-	private float[] gateWaveforms(ImagePlus imp, int[] gateStartPositions, int gateLength, float[] weights)
+	// Extract gated waveform segments (or full-length gated waveforms) and apply window function if necessary
+	private float[] gateWaveforms(ImagePlus imp, int[] gateStartPositions, int gateLength, float[] weights, boolean isFullLength)
 	{
-		float[] pix = (float[])(imp.getProcessor()).getPixels();
-		int h = imp.getHeight();
-		int w = imp.getWidth();
-		float[] gatedArray = new float[h * w];
-		
-		for (int i = 0; i < h; i++) {
-			int offset = i*w;
-			if (gateStartPositions[i] < 0) { // gate position set to -1, so no boundary detected; just set start of gate to 0
-				for (int j=0; j<gateLength; j++) {
-					gatedArray[offset+j] = weights[j]*pix[offset+j];
-				}
-			} else if (gateStartPositions[i] + gateLength > w) { // end of gate set past end of waveform, so truncate
-				for (int j=0; j<w-gateStartPositions[i]; j++) {
-					gatedArray[offset+gateStartPositions[i]+j] = weights[j]*pix[offset+gateStartPositions[i]+j];
-				}
-			} else { // gate is within waveform limits
-				for (int j=0; j<gateLength; j++) {
-					gatedArray[offset+gateStartPositions[i]+j] = weights[j]*pix[offset+gateStartPositions[i]+j];
-				}
-			}
-		}
-		
-		return gatedArray;
+		ImageStack stack = new ImageStack(imp.getWidth(), imp.getHeight());
+		stack.addSlice(null, imp.getProcessor().getPixels());
+		GatedStack gatedStack = GatedStack.create(stack, gateStartPositions, gateLength, isFullLength, false, weights);
+		gatedStack.setCacheSize(0);
+		return (float[])gatedStack.getProcessor(1).getPixels();
 	}
 	
 	// Draw border line ROI on image
@@ -309,32 +294,55 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		}
 	}
 	
-	// Computes gate start positions
-	private int[] computeGateStartPositions(float[] pixels, int recordLength, int numberOfRecords, int searchStartPoint, int offsetPoint, float threshold)
+	// Returns the gate detection method for a detection choice, or -1 if there is none
+	private static int detectionMethod(int detectionChoice)
+	{
+		switch (detectionChoice) {
+			case POS_THRESHOLD:
+				return GateDetector.RISING_CROSSING;
+			case NEG_THRESHOLD:
+				return GateDetector.FALLING_CROSSING;
+			case POS_PEAK:
+				return GateDetector.PEAK;
+			case NEG_PEAK:
+				return GateDetector.NADIR;
+			default:
+				return -1;
+		}
+	}
+
+	// Returns the gate detector for the search start point, gate length and detection method, made again only when one of them changes
+	private GateDetector gateDetector(int searchStartPoint)
 	{
-		float[] tempArray = new float[recordLength];
+		int method = detectionMethod(detectionChoice);
+		if (detector != null) {
+			GateDetector.Parameters parameters = detector.getParameters();
+			if (parameters.getSearchStartPoint() == searchStartPoint && parameters.getGateLength() == gateLengthPoints && parameters.getDetectionMethod() == method) {
+				return detector;
+			}
+		}
+		detector = new GateDetector(new GateDetector.Parameters()
+			.setSearchStartPoint(searchStartPoint)
+			.setGateLength(gateLengthPoints)
+			.setDetectionMethod(method));
+		return detector;
+	}
+
+	// Computes gate start positions with a gate detector, which searches from one point after the search start to three points before the end of each record;
+	// returns null if the detector rejects the settings
+	private int[] computeGateStartPositions(int numberOfRecords, int searchStartPoint, int offsetPoint, float threshold)
+	{
+		short[] positions = detectedPositions;
+		if (!gateDetector(searchStartPoint).detectSlices(gateIndex, 1, 1, threshold, positions)) {
+			IJ.error("Gates cannot be detected with these settings");
+			return null;
+		}
 		int[] gateStartPositions = new int[numberOfRecords];
 		ArrayList<Point> validGateStartPositions = new ArrayList<Point>();
 		
 		for (int i=0; i<numberOfRecords; i++) {
-			System.arraycopy(pixels, (i*recordLength)+searchStartPoint, tempArray, 0, recordLength-searchStartPoint);
-			int gateStartIndex;
-			switch (detectionChoice) {
-				case POS_THRESHOLD:
-					gateStartIndex = thresholdDetectPositive(tempArray, threshold);
-					break;
-				case NEG_THRESHOLD:
-					gateStartIndex = thresholdDetectNegative(tempArray, threshold);
-					break;
-				case POS_PEAK:
-					gateStartIndex = peakDetectMaximum(tempArray, threshold);
-					break;
-				case NEG_PEAK:
-					gateStartIndex = peakDetectMinimum(tempArray, threshold);
-					break;
-				default:
-					gateStartIndex = -1;
-			}
+			int position = positions[i];
+			int gateStartIndex = (position != -1) ? position-searchStartPoint : -1;
 			if (gateStartIndex != -1) {
 				validGateStartPositions.add(new Point(i, gateStartIndex));
 				gateStartPositions[i] = gateStartIndex + offsetPoint + searchStartPoint;
@@ -391,105 +399,9 @@ public class GateBScanInteractively implements ExtendedPlugInFilter, DialogListe
 		return gateStartPositions;
 	}
 
-	// Returns the index of the first maximum peak value found which exceeds the specified threshold.  Returns -1 if no peaks above threshold are detected.
-	private int peakDetectMaximum(float[] a, float threshold)
-	{
-		int i = 1;
-		
-		for (i=1; i<a.length-1; i++) {
-			if (a[i] > threshold && a[i-1] < a[i] && a[i+1] < a[i]) {
-				break;
-			}
-		}
-		
-		return (i>=a.length-2) ? -1 : i;
-	}
-
-	// Returns the index of the first minimum peak value found which is less than the specified threshold.  Returns -1 if no peaks above threshold are detected.
-	private int peakDetectMinimum(float[] a, float threshold)
-	{
-		int i;
-		
-		for (i=1; i<a.length-1; i++) {
-			if (a[i] < threshold && a[i-1] > a[i] && a[i+1] > a[i]) {
-				break;
-			}
-		}
-		
-		return (i>=a.length-2) ? -1 : i;
-	}
-
-	private int thresholdDetectPositive(float[] a, float threshold)
-	{
-		int i;
-		
-		for (i=1; i<a.length-1; i++) {
-			if (a[i-1]<threshold && a[i+1]>=threshold) {
-				break;
-			}
-		}
-		
-		return (i>=a.length-2) ? -1 : i;
-	}
-
-	private int thresholdDetectNegative(float[] a, float threshold)
-	{
-		int i;
-		
-		for (i=1; i<a.length-1; i++) {
-			if (a[i-1]>threshold && a[i+1]<=threshold) {
-				break;
-			}
-		}
-		
-		return (i>=a.length-2) ? -1 : i;
-	}
-
 	private int[] medianFilter1D(int[] a, int radius)
 	{
-		int[] filteredArray = new int[a.length];
-		
-		if (radius > 0) {
-			for (int i=0; i<a.length; i++) {
-				filteredArray[i] = getMedianValueAtIndex(a, i, radius, -1);
-			}
-		} else {
-			System.arraycopy(a, 0, filteredArray, 0, a.length);
-		}
-		
-		return filteredArray;
-	}
-
-	private int getMedianValueAtIndex(int[] a, int index, int radius, int valueToIgnore)
-	{
-		int minIndex = Math.max(0, index-radius);
-		int maxIndex = Math.min(a.length-1, index+radius);
-		int span = (maxIndex-minIndex)+1;
-		int[] temp = new int[span];
-		ArrayList<Integer> v = new ArrayList<Integer>();
-
-		System.arraycopy(a, minIndex, temp, 0, span);
-		Arrays.sort(temp);
-
-		for (int i=0; i<span; i++) {
-			if (temp[i] != valueToIgnore) {
-				v.add(temp[i]);
-			}
-		}
-
-		int size = v.size();
-		if (size == 1) {
-			return(v.get(0));
-		}
-		else if (size%2 == 1) {
-			return(v.get((size-1)/2));
-		}
-		else if (size != 0) {
-			return (int)( (v.get(size/2)+v.get((size/2)-1))/2 );
-		}
-		else {
-			return valueToIgnore;
-		}	
+		return SlidingMedian.medianFilter(a, radius, -1);
 	}
 
 	// Returns list of matching images to blend (i.e. images with same dimensions and stacksizes)
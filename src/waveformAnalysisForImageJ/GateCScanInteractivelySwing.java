@@ -10,27 +10,37 @@ import ij.gui.ImageWindow;
 import ij.gui.Line;
 import ij.gui.Overlay;
 import ij.gui.PolygonRoi;
-import ij.gui.Roi;
 import ij.plugin.PlugIn;
 import ij.plugin.frame.RoiManager;
 import ij.process.ImageProcessor;
-import ij.plugin.filter.RankFilters;
-import ij.plugin.filter.GaussianBlur;
+import ij.process.ShortProcessor;
 import java.awt.Panel;
-import java.awt.Polygon;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
 /**
+ * Interactive creation of gates for a C-scan (a stack of B-scans). Gates are
+ * computed, smoothed and applied on a background thread, so that the user
+ * interface remains responsive; the displayed slice is gated first, so that
+ * its ROI appears right away, and progress is shown in the ImageJ status bar.
+ * Pressing Escape in the dialog cancels the computation, as does creating
+ * gates again before the previous computation has finished.
  *
  * @author Jon N. Marsh
  * @version 2014-09-25
@@ -41,14 +51,15 @@ public class GateCScanInteractivelySwing implements PlugIn
 	static int offsetPoint = 0;
 	static int gateLength = 10;
 	static float threshold = 0.0f;
+	static boolean isThresholdPercentile = false;
 	static boolean searchBackwards = false;
-	static final int MEDIAN = 0;
-	static final int GAUSSIAN = 1;
-	static final int MEAN = 2;
-	static final String[] filters = {"Median", "Gaussian", "Mean"};
+	static final int MEDIAN = GateDetector.MEDIAN;
+	static final int GAUSSIAN = GateDetector.GAUSSIAN;
+	static final int MEAN = GateDetector.MEAN;
+	static final String[] filters = GateDetector.FILTERS;
 	static int filterSelection = MEDIAN;
-	static final int PEAK_DETECT = 0;
-	static final int THRESHOLD_DETECT = 1;
+	static final int PEAK_DETECT = GateDetector.PEAK;
+	static final int THRESHOLD_DETECT = GateDetector.THRESHOLD;
 	static final String[] detectionMethods = {"Peak", "Threshold"};
 	static int detectionMethodSelection = PEAK_DETECT;
 	static double smoothingRadius = 1.0;
@@ -61,10 +72,14 @@ public class GateCScanInteractivelySwing implements PlugIn
 
 	ImagePlus inputImage, gateImage;
 	ImageStack stack;
+	GateIndex gateIndex;	// peak indices of the input image, kept for the session so that gates are created again without scanning it
 	ImageCanvas gateCanvas;
-	boolean gatesExist = false;
+	volatile boolean gatesExist = false;
+	volatile short[] currentGates;	// latest gates, set on the gate thread and shown in gateProcessor on the event dispatch thread
+	ExecutorService gateExecutor;
+	int submittedTasks = 0;
+	volatile int lastCancelledTask = 0;	// tasks numbered up to this value are cancelled
 	int recordLength, recordsPerFrame, numberOfFrames, currentSlice, inputImageID;
-	double[] globalMinAndMax;
 	String title;
 	String[] suitableImages;
 	int[] suitableImageIDs;
@@ -81,6 +96,7 @@ public class GateCScanInteractivelySwing implements PlugIn
 				instance = this;
 				inputImageID = inputImage.getID();
 				stack = inputImage.getStack();
+				gateIndex = GateIndex.create(inputImage);
 				title = inputImage.getTitle();
 				recordLength = inputImage.getWidth();
 				if (recordLength >= Short.MAX_VALUE) {
@@ -89,12 +105,20 @@ public class GateCScanInteractivelySwing implements PlugIn
 				recordsPerFrame = inputImage.getHeight();
 				numberOfFrames = inputImage.getImageStackSize();
 				currentSlice = inputImage.getSlice();
-				globalMinAndMax = WaveformUtils.getGlobalMinAndMax(inputImage);
 				gateImage = IJ.createImage(pluginTitle + title, "16-bit", recordsPerFrame, numberOfFrames, 1);
 				gateProcessor = gateImage.getProcessor();
 				gateCanvas = new ImageCanvas(gateImage);
 				suitableImageIDs = getSuitableImageIDs(inputImage, gateImage);
 
+				gateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+				{
+					public Thread newThread(Runnable r)
+					{
+						Thread thread = new Thread(r, pluginTitle + title);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
 				CreateGatesForCScanDialog createGatesForCScanDialog = new CreateGatesForCScanDialog(gateImage, gateCanvas);
 			} else {
 				IJ.noImage();
@@ -140,7 +164,8 @@ public class GateCScanInteractivelySwing implements PlugIn
 			
 			panel.searchStartPointTextField.setText("" + autoStartSearchPoint);
 			panel.offsetTextField.setText("" + offsetPoint);
-			panel.thresholdTextField.setText(IJ.d2s(threshold, 3));
+			panel.thresholdTextField.setText(IJ.d2s(threshold, 3) + (isThresholdPercentile ? "%" : ""));
+			panel.thresholdTextField.setToolTipText("Threshold value, or percentile of stack values if followed by %");
 			panel.gateLengthTextField.setText("" + gateLength);
 			panel.searchBackwardsCheckbox.setSelected(searchBackwards);
 			panel.createGatesButton.addActionListener(this);
@@ -164,6 +189,15 @@ public class GateCScanInteractivelySwing implements PlugIn
 			panel.cancelButton.addActionListener(this);
 			panel.okButton.addActionListener(this);
 
+			// Escape cancels the computations of this dialog only, rather than those of any plug-in through ImageJ's Escape flag
+			panel.registerKeyboardAction(new ActionListener()
+			{
+				public void actionPerformed(ActionEvent e)
+				{
+					lastCancelledTask = submittedTasks;
+				}
+			}, KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
 			mainPanel = new Panel();
 			BoxLayout mainLayout = new BoxLayout(mainPanel, BoxLayout.Y_AXIS);
 			mainPanel.setLayout(mainLayout);
@@ -179,106 +213,53 @@ public class GateCScanInteractivelySwing implements PlugIn
 			JButton source = (JButton)e.getSource();
 			
 			if (source == panel.cancelButton) {
-				ImagePlus.removeImageListener(this);
-				this.close();
-				instance = null;
+				closeDialog();
+				return;
 			}
 			
 			try {
 				autoStartSearchPoint = Integer.parseInt(panel.searchStartPointTextField.getText());
 				offsetPoint = Integer.parseInt(panel.offsetTextField.getText());
-				threshold = Float.parseFloat(panel.thresholdTextField.getText());
+				String thresholdText = panel.thresholdTextField.getText().trim();
+				isThresholdPercentile = thresholdText.endsWith("%");
+				threshold = Float.parseFloat(isThresholdPercentile ? thresholdText.substring(0, thresholdText.length() - 1) : thresholdText);
 				gateLength = Integer.parseInt(panel.gateLengthTextField.getText());
 				smoothingRadius = Double.parseDouble(panel.smoothingRadiusTextField.getText());
 				searchBackwards = panel.searchBackwardsCheckbox.isSelected();
 				
 				if (source == panel.createGatesButton) {
 					detectionMethodSelection = panel.detectionMethodComboBox.getSelectedIndex();
-					short[] gatePositions = computeGateStartPositionsForStack(stack, autoStartSearchPoint, offsetPoint, threshold, detectionMethodSelection);
-					gateProcessor.setPixels(gatePositions);
-					gateImage.setOverlay(new Overlay(new Line(0, currentSlice - 1, recordsPerFrame, currentSlice - 1)));
-					gatesExist = true;
-					IJ.resetMinAndMax();
-					short[] gatePositionsForDisplayedSlice = Arrays.copyOfRange(gatePositions, (currentSlice - 1) * recordsPerFrame, currentSlice * recordsPerFrame);
-					drawSingleROI(WindowManager.getImage(inputImageID), gatePositionsForDisplayedSlice, gateLength, searchBackwards);
+					// supersedes any computation in progress
+					lastCancelledTask = submittedTasks;
+					submit(new CreateGatesTask(new GateDetector(new GateDetector.Parameters()
+						.setSearchStartPoint(autoStartSearchPoint)
+						.setOffsetPoint(offsetPoint)
+						.setThreshold(threshold, isThresholdPercentile)
+						.setGateLength(gateLength)
+						.setDetectionMethod(detectionMethodSelection)
+						.setBackward(searchBackwards)), currentSlice));
 				}
 				
 				if (source == panel.smoothGatesButton) {
-					if (gatesExist) {
-						filterSelection = panel.filterComboBox.getSelectedIndex();
-						switch (filterSelection) {
-							case MEDIAN: {
-								RankFilters rf = new RankFilters();
-								rf.rank(gateProcessor, smoothingRadius, RankFilters.MEDIAN);
-								break;
-							}
-							case GAUSSIAN: {
-								GaussianBlur gb = new GaussianBlur();
-								gb.blurGaussian(gateProcessor, smoothingRadius, smoothingRadius, 0.01);
-								break;
-							}
-							case MEAN: {
-								RankFilters rf = new RankFilters();
-								rf.rank(gateProcessor, smoothingRadius, RankFilters.MEAN);
-								break;
-							}
-							default:
-						}
-						gateImage.updateAndDraw();
-						IJ.resetMinAndMax();
-						short[] gatePositions = (short[]) gateProcessor.getPixels();
-						short[] gatePositionsForDisplayedSlice = Arrays.copyOfRange(gatePositions, (currentSlice - 1) * recordsPerFrame, currentSlice * recordsPerFrame);
-						drawSingleROI(WindowManager.getImage(inputImageID), gatePositionsForDisplayedSlice, gateLength, searchBackwards);
-					}
+					filterSelection = panel.filterComboBox.getSelectedIndex();
+					submit(new SmoothGatesTask(filterSelection, smoothingRadius));
 				}
 				
 				if (source == panel.okButton) {
-					if (gatesExist) {
-						/*
-						 * Assign user values to variables used to indicate
-						 * checkbox selections -- this is done only to ensure the
-						 * static variables are reinitialized to previous values
-						 * next time plugin is called
-						 */
-						searchBackwards = panel.searchBackwardsCheckbox.isSelected();
-						outputGateROIs = panel.outputGateROIsCheckbox.isSelected();
-						outputGatePositions = panel.outputGatePositionsCheckbox.isSelected();
-						outputGatedSegments = panel.outputGatedRegionsCheckbox.isSelected();
-						outputGatedWaveforms = panel.outputGatedWaveformsCheckbox.isSelected();
-						
-						int selectedImageID = suitableImageIDs[panel.gateApplicationComboBox.getSelectedIndex()]; // apply gating to the desired image (not necessarily the image the gates were computed with)
-						short[] gatePositions = (short[]) gateProcessor.getPixels();
-						
-						if (outputGateROIs == true) {
-							RoiManager rm = RoiManager.getInstance();
-							if (rm == null) {
-								rm = new RoiManager();
-							}
-							for (int i = 0; i < WindowManager.getImage(inputImageID).getStackSize(); i++) {
-								WindowManager.getImage(inputImageID).setSlice(i + 1);
-								short[] gatePositionsForThisSlice = Arrays.copyOfRange(gatePositions, i * recordsPerFrame, (i + 1) * recordsPerFrame);
-								PolygonRoi roi = createSingleROI(gatePositionsForThisSlice, gateLength, searchBackwards);
-								rm.add(WindowManager.getImage(inputImageID), roi, -1);
-							}
-						}
-						if (outputGatedSegments == true) {
-							ImagePlus gatedImage = createGatedImage(WindowManager.getImage(selectedImageID), gatePositions, gateLength);
-							gatedImage.show();
-							IJ.resetMinAndMax();
-						}
-						if (outputGatePositions == true) {
-							ImagePlus borderImage = new ImagePlus(title + " gate positions", gateProcessor.duplicate());
-							borderImage.show();
-						}
-						if (outputGatedWaveforms == true) {
-							ImagePlus gatedWaveformImage = createdGatedWaveformImage(WindowManager.getImage(selectedImageID), gatePositions, gateLength);
-							gatedWaveformImage.show();
-							IJ.resetMinAndMax();
-						}
-					}
-					ImagePlus.removeImageListener(this);
-					this.close();
-					instance = null;
+					/*
+					 * Assign user values to variables used to indicate
+					 * checkbox selections -- this is done only to ensure the
+					 * static variables are reinitialized to previous values
+					 * next time plugin is called
+					 */
+					searchBackwards = panel.searchBackwardsCheckbox.isSelected();
+					outputGateROIs = panel.outputGateROIsCheckbox.isSelected();
+					outputGatePositions = panel.outputGatePositionsCheckbox.isSelected();
+					outputGatedSegments = panel.outputGatedRegionsCheckbox.isSelected();
+					outputGatedWaveforms = panel.outputGatedWaveformsCheckbox.isSelected();
+					
+					int selectedImageID = suitableImageIDs[panel.gateApplicationComboBox.getSelectedIndex()]; // apply gating to the desired image (not necessarily the image the gates were computed with)
+					submit(new OutputTask(selectedImageID, gateLength, searchBackwards, this));
 				}
 				
 			} catch (NumberFormatException nfe) {
@@ -286,18 +267,24 @@ public class GateCScanInteractivelySwing implements PlugIn
 			}
 		}
 
+		/* Cancel any gate computation and close the dialog */
+		void closeDialog()
+		{
+			lastCancelledTask = submittedTasks;
+			gateExecutor.shutdown();
+			ImagePlus.removeImageListener(this);
+			this.close();
+			instance = null;
+		}
+
 		/* Respond to image being closed */
 		public void imageClosed(ImagePlus image)
 		{
 			if (image.getID() == inputImageID) {
 				IJ.error("Source image closed!");
-				ImagePlus.removeImageListener(this);
-				this.close();
-				instance = null;
+				closeDialog();
 			} else if (image.getID() == instance.gateImage.getID()) {
-				ImagePlus.removeImageListener(this);
-				this.close();
-				instance = null;
+				closeDialog();
 			} else {
 				suitableImageIDs = getSuitableImageIDs(inputImage, gateImage);
 				panel.gateApplicationComboBox.removeAll();
@@ -329,185 +316,273 @@ public class GateCScanInteractivelySwing implements PlugIn
 						short[] gatePositionsForDisplayedSlice = Arrays.copyOfRange(gatePositions, (currentSlice - 1) * recordsPerFrame, currentSlice * recordsPerFrame);
 						drawSingleROI(image, gatePositionsForDisplayedSlice, gateLength, searchBackwards);
 					}
+				} else {
+					// pixels may have been changed in place, which the gate index cannot detect
+					gateIndex.invalidateAll();
 				}
 			}
 		}
 
 	}
 
-	/* Create new ImagePlus from gated segments of input image */
-	private ImagePlus createGatedImage(ImagePlus inputImage, short[] gateStartPositions, int gateLength)
+	/**
+	 * Computation run on the gate thread, off the event dispatch thread. A
+	 * task is cancelled when the user presses Escape in the dialog or closes
+	 * it, or when a later request to create gates supersedes it.
+	 */
+	private abstract class GateTask implements Runnable
 	{
-		int nPoints = inputImage.getWidth();
-		int nRecords = inputImage.getHeight();
-		int stackSize = inputImage.getStackSize();
-		ImagePlus gatedImage = IJ.createImage(inputImage.getTitle() + "_gatedSegments", "32-bit", gateLength, nRecords, stackSize);
-		ImageStack gatedStack = gatedImage.getStack();
-		ImageStack inputStack = inputImage.getStack();
-		for (int slice = 1; slice <= stackSize; slice++) {
-			float[] inputPixels = (float[]) inputStack.getPixels(slice);
-			float[] gatedPixels = (float[]) gatedStack.getPixels(slice);
-			for (int i = 0; i < nRecords; i++) {
-				int gateIndex = ((slice - 1) * nRecords) + i;
-				if (gateStartPositions[gateIndex] < 0) { // gate position set to -1, so no boundary detected; just set start of gate to 0
-					System.arraycopy(inputPixels, i * nPoints, gatedPixels, i * gateLength, gateLength);
-				} else if (gateStartPositions[gateIndex] + gateLength >= nPoints) { // end of gate set past end of waveform, so just pad with zeroes
-					System.arraycopy(inputPixels, (i * nPoints) + gateStartPositions[gateIndex], gatedPixels, i * gateLength, nPoints - gateStartPositions[i]);
-				} else {	// gate is within waveform limits
-					System.arraycopy(inputPixels, (i * nPoints) + gateStartPositions[gateIndex], gatedPixels, i * gateLength, gateLength);
+		private final int taskNumber = ++submittedTasks;
+
+		boolean isCancelled()
+		{
+			return taskNumber <= lastCancelledTask;
+		}
+
+		public final void run()
+		{
+			if (isCancelled()) {
+				return;
+			}
+			try {
+				compute();
+			} finally {
+				IJ.showProgress(1.0);
+				if (isCancelled()) {
+					IJ.showStatus("Gate computation cancelled");
 				}
 			}
 		}
 
-		return gatedImage;
+		abstract void compute();
+	}
+
+	/* Queue a task on the gate thread */
+	private void submit(GateTask task)
+	{
+		gateExecutor.execute(task);
+	}
+
+	/* Show gates in the gate image and as an ROI on the displayed slice; called on the event dispatch thread */
+	private void showGates(short[] gatePositions)
+	{
+		gateProcessor.setPixels(gatePositions);
+		gateImage.setOverlay(new Overlay(new Line(0, currentSlice - 1, recordsPerFrame, currentSlice - 1)));
+		gateImage.updateAndDraw();
+		IJ.resetMinAndMax();
+		short[] gatePositionsForDisplayedSlice = Arrays.copyOfRange(gatePositions, (currentSlice - 1) * recordsPerFrame, currentSlice * recordsPerFrame);
+		drawSingleROI(WindowManager.getImage(inputImageID), gatePositionsForDisplayedSlice, gateLength, searchBackwards);
 	}
 
-	/* Create new ImagePlus with gated full-length waveforms (zero-padded) */
-	private ImagePlus createdGatedWaveformImage(ImagePlus inputImage, short[] gateStartPositions, int gateLength)
+	/* Show gates of the displayed slice as an ROI, before the rest of the stack has been gated */
+	void showSliceGates(final int slice, final short[] sliceGates)
 	{
-		int nPoints = inputImage.getWidth();
-		int nRecords = inputImage.getHeight();
-		int stackSize = inputImage.getStackSize();
-		ImagePlus gatedImage = IJ.createImage(inputImage.getTitle() + "_gatedWaveforms", "32-bit", nPoints, nRecords, stackSize);
-		ImageStack gatedStack = gatedImage.getStack();
-		ImageStack inputStack = inputImage.getStack();
-		for (int slice = 1; slice <= stackSize; slice++) {
-			float[] inputPixels = (float[]) inputStack.getPixels(slice);
-			float[] gatedPixels = (float[]) gatedStack.getPixels(slice);
-			for (int i = 0; i < nRecords; i++) {
-				int gateIndex = ((slice - 1) * nRecords) + i;
-				if (gateStartPositions[gateIndex] < 0) { // gate position set to -1, so no boundary detected; just set start of gate to 0
-					System.arraycopy(inputPixels, i * nPoints, gatedPixels, i * gateLength, gateLength);
-				} else if (gateStartPositions[gateIndex] + gateLength >= nPoints) { // end of gate set past end of waveform, so just pad with zeroes
-					System.arraycopy(inputPixels, (i * nPoints) + gateStartPositions[gateIndex], gatedPixels, (i * nPoints) + gateStartPositions[gateIndex], nPoints - gateStartPositions[i]);
-				} else {	// gate is within waveform limits
-					System.arraycopy(inputPixels, (i * nPoints) + gateStartPositions[gateIndex], gatedPixels, (i * nPoints) + gateStartPositions[gateIndex], gateLength);
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				if (slice == currentSlice) {
+					drawSingleROI(WindowManager.getImage(inputImageID), sliceGates, gateLength, searchBackwards);
 				}
 			}
+		});
+	}
+
+	/* Publish new gates, and show them on the event dispatch thread */
+	private void publishGates(final short[] gatePositions)
+	{
+		currentGates = gatePositions;
+		gatesExist = true;
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				showGates(gatePositions);
+			}
+		});
+	}
+
+	/* Creates gates for the stack, starting with the displayed slice */
+	private class CreateGatesTask extends GateTask
+	{
+		private final GateDetector detector;
+		private final int firstSlice;
+
+		CreateGatesTask(GateDetector detector, int firstSlice)
+		{
+			this.detector = detector;
+			this.firstSlice = firstSlice;
 		}
 
-		return gatedImage;
+		void compute()
+		{
+			IJ.showStatus("Creating gates...");
+			short[] gatePositions = computeGateStartPositionsForStack(gateIndex, detector, firstSlice, this);
+			if (gatePositions != null) {
+				publishGates(gatePositions);
+				IJ.showStatus("");
+			}
+		}
 	}
 
-	/**
-	 * Substitute nearest valid gate start position for all positions where no
-	 * valid gates were detected. Employs Bresenham's circle algorithm, adapted
-	 * from implementation by Alois Zingl at
-	 * http://members.chello.at/easyfilter/bresenham.html
-	 */
-	private void nearestNeighborInterpolate(short[] gateStartPositions, int recordsPerFrame, int stackSize)
+	/* Smooths the latest gates */
+	private class SmoothGatesTask extends GateTask
 	{
-		short[] interpolatedGateStartPositions = Arrays.copyOf(gateStartPositions, gateStartPositions.length);
-		int rMax = (int) Math.sqrt(recordsPerFrame * recordsPerFrame + stackSize * stackSize);
-		for (int y0 = 0; y0 < stackSize; y0++) {
-			int offset = y0 * recordsPerFrame;
-			for (int x0 = 0; x0 < recordsPerFrame; x0++) {
-				int position = gateStartPositions[offset + x0];
-				if (position < 0) {
-					// look for closest point that is not equal to -1 using Bresenham's circle algorithm
-					for (int radius = 1; radius <= rMax; radius++) {
-						int sum = 0, nValid = 0, r = radius, x = -r, y = 0, err = 2 - 2*r;
-						int[] px = new int[4];
-						int[] py = new int[4];
-						do {
-							px[0] = x0-x;
-							py[0] = y0+y;
-							px[1] = x0-y;
-							py[1] = y0-x;
-							px[2] = x0+x;
-							py[2] = y0-y;
-							px[3] = x0+y;
-							py[3] = y0+x;
-							for (int i=0; i<px.length; i++) {
-								if (px[i] >= 0 && px[i] < recordsPerFrame && py[i] >= 0 && py[i] < stackSize) {
-									short gateValue = gateStartPositions[py[i]*recordsPerFrame + px[i]];
-									if (gateValue >= 0) {
-										sum += gateValue;
-										nValid++;
-									}
-								}
+		private final int filter;
+		private final double radius;
+
+		SmoothGatesTask(int filter, double radius)
+		{
+			this.filter = filter;
+			this.radius = radius;
+		}
+
+		void compute()
+		{
+			if (!gatesExist) {
+				return;
+			}
+			short[] smoothedGates = GateDetector.smooth(currentGates, recordsPerFrame, numberOfFrames, filter, radius);
+			if (!isCancelled()) {
+				publishGates(smoothedGates);
+			}
+		}
+	}
+
+	/* Applies the latest gates and creates the selected outputs, then closes the dialog */
+	private class OutputTask extends GateTask
+	{
+		private final int selectedImageID, gateLength;
+		private final boolean isBackward;
+		private final CreateGatesForCScanDialog dialog;
+
+		OutputTask(int selectedImageID, int gateLength, boolean isBackward, CreateGatesForCScanDialog dialog)
+		{
+			this.selectedImageID = selectedImageID;
+			this.gateLength = gateLength;
+			this.isBackward = isBackward;
+			this.dialog = dialog;
+		}
+
+		void compute()
+		{
+			// ROIs and output images are created here; the slices, ROI Manager and windows are changed on the event dispatch thread
+			final ImagePlus image = WindowManager.getImage(inputImageID);
+			PolygonRoi[] sliceRois = null;
+			ImagePlus gatedImage = null, borderImage = null, gatedWaveformImage = null;
+			if (gatesExist) {
+				short[] gatePositions = currentGates;
+				
+				if (outputGateROIs == true) {
+					sliceRois = new PolygonRoi[image.getStackSize()];
+					for (int i = 0; i < sliceRois.length && !isCancelled(); i++) {
+						short[] gatePositionsForThisSlice = Arrays.copyOfRange(gatePositions, i * recordsPerFrame, (i + 1) * recordsPerFrame);
+						sliceRois[i] = createSingleROI(gatePositionsForThisSlice, gateLength, isBackward);
+						IJ.showProgress(i + 1, sliceRois.length);
+					}
+				}
+				if (outputGatedSegments == true && !isCancelled()) {
+					gatedImage = createGatedImage(WindowManager.getImage(selectedImageID), gatePositions, gateLength, isBackward);
+				}
+				if (outputGatePositions == true && !isCancelled()) {
+					borderImage = new ImagePlus(title + " gate positions", new ShortProcessor(recordsPerFrame, numberOfFrames, gatePositions.clone(), null));
+				}
+				if (outputGatedWaveforms == true && !isCancelled()) {
+					gatedWaveformImage = createdGatedWaveformImage(WindowManager.getImage(selectedImageID), gatePositions, gateLength, isBackward);
+				}
+			}
+			if (!isCancelled()) {
+				final PolygonRoi[] rois = sliceRois;
+				final ImagePlus[] outputImages = {gatedImage, borderImage, gatedWaveformImage};
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						if (rois != null) {
+							RoiManager rm = RoiManager.getInstance();
+							if (rm == null) {
+								rm = new RoiManager();
 							}
-							r = err;
-							if (r <= y) {
-								err += ++y * 2 + 1;
+							for (int i = 0; i < rois.length; i++) {
+								image.setSlice(i + 1);
+								rm.add(image, rois[i], -1);
 							}
-							if (r > x || err > y) {
-								err += ++x * 2 + 1;
+						}
+						for (ImagePlus outputImage : outputImages) {
+							if (outputImage != null) {
+								outputImage.show();
+								IJ.resetMinAndMax();
 							}
-						} while (x < 0 && nValid == 0);
-						if (nValid > 0) {
-							interpolatedGateStartPositions[offset + x0] = (short) (sum / nValid);
-							break;
 						}
+						dialog.closeDialog();
 					}
-				}
+				});
 			}
 		}
-		System.arraycopy(interpolatedGateStartPositions, 0, gateStartPositions, 0, gateStartPositions.length);
 	}
-	
-	/* Computes gate start positions for entire stack */
-	private short[] computeGateStartPositionsForStack(ImageStack stack, int searchStartPoint, int offsetPoint, float threshold, int detectionType)
-	{
-		int nPoints = stack.getWidth();
-		int nRecords = stack.getHeight();
-		int stackSize = stack.getSize();
-		short[] gateStartPositions = new short[nRecords * stackSize];
-		float[] pixelValues;
-
-		// check to make sure there is a possibility of detecting a peak above the specified threshold
-		if (threshold < globalMinAndMax[1]) {
-			for (int slice = 1; slice <= stackSize; slice++) {
-				pixelValues = (float[]) stack.getProcessor(slice).convertToFloat().getPixels();
-				short[] sliceGates = computeGateStartPositions(pixelValues, nPoints, nRecords, searchStartPoint, offsetPoint, threshold, detectionType);
-				System.arraycopy(sliceGates, 0, gateStartPositions, (slice - 1) * nRecords, nRecords);
-			}
 
-			// substitute nearest valid gate start position for all positions where no valid gates were detected
-			nearestNeighborInterpolate(gateStartPositions, nRecords, stackSize);
-		}
+	/* Create new ImagePlus from gated segments of input image, as a virtual stack built from the input image slice by slice */
+	private ImagePlus createGatedImage(ImagePlus inputImage, short[] gateStartPositions, int gateLength, boolean isBackward)
+	{
+		GatedStack gatedStack = GatedStack.create(inputImage.getStack(), gateStartPositions, gateLength, false, isBackward, null);
+		return gatedStack != null ? new ImagePlus(inputImage.getTitle() + "_gatedSegments", gatedStack) : null;
+	}
 
-		return gateStartPositions;
+	/* Create new ImagePlus with gated full-length waveforms (zero-padded), as a virtual stack built from the input image slice by slice */
+	private ImagePlus createdGatedWaveformImage(ImagePlus inputImage, short[] gateStartPositions, int gateLength, boolean isBackward)
+	{
+		GatedStack gatedStack = GatedStack.create(inputImage.getStack(), gateStartPositions, gateLength, true, isBackward, null);
+		return gatedStack != null ? new ImagePlus(inputImage.getTitle() + "_gatedWaveforms", gatedStack) : null;
 	}
 
-	/* Computes gate start positions for individual slice, assumed to be represented by data in 'pixels' */
-	private short[] computeGateStartPositions(float[] pixels, int recordLength, int numberOfRecords, int searchStartPoint, int offsetPoint, float threshold, int detectionType)
+	/*
+	 * Computes gate start positions for entire stack with the gate detector, through the gate index of the stack. Slice firstSlice is gated first and shown
+	 * through the task; the other slices are then gated in parallel. Returns null if the parameters do not suit the stack, or if the task is cancelled.
+	 */
+	private short[] computeGateStartPositionsForStack(final GateIndex index, final GateDetector detector, final int firstSlice, final GateTask task)
 	{
-		float[] tempArray = new float[recordLength];
-		short[] gateStartPositions = new short[numberOfRecords];
-
-		for (int i = 0; i < numberOfRecords; i++) {
-			int gateStart = (short) (-1);
-			if (searchBackwards) {
-				for (int j = 0, k = ((i + 1) * recordLength) - 1 - searchStartPoint; k >= i * recordLength; j++, k--) {
-					tempArray[j] = pixels[k];
-				}
-				switch (detectionType) {
-					case PEAK_DETECT: 
-						gateStart = peakDetect(tempArray, threshold);
-						break;
-					case THRESHOLD_DETECT:
-						gateStart = thresholdDetect(tempArray, threshold);
-						break;
-					default:
-				}
-				gateStartPositions[i] = (gateStart >= 0) ? (short)(recordLength - (gateStart + offsetPoint + searchStartPoint) - 1) : (short) (-1);
-			} else {
-				System.arraycopy(pixels, (i * recordLength) + searchStartPoint, tempArray, 0, recordLength - searchStartPoint);
-				switch (detectionType) {
-					case PEAK_DETECT: 
-						gateStart = peakDetect(tempArray, threshold);
-						break;
-					case THRESHOLD_DETECT:
-						gateStart = thresholdDetect(tempArray, threshold);
-						break;
-					default:
+		final ImageStack stack = index.getStack();
+		final int nPoints = stack.getWidth();
+		final int nRecords = stack.getHeight();
+		final int stackSize = stack.getSize();
+		final short[] gateStartPositions = new short[nRecords * stackSize];
+		// a percentile is taken from the sketch of the gate index, which is made again only after the stack has changed
+		final float threshold = detector.getThresholdLevel(index);
+
+		// gate the displayed slice, and show its gates with missing gates filled from within the slice
+		if (!detector.detectSlices(index, firstSlice, firstSlice, threshold, gateStartPositions)) {
+			IJ.error("The start of the search and the gate length must lie within the waveforms, the waveform length plus the offset must not exceed " + Short.MAX_VALUE
+				+ " points, and a percentile threshold must be from 0 to 100");
+			return null;
+		}
+		short[] firstSliceGates = Arrays.copyOfRange(gateStartPositions, (firstSlice - 1) * nRecords, firstSlice * nRecords);
+		GateDetector.fillMissingGates(firstSliceGates, nRecords, 1);
+		showSliceGates(firstSlice, firstSliceGates);
+
+		// gate the remaining slices
+		final AtomicInteger slicesDone = new AtomicInteger(1);
+		RecordPartitioner.forEachChunk(stackSize, nRecords * nPoints, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromSlice, int toSlice)
+			{
+				for (int slice = fromSlice + 1; slice <= toSlice && !task.isCancelled(); slice++) {
+					if (slice != firstSlice) {
+						detector.detectSlices(index, slice, slice, threshold, gateStartPositions);
+						IJ.showProgress(slicesDone.incrementAndGet(), stackSize);
+					}
 				}
-				gateStartPositions[i] = (gateStart >= 0) ? (short)(gateStart + offsetPoint + searchStartPoint) : (short) (-1);
 			}
-
+		});
+		if (task.isCancelled()) {
+			return null;
 		}
 
+		// substitute nearest valid gate start position for all positions where no valid gates were detected
+		GateDetector.fillMissingGates(gateStartPositions, nRecords, stackSize);
+		if (gateStartPositions[0] < 0) {
+			// no gates were detected in the whole stack, so gates start at the first point
+			Arrays.fill(gateStartPositions, (short) 0);
+		}
 		return gateStartPositions;
 	}
 
@@ -520,47 +595,9 @@ public class GateCScanInteractivelySwing implements PlugIn
 	/* Create single ROI for current slice */
 	private PolygonRoi createSingleROI(short[] gateStartPositions, int gateLength, boolean reverseSearch)
 	{
-		int direction = reverseSearch ? -1 : 1;
-		int length = gateStartPositions.length;
-		int[] xPoints = new int[length * 2];
-		int[] yPoints = new int[length * 2];
-		for (int i = 0; i < length; i++) {
-			xPoints[i] = gateStartPositions[i];
-			xPoints[length + i] = gateStartPositions[(length - 1) - i] + direction * gateLength;
-			yPoints[i] = i;
-			yPoints[length + i] = (length - 1) - i;
-		}
-		return new PolygonRoi(new Polygon(xPoints, yPoints, length * 2), Roi.POLYGON);
+		return GateDetector.createRoi(gateStartPositions, 0, gateStartPositions.length, gateLength, reverseSearch);
 	}
 
-	/* Returns the index of the first peak value found which exceeds the specified threshold. Returns -1 if no peaks above threshold are detected. */
-	private int peakDetect(float[] a, float threshold)
-	{
-		int i;
-
-		for (i = 1; i < a.length - 1; i++) {
-			if (a[i] > threshold && a[i - 1] < a[i] && a[i + 1] < a[i]) {
-				break;
-			}
-		}
-
-		return (i >= a.length - 2) ? -1 : i;
-	}
-	
-	/* Returns the index of the first value found which exceeds the specified threshold. Returns -1 if no peaks above threshold are detected */
-	private int thresholdDetect(float[] a, float threshold)
-	{
-		int i;
-		
-		for (i=1; i<a.length-1; i++) {
-			if (a[i] > threshold) {
-				break;
-			}
-		}
-		
-		return (i >= a.length - 2) ? -1 : i;
-	}
-	
 	private int[] getSuitableImageIDs(ImagePlus impToCheckAgainst, ImagePlus gateImage)
 	{
 		int width = impToCheckAgainst.getWidth();
@@ -0,0 +1,909 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.ImageStack;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.plugin.filter.GaussianBlur;
+import ij.plugin.filter.RankFilters;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Polygon;
+import java.util.Arrays;
+
+/**
+ * Detection of gates in a C-scan (a stack of B-scans) or a single B-scan,
+ * without any user interface, for use in macros, scripts and batch jobs. Each
+ * record (row) of each slice is searched, from a search start point, for the
+ * first (or, searching backward, the last) peak, nadir, value or threshold
+ * crossing beyond a threshold, and the gate starts at its position plus an
+ * offset (minus the offset, searching backward). Gates that are not detected
+ * are filled with the average of the nearest detected gates of the C-scan
+ * (see {@link #fillMissingGates(short[], int, int)}), and the gates may then
+ * be smoothed. Gates are returned as a gate map of {@code short} values, with
+ * the gates of slice {@code n} at indices {@code (n-1)*height} to
+ * {@code n*height-1}, from which ROIs and gated data
+ * ({@link GatedStack}) are created.
+ * <p>
+ * The parameters are given by a {@link Parameters} object, which is copied,
+ * so that a detector may be shared by any number of threads, and volumes may
+ * be gated concurrently. Each detection is itself split across threads (see
+ * {@link RecordPartitioner}). 8-bit and 16-bit slices are read directly, as
+ * unsigned values. An image that is gated repeatedly, as in the interactive
+ * gating dialogs, may be gated through a {@link GateIndex}, in which each
+ * slice is indexed once and then looked up rather than scanned.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class GateDetector
+{
+	/**
+	 * Detection of the first peak above the threshold; a peak is a point
+	 * strictly greater than both of its neighbors.
+	 */
+	public static final int PEAK = 0;
+	/**
+	 * Detection of the first value above the threshold.
+	 */
+	public static final int THRESHOLD = 1;
+	/**
+	 * Detection of the first point whose preceding value is below the
+	 * threshold and whose following value is at or above it.
+	 */
+	public static final int RISING_CROSSING = 2;
+	/**
+	 * Detection of the first point whose preceding value is above the
+	 * threshold and whose following value is at or below it.
+	 */
+	public static final int FALLING_CROSSING = 3;
+	/**
+	 * Detection of the first nadir below the threshold; a nadir is a point
+	 * strictly less than both of its neighbors.
+	 */
+	public static final int NADIR = 4;
+	/**
+	 * Names of the detection methods, in order of their values.
+	 */
+	public static final String[] DETECTION_METHODS = {"Peak", "Threshold", "Rising crossing", "Falling crossing", "Nadir"};
+	/**
+	 * Median filter for smoothing gates.
+	 */
+	public static final int MEDIAN = 0;
+	/**
+	 * Gaussian filter for smoothing gates.
+	 */
+	public static final int GAUSSIAN = 1;
+	/**
+	 * Mean filter for smoothing gates.
+	 */
+	public static final int MEAN = 2;
+	/**
+	 * Names of the smoothing filters, in order of their values.
+	 */
+	public static final String[] FILTERS = {"Median", "Gaussian", "Mean"};
+	private final Parameters parameters;
+
+	/**
+	 * Parameters of gate detection. Setters return the parameter object, so
+	 * that calls can be chained. The defaults search forward from the start
+	 * of each record for the first peak above zero, with no offset, a gate
+	 * length of 10 points and no smoothing.
+	 */
+	public static final class Parameters
+	{
+		private int searchStartPoint = 0;
+		private int offsetPoint = 0;
+		private float threshold = 0.0f;
+		private boolean isThresholdPercentile = false;
+		private int detectionMethod = PEAK;
+		private boolean isBackward = false;
+		private int gateLength = 10;
+		private int smoothingFilter = MEDIAN;
+		private double smoothingRadius = 0.0;
+
+		/**
+		 * Creates parameters with the default values.
+		 */
+		public Parameters()
+		{
+		}
+
+		private Parameters(Parameters p)
+		{
+			searchStartPoint = p.searchStartPoint;
+			offsetPoint = p.offsetPoint;
+			threshold = p.threshold;
+			isThresholdPercentile = p.isThresholdPercentile;
+			detectionMethod = p.detectionMethod;
+			isBackward = p.isBackward;
+			gateLength = p.gateLength;
+			smoothingFilter = p.smoothingFilter;
+			smoothingRadius = p.smoothingRadius;
+		}
+
+		/**
+		 * Sets the number of points at the start of each record (at the end,
+		 * searching backward) that are excluded from the search.
+		 *
+		 * @param points search start point
+		 * @return these parameters
+		 */
+		public Parameters setSearchStartPoint(int points)
+		{
+			searchStartPoint = points;
+			return this;
+		}
+
+		/**
+		 * Sets the offset of the gate start from the detected position, in
+		 * points; the offset is subtracted when searching backward.
+		 *
+		 * @param points gate offset
+		 * @return these parameters
+		 */
+		public Parameters setOffsetPoint(int points)
+		{
+			offsetPoint = points;
+			return this;
+		}
+
+		/**
+		 * Sets the threshold, either as a value, or as a percentile (0-100)
+		 * of all values of the data if {@code isPercentile} is true.
+		 *
+		 * @param threshold    threshold value or percentile
+		 * @param isPercentile set to true if {@code threshold} is a percentile
+		 * @return these parameters
+		 */
+		public Parameters setThreshold(float threshold, boolean isPercentile)
+		{
+			this.threshold = threshold;
+			isThresholdPercentile = isPercentile;
+			return this;
+		}
+
+		/**
+		 * Sets the detection method, one of {@link #PEAK},
+		 * {@link #THRESHOLD}, {@link #RISING_CROSSING},
+		 * {@link #FALLING_CROSSING} or {@link #NADIR}.
+		 *
+		 * @param method detection method
+		 * @return these parameters
+		 */
+		public Parameters setDetectionMethod(int method)
+		{
+			detectionMethod = method;
+			return this;
+		}
+
+		/**
+		 * Sets the search direction; a backward search finds the last
+		 * position of each record, rather than the first.
+		 *
+		 * @param isBackward set to true to search backward
+		 * @return these parameters
+		 */
+		public Parameters setBackward(boolean isBackward)
+		{
+			this.isBackward = isBackward;
+			return this;
+		}
+
+		/**
+		 * Sets the gate length in points.
+		 *
+		 * @param points gate length
+		 * @return these parameters
+		 */
+		public Parameters setGateLength(int points)
+		{
+			gateLength = points;
+			return this;
+		}
+
+		/**
+		 * Sets the filter used to smooth the gate map, one of {@link #MEDIAN},
+		 * {@link #GAUSSIAN} or {@link #MEAN}, and its radius (the standard
+		 * deviation of the Gaussian filter); gates are not smoothed if
+		 * {@code radius==0}.
+		 *
+		 * @param filter smoothing filter
+		 * @param radius filter radius in records
+		 * @return these parameters
+		 */
+		public Parameters setSmoothing(int filter, double radius)
+		{
+			smoothingFilter = filter;
+			smoothingRadius = radius;
+			return this;
+		}
+
+		/**
+		 *
+		 * @return search start point
+		 */
+		public int getSearchStartPoint()
+		{
+			return searchStartPoint;
+		}
+
+		/**
+		 *
+		 * @return gate offset
+		 */
+		public int getOffsetPoint()
+		{
+			return offsetPoint;
+		}
+
+		/**
+		 *
+		 * @return threshold value or percentile
+		 */
+		public float getThreshold()
+		{
+			return threshold;
+		}
+
+		/**
+		 *
+		 * @return true if the threshold is a percentile
+		 */
+		public boolean isThresholdPercentile()
+		{
+			return isThresholdPercentile;
+		}
+
+		/**
+		 *
+		 * @return detection method
+		 */
+		public int getDetectionMethod()
+		{
+			return detectionMethod;
+		}
+
+		/**
+		 *
+		 * @return true if the search is backward
+		 */
+		public boolean isBackward()
+		{
+			return isBackward;
+		}
+
+		/**
+		 *
+		 * @return gate length
+		 */
+		public int getGateLength()
+		{
+			return gateLength;
+		}
+
+		/**
+		 *
+		 * @return smoothing filter
+		 */
+		public int getSmoothingFilter()
+		{
+			return smoothingFilter;
+		}
+
+		/**
+		 *
+		 * @return smoothing filter radius
+		 */
+		public double getSmoothingRadius()
+		{
+			return smoothingRadius;
+		}
+
+		// true if the parameters can be applied to records of the given length, and every gate start position fits in a short
+		private boolean isValid(int recordLength)
+		{
+			return recordLength <= Short.MAX_VALUE && Math.abs((long)offsetPoint) <= Short.MAX_VALUE - recordLength
+				&& searchStartPoint >= 0 && searchStartPoint < recordLength - 1
+				&& gateLength > 0 && gateLength <= recordLength
+				&& detectionMethod >= PEAK && detectionMethod <= NADIR
+				&& smoothingFilter >= MEDIAN && smoothingFilter <= MEAN && smoothingRadius >= 0.0
+				&& (!isThresholdPercentile || (threshold >= 0.0f && threshold <= 100.0f));
+		}
+	}
+
+	/**
+	 * Creates a gate detector with a copy of {@code parameters}; later
+	 * changes to {@code parameters} do not affect the detector. The default
+	 * parameters are used if {@code parameters==null}.
+	 *
+	 * @param parameters gate detection parameters
+	 */
+	public GateDetector(Parameters parameters)
+	{
+		this.parameters = new Parameters(parameters != null ? parameters : new Parameters());
+	}
+
+	/**
+	 * Returns a copy of the parameters of this detector.
+	 *
+	 * @return gate detection parameters
+	 */
+	public Parameters getParameters()
+	{
+		return new Parameters(parameters);
+	}
+
+	/**
+	 * Returns the gate map of {@code stack}, with the gate start positions of
+	 * slice {@code n} at indices {@code (n-1)*height} to {@code n*height-1}.
+	 * Missing gates are filled, and the gate map is smoothed if a smoothing
+	 * radius is set; if no gate is detected in the whole stack, all gates are
+	 * -1. Output is null if {@code stack==null}, or if the parameters do not
+	 * suit the width of the stack (search start point outside the records,
+	 * gate length longer than the records, an unknown detection method or
+	 * filter, or records and offset too long for gate start positions to be
+	 * stored as {@code short} values).
+	 *
+	 * @param stack input stack of any type
+	 * @return gate map of the stack
+	 */
+	public short[] detect(ImageStack stack)
+	{
+		if (stack == null || !parameters.isValid(stack.getWidth())) {
+			return null;
+		}
+		final int numRecords = stack.getHeight();
+		final int stackSize = stack.getSize();
+		short[] gateStartPositions = new short[numRecords*stackSize];
+		detectSlices(stack, 1, stackSize, getThresholdLevel(stack), gateStartPositions);
+
+		fillMissingGates(gateStartPositions, numRecords, stackSize);
+		if (parameters.smoothingRadius > 0.0) {
+			return smooth(gateStartPositions, numRecords, stackSize, parameters.smoothingFilter, parameters.smoothingRadius);
+		}
+		return gateStartPositions;
+	}
+
+	/**
+	 * Returns the threshold value used to detect gates in {@code stack}: the
+	 * threshold, or, for a percentile threshold, the value at that percentile
+	 * of all values of the stack. Output is {@code NaN} for a percentile
+	 * threshold if {@code stack==null}.
+	 *
+	 * @param stack input stack of any type
+	 * @return threshold value
+	 */
+	public float getThresholdLevel(ImageStack stack)
+	{
+		if (!parameters.isThresholdPercentile) {
+			return parameters.threshold;
+		}
+		return stack != null ? (float)WaveformPercentiles.sketchStack(stack).quantile(parameters.threshold/100.0) : Float.NaN;
+	}
+
+	/**
+	 * Returns the threshold value used to detect gates in the image of
+	 * {@code index}, as for {@link #getThresholdLevel(ImageStack)}, taking a
+	 * percentile from the sketch of the gate index, so that the image is
+	 * sketched only once while it is unchanged. Output is {@code NaN} for a
+	 * percentile threshold if {@code index==null}.
+	 *
+	 * @param index gate index of the input image
+	 * @return threshold value
+	 */
+	public float getThresholdLevel(GateIndex index)
+	{
+		if (!parameters.isThresholdPercentile) {
+			return parameters.threshold;
+		}
+		return index != null ? (float)index.getSketch().quantile(parameters.threshold/100.0) : Float.NaN;
+	}
+
+	/**
+	 * Detects the gates of slices {@code fromSlice} to {@code toSlice}
+	 * (inclusive) of {@code stack} with the threshold value
+	 * {@code thresholdLevel} (see {@link #getThresholdLevel(ImageStack)}),
+	 * storing them in their part of the gate map {@code gateStartPositions}
+	 * (see {@link #detect(ImageStack)}), so that a stack may be gated a few
+	 * slices at a time. Missing gates are set to -1, and are neither filled
+	 * nor smoothed. Output is false, and the gate map is unchanged, if
+	 * {@code stack==null}, {@code gateStartPositions==null},
+	 * {@code gateStartPositions.length} is not equal to the number of records
+	 * in the stack, the slices are out of range, or if the parameters do not
+	 * suit the width of the stack.
+	 *
+	 * @param stack              input stack of any type
+	 * @param fromSlice          first slice, from 1 to the stack size
+	 * @param toSlice            last slice, from {@code fromSlice} to the
+	 *                           stack size
+	 * @param thresholdLevel     threshold value
+	 * @param gateStartPositions gate map of the stack
+	 * @return true if the gates were detected
+	 */
+	public boolean detectSlices(ImageStack stack, int fromSlice, int toSlice, float thresholdLevel, short[] gateStartPositions)
+	{
+		return detectSlices(stack, null, fromSlice, toSlice, thresholdLevel, gateStartPositions);
+	}
+
+	/**
+	 * Detects the gates of slices {@code fromSlice} to {@code toSlice}
+	 * (inclusive) of the image of {@code index}, as for
+	 * {@link #detectSlices(ImageStack, int, int, float, short[])}, looking
+	 * each record up in the peak index of its slice rather than scanning it
+	 * (see {@link GateIndex}). Slices are indexed when first gated, so that
+	 * gating the image again, with other parameters, is faster. Slices that
+	 * are not indexed are first checked against their statistics: slices and
+	 * records whose values cannot meet the threshold are skipped. Output is
+	 * false, and the gate map is unchanged, under the conditions given for
+	 * {@link #detectSlices(ImageStack, int, int, float, short[])}, or if
+	 * {@code index==null}.
+	 *
+	 * @param index              gate index of the input image
+	 * @param fromSlice          first slice, from 1 to the stack size
+	 * @param toSlice            last slice, from {@code fromSlice} to the
+	 *                           stack size
+	 * @param thresholdLevel     threshold value
+	 * @param gateStartPositions gate map of the stack
+	 * @return true if the gates were detected
+	 */
+	public boolean detectSlices(GateIndex index, int fromSlice, int toSlice, float thresholdLevel, short[] gateStartPositions)
+	{
+		return index != null && detectSlices(index.getStack(), index, fromSlice, toSlice, thresholdLevel, gateStartPositions);
+	}
+
+	// detects the gates of a range of slices, with the peak indices of index if index!=null, or by scanning each record
+	private boolean detectSlices(final ImageStack stack, final GateIndex index, int fromSlice, int toSlice, final float thresholdLevel, final short[] gateStartPositions)
+	{
+		if (stack == null || gateStartPositions == null || gateStartPositions.length != stack.getHeight()*stack.getSize()
+			|| fromSlice < 1 || toSlice < fromSlice || toSlice > stack.getSize() || !parameters.isValid(stack.getWidth())) {
+			return false;
+		}
+		final int recordLength = stack.getWidth();
+		final int numRecords = stack.getHeight();
+		final int firstSlice = fromSlice;
+
+		RecordPartitioner.forEachChunk(toSlice-fromSlice+1, numRecords*recordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int from, int to)
+			{
+				for (int slice=firstSlice+from; slice<firstSlice+to; slice++) {
+					int at = (slice-1)*numRecords;
+					SliceStatisticsIndex.SliceStatistics statistics = index != null && !index.isIndexed(slice) ? index.getStatistics(slice) : null;
+					if (statistics != null && !canDetect(statistics.getMin(), statistics.getMax(), thresholdLevel)) {
+						Arrays.fill(gateStartPositions, at, at+numRecords, (short)(-1));
+						continue;
+					}
+					PeakIndex peakIndex = index != null ? index.getPeakIndex(slice) : null;
+					if (peakIndex != null) {
+						detect(peakIndex, thresholdLevel, gateStartPositions, at);
+						continue;
+					}
+					PixelArray values = PixelArray.wrap(stack.getPixels(slice));
+					if (values == null) {
+						values = PixelArray.wrap(stack.getProcessor(slice).convertToFloat().getPixels());
+					}
+					detect(values, recordLength, numRecords, thresholdLevel, statistics, gateStartPositions, at);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Returns the gates of {@code waveforms}, where each record has
+	 * {@code recordLength} elements, as for a single slice of a stack (see
+	 * {@link #detect(ImageStack)}). Output is null if
+	 * {@code waveforms==null}, {@code recordLength<=0},
+	 * {@code waveforms.length<recordLength}, {@code waveforms.length} is not
+	 * evenly divisible by {@code recordLength}, or if the parameters do not
+	 * suit the record length.
+	 *
+	 * @param waveforms    one-dimensional array composed of a series of
+	 *                     concatenated records, each of size equal to
+	 *                     {@code recordLength}
+	 * @param recordLength size of each record in {@code waveforms}
+	 * @return gate start position of each record
+	 */
+	public short[] detect(float[] waveforms, int recordLength)
+	{
+		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
+			ImageStack stack = new ImageStack(recordLength, waveforms.length/recordLength);
+			stack.addSlice(null, waveforms);
+			return detect(stack);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns one polygon ROI per slice enclosing the gated region of each
+	 * record of the slice, for the gate map {@code gateStartPositions} of a
+	 * stack with {@code recordsPerFrame} records per slice. The position of
+	 * each ROI is set to its slice. Output is null if
+	 * {@code gateStartPositions==null}, {@code recordsPerFrame<=0}, or if
+	 * {@code gateStartPositions.length} is not evenly divisible by
+	 * {@code recordsPerFrame}.
+	 *
+	 * @param gateStartPositions gate map
+	 * @param recordsPerFrame    number of records in each slice
+	 * @return ROI of each slice
+	 */
+	public Roi[] createRois(short[] gateStartPositions, int recordsPerFrame)
+	{
+		if (gateStartPositions == null || recordsPerFrame <= 0 || gateStartPositions.length%recordsPerFrame != 0) {
+			return null;
+		}
+		Roi[] rois = new Roi[gateStartPositions.length/recordsPerFrame];
+		for (int s=0; s<rois.length; s++) {
+			rois[s] = createRoi(gateStartPositions, s*recordsPerFrame, recordsPerFrame, parameters.gateLength, parameters.isBackward);
+			rois[s].setPosition(s+1);
+		}
+		return rois;
+	}
+
+	/**
+	 * Returns a virtual stack of the gated segments (or, if
+	 * {@code isFullLength} is true, the gated full-length waveforms) of
+	 * {@code source} for the gate map {@code gateStartPositions} (see
+	 * {@link GatedStack}). As for the ROIs of
+	 * {@link #createRois(short[], int)}, gates extend backward from their
+	 * positions if the search is backward. Output is null under the
+	 * conditions given for
+	 * {@link GatedStack#create(ImageStack, short[], int, boolean, boolean, float[])}.
+	 *
+	 * @param source             source stack
+	 * @param gateStartPositions gate map of the source stack
+	 * @param isFullLength       set to true for full-length gated waveforms,
+	 *                           or false for gated segments
+	 * @return virtual stack of gated data
+	 */
+	public GatedStack gate(ImageStack source, short[] gateStartPositions, boolean isFullLength)
+	{
+		return GatedStack.create(source, gateStartPositions, parameters.gateLength, isFullLength, parameters.isBackward, null);
+	}
+
+	/*
+	 * Detects the gates of the records of one slice, storing them in gateStartPositions from index 'at'. Forward searches run from one point after the
+	 * search start to three points before the end of the record, and backward searches from the third point to one point before the search start
+	 * (counted from the end), as in the interactive plug-ins. Records whose values cannot meet the threshold are skipped if statistics!=null.
+	 */
+	private void detect(final PixelArray values, final int recordLength, int numRecords, final float threshold, SliceStatisticsIndex.SliceStatistics statistics,
+		final short[] gateStartPositions, final int at)
+	{
+		final float[] recordMin = statistics != null ? statistics.getRecordMin() : null;
+		final float[] recordMax = statistics != null ? statistics.getRecordMax() : null;
+		final int searchStartPoint = parameters.searchStartPoint;
+		final int offsetPoint = parameters.isBackward ? -parameters.offsetPoint : parameters.offsetPoint;
+		final int method = parameters.detectionMethod;
+		final boolean isBackward = parameters.isBackward;
+		RecordPartitioner.forEachChunk(numRecords, recordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				int from = isBackward ? 2 : searchStartPoint + 1;
+				int to = isBackward ? recordLength - 1 - searchStartPoint : recordLength - 2;
+				for (int i=fromRecord; i<toRecord; i++) {
+					if (recordMax != null && !canDetect(recordMin[i], recordMax[i], threshold)) {
+						gateStartPositions[at+i] = -1;
+						continue;
+					}
+					int position = search(values, i*recordLength, recordLength, from, to, threshold, method, isBackward);
+					gateStartPositions[at+i] = (position >= 0) ? (short)(position + offsetPoint) : (short)(-1);
+				}
+			}
+		});
+	}
+
+	// false if no gate can be detected in values from min to max (NaN if there are none); a crossing needs values on both sides of the threshold
+	private boolean canDetect(double min, double max, float threshold)
+	{
+		switch (parameters.detectionMethod) {
+			case PEAK:
+			case THRESHOLD:
+				return threshold < max;
+			case RISING_CROSSING:
+				return min < threshold && threshold <= max;
+			case FALLING_CROSSING:
+				return min <= threshold && threshold < max;
+			case NADIR:
+				return min < threshold;
+			default:
+				return false;
+		}
+	}
+
+	// detects the gates of the records of one slice with its peak index, over the same ranges as the scan of the slice
+	private void detect(final PeakIndex peakIndex, final float threshold, final short[] gateStartPositions, final int at)
+	{
+		final int recordLength = peakIndex.getRecordLength();
+		final int offsetPoint = parameters.isBackward ? -parameters.offsetPoint : parameters.offsetPoint;
+		final int method = parameters.detectionMethod;
+		final boolean isBackward = parameters.isBackward;
+		final int from = isBackward ? 2 : parameters.searchStartPoint + 1;
+		final int to = isBackward ? recordLength - 1 - parameters.searchStartPoint : recordLength - 2;
+		RecordPartitioner.forEachChunk(peakIndex.getNumRecords(), recordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				for (int i=fromRecord; i<toRecord; i++) {
+					int position = search(peakIndex, i, from, to, threshold, method, isBackward);
+					gateStartPositions[at+i] = (position >= 0) ? (short)(position + offsetPoint) : (short)(-1);
+				}
+			}
+		});
+	}
+
+	// returns the first (or last) position in [from, to) of record 'record' that is detected by 'method', or -1 if there is none
+	private static int search(PeakIndex peakIndex, int record, int from, int to, float threshold, int method, boolean isBackward)
+	{
+		switch (method) {
+			case PEAK:
+				return isBackward ? peakIndex.lastPeakAbove(record, from, to, threshold) : peakIndex.firstPeakAbove(record, from, to, threshold);
+			case THRESHOLD:
+				return isBackward ? peakIndex.lastValueAbove(record, from, to, threshold) : peakIndex.firstValueAbove(record, from, to, threshold);
+			case RISING_CROSSING:
+				return isBackward ? peakIndex.lastRisingCrossing(record, from, to, threshold) : peakIndex.firstRisingCrossing(record, from, to, threshold);
+			case FALLING_CROSSING:
+				return isBackward ? peakIndex.lastFallingCrossing(record, from, to, threshold) : peakIndex.firstFallingCrossing(record, from, to, threshold);
+			case NADIR:
+				return isBackward ? peakIndex.lastNadirBelow(record, from, to, threshold) : peakIndex.firstNadirBelow(record, from, to, threshold);
+			default:
+				return -1;
+		}
+	}
+
+	// returns the first (or last) position in [from, to) of the record starting at 'offset' that is detected by 'method', or -1 if there is none
+	private static int search(PixelArray values, int offset, int recordLength, int from, int to, float threshold, int method, boolean isBackward)
+	{
+		from = Math.max(from, method == THRESHOLD ? 0 : 1);
+		to = Math.min(to, method == THRESHOLD ? recordLength : recordLength - 1);
+		int first = isBackward ? to - 1 : from;
+		int step = isBackward ? -1 : 1;
+		for (int j=first; j>=from && j<to; j+=step) {
+			float value = values.get(offset+j);
+			boolean isDetected;
+			switch (method) {
+				case PEAK:
+					isDetected = value > threshold && value > values.get(offset+j-1) && value > values.get(offset+j+1);
+					break;
+				case THRESHOLD:
+					isDetected = value > threshold;
+					break;
+				case RISING_CROSSING:
+					isDetected = values.get(offset+j-1) < threshold && values.get(offset+j+1) >= threshold;
+					break;
+				case FALLING_CROSSING:
+					isDetected = values.get(offset+j-1) > threshold && values.get(offset+j+1) <= threshold;
+					break;
+				case NADIR:
+					isDetected = value < threshold && value < values.get(offset+j-1) && value < values.get(offset+j+1);
+					break;
+				default:
+					isDetected = false;
+			}
+			if (isDetected) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a polygon ROI enclosing the gated region of each of
+	 * {@code numRecords} records, whose gate start positions are at indices
+	 * {@code from} to {@code from+numRecords-1} of
+	 * {@code gateStartPositions}. The gated region of each record extends
+	 * {@code gateLength} points from the gate start position, toward the
+	 * start of the record if {@code isBackward} is true.
+	 *
+	 * @param gateStartPositions gate start positions
+	 * @param from               index of the gate of the first record
+	 * @param numRecords         number of records
+	 * @param gateLength         gate length in points
+	 * @param isBackward         set to true if gates extend backward
+	 * @return ROI of the gated regions
+	 */
+	public static PolygonRoi createRoi(short[] gateStartPositions, int from, int numRecords, int gateLength, boolean isBackward)
+	{
+		int direction = isBackward ? -1 : 1;
+		int[] xPoints = new int[numRecords*2];
+		int[] yPoints = new int[numRecords*2];
+		for (int i=0; i<numRecords; i++) {
+			xPoints[i] = gateStartPositions[from+i];
+			xPoints[numRecords+i] = gateStartPositions[from+(numRecords-1)-i] + direction*gateLength;
+			yPoints[i] = i;
+			yPoints[numRecords+i] = (numRecords-1) - i;
+		}
+		return new PolygonRoi(new Polygon(xPoints, yPoints, numRecords*2), Roi.POLYGON);
+	}
+
+	/**
+	 * Returns a copy of the gate map {@code gateStartPositions}, an image of
+	 * {@code recordsPerFrame} columns (records) and {@code numberOfFrames}
+	 * rows (slices), smoothed with filter {@code filter} ({@link #MEDIAN},
+	 * {@link #GAUSSIAN} or {@link #MEAN}) of radius {@code radius} (the
+	 * standard deviation of the Gaussian filter). An unknown filter returns
+	 * an unsmoothed copy.
+	 *
+	 * @param gateStartPositions gate map
+	 * @param recordsPerFrame    number of records in each slice
+	 * @param numberOfFrames     number of slices
+	 * @param filter             smoothing filter
+	 * @param radius             filter radius
+	 * @return smoothed gate map
+	 */
+	public static short[] smooth(short[] gateStartPositions, int recordsPerFrame, int numberOfFrames, int filter, double radius)
+	{
+		ImageProcessor smoothedGates = new ShortProcessor(recordsPerFrame, numberOfFrames, gateStartPositions.clone(), null);
+		switch (filter) {
+			case MEDIAN: {
+				RankFilters rf = new RankFilters();
+				rf.rank(smoothedGates, radius, RankFilters.MEDIAN);
+				break;
+			}
+			case GAUSSIAN: {
+				GaussianBlur gb = new GaussianBlur();
+				gb.blurGaussian(smoothedGates, radius, radius, 0.01);
+				break;
+			}
+			case MEAN: {
+				RankFilters rf = new RankFilters();
+				rf.rank(smoothedGates, radius, RankFilters.MEAN);
+				break;
+			}
+			default:
+		}
+		return (short[])smoothedGates.getPixels();
+	}
+
+	/**
+	 * Substitutes the nearest valid gate start position for all positions of
+	 * the gate map {@code gateStartPositions} (an image of
+	 * {@code recordsPerFrame} columns and {@code stackSize} rows) where no
+	 * valid (non-negative) gate was detected, averaging the valid gates at the
+	 * nearest (Euclidean) distance when there is more than one. The gate map
+	 * is unchanged if it has no valid gates. Employs the linear-time distance
+	 * transform of Felzenszwalb and Huttenlocher ("Distance Transforms of
+	 * Sampled Functions", Theory of Computing 8, 2012): a pass down and up
+	 * each column finds the nearest valid gates within the column, and a lower
+	 * envelope of parabolas along each row then finds the nearest columns.
+	 * Both passes are split across threads (see {@link RecordPartitioner}).
+	 *
+	 * @param gateStartPositions gate map, filled in place
+	 * @param recordsPerFrame    number of records in each slice
+	 * @param stackSize          number of slices
+	 */
+	public static void fillMissingGates(final short[] gateStartPositions, final int recordsPerFrame, final int stackSize)
+	{
+		// distance to, and sum and number of, the nearest valid gates in the same column (distance -1 if none)
+		final int[] columnDistance = new int[gateStartPositions.length];
+		final int[] columnSum = new int[gateStartPositions.length];
+		final int[] columnCount = new int[gateStartPositions.length];
+
+		// first pass: columns, split into ranges of columns so each sweep proceeds row by row
+		RecordPartitioner.forEachChunk(recordsPerFrame, stackSize, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromColumn, int toColumn)
+			{
+				// sweep down, recording the nearest valid gate above
+				for (int y = 0; y < stackSize; y++) {
+					for (int x = fromColumn, i = y * recordsPerFrame + fromColumn; x < toColumn; x++, i++) {
+						if (gateStartPositions[i] >= 0) {
+							columnDistance[i] = 0;
+							columnSum[i] = gateStartPositions[i];
+							columnCount[i] = 1;
+						} else if (y > 0 && columnDistance[i - recordsPerFrame] >= 0) {
+							columnDistance[i] = columnDistance[i - recordsPerFrame] + 1;
+							columnSum[i] = columnSum[i - recordsPerFrame];
+							columnCount[i] = 1;
+						} else {
+							columnDistance[i] = -1;
+						}
+					}
+				}
+
+				// sweep up, merging the nearest valid gate below
+				int[] belowDistance = new int[toColumn - fromColumn];
+				int[] belowValue = new int[toColumn - fromColumn];
+				Arrays.fill(belowDistance, -1);
+				for (int y = stackSize - 1; y >= 0; y--) {
+					for (int x = fromColumn, i = y * recordsPerFrame + fromColumn; x < toColumn; x++, i++) {
+						int b = x - fromColumn;
+						if (gateStartPositions[i] >= 0) {
+							belowDistance[b] = 0;
+							belowValue[b] = gateStartPositions[i];
+						} else if (belowDistance[b] >= 0) {
+							belowDistance[b]++;
+							if (columnDistance[i] < 0 || belowDistance[b] < columnDistance[i]) {
+								columnDistance[i] = belowDistance[b];
+								columnSum[i] = belowValue[b];
+								columnCount[i] = 1;
+							} else if (belowDistance[b] == columnDistance[i]) {
+								columnSum[i] += belowValue[b];
+								columnCount[i]++;
+							}
+						}
+					}
+				}
+			}
+		});
+
+		// second pass: rows, using the lower envelope of parabolas centered on columns with valid gates
+		RecordPartitioner.forEachChunk(stackSize, recordsPerFrame, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRow, int toRow)
+			{
+				int[] v = new int[recordsPerFrame];		// columns of parabolas in the envelope
+				long[] zNum = new long[recordsPerFrame + 1];	// left boundary of each parabola, as the fraction zNum/zDen
+				long[] zDen = new long[recordsPerFrame + 1];
+				for (int y = fromRow; y < toRow; y++) {
+					int offset = y * recordsPerFrame;
+
+					// construct lower envelope
+					int k = -1;
+					for (int q = 0; q < recordsPerFrame; q++) {
+						int gq = columnDistance[offset + q];
+						if (gq < 0) {
+							continue;
+						}
+						long fq = (long) gq * gq + (long) q * q;
+						long sNum = 0, sDen = 1;
+						while (k >= 0) {
+							int p = v[k];
+							long gp = columnDistance[offset + p];
+							sNum = fq - (gp * gp + (long) p * p);
+							sDen = 2L * (q - p);
+							// discard parabolas that are nowhere below the envelope; those touching it at a single point are kept, so that ties can be averaged
+							if (k > 0 && sNum * zDen[k] < zNum[k] * sDen) {
+								k--;
+							} else {
+								break;
+							}
+						}
+						k++;
+						v[k] = q;
+						zNum[k] = sNum;
+						zDen[k] = sDen;
+					}
+					if (k < 0) {
+						continue;	// no valid gates in any column
+					}
+					int last = k;
+
+					// fill missing gates from the envelope
+					k = 0;
+					for (int x = 0; x < recordsPerFrame; x++) {
+						if (gateStartPositions[offset + x] >= 0) {
+							continue;
+						}
+						while (k < last && zNum[k + 1] < x * zDen[k + 1]) {
+							k++;
+						}
+						long sum = columnSum[offset + v[k]];
+						long nValid = columnCount[offset + v[k]];
+						for (int j = k + 1; j <= last && zNum[j] == x * zDen[j]; j++) {
+							sum += columnSum[offset + v[j]];
+							nValid += columnCount[offset + v[j]];
+						}
+						gateStartPositions[offset + x] = (short) (sum / nValid);
+					}
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Indices of an image that let a {@link GateDetector} gate it again, with a
+ * new threshold, search start point or detection method, without scanning
+ * every record: the {@link PeakIndex} of each slice, and the statistics of
+ * each slice ({@link SliceStatisticsIndex}), from which slices and records
+ * in which no gate can be detected are skipped, and a sketch of all pixel
+ * values, from which percentile thresholds are found. A gate index belongs to
+ * one gating session, such as an interactive gating dialog, and is passed to
+ * {@link GateDetector#detectSlices(GateIndex, int, int, float, short[])} for
+ * each detection of the session; slices are indexed when first gated.
+ * <p>
+ * The peak indices are kept within a memory budget, the least recently used
+ * being evicted first. If the peak indices of all slices would not fit
+ * within the budget, as estimated from the size of the first one built, or
+ * if the stack is virtual, slices are not indexed, and are scanned instead.
+ * A slice is recognized as modified when its pixel array has been replaced;
+ * changes made to the pixel values in place cannot be detected, and must be
+ * reported with {@link #invalidate(int)} or {@link #invalidateAll()}. The
+ * sketch of a virtual stack is assumed not to change.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class GateIndex
+{
+	/**
+	 * Default memory budget of each gate index in bytes.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024L * 1024L;
+
+	private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private final ImagePlus image;
+	private final Map<Integer, Entry> peakIndices = new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+	private long memoryUsed = 0L;
+	// size of the first peak index built, from which the size of the indices of the whole stack is estimated
+	private long sliceIndexSize = 0L;
+	// incremented by each invalidation, so that indices built meanwhile are discarded
+	private int generation = 0;
+	private QuantileSketch sketch;
+	// stack and pixel arrays (null for virtual stacks) the sketch was made from
+	private ImageStack sketchStack;
+	private Object[] sketchPixels;
+
+	// peak index of a slice and the pixel array it was built from
+	private static final class Entry
+	{
+		private final Object pixels;
+		private final PeakIndex peakIndex;
+		private final long size;
+
+		private Entry(Object pixels, PeakIndex peakIndex)
+		{
+			this.pixels = pixels;
+			this.peakIndex = peakIndex;
+			size = peakIndex.getMemorySize();
+		}
+	}
+
+	private GateIndex(ImagePlus image)
+	{
+		this.image = image;
+	}
+
+	/**
+	 * Returns a new, empty gate index of {@code image}. Output is null if
+	 * {@code image==null}.
+	 *
+	 * @param image input image
+	 * @return gate index of the image
+	 */
+	public static GateIndex create(ImagePlus image)
+	{
+		return image != null ? new GateIndex(image) : null;
+	}
+
+	/**
+	 * Returns the maximum total size of the peak indices of each gate index
+	 * in bytes.
+	 *
+	 * @return memory budget in bytes
+	 */
+	public static synchronized long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the maximum total size of the peak indices of each gate index in
+	 * bytes, which applies to slices indexed later. Negative values are
+	 * ignored.
+	 *
+	 * @param bytes memory budget in bytes
+	 */
+	public static synchronized void setMemoryBudget(long bytes)
+	{
+		if (bytes >= 0L) {
+			memoryBudget = bytes;
+		}
+	}
+
+	/**
+	 *
+	 * @return indexed image
+	 */
+	public ImagePlus getImage()
+	{
+		return image;
+	}
+
+	/**
+	 *
+	 * @return current stack of the indexed image
+	 */
+	public ImageStack getStack()
+	{
+		return image.getStack();
+	}
+
+	/**
+	 * Returns the statistics of slice {@code slice}, from the statistics
+	 * index of the image. Output is null if {@code slice} is out of range or
+	 * the stack is virtual, as reading the slice for its statistics would
+	 * cost as much as scanning it.
+	 *
+	 * @param slice slice number, from 1 to the stack size
+	 * @return statistics of the slice
+	 */
+	public SliceStatisticsIndex.SliceStatistics getStatistics(int slice)
+	{
+		return image.getStack().isVirtual() ? null : SliceStatisticsIndex.getIndex(image).getSlice(slice);
+	}
+
+	/**
+	 * Returns a sketch of all pixel values of the image (see
+	 * {@link WaveformPercentiles#sketchStack(ImageStack)}), making it if the
+	 * image has not been sketched or any slice has been modified since. The
+	 * sketch is shared and must not be modified.
+	 *
+	 * @return sketch of the pixel values of the image
+	 */
+	public QuantileSketch getSketch()
+	{
+		ImageStack stack;
+		int sketchGeneration;
+		synchronized (this) {
+			stack = image.getStack();
+			if (sketch != null && isSketched(stack)) {
+				return sketch;
+			}
+			sketchGeneration = generation;
+		}
+
+		QuantileSketch stackSketch = WaveformPercentiles.sketchStack(stack);
+
+		// the sketch is kept only if the image has not been invalidated meanwhile
+		synchronized (this) {
+			if (generation == sketchGeneration) {
+				sketch = stackSketch;
+				sketchStack = stack;
+				sketchPixels = null;
+				if (!stack.isVirtual()) {
+					sketchPixels = new Object[stack.getSize()];
+					for (int slice = 1; slice <= sketchPixels.length; slice++) {
+						sketchPixels[slice - 1] = stack.getPixels(slice);
+					}
+				}
+			}
+		}
+		return stackSketch;
+	}
+
+	/**
+	 * Returns the total size of the peak indices in bytes.
+	 *
+	 * @return memory used in bytes
+	 */
+	public synchronized long getMemoryUsed()
+	{
+		return memoryUsed;
+	}
+
+	/**
+	 * Returns true if slice {@code slice} has an up-to-date peak index, so
+	 * that {@link #getPeakIndex(int)} returns without building one.
+	 *
+	 * @param slice slice number, from 1 to the stack size
+	 * @return true if the slice is indexed
+	 */
+	public synchronized boolean isIndexed(int slice)
+	{
+		ImageStack stack = image.getStack();
+		if (slice < 1 || slice > stack.getSize() || stack.isVirtual()) {
+			return false;
+		}
+		Entry entry = peakIndices.get(slice);
+		return entry != null && entry.pixels == stack.getPixels(slice);
+	}
+
+	/**
+	 * Returns the peak index of slice {@code slice}, building it if the
+	 * slice has not been indexed or has been modified. Output is null if
+	 * {@code slice} is out of range, the stack is virtual, or the peak
+	 * indices of the stack would not fit within the memory budget. Indices
+	 * are built without holding the lock of the gate index, so that
+	 * different slices may be indexed concurrently.
+	 *
+	 * @param slice slice number, from 1 to the stack size
+	 * @return peak index of the slice
+	 */
+	public PeakIndex getPeakIndex(int slice)
+	{
+		Object pixels;
+		int width;
+		int builtGeneration;
+		long budget = getMemoryBudget();
+		synchronized (this) {
+			ImageStack stack = image.getStack();
+			if (slice < 1 || slice > stack.getSize() || stack.isVirtual()) {
+				return null;
+			}
+			pixels = stack.getPixels(slice);
+			Entry entry = peakIndices.get(slice);
+			if (entry != null && entry.pixels == pixels) {
+				return entry.peakIndex;
+			}
+			if (sliceIndexSize > budget/stack.getSize()) {
+				return null;
+			}
+			width = stack.getWidth();
+			builtGeneration = generation;
+		}
+
+		PeakIndex peakIndex = PeakIndex.build(pixels, width);
+		if (peakIndex == null) {
+			peakIndex = PeakIndex.build(image.getStack().getProcessor(slice).convertToFloat().getPixels(), width);
+		}
+		if (peakIndex == null) {
+			return null;
+		}
+
+		// the index is kept only if the slice has not been invalidated meanwhile
+		synchronized (this) {
+			Entry entry = new Entry(pixels, peakIndex);
+			if (sliceIndexSize == 0L) {
+				sliceIndexSize = entry.size;
+			}
+			if (generation == builtGeneration && entry.size <= budget) {
+				Entry previous = peakIndices.put(slice, entry);
+				if (previous != null) {
+					memoryUsed -= previous.size;
+				}
+				memoryUsed += entry.size;
+				evict(budget);
+			}
+		}
+		return peakIndex;
+	}
+
+	/**
+	 * Marks slice {@code slice} as modified, so that its peak index and
+	 * statistics are computed again when next requested.
+	 *
+	 * @param slice slice number, from 1 to the stack size
+	 */
+	public void invalidate(int slice)
+	{
+		synchronized (this) {
+			Entry entry = peakIndices.remove(slice);
+			if (entry != null) {
+				memoryUsed -= entry.size;
+			}
+			sketch = null;
+			generation++;
+		}
+		SliceStatisticsIndex.getIndex(image).invalidate(slice);
+	}
+
+	/**
+	 * Marks all slices as modified, so that their peak indices and
+	 * statistics are computed again when next requested.
+	 */
+	public void invalidateAll()
+	{
+		synchronized (this) {
+			peakIndices.clear();
+			memoryUsed = 0L;
+			sketch = null;
+			generation++;
+		}
+		SliceStatisticsIndex.getIndex(image).invalidateAll();
+	}
+
+	// true if the sketch was made from the slices of stack
+	private boolean isSketched(ImageStack stack)
+	{
+		if (stack.isVirtual() || sketchPixels == null) {
+			return stack == sketchStack;
+		}
+		if (stack.getSize() != sketchPixels.length) {
+			return false;
+		}
+		for (int slice = 1; slice <= sketchPixels.length; slice++) {
+			if (stack.getPixels(slice) != sketchPixels[slice - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// removes least recently used peak indices until the total size is within the budget
+	private void evict(long budget)
+	{
+		Iterator<Entry> iterator = peakIndices.values().iterator();
+		while (memoryUsed > budget && iterator.hasNext()) {
+			memoryUsed -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+}
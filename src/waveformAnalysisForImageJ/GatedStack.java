@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Virtual stack of the gated data of a source stack, whose 32-bit slices are
+ * built when requested from the source stack and a map of gate start
+ * positions, so that gated data can be displayed and measured without a full
+ * copy of the source. Each record (row) of a slice is either the gated
+ * segment of the corresponding source record, of length equal to the gate
+ * length, or the full-length source record with all values outside the gate
+ * set to zero. Gate positions are stored slice by slice, one per record. A
+ * gate extends from its position toward the end of the record, or, for gates
+ * found by a backward search, toward the start of the record, ending at its
+ * position. A negative gate position (no gate detected) is taken as the start
+ * of the record, and the parts of gates that extend past either end of a
+ * record are zero. The gated values are optionally multiplied by a window
+ * function. 8-bit and 16-bit source slices are read directly, as unsigned
+ * values.
+ * <p>
+ * The most recently used slices are kept in a cache of
+ * {@link #DEFAULT_CACHE_SIZE} slices (see {@link #setCacheSize(int)}), and
+ * slices may be requested from several threads at once. Slices reflect the
+ * source stack at the time they are built, and changes made to the pixels of
+ * a slice last only while it remains in the cache.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public class GatedStack extends VirtualStack
+{
+	/**
+	 * Default number of slices kept in the cache.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 8;
+	private final ImageStack source;
+	private final int[] gateStartPositions;
+	private final int gateLength;
+	private final boolean isFullLength;
+	private final boolean isBackward;
+	private final float[] weights;
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+	private final Map<Integer, float[]> cache = new LinkedHashMap<Integer, float[]>(16, 0.75f, true);
+
+	private GatedStack(ImageStack source, int[] gateStartPositions, int gateLength, boolean isFullLength, boolean isBackward, float[] weights)
+	{
+		super(isFullLength ? source.getWidth() : gateLength, source.getHeight(), null, null);
+		this.source = source;
+		this.gateStartPositions = gateStartPositions;
+		this.gateLength = gateLength;
+		this.isFullLength = isFullLength;
+		this.isBackward = isBackward;
+		this.weights = weights;
+	}
+
+	/**
+	 * Returns a virtual stack of the gated data of {@code source}, whose gate
+	 * start positions are {@code gateStartPositions}, with the gate positions
+	 * of slice {@code n} at indices {@code (n-1)*height} to
+	 * {@code n*height-1}. If {@code isFullLength} is true, each slice has the
+	 * width of the source and contains the gated values at their original
+	 * positions; otherwise each slice has width {@code gateLength} and
+	 * contains the gated segments. If {@code isBackward} is true, each gate
+	 * covers the {@code gateLength} points ending at its position, rather
+	 * than those starting there. Gated values are multiplied by
+	 * {@code weights} (in order of increasing position), unless
+	 * {@code weights==null}. The gate positions and
+	 * weights are not copied, and must not be modified afterwards. Output is
+	 * null if {@code source==null}, {@code gateStartPositions==null},
+	 * {@code gateStartPositions.length} is not equal to the number of records
+	 * in the source stack, {@code gateLength<=0},
+	 * {@code gateLength>source.getWidth()}, or if {@code weights!=null} and
+	 * {@code weights.length<gateLength}.
+	 *
+	 * @param source             source stack
+	 * @param gateStartPositions gate start position of each record of each
+	 *                           slice
+	 * @param gateLength         gate length in points
+	 * @param isFullLength       set to true for full-length gated waveforms,
+	 *                           or false for gated segments
+	 * @param isBackward         set to true if gates extend backward from
+	 *                           their positions
+	 * @param weights            window function applied to each gate, or null
+	 * @return virtual stack of gated data
+	 */
+	public static GatedStack create(ImageStack source, int[] gateStartPositions, int gateLength, boolean isFullLength, boolean isBackward, float[] weights)
+	{
+		if (source == null || gateStartPositions == null || gateStartPositions.length != source.getHeight()*source.getSize() || gateLength <= 0
+			|| gateLength > source.getWidth() || (weights != null && weights.length < gateLength)) {
+			return null;
+		}
+		return new GatedStack(source, gateStartPositions, gateLength, isFullLength, isBackward, weights);
+	}
+
+	/**
+	 * Returns a virtual stack of the gated data of {@code source}, as
+	 * {@link #create(ImageStack, int[], int, boolean, boolean, float[])},
+	 * from gate start positions stored as {@code short} values.
+	 *
+	 * @param source             source stack
+	 * @param gateStartPositions gate start position of each record of each
+	 *                           slice
+	 * @param gateLength         gate length in points
+	 * @param isFullLength       set to true for full-length gated waveforms,
+	 *                           or false for gated segments
+	 * @param isBackward         set to true if gates extend backward from
+	 *                           their positions
+	 * @param weights            window function applied to each gate, or null
+	 * @return virtual stack of gated data
+	 */
+	public static GatedStack create(ImageStack source, short[] gateStartPositions, int gateLength, boolean isFullLength, boolean isBackward, float[] weights)
+	{
+		if (gateStartPositions == null) {
+			return null;
+		}
+		int[] positions = new int[gateStartPositions.length];
+		for (int i=0; i<positions.length; i++) {
+			positions[i] = gateStartPositions[i];
+		}
+		return create(source, positions, gateLength, isFullLength, isBackward, weights);
+	}
+
+	/**
+	 * Returns the maximum number of slices kept in the cache.
+	 *
+	 * @return cache size in slices
+	 */
+	public synchronized int getCacheSize()
+	{
+		return cacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of slices kept in the cache, evicting the least
+	 * recently used slices if necessary. Negative values are ignored.
+	 *
+	 * @param slices cache size in slices
+	 */
+	public synchronized void setCacheSize(int slices)
+	{
+		if (slices >= 0) {
+			cacheSize = slices;
+			evict();
+		}
+	}
+
+	public ImageProcessor getProcessor(int n)
+	{
+		if (n < 1 || n > getSize()) {
+			throw new IllegalArgumentException("Argument out of range: " + n);
+		}
+		Integer key = Integer.valueOf(n);
+		synchronized (this) {
+			float[] pixels = cache.get(key);
+			if (pixels != null) {
+				return new FloatProcessor(getWidth(), getHeight(), pixels, null);
+			}
+		}
+
+		// slices are built outside the lock so that they can be built in parallel
+		float[] pixels = gateSlice(n);
+		synchronized (this) {
+			if (cacheSize > 0) {
+				cache.put(key, pixels);
+				evict();
+			}
+		}
+		return new FloatProcessor(getWidth(), getHeight(), pixels, null);
+	}
+
+	public int getSize()
+	{
+		return source.getSize();
+	}
+
+	public String getSliceLabel(int n)
+	{
+		return source.getSliceLabel(n);
+	}
+
+	public int getBitDepth()
+	{
+		return 32;
+	}
+
+	// builds slice n from the source, in parallel over records
+	private float[] gateSlice(int n)
+	{
+		Object sourcePixels = source.getPixels(n);
+		PixelArray values = PixelArray.wrap(sourcePixels);
+		if (values == null) {
+			values = PixelArray.wrap(source.getProcessor(n).convertToFloat().getPixels());
+		}
+		final PixelArray input = values;
+		final int recordLength = source.getWidth();
+		final int numRecords = source.getHeight();
+		final int width = getWidth();
+		final int gateOffset = (n-1)*numRecords;
+		final float[] gatedPixels = new float[width*numRecords];
+
+		RecordPartitioner.forEachChunk(numRecords, recordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				for (int i=fromRecord; i<toRecord; i++) {
+					int position = Math.max(gateStartPositions[gateOffset+i], 0);
+					int start = isBackward ? position-gateLength+1 : position;
+					int inputOffset = i*recordLength + start;
+					int outputOffset = isFullLength ? inputOffset : i*width;
+					for (int j=Math.max(0, -start); j<Math.min(gateLength, recordLength-start); j++) {
+						float value = input.get(inputOffset+j);
+						gatedPixels[outputOffset+j] = weights != null ? weights[j]*value : value;
+					}
+				}
+			}
+		});
+
+		return gatedPixels;
+	}
+
+	private void evict()
+	{
+		Iterator<float[]> iterator = cache.values().iterator();
+		while (cache.size() > cacheSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+}
@@ -77,8 +77,19 @@ public class InterpolateClippedRegions implements ExtendedPlugInFilter, DialogLi
 		System.arraycopy(interpolatedPixels, 0, pixels, 0, pixels.length);
 	}
 
-	public static final float[] execute(float[] waveforms, int recordLength, double threshold)
+	public static final float[] execute(float[] waveforms, final int recordLength, final double threshold)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, threshold);
+				}
+			});
+		}
+		
 		if (waveforms == null || recordLength <= 3 || waveforms.length < recordLength || waveforms.length % recordLength != 0) {
 			return null;
 		}
@@ -149,8 +160,19 @@ public class InterpolateClippedRegions implements ExtendedPlugInFilter, DialogLi
 		return interpolatedWaveforms;
 	}
 
-	public static final double[] execute(double[] waveforms, int recordLength, double threshold)
+	public static final double[] execute(double[] waveforms, final int recordLength, final double threshold)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, threshold);
+				}
+			});
+		}
+		
 		if (waveforms == null || recordLength <= 3 || waveforms.length < recordLength || waveforms.length % recordLength != 0) {
 			return null;
 		}
@@ -97,8 +97,19 @@ public class Kurtosis implements ExtendedPlugInFilter
 	 * @param recordLength size of each record in {@code waveforms}
 	 * @return array of kurtosis values of input waveforms
 	 */
-	public static float[] execute(float[] waveforms, int recordLength)
+	public static float[] execute(float[] waveforms, final int recordLength)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 1 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -106,6 +117,7 @@ public class Kurtosis implements ExtendedPlugInFilter
 			
 			// allocate output array
 			float[] kurtoses = new float[numRecords];
+			MomentAccumulator moments = new MomentAccumulator(4);
 			
 			// loop over all records
 			for (int i=0; i<numRecords; i++) {
@@ -114,7 +126,9 @@ public class Kurtosis implements ExtendedPlugInFilter
 				int offset = i*recordLength;
 				
 				// find kurtosis of current waveform
-				kurtoses[i] = (float)kurtosis(waveforms, offset, offset+recordLength);
+				moments.clear();
+				moments.add(waveforms, offset, offset+recordLength);
+				kurtoses[i] = (float)moments.kurtosis();
 
 			}
 			
@@ -141,8 +155,19 @@ public class Kurtosis implements ExtendedPlugInFilter
 	 * @param recordLength size of each record in {@code waveforms}
 	 * @return array of kurtosis values of input waveforms
 	 */
-	public static double[] execute(double[] waveforms, int recordLength)
+	public static double[] execute(double[] waveforms, final int recordLength)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 1 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -150,6 +175,7 @@ public class Kurtosis implements ExtendedPlugInFilter
 			
 			// allocate output array
 			double[] kurtoses = new double[numRecords];
+			MomentAccumulator moments = new MomentAccumulator(4);
 			
 			// loop over all records
 			for (int i=0; i<numRecords; i++) {
@@ -158,7 +184,9 @@ public class Kurtosis implements ExtendedPlugInFilter
 				int offset = i*recordLength;
 				
 				// find kurtosis of current waveform
-				kurtoses[i] = kurtosis(waveforms, offset, offset+recordLength);
+				moments.clear();
+				moments.add(waveforms, offset, offset+recordLength);
+				kurtoses[i] = moments.kurtosis();
 
 			}
 			
@@ -169,52 +197,6 @@ public class Kurtosis implements ExtendedPlugInFilter
 		return null;
 	}
 	
-	private static double kurtosis(float[] a, int from, int to)
-	{
-		long n = 0;
-		double mean = 0.0;
-		double m2 = 0.0;
-		double m3 = 0.0;
-		double m4 = 0.0;
-
-		for (int i = from; i < to; i++) {
-			n++;
-			double delta = a[i] - mean;
-			double deltaOverN = delta / n;
-			double deltaOverNSquared = deltaOverN * deltaOverN;
-			double term1 = delta * deltaOverN * (n-1);
-			mean += deltaOverN;
-			m4 += term1 * deltaOverNSquared * (n*n - 3*n + 3.0) + 6.0 * deltaOverNSquared * m2 - 4.0 * deltaOverN * m3;
-			m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
-			m2 += term1;
-		}
-
-		return (((n*m4) / (m2*m2)) - 3.0);
-	}
-	
-	private static double kurtosis(double[] a, int from, int to)
-	{
-		long n = 0;
-		double mean = 0.0;
-		double m2 = 0.0;
-		double m3 = 0.0;
-		double m4 = 0.0;
-
-		for (int i = from; i < to; i++) {
-			n++;
-			double delta = a[i] - mean;
-			double deltaOverN = delta / n;
-			double deltaOverNSquared = deltaOverN * deltaOverN;
-			double term1 = delta * deltaOverN * (n-1);
-			mean += deltaOverN;
-			m4 += term1 * deltaOverNSquared * (n*n - 3*n + 3.0) + 6.0 * deltaOverNSquared * m2 - 4.0 * deltaOverN * m3;
-			m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
-			m2 += term1;
-		}
-
-		return (((n*m4) / (m2*m2)) - 3.0);
-	}
-	
     public void setNPasses(int nPasses) {}
 	
 }
@@ -95,8 +95,19 @@ public class MaximumIndex implements ExtendedPlugInFilter
 	 * @param recordLength size of each record in {@code waveforms}
 	 * @return array of indices of maximum values of input waveforms
 	 */
-	public static int[] execute(float[] waveforms, int recordLength)
+	public static int[] execute(float[] waveforms, final int recordLength)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (int[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -148,8 +159,19 @@ public class MaximumIndex implements ExtendedPlugInFilter
 	 * @param recordLength size of each record in {@code waveforms}
 	 * @return array of indices of maximum values of input waveforms
 	 */
-	public static int[] execute(double[] waveforms, int recordLength)
+	public static int[] execute(double[] waveforms, final int recordLength)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (int[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -90,8 +90,19 @@ public class MaximumValue implements ExtendedPlugInFilter
 	 * @param recordLength size of each record in {@code waveforms}
 	 * @return array of maximum values of input waveforms
 	 */
-	public static float[] execute(float[] waveforms, int recordLength)
+	public static float[] execute(float[] waveforms, final int recordLength)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -139,8 +150,19 @@ public class MaximumValue implements ExtendedPlugInFilter
 	 * @param recordLength size of each record in {@code waveforms}
 	 * @return array of maximum values of input waveforms
 	 */
-	public static double[] execute(double[] waveforms, int recordLength)
+	public static double[] execute(double[] waveforms, final int recordLength)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
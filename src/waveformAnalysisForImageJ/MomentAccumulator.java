@@ -0,0 +1,389 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+/**
+ * Count, mean and sums of powers of deviations from the mean (central moments
+ * up to order 4) of a stream of values, from which the variance, skewness and
+ * kurtosis of the values can be computed at any time. Values are added one at
+ * a time using the numerically stable update described by
+ * <a href="http://people.xiph.org/~tterribe/notes/homs.html">Timothy B. Terriberry (2007)</a>,
+ * and the moments of two sets of values are merged exactly using the pairwise
+ * update formulas of Chan, Golub and LeVeque (1979) and
+ * <a href="http://prod.sandia.gov/techlib/access-control.cgi/2008/086212.pdf">Pébay (2008)</a>.
+ * A long record may therefore be accumulated in pieces, for example as it is
+ * read from disk or by separate threads, and the partial results combined.
+ * <p>
+ * Moments are accumulated only up to the order given when the accumulator is
+ * created, since each additional order adds to the cost of every update; the
+ * statistics that depend on higher orders are then {@code NaN}. Adding a
+ * large range of an array splits the range into blocks of
+ * {@link #BLOCK_LENGTH} values whose moments are computed in parallel (see
+ * {@link RecordPartitioner}) and merged in order, so that the result does not
+ * depend on the number of threads.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class MomentAccumulator
+{
+	/**
+	 * Number of values in each block of a range that is split across threads.
+	 */
+	public static final int BLOCK_LENGTH = 1 << 10;
+	// ranges shorter than this are accumulated in a single stream
+	private static final int MIN_BLOCKED_LENGTH = 2*RecordPartitioner.RECORD_ALIGNMENT*BLOCK_LENGTH;
+	private final int order;
+	private long n;
+	private double mean;
+	private double m2;
+	private double m3;
+	private double m4;
+
+	/**
+	 * Creates an empty accumulator of central moments up to order 4.
+	 */
+	public MomentAccumulator()
+	{
+		this(4);
+	}
+
+	/**
+	 * Creates an empty accumulator of central moments up to order
+	 * {@code order}, which is clamped to the range {@code 2..4}.
+	 *
+	 * @param order highest order of central moment to accumulate: 2 for
+	 *              variance, 3 for skewness, 4 for kurtosis
+	 */
+	public MomentAccumulator(int order)
+	{
+		this.order = Math.max(2, Math.min(4, order));
+	}
+
+	/**
+	 * Removes all values from the accumulator.
+	 */
+	public void clear()
+	{
+		n = 0;
+		mean = 0.0;
+		m2 = 0.0;
+		m3 = 0.0;
+		m4 = 0.0;
+	}
+
+	/**
+	 * Adds {@code x} to the accumulated values.
+	 *
+	 * @param x value to add
+	 */
+	public void add(double x)
+	{
+		n++;
+		double delta = x - mean;
+		double deltaOverN = delta / n;
+		if (order > 2) {
+			double term1 = delta * deltaOverN * (n-1);
+			if (order > 3) {
+				double deltaOverNSquared = deltaOverN * deltaOverN;
+				m4 += term1 * deltaOverNSquared * (n*n - 3*n + 3.0) + 6.0 * deltaOverNSquared * m2 - 4.0 * deltaOverN * m3;
+			}
+			m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
+			mean += deltaOverN;
+			m2 += term1;
+		} else {
+			// Welford's update
+			mean += deltaOverN;
+			m2 += delta * (x - mean);
+		}
+	}
+
+	/**
+	 * Adds the values in the specified range of an array to the accumulated
+	 * values. No error checking is performed on range limits; if the values
+	 * are negative or outside the range of the array, unexpected results may
+	 * occur or a runtime exception may be thrown.
+	 *
+	 * @param a    input array
+	 * @param from initial index of the range to add, inclusive
+	 * @param to   final index of the range to add, exclusive
+	 */
+	public void add(final float[] a, final int from, int to)
+	{
+		if (to - from >= MIN_BLOCKED_LENGTH) {
+			final int end = to;
+			final MomentAccumulator[] blocks = new MomentAccumulator[(to - from + BLOCK_LENGTH - 1)/BLOCK_LENGTH];
+			RecordPartitioner.forEachChunk(blocks.length, BLOCK_LENGTH, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					for (int b=fromRecord; b<toRecord; b++) {
+						blocks[b] = new MomentAccumulator(order);
+						blocks[b].accumulate(a, from + b*BLOCK_LENGTH, Math.min(end, from + (b+1)*BLOCK_LENGTH));
+					}
+				}
+			});
+			for (int b=0; b<blocks.length; b++) {
+				combine(blocks[b]);
+			}
+		} else {
+			accumulate(a, from, to);
+		}
+	}
+
+	/**
+	 * Adds the values in the specified range of an array to the accumulated
+	 * values. No error checking is performed on range limits; if the values
+	 * are negative or outside the range of the array, unexpected results may
+	 * occur or a runtime exception may be thrown.
+	 *
+	 * @param a    input array
+	 * @param from initial index of the range to add, inclusive
+	 * @param to   final index of the range to add, exclusive
+	 */
+	public void add(final double[] a, final int from, int to)
+	{
+		if (to - from >= MIN_BLOCKED_LENGTH) {
+			final int end = to;
+			final MomentAccumulator[] blocks = new MomentAccumulator[(to - from + BLOCK_LENGTH - 1)/BLOCK_LENGTH];
+			RecordPartitioner.forEachChunk(blocks.length, BLOCK_LENGTH, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					for (int b=fromRecord; b<toRecord; b++) {
+						blocks[b] = new MomentAccumulator(order);
+						blocks[b].accumulate(a, from + b*BLOCK_LENGTH, Math.min(end, from + (b+1)*BLOCK_LENGTH));
+					}
+				}
+			});
+			for (int b=0; b<blocks.length; b++) {
+				combine(blocks[b]);
+			}
+		} else {
+			accumulate(a, from, to);
+		}
+	}
+
+	/**
+	 * Merges the values accumulated by {@code other} into this accumulator,
+	 * leaving {@code other} unchanged. The result is the same, to within
+	 * rounding error, as if the values had been added to this accumulator
+	 * directly. Both accumulators should accumulate moments of the same order.
+	 *
+	 * @param other accumulator to merge
+	 */
+	public void combine(MomentAccumulator other)
+	{
+		if (other.n == 0) {
+			return;
+		}
+		if (n == 0) {
+			n = other.n;
+			mean = other.mean;
+			m2 = other.m2;
+			m3 = other.m3;
+			m4 = other.m4;
+			return;
+		}
+
+		double na = n;
+		double nb = other.n;
+		double nab = na + nb;
+		double delta = other.mean - mean;
+		double deltaOverN = delta / nab;
+		double term1 = delta * deltaOverN * na * nb;
+		if (order > 2) {
+			double deltaOverNSquared = deltaOverN * deltaOverN;
+			if (order > 3) {
+				m4 += other.m4 + term1 * deltaOverNSquared * (na*na - na*nb + nb*nb) + 6.0 * deltaOverNSquared * (na*na*other.m2 + nb*nb*m2) + 4.0 * deltaOverN * (na*other.m3 - nb*m3);
+			}
+			m3 += other.m3 + term1 * deltaOverN * (na - nb) + 3.0 * deltaOverN * (na*other.m2 - nb*m2);
+		}
+		m2 += other.m2 + term1;
+		mean += nb * deltaOverN;
+		n += other.n;
+	}
+
+	/**
+	 *
+	 * @return number of accumulated values
+	 */
+	public long count()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the mean of the accumulated values, or {@code NaN} if there are
+	 * none.
+	 *
+	 * @return mean of the accumulated values
+	 */
+	public double mean()
+	{
+		return n == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * Returns the variance of the accumulated values.
+	 *
+	 * @param useUnbiasedEstimate set to true to return unbiased estimate of
+	 *                            variance
+	 * @return variance of the accumulated values
+	 */
+	public double variance(boolean useUnbiasedEstimate)
+	{
+		double norm = useUnbiasedEstimate ? 1.0 / (n - 1) : 1.0 / n;
+		return m2 * norm;
+	}
+
+	/**
+	 * Returns the skewness of the accumulated values, or {@code NaN} if the
+	 * accumulator was created with {@code order<3}.
+	 *
+	 * @param isSampleSkewness set true to return sample skewness, false to
+	 *                         return population skewness
+	 * @return skewness of the accumulated values
+	 */
+	public double skewness(boolean isSampleSkewness)
+	{
+		if (order < 3) {
+			return Double.NaN;
+		}
+		double skewness = (m3/n)/Math.pow(m2/n, 1.5);
+		if (!isSampleSkewness) {
+			skewness *= Math.sqrt(n*(n-1))/(n-2);
+		}
+		return skewness;
+	}
+
+	/**
+	 * Returns the excess kurtosis of the accumulated values, or {@code NaN}
+	 * if the accumulator was created with {@code order<4}.
+	 *
+	 * @return kurtosis of the accumulated values
+	 */
+	public double kurtosis()
+	{
+		if (order < 4) {
+			return Double.NaN;
+		}
+		return (((n*m4) / (m2*m2)) - 3.0);
+	}
+
+	// streams a range of values through the update loop for the accumulated order
+	private void accumulate(float[] a, int from, int to)
+	{
+		long n = this.n;
+		double mean = this.mean;
+		double m2 = this.m2;
+		double m3 = this.m3;
+		double m4 = this.m4;
+
+		if (order == 2) {
+			// Welford's update
+			for (int i = from; i < to; i++) {
+				n++;
+				double x = a[i];
+				double delta = x - mean;
+				mean += delta / n;
+				m2 += delta * (x - mean);
+			}
+		} else if (order == 3) {
+			for (int i = from; i < to; i++) {
+				n++;
+				double x = a[i];
+				double delta = x - mean;
+				double deltaOverN = delta / n;
+				double term1 = delta * deltaOverN * (n-1);
+				m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
+				mean += deltaOverN;
+				m2 += term1;
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				n++;
+				double x = a[i];
+				double delta = x - mean;
+				double deltaOverN = delta / n;
+				double deltaOverNSquared = deltaOverN * deltaOverN;
+				double term1 = delta * deltaOverN * (n-1);
+				m4 += term1 * deltaOverNSquared * (n*n - 3*n + 3.0) + 6.0 * deltaOverNSquared * m2 - 4.0 * deltaOverN * m3;
+				m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
+				mean += deltaOverN;
+				m2 += term1;
+			}
+		}
+
+		this.n = n;
+		this.mean = mean;
+		this.m2 = m2;
+		this.m3 = m3;
+		this.m4 = m4;
+	}
+
+	// streams a range of values through the update loop for the accumulated order
+	private void accumulate(double[] a, int from, int to)
+	{
+		long n = this.n;
+		double mean = this.mean;
+		double m2 = this.m2;
+		double m3 = this.m3;
+		double m4 = this.m4;
+
+		if (order == 2) {
+			// Welford's update
+			for (int i = from; i < to; i++) {
+				n++;
+				double x = a[i];
+				double delta = x - mean;
+				mean += delta / n;
+				m2 += delta * (x - mean);
+			}
+		} else if (order == 3) {
+			for (int i = from; i < to; i++) {
+				n++;
+				double x = a[i];
+				double delta = x - mean;
+				double deltaOverN = delta / n;
+				double term1 = delta * deltaOverN * (n-1);
+				m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
+				mean += deltaOverN;
+				m2 += term1;
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				n++;
+				double x = a[i];
+				double delta = x - mean;
+				double deltaOverN = delta / n;
+				double deltaOverNSquared = deltaOverN * deltaOverN;
+				double term1 = delta * deltaOverN * (n-1);
+				m4 += term1 * deltaOverNSquared * (n*n - 3*n + 3.0) + 6.0 * deltaOverNSquared * m2 - 4.0 * deltaOverN * m3;
+				m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
+				mean += deltaOverN;
+				m2 += term1;
+			}
+		}
+
+		this.n = n;
+		this.mean = mean;
+		this.m2 = m2;
+		this.m3 = m3;
+		this.m4 = m4;
+	}
+
+}
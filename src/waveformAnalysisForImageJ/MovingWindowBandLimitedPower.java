@@ -130,8 +130,19 @@ public class MovingWindowBandLimitedPower implements ExtendedPlugInFilter, Dialo
 	 * @param windowParameter used only for window functions that require it,
 	 *                        ignored otherwise
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int radius, WaveformUtils.WindowType windowType, double windowParameter)
+	public static final void execute(float[] waveforms, final int recordLength, final int radius, final WaveformUtils.WindowType windowType, final double windowParameter)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, windowType, windowParameter);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -208,8 +219,19 @@ public class MovingWindowBandLimitedPower implements ExtendedPlugInFilter, Dialo
 	 * @param windowParameter used only for window functions that require it,
 	 *                        ignored otherwise
 	 */
-	public static final void execute(double[] waveforms, int recordLength, int radius, WaveformUtils.WindowType windowType, double windowParameter)
+	public static final void execute(double[] waveforms, final int recordLength, final int radius, final WaveformUtils.WindowType windowType, final double windowParameter)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, windowType, windowParameter);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -9,7 +9,6 @@ import ij.plugin.filter.ExtendedPlugInFilter;
 import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.ImageProcessor;
 import java.awt.AWTEvent;
-import java.util.Arrays;
 
 
 /**
@@ -19,11 +18,11 @@ import java.util.Arrays;
  * computed values. The length of the moving window is equal to
  * {@code 2*radius+1}. At positions where portions of the moving window lie
  * outside the bounds of the waveform, the waveform values are mirrored about
- * the end points. This plugin utilizes a fast median-filtering algorithm
- * adapted from "Smoothing Scatterplots" by J.H. Friedman and W. Stuetzle
- * (Project Orion, Department of Statistics, Stanford University, 1982).
- * Computation complexity for this algorithm is O({@code n*k}), where {@code n}
- * is the number of records and {@code k} is the window length.
+ * the end points. The median is updated as the window moves using a pair of
+ * heaps holding the smaller and larger halves of the window (see
+ * {@link SlidingMedian}). Computation complexity for this algorithm is
+ * O({@code n*log(k)}), where {@code n} is the number of points and {@code k}
+ * is the window length.
  *
  * @author Jon N. Marsh
  * @version 2014-01-16
@@ -101,9 +100,9 @@ public class MovingWindowMedian implements ExtendedPlugInFilter, DialogListener
 	 * {@code waveforms.length} is not evenly divisible by {@code recordLength}.
 	 * At positions where a part of the moving window lies outside the bounds of
 	 * the waveform, the waveform values are mirrored around the appropriate end
-	 * point. This method is adapted from an algorithm described in "Smoothing
-	 * Scatterplots" by J.H. Friedman and W. Stuetzle (Project Orion, Department
-	 * of Statistics, Stanford University, 1982).
+	 * point. The median is maintained as the window moves with a pair of
+	 * heaps (see {@link SlidingMedian}), at a cost of O({@code log(radius)})
+	 * per point.
 	 *
 	 * @param waveforms	   one-dimensional array composed of a series of
 	 *                     concatenated records, each of size equal to
@@ -112,136 +111,61 @@ public class MovingWindowMedian implements ExtendedPlugInFilter, DialogListener
 	 * @param radius       radius of moving window; length of two-sided window
 	 *                     function is equal to {@code 2*radius+1}
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int radius)
+	public static final void execute(float[] waveforms, final int recordLength, final int radius)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
-				
+		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius > 0) {
-								
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
-			// loop over all records
-			for (int i=0; i<numRecords; i++) {
+			// sliding window, in which the value at (mirrored) index j+radius occupies slot j%windowLength
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				SlidingMedian window = new SlidingMedian(windowLength, scratch);
 				
-				// compute row offset
-				int offset = i*recordLength;
+				// borrow temporary copy of current waveform
+				float[] currentWaveformCopy = scratch.floats(recordLength);
 				
-				// create temporary copy of current waveform
-				float[] currentWaveformCopy = Arrays.copyOfRange(waveforms, offset, offset+recordLength);
-				
-				// compute median at first point
-				float[] segment = new float[windowLength];
-				segment[radius] = currentWaveformCopy[0];
-				for (int j=1; j<=radius; j++) {
-					segment[radius+j] = currentWaveformCopy[j];
-					segment[radius-j] = currentWaveformCopy[j];
-				}
-				Arrays.sort(segment);
-				float currentMedian = segment[radius];
-				float newMedian = currentMedian;
-				waveforms[offset] = currentMedian;
-				
-				// perform computation at each point in the waveform
-				for (int j=1; j<recordLength; j++) {
+				// loop over all records
+				for (int i=0; i<numRecords; i++) {
 					
-					int indexIn = j + radius;
-					int indexOut = j - (radius+1);
-					float yIn = elementAt(currentWaveformCopy, recordLength, indexIn);
-					float yOut = elementAt(currentWaveformCopy, recordLength, indexOut);
+					// compute row offset
+					int offset = i*recordLength;
 					
-					// below are the only cases for which the median needs to be recomputed
-					if (yIn > currentMedian) {
-						if (yOut <= currentMedian) {
-						    int kPlus = 0;
-						    float minPosDiffFromMedian = Float.POSITIVE_INFINITY;
-						    float smallestValueGreaterThanMedian = Float.POSITIVE_INFINITY;
-						    if (yOut < currentMedian) {
-						    	for (int k=-radius; k<=radius; k++) {
-						    		float currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-						    		if (currentValue > currentMedian) {
-						    		    kPlus++;
-						    		    if (currentValue - currentMedian < minPosDiffFromMedian) {
-						    		        minPosDiffFromMedian = currentValue - currentMedian;
-						    		        smallestValueGreaterThanMedian = currentValue;
-						    		    }
-						    		}
-						    	}
-						    	if (kPlus >= radius+1) {
-						    	    newMedian = smallestValueGreaterThanMedian;
-						    	}
-						    } else { // yOut == currentMedian
-						        boolean currentMedianExistsInNewSpan = false;
-    						    for (int k=-radius; k<=radius; k++) {
-    						        float currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-    						        if (currentValue >= currentMedian) {
-    						        	if (currentValue > currentMedian) {
-    						        		kPlus++;
-    						        		if (currentValue - currentMedian < minPosDiffFromMedian) {
-						    		        	minPosDiffFromMedian = currentValue - currentMedian;
-						    		        	smallestValueGreaterThanMedian = currentValue;
-						    		    	}
-    						        	} else {
-    						        	    currentMedianExistsInNewSpan = true;
-    						        	}
-    						        }
-    						    }
-    						    if (kPlus == radius+1) {
-    						        newMedian = smallestValueGreaterThanMedian;
-    						    } else {
-    						        newMedian = currentMedianExistsInNewSpan ? currentMedian : smallestValueGreaterThanMedian;
-    						    }
-    						}
-						} 
-					} else if (yIn < currentMedian) {
-					    if (yOut >= currentMedian) {
-					        int kMinus = 0;
-						    float minPosDiffFromMedian = Float.POSITIVE_INFINITY;
-						    float largestValueSmallerThanMedian = Float.NEGATIVE_INFINITY;
-						    if (yOut > currentMedian) {
-						        for (int k=-radius; k<=radius; k++) {
-						            float currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-						            if (currentValue < currentMedian) {
-						                kMinus++;
-						                if (currentMedian - currentValue < minPosDiffFromMedian) {
-						                    minPosDiffFromMedian = currentMedian - currentValue;
-						                    largestValueSmallerThanMedian = currentValue;
-						                }
-						            }
-						        }
-						        if (kMinus >= radius+1) {
-						            newMedian = largestValueSmallerThanMedian;
-						        }
-						    } else { // yOut == currentMedian
-						        boolean currentMedianExistsInNewSpan = false;
-						        for (int k=-radius; k<=radius; k++) {
-						            float currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-						            if (currentValue <= currentMedian) {
-						                if (currentValue < currentMedian) {
-						                    kMinus++;
-						                    if (currentMedian - currentValue < minPosDiffFromMedian) {
-						                        minPosDiffFromMedian = currentMedian - currentValue;
-						                        largestValueSmallerThanMedian = currentValue;
-						                    }
-						                } else {
-						                    currentMedianExistsInNewSpan = true;
-						                }
-						            }
-						        }
-						        if (kMinus == radius+1) {
-						            newMedian = largestValueSmallerThanMedian;
-						        } else {
-						            newMedian = currentMedianExistsInNewSpan ? currentMedian : largestValueSmallerThanMedian;
-						        }
-						    }
-					    }
-					} 
-
-					waveforms[offset+j] = newMedian;
-					currentMedian = newMedian;
+					// copy current waveform into temporary array
+					System.arraycopy(waveforms, offset, currentWaveformCopy, 0, recordLength);
+					
+					// compute median at first point
+					window.clear();
+					for (int k=-radius; k<=radius; k++) {
+						window.add(k+radius, elementAt(currentWaveformCopy, recordLength, k));
+					}
+					waveforms[offset] = (float)window.lowerMedian();
+					
+					// perform computation at each point in the waveform, replacing the
+					// value leaving the window by the one entering it
+					for (int j=1; j<recordLength; j++) {
+						window.replace((j-1)%windowLength, elementAt(currentWaveformCopy, recordLength, j+radius));
+						waveforms[offset+j] = (float)window.lowerMedian();
+					}
 					
 				}
-
+			} finally {
+				scratch.release(mark);
 			}
 			
 		}
@@ -259,9 +183,9 @@ public class MovingWindowMedian implements ExtendedPlugInFilter, DialogListener
 	 * {@code waveforms.length} is not evenly divisible by {@code recordLength}.
 	 * At positions where a part of the moving window lies outside the bounds of
 	 * the waveform, the waveform values are mirrored around the appropriate end
-	 * point. This method is adapted from an algorithm described in "Smoothing
-	 * Scatterplots" by J.H. Friedman and W. Stuetzle (Project Orion, Department
-	 * of Statistics, Stanford University, 1982).
+	 * point. The median is maintained as the window moves with a pair of
+	 * heaps (see {@link SlidingMedian}), at a cost of O({@code log(radius)})
+	 * per point.
 	 *
 	 * @param waveforms	                    one-dimensional array composed of a
 	 *                                      series of concatenated records, each
@@ -272,142 +196,67 @@ public class MovingWindowMedian implements ExtendedPlugInFilter, DialogListener
 	 * @param radius                        radius of moving window; length of two-sided window function
 	 *                                      is equal to {@code 2*radius+1}
 	 */
-	public static final void execute(double[] waveforms, int recordLength, int radius)
+	public static final void execute(double[] waveforms, final int recordLength, final int radius)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
-				
+		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius > 0) {
-								
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
-			// loop over all records
-			for (int i=0; i<numRecords; i++) {
+			// sliding window, in which the value at (mirrored) index j+radius occupies slot j%windowLength
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				SlidingMedian window = new SlidingMedian(windowLength, scratch);
 				
-				// compute row offset
-				int offset = i*recordLength;
+				// borrow temporary copy of current waveform
+				double[] currentWaveformCopy = scratch.doubles(recordLength);
 				
-				// create temporary copy of current waveform
-				double[] currentWaveformCopy = Arrays.copyOfRange(waveforms, offset, offset+recordLength);
-				
-				// compute median at first point
-				double[] segment = new double[windowLength];
-				segment[radius] = currentWaveformCopy[0];
-				for (int j=1; j<=radius; j++) {
-					segment[radius+j] = currentWaveformCopy[j];
-					segment[radius-j] = currentWaveformCopy[j];
-				}
-				Arrays.sort(segment);
-				double currentMedian = segment[radius];
-				double newMedian = currentMedian;
-				waveforms[offset] = currentMedian;
-				
-				// perform computation at each point in the waveform
-				for (int j=1; j<recordLength; j++) {
+				// loop over all records
+				for (int i=0; i<numRecords; i++) {
 					
-					int indexIn = j + radius;
-					int indexOut = j - (radius+1);
-					double yIn = elementAt(currentWaveformCopy, recordLength, indexIn);
-					double yOut = elementAt(currentWaveformCopy, recordLength, indexOut);
+					// compute row offset
+					int offset = i*recordLength;
 					
-					// below are the only cases for which the median needs to be recomputed
-					if (yIn > currentMedian) {
-						if (yOut <= currentMedian) {
-						    int kPlus = 0;
-						    double minPosDiffFromMedian = Double.POSITIVE_INFINITY;
-						    double smallestValueGreaterThanMedian = Double.POSITIVE_INFINITY;
-						    if (yOut < currentMedian) {
-						    	for (int k=-radius; k<=radius; k++) {
-						    		double currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-						    		if (currentValue > currentMedian) {
-						    		    kPlus++;
-						    		    if (currentValue - currentMedian < minPosDiffFromMedian) {
-						    		        minPosDiffFromMedian = currentValue - currentMedian;
-						    		        smallestValueGreaterThanMedian = currentValue;
-						    		    }
-						    		}
-						    	}
-						    	if (kPlus >= radius+1) {
-						    	    newMedian = smallestValueGreaterThanMedian;
-						    	}
-						    } else { // yOut == currentMedian
-						        boolean currentMedianExistsInNewSpan = false;
-    						    for (int k=-radius; k<=radius; k++) {
-    						        double currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-    						        if (currentValue >= currentMedian) {
-    						        	if (currentValue > currentMedian) {
-    						        		kPlus++;
-    						        		if (currentValue - currentMedian < minPosDiffFromMedian) {
-						    		        	minPosDiffFromMedian = currentValue - currentMedian;
-						    		        	smallestValueGreaterThanMedian = currentValue;
-						    		    	}
-    						        	} else {
-    						        	    currentMedianExistsInNewSpan = true;
-    						        	}
-    						        }
-    						    }
-    						    if (kPlus == radius+1) {
-    						        newMedian = smallestValueGreaterThanMedian;
-    						    } else {
-    						        newMedian = currentMedianExistsInNewSpan ? currentMedian : smallestValueGreaterThanMedian;
-    						    }
-    						}
-						} 
-					} else if (yIn < currentMedian) {
-					    if (yOut >= currentMedian) {
-					        int kMinus = 0;
-						    double minPosDiffFromMedian = Double.POSITIVE_INFINITY;
-						    double largestValueSmallerThanMedian = Double.NEGATIVE_INFINITY;
-						    if (yOut > currentMedian) {
-						        for (int k=-radius; k<=radius; k++) {
-						            double currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-						            if (currentValue < currentMedian) {
-						                kMinus++;
-						                if (currentMedian - currentValue < minPosDiffFromMedian) {
-						                    minPosDiffFromMedian = currentMedian - currentValue;
-						                    largestValueSmallerThanMedian = currentValue;
-						                }
-						            }
-						        }
-						        if (kMinus >= radius+1) {
-						            newMedian = largestValueSmallerThanMedian;
-						        }
-						    } else { // yOut == currentMedian
-						        boolean currentMedianExistsInNewSpan = false;
-						        for (int k=-radius; k<=radius; k++) {
-						            double currentValue = elementAt(currentWaveformCopy, recordLength, j+k);
-						            if (currentValue <= currentMedian) {
-						                if (currentValue < currentMedian) {
-						                    kMinus++;
-						                    if (currentMedian - currentValue < minPosDiffFromMedian) {
-						                        minPosDiffFromMedian = currentMedian - currentValue;
-						                        largestValueSmallerThanMedian = currentValue;
-						                    }
-						                } else {
-						                    currentMedianExistsInNewSpan = true;
-						                }
-						            }
-						        }
-						        if (kMinus == radius+1) {
-						            newMedian = largestValueSmallerThanMedian;
-						        } else {
-						            newMedian = currentMedianExistsInNewSpan ? currentMedian : largestValueSmallerThanMedian;
-						        }
-						    }
-					    }
-					} 
-
-					waveforms[offset+j] = newMedian;
-					currentMedian = newMedian;
+					// copy current waveform into temporary array
+					System.arraycopy(waveforms, offset, currentWaveformCopy, 0, recordLength);
+					
+					// compute median at first point
+					window.clear();
+					for (int k=-radius; k<=radius; k++) {
+						window.add(k+radius, elementAt(currentWaveformCopy, recordLength, k));
+					}
+					waveforms[offset] = window.lowerMedian();
+					
+					// perform computation at each point in the waveform, replacing the
+					// value leaving the window by the one entering it
+					for (int j=1; j<recordLength; j++) {
+						window.replace((j-1)%windowLength, elementAt(currentWaveformCopy, recordLength, j+radius));
+						waveforms[offset+j] = window.lowerMedian();
+					}
 					
 				}
-
+			} finally {
+				scratch.release(mark);
 			}
 			
 		}
 		
-	}	
-
+	}
+	
 	// Simple array indexing method that replicates out-of-bound indices with mirrored values around endpoints
 	private static float elementAt(float[] array, int arrayLength, int index)
 	{
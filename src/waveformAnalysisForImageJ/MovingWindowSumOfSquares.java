@@ -114,6 +114,10 @@ public class MovingWindowSumOfSquares implements ExtendedPlugInFilter, DialogLis
 	 * {@code recordLength}. At positions where a part of the moving window lies
 	 * outside the bounds of the waveform, the missing waveform values are
 	 * generated by reflection around the appropriate end point.
+	 * Windows of at least
+	 * {@link WaveformUtils#OVERLAP_SAVE_WINDOW_LENGTH OVERLAP_SAVE_WINDOW_LENGTH}
+	 * points are applied by FFT convolution, which gives the same result to
+	 * within rounding error.
 	 *
 	 * @param waveforms	      one-dimensional array composed of a series of
 	 *                        concatenated records, each of size equal to
@@ -126,8 +130,19 @@ public class MovingWindowSumOfSquares implements ExtendedPlugInFilter, DialogLis
 	 *                        ignored otherwise
 	 * @param logOutput	      true for {@code log}<SUB>{@code 10}</SUB> output
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int radius, WaveformUtils.WindowType windowType, double windowParameter, boolean logOutput)
+	public static final void execute(float[] waveforms, final int recordLength, final int radius, final WaveformUtils.WindowType windowType, final double windowParameter, final boolean logOutput)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, windowType, windowParameter, logOutput);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -135,6 +150,25 @@ public class MovingWindowSumOfSquares implements ExtendedPlugInFilter, DialogLis
 			// initialize single-sided window weight array (normalized)
 			double[] weights = WaveformUtils.windowFunctionSingleSided(windowType, radius, windowParameter, true);
 			
+			// long windows: compute the sums of squares by FFT convolution of
+			// the squared values with the squared weights
+			if (windowLength >= WaveformUtils.OVERLAP_SAVE_WINDOW_LENGTH) {
+				double[] squaredWeights = new double[weights.length];
+				for (int k=0; k<weights.length; k++) {
+					squaredWeights[k] = weights[k]*weights[k];
+				}
+				WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(waveforms, recordLength, squaredWeights, true);
+				for (int j=0; j<waveforms.length; j++) {
+					// rounding error can make sums of small values slightly negative
+					double sum = Math.max(waveforms[j], 0.0);
+					if (logOutput) {
+						sum = Math.log10(sum);
+					}
+					waveforms[j] = (float)sum;
+				}
+				return;
+			}
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
@@ -202,6 +236,10 @@ public class MovingWindowSumOfSquares implements ExtendedPlugInFilter, DialogLis
 	 * {@code recordLength}. At positions where a part of the moving window lies
 	 * outside the bounds of the waveform, the missing waveform values are
 	 * generated by reflection around the appropriate end point.
+	 * Windows of at least
+	 * {@link WaveformUtils#OVERLAP_SAVE_WINDOW_LENGTH OVERLAP_SAVE_WINDOW_LENGTH}
+	 * points are applied by FFT convolution, which gives the same result to
+	 * within rounding error.
 	 *
 	 * @param waveforms	      one-dimensional array composed of a series of
 	 *                        concatenated records, each of size equal to
@@ -214,8 +252,19 @@ public class MovingWindowSumOfSquares implements ExtendedPlugInFilter, DialogLis
 	 *                        ignored otherwise
 	 * @param logOutput	      true for {@code log}<SUB>{@code 10}</SUB> output
 	 */
-	public static final void execute(double[] waveforms, int recordLength, int radius, WaveformUtils.WindowType windowType, double windowParameter, boolean logOutput)
+	public static final void execute(double[] waveforms, final int recordLength, final int radius, final WaveformUtils.WindowType windowType, final double windowParameter, final boolean logOutput)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, windowType, windowParameter, logOutput);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -223,6 +272,25 @@ public class MovingWindowSumOfSquares implements ExtendedPlugInFilter, DialogLis
 			// initialize single-sided window weight array (normalized)
 			double[] weights = WaveformUtils.windowFunctionSingleSided(windowType, radius, windowParameter, true);
 			
+			// long windows: compute the sums of squares by FFT convolution of
+			// the squared values with the squared weights
+			if (windowLength >= WaveformUtils.OVERLAP_SAVE_WINDOW_LENGTH) {
+				double[] squaredWeights = new double[weights.length];
+				for (int k=0; k<weights.length; k++) {
+					squaredWeights[k] = weights[k]*weights[k];
+				}
+				WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(waveforms, recordLength, squaredWeights, true);
+				for (int j=0; j<waveforms.length; j++) {
+					// rounding error can make sums of small values slightly negative
+					double sum = Math.max(waveforms[j], 0.0);
+					if (logOutput) {
+						sum = Math.log10(sum);
+					}
+					waveforms[j] = sum;
+				}
+				return;
+			}
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
@@ -9,7 +9,6 @@ import ij.plugin.filter.ExtendedPlugInFilter;
 import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.ImageProcessor;
 import java.awt.AWTEvent;
-import java.util.Arrays;
 
 
 /**
@@ -100,9 +99,11 @@ public class MovingWindowVariance implements ExtendedPlugInFilter, DialogListene
 	 * {@code waveforms.length} is not evenly divisible by {@code recordLength}.
 	 * At positions where a part of the moving window lies outside the bounds of
 	 * the waveform, the waveform values are mirrored around the appropriate end
-	 * point. This method is adapted from an algorithm described by D. H. D. West
-	 * in Communications of the ACM, 22, 9, 532-535 (1979): "Updating Mean and
-	 * Variance Estimates: An Improved Method."
+	 * point. The window is updated incrementally as it moves, so the cost per
+	 * point does not depend on {@code radius}. This method is adapted from an
+	 * algorithm described by D. H. D. West in Communications of the ACM, 22, 9,
+	 * 532-535 (1979): "Updating Mean and Variance Estimates: An Improved
+	 * Method."
 	 *
 	 * @param waveforms	                    one-dimensional array composed of a
 	 *                                      series of concatenated records, each
@@ -118,64 +119,53 @@ public class MovingWindowVariance implements ExtendedPlugInFilter, DialogListene
 	 *                                      the computation; if unchecked,
 	 *                                      {@code n} is used)
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int radius, boolean useUnbiasedEstimateOfVariance)
+	public static final void execute(float[] waveforms, final int recordLength, final int radius, final boolean useUnbiasedEstimateOfVariance)
 	{
-		int windowLength = 2*radius + 1;
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, useUnbiasedEstimateOfVariance);
+			}
+		})) {
+			return;
+		}
 		
+		int windowLength = 2*radius + 1;
 		double norm = useUnbiasedEstimateOfVariance ? 1.0/(windowLength-1) : 1.0/windowLength;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius > 0) {
-								
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
-			// loop over all records
-			for (int i=0; i<numRecords; i++) {
-				
-				// compute row offset
-				int offset = i*recordLength;
+			// borrow double-precision copy of current waveform and output of sliding window
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				double[] currentWaveformCopy = scratch.doubles(recordLength);
+				double[] m2 = scratch.doubles(recordLength);
 				
-				// initialize double-precision copy of current waveform
-				double[] currentWaveformCopy = new double[recordLength];
-				for (int j=0; j<recordLength; j++) {
-					currentWaveformCopy[j] = waveforms[offset+j];
-				}
-				
-				// move window and compute means
-				for (int j=0; j<recordLength; j++) {
+				// loop over all records
+				for (int i=0; i<numRecords; i++) {
 					
-					// initialize variables at center of windowed segment
-					long n = 1;
-					double mean = currentWaveformCopy[j];
-					double m2 = 0.0;
-					double delta;
+					// compute row offset
+					int offset = i*recordLength;
 					
-					// finish computations at the current index
-					for (int k=-radius; k<0; k++) {
-						int index = j+k;
-						if (index < 0) {
-							index = -index;
-						}
-						n += 1;
-						delta = currentWaveformCopy[index] - mean;
-						mean += delta/n;
-						m2 += delta*(currentWaveformCopy[index] - mean);
-					}
-					for (int k=1; k<=radius; k++) {
-						int index = j+k;
-						if (index > recordLength-1) {
-							index = 2*(recordLength-1) - index;
-						}
-						n += 1;
-						delta = currentWaveformCopy[index] - mean;
-						mean += delta/n;
-						m2 += delta*(currentWaveformCopy[index] - mean);
+					for (int j=0; j<recordLength; j++) {
+						currentWaveformCopy[j] = waveforms[offset+j];
 					}
 					
-					waveforms[offset+j] = (float)(m2*norm);
+					slidingSumOfSquaredDeviations(currentWaveformCopy, recordLength, radius, m2);
 					
-				}
+					for (int j=0; j<recordLength; j++) {
+						waveforms[offset+j] = (float)(m2[j]*norm);
+					}
 
+				}
+			} finally {
+				scratch.release(mark);
 			}
 			
 		}
@@ -192,9 +182,11 @@ public class MovingWindowVariance implements ExtendedPlugInFilter, DialogListene
 	 * {@code waveforms.length} is not evenly divisible by {@code recordLength}.
 	 * At positions where a part of the moving window lies outside the bounds of
 	 * the waveform, the waveform values are mirrored around the appropriate end
-	 * point. This method is adapted from an algorithm described by D. H. D. West
-	 * in Communications of the ACM, 22, 9, 532-535 (1979): "Updating Mean and
-	 * Variance Estimates: An Improved Method."
+	 * point. The window is updated incrementally as it moves, so the cost per
+	 * point does not depend on {@code radius}. This method is adapted from an
+	 * algorithm described by D. H. D. West in Communications of the ACM, 22, 9,
+	 * 532-535 (1979): "Updating Mean and Variance Estimates: An Improved
+	 * Method."
 	 *
 	 * @param waveforms	                    one-dimensional array composed of a
 	 *                                      series of concatenated records, each
@@ -210,67 +202,119 @@ public class MovingWindowVariance implements ExtendedPlugInFilter, DialogListene
 	 *                                      the computation; if unchecked,
 	 *                                      {@code n} is used)
 	 */
-	public static final void execute(double[] waveforms, int recordLength, int radius, boolean useUnbiasedEstimateOfVariance)
+	public static final void execute(double[] waveforms, final int recordLength, final int radius, final boolean useUnbiasedEstimateOfVariance)
 	{
-		int windowLength = 2*radius + 1;
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, useUnbiasedEstimateOfVariance);
+			}
+		})) {
+			return;
+		}
 		
+		int windowLength = 2*radius + 1;
 		double norm = useUnbiasedEstimateOfVariance ? 1.0/(windowLength-1) : 1.0/windowLength;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius > 0) {
-								
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
-			// loop over all records
-			for (int i=0; i<numRecords; i++) {
-				
-				// compute row offset
-				int offset = i*recordLength;
+			// borrow double-precision copy of current waveform and output of sliding window
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				double[] currentWaveformCopy = scratch.doubles(recordLength);
+				double[] m2 = scratch.doubles(recordLength);
 				
-				// initialize double-precision copy of current waveform
-				double[] currentWaveformCopy = Arrays.copyOfRange(waveforms, offset, offset+recordLength);
-				
-				// move window and compute means
-				for (int j=0; j<recordLength; j++) {
+				// loop over all records
+				for (int i=0; i<numRecords; i++) {
 					
-					// initialize variables at center of windowed segment
-					long n = 1;
-					double mean = currentWaveformCopy[j];
-					double m2 = 0.0;
-					double delta;
+					// compute row offset
+					int offset = i*recordLength;
 					
-					// finish computations at the current index
-					for (int k=-radius; k<0; k++) {
-						int index = j+k;
-						if (index < 0) {
-							index = -index;
-						}
-						n += 1;
-						delta = currentWaveformCopy[index] - mean;
-						mean += delta/n;
-						m2 += delta*(currentWaveformCopy[index] - mean);
-					}
-					for (int k=1; k<=radius; k++) {
-						int index = j+k;
-						if (index > recordLength-1) {
-							index = 2*(recordLength-1) - index;
-						}
-						n += 1;
-						delta = currentWaveformCopy[index] - mean;
-						mean += delta/n;
-						m2 += delta*(currentWaveformCopy[index] - mean);
-					}
+					System.arraycopy(waveforms, offset, currentWaveformCopy, 0, recordLength);
 					
-					waveforms[offset+j] = m2*norm;
+					slidingSumOfSquaredDeviations(currentWaveformCopy, recordLength, radius, m2);
 					
-				}
+					for (int j=0; j<recordLength; j++) {
+						waveforms[offset+j] = m2[j]*norm;
+					}
 
+				}
+			} finally {
+				scratch.release(mark);
 			}
 			
 		}
 		
 	}
-
+	
+	/**
+	 * Computes the sum of squared deviations from the mean within a window of
+	 * length {@code 2*radius+1} centered at each of the first
+	 * {@code recordLength} points of {@code x}, with values outside the bounds
+	 * of the record mirrored around the end points.
+	 * The window is slid one point at a time with an O(1) update of the mean
+	 * and sum of squared deviations (Welford's update, with the outgoing
+	 * point removed and the incoming point added in a single step). To keep
+	 * rounding error from accumulating along long records, both are
+	 * recomputed directly every {@code 2*radius+1} points, which does not
+	 * change the amortized cost per point.
+	 */
+	private static void slidingSumOfSquaredDeviations(double[] x, int recordLength, int radius, double[] m2)
+	{
+		int windowLength = 2*radius + 1;
+		double mean = 0.0;
+		double sum = 0.0;
+		
+		for (int j=0; j<recordLength; j++) {
+			
+			if (j%windowLength == 0) {
+				
+				// (re)initialize at the current index by West's method
+				long n = 0;
+				mean = 0.0;
+				sum = 0.0;
+				for (int k=-radius; k<=radius; k++) {
+					n += 1;
+					double value = x[mirroredIndex(j+k, recordLength)];
+					double delta = value - mean;
+					mean += delta/n;
+					sum += delta*(value - mean);
+				}
+				
+			} else {
+				
+				// replace the value leaving the window by the one entering it
+				double outgoing = x[mirroredIndex(j-radius-1, recordLength)];
+				double incoming = x[mirroredIndex(j+radius, recordLength)];
+				double delta = incoming - outgoing;
+				double previousMean = mean;
+				mean += delta/windowLength;
+				sum += delta*(incoming - mean + outgoing - previousMean);
+				
+			}
+			
+			// rounding error can leave the sum slightly negative for constant segments
+			m2[j] = Math.max(sum, 0.0);
+			
+		}
+	}
+	
+	private static int mirroredIndex(int index, int recordLength)
+	{
+		if (index < 0) {
+			return -index;
+		}
+		if (index > recordLength-1) {
+			return 2*(recordLength-1) - index;
+		}
+		return index;
+	}
 		
     public void setNPasses(int nPasses) {}
 	
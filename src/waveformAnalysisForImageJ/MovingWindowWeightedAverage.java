@@ -110,6 +110,10 @@ public class MovingWindowWeightedAverage implements ExtendedPlugInFilter, Dialog
 	 * At positions where a part of the moving window lies outside the bounds of
 	 * the waveform, the waveform values are reflected around the appropriate
 	 * end point.
+	 * Windows of at least
+	 * {@link WaveformUtils#OVERLAP_SAVE_WINDOW_LENGTH OVERLAP_SAVE_WINDOW_LENGTH}
+	 * points are applied by FFT convolution, which gives the same result to
+	 * within rounding error.
 	 *
 	 * @param waveforms	      one-dimensional array composed of a series of
 	 *                        concatenated records, each of size equal to
@@ -121,8 +125,19 @@ public class MovingWindowWeightedAverage implements ExtendedPlugInFilter, Dialog
 	 * @param windowParameter used only for window functions that require it,
 	 *                        ignored otherwise
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int radius, WaveformUtils.WindowType windowType, double windowParameter)
+	public static final void execute(float[] waveforms, final int recordLength, final int radius, final WaveformUtils.WindowType windowType, final double windowParameter)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, windowType, windowParameter);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -130,6 +145,12 @@ public class MovingWindowWeightedAverage implements ExtendedPlugInFilter, Dialog
 			// initialize single-sided window weight array (normalized)
 			double[] weights = WaveformUtils.windowFunctionSingleSided(windowType, radius, windowParameter, true);
 			
+			// long windows: compute the weighted sums by FFT convolution
+			if (windowLength >= WaveformUtils.OVERLAP_SAVE_WINDOW_LENGTH) {
+				WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(waveforms, recordLength, weights, false);
+				return;
+			}
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
@@ -188,6 +209,10 @@ public class MovingWindowWeightedAverage implements ExtendedPlugInFilter, Dialog
 	 * At positions where a part of the moving window lies outside the bounds of
 	 * the waveform, the waveform values are reflected around the appropriate
 	 * end point.
+	 * Windows of at least
+	 * {@link WaveformUtils#OVERLAP_SAVE_WINDOW_LENGTH OVERLAP_SAVE_WINDOW_LENGTH}
+	 * points are applied by FFT convolution, which gives the same result to
+	 * within rounding error.
 	 *
 	 * @param waveforms	      one-dimensional array composed of a series of
 	 *                        concatenated records, each of size equal to
@@ -199,8 +224,19 @@ public class MovingWindowWeightedAverage implements ExtendedPlugInFilter, Dialog
 	 * @param windowParameter used only for window functions that require it,
 	 *                        ignored otherwise
 	 */
-	public static final void execute(double[] waveforms, int recordLength, int radius, WaveformUtils.WindowType windowType, double windowParameter)
+	public static final void execute(double[] waveforms, final int recordLength, final int radius, final WaveformUtils.WindowType windowType, final double windowParameter)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius, windowType, windowParameter);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -208,6 +244,12 @@ public class MovingWindowWeightedAverage implements ExtendedPlugInFilter, Dialog
 			// initialize single-sided window weight array (normalized)
 			double[] weights = WaveformUtils.windowFunctionSingleSided(windowType, radius, windowParameter, true);
 			
+			// long windows: compute the weighted sums by FFT convolution
+			if (windowLength >= WaveformUtils.OVERLAP_SAVE_WINDOW_LENGTH) {
+				WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(waveforms, recordLength, weights, false);
+				return;
+			}
+			
 			// compute number of records
 			int numRecords = waveforms.length/recordLength;
 			
@@ -104,8 +104,19 @@ public class MovingWindowZeroCrossingCount implements ExtendedPlugInFilter, Dial
 	 * @param radius       length of two-sided window function is equal to
 	 *                     {@code 2*radius+1}
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int radius)
+	public static final void execute(float[] waveforms, final int recordLength, final int radius)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
@@ -196,8 +207,19 @@ public class MovingWindowZeroCrossingCount implements ExtendedPlugInFilter, Dial
 	 * @param radius       length of two-sided window function is equal to
 	 *                     {@code 2*radius+1}
 	 */
-	public static final void execute(double[] waveforms, int recordLength, int radius)
+	public static final void execute(double[] waveforms, final int recordLength, final int radius)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, radius);
+			}
+		})) {
+			return;
+		}
+		
 		int windowLength = 2*radius + 1;
 		
 		if (waveforms != null && recordLength > windowLength && waveforms.length%recordLength == 0 && radius >= 0) {
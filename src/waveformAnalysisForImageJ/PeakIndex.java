@@ -0,0 +1,708 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+/**
+ * Index of a series of concatenated records that finds the first (or last)
+ * peak, nadir, value or threshold crossing beyond any threshold within any
+ * range of a record in logarithmic time, so that gates can be detected again
+ * for a new threshold or search start without scanning every record. The
+ * index stores the positions and values of the local maxima and minima of
+ * each record as primitive arrays, together with the running maxima (minima)
+ * of each record: the peaks, nadirs and values that exceed (fall below) all
+ * earlier ones, and the peaks and values that exceed all later ones. These
+ * increase (decrease) strictly, so that the first peak, nadir or value beyond
+ * a threshold is found by a binary search. Searches of ranges that exclude
+ * the first (or last) of these use trees of the maxima and minima of blocks
+ * of the values instead. The index is built once, in parallel over records (see {@link RecordPartitioner}),
+ * and refers to the input array, which must not be modified afterwards.
+ * 8-bit and 16-bit pixel arrays are indexed directly, as unsigned values,
+ * without conversion to {@code float}.
+ * <p>
+ * A peak (nadir) is a point that is strictly greater (less) than both of its
+ * neighbors; the first and last points of a record are never peaks or nadirs.
+ * All positions are indices within a record, and ranges include
+ * {@code from} but exclude {@code to}. {@code NaN} values never exceed or fall
+ * below a threshold.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class PeakIndex
+{
+	private final PixelArray waveforms;
+	private final int recordLength;
+	private final int numRecords;
+	private final ExtremumTree maxTree, minTree;
+	// peaks of record i are at indices peakStart[i] to peakStart[i+1]-1 of peakPositions and peakValues; likewise for nadirs
+	private final int[] peakStart, nadirStart;
+	private final int[] peakPositions, nadirPositions;
+	private final float[] peakValues, nadirValues;
+	private final ExtremumTree peakTree, nadirTree;
+	private final Staircase firstPeaks, lastPeaks, firstNadirs, lastNadirs, firstValues, lastValues;
+
+	private PeakIndex(PixelArray waveforms, int recordLength)
+	{
+		this.waveforms = waveforms;
+		this.recordLength = recordLength;
+		numRecords = waveforms.length()/recordLength;
+		maxTree = new ExtremumTree(waveforms, true);
+		minTree = new ExtremumTree(waveforms, false);
+
+		// count peaks and nadirs of each record, then store them in record order
+		final int[] peakCounts = new int[numRecords];
+		final int[] nadirCounts = new int[numRecords];
+		findExtrema(peakCounts, nadirCounts);
+		peakStart = new int[numRecords+1];
+		nadirStart = new int[numRecords+1];
+		for (int i=0; i<numRecords; i++) {
+			peakStart[i+1] = peakStart[i] + peakCounts[i];
+			nadirStart[i+1] = nadirStart[i] + nadirCounts[i];
+		}
+		peakPositions = new int[peakStart[numRecords]];
+		peakValues = new float[peakStart[numRecords]];
+		nadirPositions = new int[nadirStart[numRecords]];
+		nadirValues = new float[nadirStart[numRecords]];
+		findExtrema(null, null);
+		PixelArray peaks = PixelArray.wrap(peakValues);
+		PixelArray nadirs = PixelArray.wrap(nadirValues);
+		peakTree = new ExtremumTree(peaks, true);
+		nadirTree = new ExtremumTree(nadirs, false);
+		firstPeaks = new Staircase(peaks, peakStart, true, true);
+		lastPeaks = new Staircase(peaks, peakStart, true, false);
+		firstNadirs = new Staircase(nadirs, nadirStart, false, true);
+		lastNadirs = new Staircase(nadirs, nadirStart, false, false);
+		int[] valueStart = new int[numRecords+1];
+		for (int i=0; i<=numRecords; i++) {
+			valueStart[i] = i*recordLength;
+		}
+		firstValues = new Staircase(waveforms, valueStart, true, true);
+		lastValues = new Staircase(waveforms, valueStart, true, false);
+	}
+
+	/**
+	 * Builds the index of {@code waveforms}, where each record has
+	 * {@code recordLength} elements. {@code waveforms} may be a
+	 * {@code float[]}, or the {@code short[]} or {@code byte[]} pixels of a
+	 * 16-bit or 8-bit image, whose values are read as unsigned. Output is
+	 * null if {@code waveforms} is null or of any other type,
+	 * {@code recordLength<=0}, {@code waveforms.length<recordLength}, or if
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}.
+	 *
+	 * @param waveforms    one-dimensional array composed of a series of
+	 *                     concatenated records, each of size equal to
+	 *                     {@code recordLength}
+	 * @param recordLength size of each record in {@code waveforms}
+	 * @return index of the input waveforms
+	 */
+	public static PeakIndex build(Object waveforms, int recordLength)
+	{
+		PixelArray values = PixelArray.wrap(waveforms);
+		if (values != null && recordLength > 0 && values.length() >= recordLength && values.length()%recordLength == 0) {
+			return new PeakIndex(values, recordLength);
+		}
+		return null;
+	}
+
+	/**
+	 *
+	 * @return number of records in the index
+	 */
+	public int getNumRecords()
+	{
+		return numRecords;
+	}
+
+	/**
+	 *
+	 * @return length of each record in the index
+	 */
+	public int getRecordLength()
+	{
+		return recordLength;
+	}
+
+	/**
+	 * Returns the position of the first peak of record {@code record} in the
+	 * range {@code from} to {@code to-1} whose value exceeds
+	 * {@code threshold}, or -1 if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold value the peak must exceed
+	 * @return position of the first peak above {@code threshold}
+	 */
+	public int firstPeakAbove(int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		return search(peakTree, firstPeaks, peakStart, peakPositions, record, from, to, threshold, true);
+	}
+
+	/**
+	 * Returns the position of the last peak of record {@code record} in the
+	 * range {@code from} to {@code to-1} whose value exceeds
+	 * {@code threshold}, or -1 if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold value the peak must exceed
+	 * @return position of the last peak above {@code threshold}
+	 */
+	public int lastPeakAbove(int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		return search(peakTree, lastPeaks, peakStart, peakPositions, record, from, to, threshold, false);
+	}
+
+	/**
+	 * Returns the position of the first nadir of record {@code record} in the
+	 * range {@code from} to {@code to-1} whose value is less than
+	 * {@code threshold}, or -1 if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold value the nadir must be less than
+	 * @return position of the first nadir below {@code threshold}
+	 */
+	public int firstNadirBelow(int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		return search(nadirTree, firstNadirs, nadirStart, nadirPositions, record, from, to, threshold, true);
+	}
+
+	/**
+	 * Returns the position of the last nadir of record {@code record} in the
+	 * range {@code from} to {@code to-1} whose value is less than
+	 * {@code threshold}, or -1 if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold value the nadir must be less than
+	 * @return position of the last nadir below {@code threshold}
+	 */
+	public int lastNadirBelow(int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		return search(nadirTree, lastNadirs, nadirStart, nadirPositions, record, from, to, threshold, false);
+	}
+
+	/**
+	 * Returns the position of the first value of record {@code record} in the
+	 * range {@code from} to {@code to-1} that exceeds {@code threshold}, or -1
+	 * if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold value to exceed
+	 * @return position of the first value above {@code threshold}
+	 */
+	public int firstValueAbove(int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		return search(maxTree, firstValues, firstValues.recordStart, null, record, from, to, threshold, true);
+	}
+
+	/**
+	 * Returns the position of the last value of record {@code record} in the
+	 * range {@code from} to {@code to-1} that exceeds {@code threshold}, or -1
+	 * if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold value to exceed
+	 * @return position of the last value above {@code threshold}
+	 */
+	public int lastValueAbove(int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		return search(maxTree, lastValues, lastValues.recordStart, null, record, from, to, threshold, false);
+	}
+
+	/**
+	 * Returns the first position {@code p} of record {@code record} in the
+	 * range {@code from} to {@code to-1} at which the record rises through
+	 * {@code threshold}, in that the value at {@code p-1} is less than
+	 * {@code threshold} and the value at {@code p+1} is greater than or equal
+	 * to {@code threshold}, or -1 if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold threshold to cross
+	 * @return position of the first rising crossing of {@code threshold}
+	 */
+	public int firstRisingCrossing(int record, int from, int to, float threshold)
+	{
+		return firstCrossing(minTree, maxTree, record, from, to, threshold);
+	}
+
+	/**
+	 * Returns the first position {@code p} of record {@code record} in the
+	 * range {@code from} to {@code to-1} at which the record falls through
+	 * {@code threshold}, in that the value at {@code p-1} is greater than
+	 * {@code threshold} and the value at {@code p+1} is less than or equal to
+	 * {@code threshold}, or -1 if there is none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold threshold to cross
+	 * @return position of the first falling crossing of {@code threshold}
+	 */
+	public int firstFallingCrossing(int record, int from, int to, float threshold)
+	{
+		return firstCrossing(maxTree, minTree, record, from, to, threshold);
+	}
+
+	/**
+	 * Returns the last position {@code p} of record {@code record} in the
+	 * range {@code from} to {@code to-1} at which the record rises through
+	 * {@code threshold}, as for
+	 * {@link #firstRisingCrossing(int, int, int, float)}, or -1 if there is
+	 * none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold threshold to cross
+	 * @return position of the last rising crossing of {@code threshold}
+	 */
+	public int lastRisingCrossing(int record, int from, int to, float threshold)
+	{
+		return lastCrossing(minTree, maxTree, record, from, to, threshold);
+	}
+
+	/**
+	 * Returns the last position {@code p} of record {@code record} in the
+	 * range {@code from} to {@code to-1} at which the record falls through
+	 * {@code threshold}, as for
+	 * {@link #firstFallingCrossing(int, int, int, float)}, or -1 if there is
+	 * none.
+	 *
+	 * @param record    record number, from 0
+	 * @param from      first position of the range
+	 * @param to        position following the last position of the range
+	 * @param threshold threshold to cross
+	 * @return position of the last falling crossing of {@code threshold}
+	 */
+	public int lastFallingCrossing(int record, int from, int to, float threshold)
+	{
+		return lastCrossing(maxTree, minTree, record, from, to, threshold);
+	}
+
+	/**
+	 * Returns the approximate memory used by the index in bytes, not
+	 * counting the indexed values, which the index refers to rather than
+	 * copies.
+	 *
+	 * @return size of the index in bytes
+	 */
+	public long getMemorySize()
+	{
+		long size = 4L*(peakStart.length + nadirStart.length + peakPositions.length + peakValues.length + nadirPositions.length + nadirValues.length + numRecords + 1);
+		size += maxTree.getMemorySize() + minTree.getMemorySize() + peakTree.getMemorySize() + nadirTree.getMemorySize();
+		size += firstPeaks.getMemorySize() + lastPeaks.getMemorySize() + firstNadirs.getMemorySize() + lastNadirs.getMemorySize() + firstValues.getMemorySize() + lastValues.getMemorySize();
+		return size;
+	}
+
+	/*
+	 * Finds the first (or last) element of a record in a range of positions whose value is beyond the threshold. The running extremum
+	 * of the record beyond the threshold is the answer if it lies in the range, and shows there is none if it lies beyond the far end
+	 * of the range; otherwise the elements in the range are found by binary search and searched with the tree. Elements of record i
+	 * are at indices start[i] to start[i+1]-1, at the given positions (or at consecutive positions, if positions==null).
+	 */
+	private static int search(ExtremumTree tree, Staircase staircase, int[] start, int[] positions, int record, int from, int to, float threshold, boolean isFirst)
+	{
+		int lo = start[record];
+		int hi = start[record+1];
+		int index = staircase.first(record, threshold);
+		if (index < 0) {
+			return -1;
+		}
+		int position = positions == null ? index - lo : positions[index];
+		if (isFirst ? position >= from : position < to) {
+			return (position >= from && position < to) ? position : -1;
+		}
+		if (positions == null) {
+			lo += Math.max(from, 0);
+			hi = Math.min(hi, start[record] + Math.max(to, 0));
+		} else {
+			lo = lowerBound(positions, lo, hi, from);
+			hi = lowerBound(positions, lo, hi, to);
+		}
+		index = isFirst ? tree.first(lo, hi, threshold, false) : tree.last(lo, hi, threshold, false);
+		if (index < 0) {
+			return -1;
+		}
+		return positions == null ? index - start[record] : positions[index];
+	}
+
+	// returns the first index in [from, to) of the sorted array a whose value is at least key, or to if there is none
+	private static int lowerBound(int[] a, int from, int to, int key)
+	{
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (a[mid] < key) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/*
+	 * Finds the first p with before(p-1) and after(p+1), where before is strictly beyond the threshold in the direction of beforeTree,
+	 * and after is at or beyond it in the direction of afterTree. Each candidate p-1 is the first point beyond the threshold at or after
+	 * the last rejected candidate, and p+1 the first point at or beyond it two or more points later; a rejected pair moves the search
+	 * forward by at least one point.
+	 */
+	private int firstCrossing(ExtremumTree beforeTree, ExtremumTree afterTree, int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		int offset = record*recordLength;
+		from = Math.max(from, 1);
+		to = Math.min(to, recordLength-1);
+		int candidate = from - 1;
+		while (candidate < to - 1) {
+			int before = beforeTree.first(offset+candidate, offset+to-1, threshold, false);
+			if (before < 0) {
+				return -1;
+			}
+			int after = afterTree.first(before+2, offset+to+1, threshold, true);
+			if (after < 0) {
+				return -1;
+			}
+			if (beforeTree.passes(waveforms.get(after-2), threshold, false)) {
+				return after - 1 - offset;
+			}
+			candidate = after - 1 - offset;
+		}
+		return -1;
+	}
+
+	/*
+	 * Finds the last p with before(p-1) and after(p+1), as firstCrossing does, but backward. Each candidate p+1 is the last point at or
+	 * beyond the threshold before the last rejected candidate, and p-1 the last point beyond it two or more points earlier; a rejected
+	 * pair moves the search backward by at least one point.
+	 */
+	private int lastCrossing(ExtremumTree beforeTree, ExtremumTree afterTree, int record, int from, int to, float threshold)
+	{
+		if (record < 0 || record >= numRecords) {
+			return -1;
+		}
+		int offset = record*recordLength;
+		from = Math.max(from, 1);
+		to = Math.min(to, recordLength-1);
+		int candidate = to + 1;
+		while (candidate > from + 1) {
+			int after = afterTree.last(offset+from+1, offset+candidate, threshold, true);
+			if (after < 0) {
+				return -1;
+			}
+			int before = beforeTree.last(offset+from-1, after-1, threshold, false);
+			if (before < 0) {
+				return -1;
+			}
+			if (afterTree.passes(waveforms.get(before+2), threshold, true)) {
+				return before + 1 - offset;
+			}
+			candidate = before + 2 - offset;
+		}
+		return -1;
+	}
+
+	// finds the peaks and nadirs of each record, and either counts them (if peakCounts!=null) or stores them
+	private void findExtrema(final int[] peakCounts, final int[] nadirCounts)
+	{
+		RecordPartitioner.forEachChunk(numRecords, recordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				boolean isCounting = peakCounts != null;
+				for (int i=fromRecord; i<toRecord; i++) {
+					int offset = i*recordLength;
+					int peaks = isCounting ? 0 : peakStart[i];
+					int nadirs = isCounting ? 0 : nadirStart[i];
+					for (int j=1; j<recordLength-1; j++) {
+						float value = waveforms.get(offset+j);
+						float previous = waveforms.get(offset+j-1);
+						float next = waveforms.get(offset+j+1);
+						if (value > previous && value > next) {
+							if (!isCounting) {
+								peakPositions[peaks] = j;
+								peakValues[peaks] = value;
+							}
+							peaks++;
+						} else if (value < previous && value < next) {
+							if (!isCounting) {
+								nadirPositions[nadirs] = j;
+								nadirValues[nadirs] = value;
+							}
+							nadirs++;
+						}
+					}
+					if (isCounting) {
+						peakCounts[i] = peaks;
+						nadirCounts[i] = nadirs;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Running maxima (or minima) of each record of an array of values: the
+	 * indices of the values of a record that exceed (fall below) all earlier
+	 * values of the record, or all later values if the staircase runs
+	 * backward, in order of distance from the start (end) of the record.
+	 */
+	private static final class Staircase
+	{
+		private final PixelArray values;
+		private final boolean isMax;
+		private final int[] recordStart;	// values of record i are at indices recordStart[i] to recordStart[i+1]-1
+		private final int[] stepStart;		// steps of record i are at indices stepStart[i] to stepStart[i+1]-1 of steps
+		private final int[] steps;
+
+		Staircase(PixelArray values, int[] recordStart, boolean isMax, final boolean isForward)
+		{
+			this.values = values;
+			this.isMax = isMax;
+			this.recordStart = recordStart;
+			int numRecords = recordStart.length-1;
+			final int[] counts = new int[numRecords];
+			RecordPartitioner.forEachChunk(numRecords, Math.max(1, values.length()/Math.max(1, numRecords)), new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					for (int i=fromRecord; i<toRecord; i++) {
+						counts[i] = findSteps(i, isForward, null, 0);
+					}
+				}
+			});
+			stepStart = new int[numRecords+1];
+			for (int i=0; i<numRecords; i++) {
+				stepStart[i+1] = stepStart[i] + counts[i];
+			}
+			steps = new int[stepStart[numRecords]];
+			RecordPartitioner.forEachChunk(numRecords, Math.max(1, values.length()/Math.max(1, numRecords)), new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					for (int i=fromRecord; i<toRecord; i++) {
+						findSteps(i, isForward, steps, stepStart[i]);
+					}
+				}
+			});
+		}
+
+		// stores the steps of a record from index 'at' of 'out' (if out!=null), returning their number
+		private int findSteps(int record, boolean isForward, int[] out, int at)
+		{
+			int count = 0;
+			float extremum = isMax ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+			int first = isForward ? recordStart[record] : recordStart[record+1]-1;
+			int last = isForward ? recordStart[record+1] : recordStart[record]-1;
+			for (int j=first, step=isForward ? 1 : -1; j!=last; j+=step) {
+				float value = values.get(j);
+				if (isMax ? value > extremum : value < extremum) {
+					extremum = value;
+					if (out != null) {
+						out[at+count] = j;
+					}
+					count++;
+				}
+			}
+			return count;
+		}
+
+		// size of the steps in bytes; the record starts may be shared, and are not counted
+		long getMemorySize()
+		{
+			return 4L*(stepStart.length + steps.length);
+		}
+
+		// returns the index of the step of a record nearest the start (end) whose value is beyond the threshold, or -1 if there is none
+		int first(int record, float threshold)
+		{
+			int lo = stepStart[record];
+			int hi = stepStart[record+1];
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (isMax ? values.get(steps[mid]) > threshold : values.get(steps[mid]) < threshold) {
+					hi = mid;
+				} else {
+					lo = mid + 1;
+				}
+			}
+			return lo < stepStart[record+1] ? steps[lo] : -1;
+		}
+	}
+
+	/**
+	 * Tree of the maxima (or minima) of blocks of {@link #BRANCHING} values,
+	 * and of blocks of those blocks, over an array of values. The array itself
+	 * is the lowest level of the tree and is not copied; {@code levels[0]} is
+	 * the array if it is a {@code float[]}, and null otherwise.
+	 */
+	private static final class ExtremumTree
+	{
+		private static final int LOG_BRANCHING = 4;
+		private static final int BRANCHING = 1 << LOG_BRANCHING;
+		private final boolean isMax;
+		private final PixelArray values;
+		private final float[][] levels;
+
+		ExtremumTree(PixelArray values, boolean isMax)
+		{
+			this.isMax = isMax;
+			this.values = values;
+			int numLevels = 1;
+			for (int n=values.length(); n>1; n=(n+BRANCHING-1) >> LOG_BRANCHING) {
+				numLevels++;
+			}
+			levels = new float[numLevels][];
+			levels[0] = values.floats();
+			for (int h=1; h<numLevels; h++) {
+				final int height = h;
+				final int belowLength = h == 1 ? values.length() : levels[h-1].length;
+				final float[] level = new float[(belowLength+BRANCHING-1) >> LOG_BRANCHING];
+				levels[h] = level;
+				RecordPartitioner.forEachChunk(level.length, BRANCHING, new RecordPartitioner.RecordRangeOperation()
+				{
+					public void process(int fromBlock, int toBlock)
+					{
+						for (int b=fromBlock; b<toBlock; b++) {
+							float extremum = ExtremumTree.this.isMax ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+							for (int j=b << LOG_BRANCHING, end=Math.min(j+BRANCHING, belowLength); j<end; j++) {
+								float value = value(height-1, j);
+								if (ExtremumTree.this.isMax ? value > extremum : value < extremum) {
+									extremum = value;
+								}
+							}
+							level[b] = extremum;
+						}
+					}
+				});
+			}
+		}
+
+		// size of the levels above the values in bytes
+		long getMemorySize()
+		{
+			long size = 0L;
+			for (int h=1; h<levels.length; h++) {
+				size += 4L*levels[h].length;
+			}
+			return size;
+		}
+
+		// true if value is beyond the threshold (above for a maximum tree, below for a minimum tree), or equal to it if isInclusive
+		boolean passes(float value, float threshold, boolean isInclusive)
+		{
+			if (isMax) {
+				return isInclusive ? value >= threshold : value > threshold;
+			}
+			return isInclusive ? value <= threshold : value < threshold;
+		}
+
+		// value at index i of level h
+		float value(int h, int i)
+		{
+			float[] level = levels[h];
+			return level != null ? level[i] : values.get(i);
+		}
+
+		// returns the first index in [from, to) whose value passes the threshold, or -1 if there is none
+		int first(int from, int to, float threshold, boolean isInclusive)
+		{
+			int p = from;
+			int h = 0;
+			while (p < to) {
+				// move up while p starts a block of the next level that lies within the range
+				while (h+1 < levels.length && (p & ((1 << (LOG_BRANCHING*(h+1)))-1)) == 0 && p + (1 << (LOG_BRANCHING*(h+1))) <= to) {
+					h++;
+				}
+				if (passes(value(h, p >> (LOG_BRANCHING*h)), threshold, isInclusive)) {
+					// move down to the first passing value of the block
+					while (h > 0) {
+						h--;
+						while (!passes(value(h, p >> (LOG_BRANCHING*h)), threshold, isInclusive)) {
+							p += 1 << (LOG_BRANCHING*h);
+						}
+					}
+					return p;
+				}
+				p += 1 << (LOG_BRANCHING*h);
+				while (h > 0 && p + (1 << (LOG_BRANCHING*h)) > to) {
+					h--;
+				}
+			}
+			return -1;
+		}
+
+		// returns the last index in [from, to) whose value passes the threshold, or -1 if there is none
+		int last(int from, int to, float threshold, boolean isInclusive)
+		{
+			int p = to;
+			int h = 0;
+			while (p > from) {
+				// move up while p ends a block of the next level that lies within the range
+				while (h+1 < levels.length && (p & ((1 << (LOG_BRANCHING*(h+1)))-1)) == 0 && p - (1 << (LOG_BRANCHING*(h+1))) >= from) {
+					h++;
+				}
+				if (passes(value(h, (p-1) >> (LOG_BRANCHING*h)), threshold, isInclusive)) {
+					// move down to the last passing value of the block
+					while (h > 0) {
+						h--;
+						while (!passes(value(h, (p-1) >> (LOG_BRANCHING*h)), threshold, isInclusive)) {
+							p -= 1 << (LOG_BRANCHING*h);
+						}
+					}
+					return p - 1;
+				}
+				p -= 1 << (LOG_BRANCHING*h);
+				while (h > 0 && p - (1 << (LOG_BRANCHING*h)) < from) {
+					h--;
+				}
+			}
+			return -1;
+		}
+	}
+
+}
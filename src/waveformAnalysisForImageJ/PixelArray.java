@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+/**
+ * Read access to the values of an 8-bit, 16-bit or 32-bit pixel array as
+ * {@code float}, without converting the array. 8-bit and 16-bit values are
+ * unsigned, as in {@code ByteProcessor} and {@code ShortProcessor}, so that
+ * values read here equal those of {@code ImageProcessor.convertToFloat()}
+ * without calibration.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+final class PixelArray
+{
+	private final float[] floats;
+	private final short[] shorts;
+	private final byte[] bytes;
+	private final int length;
+
+	private PixelArray(float[] floats, short[] shorts, byte[] bytes, int length)
+	{
+		this.floats = floats;
+		this.shorts = shorts;
+		this.bytes = bytes;
+		this.length = length;
+	}
+
+	/**
+	 * Returns read access to {@code pixels}. Output is null unless
+	 * {@code pixels} is a {@code float[]}, {@code short[]} or {@code byte[]}.
+	 *
+	 * @param pixels pixel array
+	 * @return read access to the pixel array
+	 */
+	static PixelArray wrap(Object pixels)
+	{
+		if (pixels instanceof float[]) {
+			return new PixelArray((float[])pixels, null, null, ((float[])pixels).length);
+		}
+		if (pixels instanceof short[]) {
+			return new PixelArray(null, (short[])pixels, null, ((short[])pixels).length);
+		}
+		if (pixels instanceof byte[]) {
+			return new PixelArray(null, null, (byte[])pixels, ((byte[])pixels).length);
+		}
+		return null;
+	}
+
+	/**
+	 *
+	 * @return number of values in the array
+	 */
+	int length()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the array itself if it is a {@code float[]}, so that callers
+	 * can read it directly; otherwise null.
+	 *
+	 * @return the float array, or null
+	 */
+	float[] floats()
+	{
+		return floats;
+	}
+
+	/**
+	 * Returns the value at index {@code i} of the array.
+	 *
+	 * @param i index of the value
+	 * @return value at index {@code i}
+	 */
+	float get(int i)
+	{
+		if (floats != null) {
+			return floats[i];
+		}
+		if (shorts != null) {
+			return shorts[i] & 0xffff;
+		}
+		return bytes[i] & 0xff;
+	}
+
+}
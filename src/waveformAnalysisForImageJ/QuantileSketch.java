@@ -0,0 +1,408 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import java.util.Arrays;
+
+/**
+ * Approximate quantiles of a stream of values in bounded memory, using the
+ * compactor hierarchy described by
+ * <a href="http://arxiv.org/abs/1603.05346">Karnin, Lang and Liberty (2016)</a>
+ * (KLL). Values are buffered at level 0. Level capacities shrink
+ * geometrically (by a factor of 2/3) below the top level of capacity
+ * {@code k}; when the sketch holds more values than the sum of the
+ * capacities, the lowest level over its capacity is sorted and every other
+ * value is promoted to the level above, where each value stands for twice as
+ * many inputs. A sketch therefore retains at most about {@code 3*k} values
+ * however many are added, and the rank error of a quantile is of order
+ * {@code 1/k} of the number of values (about 0.1% for the default
+ * {@code k}). Streams of up to {@code k} values are kept exactly.
+ * <p>
+ * Sketches of separate parts of a data set are merged with
+ * {@link #combine(QuantileSketch)}, so that records, slices or blocks of a
+ * stack may be sketched separately (for example, in parallel) and combined.
+ * Unlike the original algorithm, which promotes the odd or even values of a
+ * level at random, this implementation alternates between them, so results
+ * are reproducible; adding a large range of an array splits the range into
+ * blocks of {@link #BLOCK_LENGTH} values that are sketched in parallel (see
+ * {@link RecordPartitioner}) and merged in order, so that the result does not
+ * depend on the number of threads. {@code NaN} values are ignored.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class QuantileSketch
+{
+	/**
+	 * Default capacity of the top level of a sketch, giving a rank error of
+	 * about 0.1%, which resolves 1% and 99% percentiles.
+	 */
+	public static final int DEFAULT_K = 1000;
+	/**
+	 * Number of values in each block of a range that is split across threads.
+	 */
+	public static final int BLOCK_LENGTH = 1 << 15;
+	// ranges shorter than this are added to the sketch directly
+	private static final int MIN_BLOCKED_LENGTH = 2*RecordPartitioner.RECORD_ALIGNMENT*BLOCK_LENGTH;
+	private final int k;
+	// retained values by level; values at level h each stand for 2^h inputs
+	private double[][] levels;
+	private int[] sizes;
+	// odd or even values of each level are promoted alternately
+	private boolean[] promoteOdd;
+	private int numLevels;
+	// number of retained values, and the sum of the level capacities at which the sketch is compressed
+	private int retained;
+	private int totalCapacity;
+	private long n;
+	private double min;
+	private double max;
+
+	/**
+	 * Creates an empty sketch with top level capacity {@link #DEFAULT_K}.
+	 */
+	public QuantileSketch()
+	{
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Creates an empty sketch with top level capacity {@code k}, which is
+	 * clamped to a minimum of 8. The rank error of a quantile is roughly
+	 * proportional to {@code 1/k}, and the number of retained values to
+	 * {@code k}.
+	 *
+	 * @param k capacity of the top level of the sketch
+	 */
+	public QuantileSketch(int k)
+	{
+		this.k = Math.max(8, k);
+		levels = new double[4][];
+		sizes = new int[4];
+		promoteOdd = new boolean[4];
+		levels[0] = new double[this.k];
+		numLevels = 1;
+		clear();
+	}
+
+	/**
+	 * Removes all values from the sketch.
+	 */
+	public void clear()
+	{
+		for (int h=1; h<numLevels; h++) {
+			levels[h] = null;
+		}
+		Arrays.fill(sizes, 0);
+		Arrays.fill(promoteOdd, false);
+		numLevels = 1;
+		retained = 0;
+		totalCapacity = k;
+		n = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 *
+	 * @return number of values added to the sketch
+	 */
+	public long count()
+	{
+		return n;
+	}
+
+	/**
+	 * Adds {@code x} to the sketch; {@code NaN} values are ignored.
+	 *
+	 * @param x value to add
+	 */
+	public void add(double x)
+	{
+		if (x != x) {
+			return;
+		}
+		if (x < min) {
+			min = x;
+		}
+		if (x > max) {
+			max = x;
+		}
+		n++;
+		if (sizes[0] == levels[0].length) {
+			ensureCapacity(0, sizes[0] + 1);
+		}
+		levels[0][sizes[0]++] = x;
+		retained++;
+		if (retained > totalCapacity) {
+			compress();
+		}
+	}
+
+	/**
+	 * Adds the values in the specified range of an array to the sketch;
+	 * {@code NaN} values are ignored. No error checking is performed on range
+	 * limits; if the values are negative or outside the range of the array,
+	 * unexpected results may occur or a runtime exception may be thrown.
+	 *
+	 * @param a    input array
+	 * @param from initial index of the range to add, inclusive
+	 * @param to   final index of the range to add, exclusive
+	 */
+	public void add(final float[] a, final int from, int to)
+	{
+		if (to - from >= MIN_BLOCKED_LENGTH) {
+			final int end = to;
+			final QuantileSketch[] blocks = new QuantileSketch[(to - from + BLOCK_LENGTH - 1)/BLOCK_LENGTH];
+			RecordPartitioner.forEachChunk(blocks.length, BLOCK_LENGTH, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					for (int b=fromRecord; b<toRecord; b++) {
+						blocks[b] = new QuantileSketch(k);
+						int blockEnd = Math.min(end, from + (b+1)*BLOCK_LENGTH);
+						for (int i=from + b*BLOCK_LENGTH; i<blockEnd; i++) {
+							blocks[b].add(a[i]);
+						}
+					}
+				}
+			});
+			for (int b=0; b<blocks.length; b++) {
+				combine(blocks[b]);
+			}
+		} else {
+			for (int i=from; i<to; i++) {
+				add(a[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the values in the specified range of an array to the sketch;
+	 * {@code NaN} values are ignored. No error checking is performed on range
+	 * limits; if the values are negative or outside the range of the array,
+	 * unexpected results may occur or a runtime exception may be thrown.
+	 *
+	 * @param a    input array
+	 * @param from initial index of the range to add, inclusive
+	 * @param to   final index of the range to add, exclusive
+	 */
+	public void add(final double[] a, final int from, int to)
+	{
+		if (to - from >= MIN_BLOCKED_LENGTH) {
+			final int end = to;
+			final QuantileSketch[] blocks = new QuantileSketch[(to - from + BLOCK_LENGTH - 1)/BLOCK_LENGTH];
+			RecordPartitioner.forEachChunk(blocks.length, BLOCK_LENGTH, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					for (int b=fromRecord; b<toRecord; b++) {
+						blocks[b] = new QuantileSketch(k);
+						int blockEnd = Math.min(end, from + (b+1)*BLOCK_LENGTH);
+						for (int i=from + b*BLOCK_LENGTH; i<blockEnd; i++) {
+							blocks[b].add(a[i]);
+						}
+					}
+				}
+			});
+			for (int b=0; b<blocks.length; b++) {
+				combine(blocks[b]);
+			}
+		} else {
+			for (int i=from; i<to; i++) {
+				add(a[i]);
+			}
+		}
+	}
+
+	/**
+	 * Merges the values sketched by {@code other} into this sketch, leaving
+	 * {@code other} unchanged. Both sketches should have the same capacity
+	 * {@code k}.
+	 *
+	 * @param other sketch to merge
+	 */
+	public void combine(QuantileSketch other)
+	{
+		if (other.n == 0) {
+			return;
+		}
+		while (numLevels < other.numLevels) {
+			addLevel();
+		}
+		for (int h=0; h<other.numLevels; h++) {
+			append(h, other.levels[h], 0, other.sizes[h]);
+		}
+		n += other.n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		compress();
+	}
+
+	/**
+	 * Returns the approximate {@code q}-quantile of the values in the sketch:
+	 * the smallest retained value whose (weighted) rank is at least
+	 * {@code q*count()}. {@code q<=0} gives the minimum and {@code q>=1} the
+	 * maximum value. Output is {@code NaN} if the sketch is empty.
+	 *
+	 * @param q quantile, from 0 to 1
+	 * @return approximate {@code q}-quantile of the sketched values
+	 */
+	public double quantile(double q)
+	{
+		return quantiles(new double[]{q})[0];
+	}
+
+	/**
+	 * Returns the approximate quantiles {@code q} of the values in the
+	 * sketch, as given by {@link #quantile(double)}. Output is {@code null}
+	 * if {@code q==null}.
+	 *
+	 * @param q quantiles, from 0 to 1
+	 * @return approximate quantiles of the sketched values
+	 */
+	public double[] quantiles(double[] q)
+	{
+		if (q == null) {
+			return null;
+		}
+		double[] result = new double[q.length];
+		if (n == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+
+		// sort retained values by level, then walk their weighted ranks in order
+		double[][] sorted = new double[numLevels][];
+		for (int h=0; h<numLevels; h++) {
+			sorted[h] = Arrays.copyOf(levels[h], sizes[h]);
+			Arrays.sort(sorted[h]);
+		}
+		for (int j=0; j<q.length; j++) {
+			if (q[j] <= 0.0) {
+				result[j] = min;
+				continue;
+			}
+			if (q[j] >= 1.0) {
+				result[j] = max;
+				continue;
+			}
+			double targetRank = q[j]*n;
+			int[] positions = new int[numLevels];
+			long rank = 0;
+			result[j] = max;
+			while (true) {
+				int next = -1;
+				for (int h=0; h<numLevels; h++) {
+					if (positions[h] < sorted[h].length && (next < 0 || sorted[h][positions[h]] < sorted[next][positions[next]])) {
+						next = h;
+					}
+				}
+				if (next < 0) {
+					break;
+				}
+				rank += 1L << next;
+				if (rank >= targetRank) {
+					result[j] = sorted[next][positions[next]];
+					break;
+				}
+				positions[next]++;
+			}
+			result[j] = Math.max(min, Math.min(max, result[j]));
+		}
+
+		return result;
+	}
+
+	// capacity of level h, shrinking by 2/3 per level below the top
+	private int capacity(int h)
+	{
+		return Math.max(2, (int)Math.ceil(k*Math.pow(2.0/3.0, numLevels - 1 - h)));
+	}
+
+	// compacts the lowest level over its capacity until the sketch is within its total capacity
+	private void compress()
+	{
+		while (retained > totalCapacity) {
+			int h = 0;
+			while (sizes[h] <= capacity(h)) {
+				h++;
+			}
+			if (h + 1 == numLevels) {
+				addLevel();
+			}
+			compact(h);
+		}
+	}
+
+	// sorts level h and promotes every other value to level h+1, keeping the largest value of an odd-sized level
+	private void compact(int h)
+	{
+		double[] level = levels[h];
+		int size = sizes[h];
+		Arrays.sort(level, 0, size);
+		int pairs = size/2;
+		int offset = promoteOdd[h] ? 1 : 0;
+		promoteOdd[h] = !promoteOdd[h];
+		ensureCapacity(h + 1, sizes[h + 1] + pairs);
+		double[] above = levels[h + 1];
+		int aboveSize = sizes[h + 1];
+		for (int i=0; i<pairs; i++) {
+			above[aboveSize++] = level[2*i + offset];
+		}
+		sizes[h + 1] = aboveSize;
+		retained -= pairs;
+		if (size%2 == 1) {
+			level[0] = level[size - 1];
+			sizes[h] = 1;
+		} else {
+			sizes[h] = 0;
+		}
+	}
+
+	private void addLevel()
+	{
+		if (numLevels == levels.length) {
+			levels = Arrays.copyOf(levels, 2*numLevels);
+			sizes = Arrays.copyOf(sizes, 2*numLevels);
+			promoteOdd = Arrays.copyOf(promoteOdd, 2*numLevels);
+		}
+		levels[numLevels] = new double[k];
+		sizes[numLevels] = 0;
+		promoteOdd[numLevels] = false;
+		numLevels++;
+		totalCapacity = 0;
+		for (int h=0; h<numLevels; h++) {
+			totalCapacity += capacity(h);
+		}
+	}
+
+	private void append(int h, double[] values, int from, int to)
+	{
+		ensureCapacity(h, sizes[h] + to - from);
+		System.arraycopy(values, from, levels[h], sizes[h], to - from);
+		sizes[h] += to - from;
+		retained += to - from;
+	}
+
+	private void ensureCapacity(int h, int length)
+	{
+		if (levels[h].length < length) {
+			levels[h] = Arrays.copyOf(levels[h], Math.max(length, 2*levels[h].length));
+		}
+	}
+
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.Prefs;
+import java.lang.reflect.Array;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a series of concatenated records into chunks of whole records and
+ * processes the chunks on multiple threads, so that a single large image
+ * (e.g., a B-scan with many thousands of records) is processed on all
+ * available cores, in addition to the parallel processing of stack slices
+ * provided by ImageJ. The number of threads is taken from ImageJ's
+ * preferences ({@link Prefs#getThreads()}).
+ * <p>
+ * The {@code execute} methods of the plug-ins use this class by passing an
+ * operation that calls the same {@code execute} method on each chunk; calls
+ * made from the worker threads (and calls on inputs too small to be worth
+ * splitting) are processed serially. Chunks always contain a multiple of
+ * {@link #RECORD_ALIGNMENT} records, so that records that are processed
+ * together (e.g., pairs of records sharing a complex FFT) are the same as in
+ * serial processing, and the results are identical to serial processing.
+ * <p>
+ * Chunks are processed by the calling thread and by worker threads from a
+ * pool shared by all callers, which are kept alive between calls so that
+ * the scratch arrays of each thread ({@link WaveformUtils#scratch()}) are
+ * reused. Since the {@code execute} methods take whole arrays, each chunk is
+ * copied to a buffer of exactly its length; each thread keeps its buffers,
+ * so that later chunks and calls of the same length copy without allocating.
+ * Chunks are limited to {@link #MAX_CHUNK_POINTS} points where possible, to
+ * limit the memory held by the buffers.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class RecordPartitioner
+{
+	/**
+	 * Number of records by which chunk boundaries are aligned.
+	 */
+	public static final int RECORD_ALIGNMENT = 32;
+
+	/**
+	 * Smallest number of points (over all records) for which processing is
+	 * split across threads.
+	 */
+	public static final int MIN_PARALLEL_POINTS = 1 << 15;
+
+	/**
+	 * Largest number of points in a chunk, unless {@link #RECORD_ALIGNMENT}
+	 * records are longer.
+	 */
+	public static final int MAX_CHUNK_POINTS = 1 << 18;
+
+	// number of chunks per thread, for load balancing
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	// time for which idle worker threads are kept alive
+	private static final long WORKER_KEEP_ALIVE_SECONDS = 60L;
+
+	// number of worker threads currently used by all callers
+	private static final AtomicInteger activeWorkers = new AtomicInteger();
+
+	// worker threads shared by all callers; their number is limited by activeWorkers
+	private static final ExecutorService workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+			WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory()
+	{
+		private final AtomicInteger numThreads = new AtomicInteger();
+
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, "RecordPartitioner-" + numThreads.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// chunk buffers of each thread: for whole chunks and for the last chunk, which may be shorter
+	private static final ThreadLocal<Object[]> chunkBuffers = new ThreadLocal<Object[]>()
+	{
+		@Override
+		protected Object[] initialValue()
+		{
+			return new Object[2];
+		}
+	};
+
+	private static final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>()
+	{
+		@Override
+		protected Boolean initialValue()
+		{
+			return Boolean.FALSE;
+		}
+	};
+
+	private RecordPartitioner()
+	{
+	}
+
+	/**
+	 * Operation on a range of records.
+	 */
+	public interface RecordRangeOperation
+	{
+		/**
+		 * Processes records {@code fromRecord} (inclusive) through
+		 * {@code toRecord} (exclusive).
+		 *
+		 * @param fromRecord index of first record
+		 * @param toRecord   index after last record
+		 */
+		void process(int fromRecord, int toRecord);
+	}
+
+	/**
+	 * Operation modifying a series of concatenated records in place.
+	 */
+	public interface FloatOperation
+	{
+		/**
+		 * @param records    concatenated records
+		 * @param fromRecord index of the first record of {@code records} in
+		 *                   the full series
+		 */
+		void process(float[] records, int fromRecord);
+	}
+
+	/**
+	 * Operation modifying a series of concatenated records in place.
+	 */
+	public interface DoubleOperation
+	{
+		/**
+		 * @param records    concatenated records
+		 * @param fromRecord index of the first record of {@code records} in
+		 *                   the full series
+		 */
+		void process(double[] records, int fromRecord);
+	}
+
+	/**
+	 * Function of a series of concatenated records, returning an array with
+	 * the same number of elements for each record (or {@code null}). The
+	 * records are reused for other chunks once the function returns, and must
+	 * not be referred to by its result.
+	 */
+	public interface FloatFunction
+	{
+		/**
+		 * @param records    concatenated records
+		 * @param fromRecord index of the first record of {@code records} in
+		 *                   the full series
+		 * @return array of results for all records
+		 */
+		Object apply(float[] records, int fromRecord);
+	}
+
+	/**
+	 * Function of a series of concatenated records, returning an array with
+	 * the same number of elements for each record (or {@code null}). The
+	 * records are reused for other chunks once the function returns, and must
+	 * not be referred to by its result.
+	 */
+	public interface DoubleFunction
+	{
+		/**
+		 * @param records    concatenated records
+		 * @param fromRecord index of the first record of {@code records} in
+		 *                   the full series
+		 * @return array of results for all records
+		 */
+		Object apply(double[] records, int fromRecord);
+	}
+
+	/**
+	 * Returns the number of threads that would be used to process
+	 * {@code numRecords} records of length {@code recordLength}; this is 1
+	 * if the records are too few or too short, if ImageJ is set to use a
+	 * single thread, or if called from a worker thread.
+	 *
+	 * @param numRecords   number of records
+	 * @param recordLength length of each record
+	 * @return number of threads
+	 */
+	public static int numThreads(int numRecords, int recordLength)
+	{
+		if (numRecords < 2*RECORD_ALIGNMENT || (long)numRecords*recordLength < MIN_PARALLEL_POINTS || isWorker.get()) {
+			return 1;
+		}
+		int numChunks = (numRecords + RECORD_ALIGNMENT - 1)/RECORD_ALIGNMENT;
+		return Math.max(1, Math.min(Prefs.getThreads(), numChunks));
+	}
+
+	/**
+	 * Returns true if {@code waveforms} would be split across threads. Output
+	 * is false if {@code waveforms==null}, {@code recordLength<=0}, or
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}.
+	 *
+	 * @param waveforms    concatenated records
+	 * @param recordLength length of each record
+	 * @return true for parallel processing
+	 */
+	public static boolean isParallel(float[] waveforms, int recordLength)
+	{
+		return waveforms != null && isParallel(waveforms.length, recordLength);
+	}
+
+	/**
+	 * Returns true if {@code waveforms} would be split across threads. Output
+	 * is false if {@code waveforms==null}, {@code recordLength<=0}, or
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}.
+	 *
+	 * @param waveforms    concatenated records
+	 * @param recordLength length of each record
+	 * @return true for parallel processing
+	 */
+	public static boolean isParallel(double[] waveforms, int recordLength)
+	{
+		return waveforms != null && isParallel(waveforms.length, recordLength);
+	}
+
+	private static boolean isParallel(int length, int recordLength)
+	{
+		return recordLength > 0 && length%recordLength == 0 && numThreads(length/recordLength, recordLength) > 1;
+	}
+
+	/**
+	 * Applies {@code operation} to chunks of {@code numRecords} records, each
+	 * chunk containing a multiple of {@link #RECORD_ALIGNMENT} records (except
+	 * possibly the last), using up to {@link #numThreads(int, int) numThreads}
+	 * threads. The calling thread processes chunks as well, and returns when
+	 * all chunks have been processed. A runtime exception thrown by the
+	 * operation is rethrown to the caller.
+	 *
+	 * @param numRecords   number of records
+	 * @param recordLength length of each record
+	 * @param operation    operation to apply to each chunk
+	 */
+	public static void forEachChunk(final int numRecords, int recordLength, final RecordRangeOperation operation)
+	{
+		int numThreads = numThreads(numRecords, recordLength);
+
+		// limit the total number of worker threads used by concurrent callers (e.g., for stack slices)
+		int numWorkers = 0;
+		if (numThreads > 1) {
+			numWorkers = Math.min(numThreads - 1, Prefs.getThreads() - 1 - activeWorkers.get());
+			numWorkers = Math.max(0, numWorkers);
+			activeWorkers.addAndGet(numWorkers);
+		}
+		if (numWorkers == 0) {
+			// process serially, still marking the thread so that chunk operations are not split again
+			boolean wasWorker = isWorker.get();
+			isWorker.set(Boolean.TRUE);
+			try {
+				operation.process(0, numRecords);
+			} finally {
+				isWorker.set(wasWorker);
+			}
+			return;
+		}
+
+		try {
+			int numAlignedChunks = (numRecords + RECORD_ALIGNMENT - 1)/RECORD_ALIGNMENT;
+			int alignedChunksPerChunk = (int)Math.min(numAlignedChunks/((numWorkers + 1)*CHUNKS_PER_THREAD), MAX_CHUNK_POINTS/(RECORD_ALIGNMENT*(long)recordLength));
+			final int chunkRecords = RECORD_ALIGNMENT*Math.max(1, alignedChunksPerChunk);
+			final int numChunks = (numRecords + chunkRecords - 1)/chunkRecords;
+			final AtomicInteger nextChunk = new AtomicInteger();
+			final Throwable[] failure = new Throwable[1];
+
+			Runnable task = new Runnable()
+			{
+				public void run()
+				{
+					boolean wasWorker = isWorker.get();
+					isWorker.set(Boolean.TRUE);
+					try {
+						for (int chunk = nextChunk.getAndIncrement(); chunk < numChunks; chunk = nextChunk.getAndIncrement()) {
+							operation.process(chunk*chunkRecords, Math.min(numRecords, (chunk + 1)*chunkRecords));
+						}
+					} catch (Throwable t) {
+						synchronized (failure) {
+							if (failure[0] == null) {
+								failure[0] = t;
+							}
+						}
+						// stop the other threads from starting new chunks
+						nextChunk.set(numChunks);
+					} finally {
+						isWorker.set(wasWorker);
+					}
+				}
+			};
+
+			Future<?>[] results = new Future<?>[numWorkers];
+			for (int i=0; i<numWorkers; i++) {
+				results[i] = workers.submit(task);
+			}
+			task.run();
+			boolean interrupted = false;
+			for (int i=0; i<numWorkers; i++) {
+				while (true) {
+					try {
+						results[i].get();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException e) {
+						// not thrown, as the task catches all failures of the operation
+						break;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			if (failure[0] instanceof RuntimeException) {
+				throw (RuntimeException)failure[0];
+			} else if (failure[0] instanceof Error) {
+				throw (Error)failure[0];
+			} else if (failure[0] != null) {
+				throw new RuntimeException(failure[0]);
+			}
+		} finally {
+			activeWorkers.addAndGet(-numWorkers);
+		}
+	}
+
+	/**
+	 * Applies {@code operation} in place to chunks of the records in
+	 * {@code waveforms}, on multiple threads if
+	 * {@link #isParallel(float[], int) isParallel} is true. Returns false,
+	 * without modifying {@code waveforms}, if the records are not to be split,
+	 * in which case the caller should process them serially.
+	 *
+	 * @param waveforms    concatenated records, modified in place
+	 * @param recordLength length of each record
+	 * @param operation    operation to apply to each chunk of records
+	 * @return true if the records were processed
+	 */
+	public static boolean processInPlace(final float[] waveforms, final int recordLength, final FloatOperation operation)
+	{
+		if (!isParallel(waveforms, recordLength)) {
+			return false;
+		}
+		final int numRecords = waveforms.length/recordLength;
+		forEachChunk(numRecords, recordLength, new RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				float[] records = floatBuffer((toRecord - fromRecord)*recordLength, toRecord == numRecords);
+				System.arraycopy(waveforms, fromRecord*recordLength, records, 0, records.length);
+				operation.process(records, fromRecord);
+				System.arraycopy(records, 0, waveforms, fromRecord*recordLength, records.length);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Applies {@code operation} in place to chunks of the records in
+	 * {@code waveforms}, on multiple threads if
+	 * {@link #isParallel(double[], int) isParallel} is true. Returns false,
+	 * without modifying {@code waveforms}, if the records are not to be split,
+	 * in which case the caller should process them serially.
+	 *
+	 * @param waveforms    concatenated records, modified in place
+	 * @param recordLength length of each record
+	 * @param operation    operation to apply to each chunk of records
+	 * @return true if the records were processed
+	 */
+	public static boolean processInPlace(final double[] waveforms, final int recordLength, final DoubleOperation operation)
+	{
+		if (!isParallel(waveforms, recordLength)) {
+			return false;
+		}
+		final int numRecords = waveforms.length/recordLength;
+		forEachChunk(numRecords, recordLength, new RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				double[] records = doubleBuffer((toRecord - fromRecord)*recordLength, toRecord == numRecords);
+				System.arraycopy(waveforms, fromRecord*recordLength, records, 0, records.length);
+				operation.process(records, fromRecord);
+				System.arraycopy(records, 0, waveforms, fromRecord*recordLength, records.length);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Applies {@code function} to chunks of the records in {@code waveforms}
+	 * and concatenates the results, which must be arrays (of primitives or
+	 * objects) with the same number of elements for each record. The records
+	 * are always split, on multiple threads where possible; callers should
+	 * first check {@link #isParallel(float[], int) isParallel}. Output is
+	 * {@code null} if {@code function} returns {@code null} for any chunk.
+	 *
+	 * @param waveforms    concatenated records
+	 * @param recordLength length of each record
+	 * @param function     function to apply to each chunk of records
+	 * @return concatenated results, an array of the type returned by
+	 *         {@code function}
+	 */
+	public static Object map(final float[] waveforms, final int recordLength, final FloatFunction function)
+	{
+		final int numRecords = waveforms.length/recordLength;
+		// results by chunk, indexed by first record/RECORD_ALIGNMENT (unused entries remain empty)
+		final Object[] results = new Object[(numRecords + RECORD_ALIGNMENT - 1)/RECORD_ALIGNMENT];
+		final AtomicInteger numNullResults = new AtomicInteger();
+		forEachChunk(numRecords, recordLength, new RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				float[] records = floatBuffer((toRecord - fromRecord)*recordLength, toRecord == numRecords);
+				System.arraycopy(waveforms, fromRecord*recordLength, records, 0, records.length);
+				Object result = function.apply(records, fromRecord);
+				if (result == null) {
+					numNullResults.incrementAndGet();
+				}
+				results[fromRecord/RECORD_ALIGNMENT] = result;
+			}
+		});
+		return numNullResults.get() > 0 ? null : concatenate(results);
+	}
+
+	/**
+	 * Applies {@code function} to chunks of the records in {@code waveforms}
+	 * and concatenates the results, which must be arrays (of primitives or
+	 * objects) with the same number of elements for each record. The records
+	 * are always split, on multiple threads where possible; callers should
+	 * first check {@link #isParallel(double[], int) isParallel}. Output is
+	 * {@code null} if {@code function} returns {@code null} for any chunk.
+	 *
+	 * @param waveforms    concatenated records
+	 * @param recordLength length of each record
+	 * @param function     function to apply to each chunk of records
+	 * @return concatenated results, an array of the type returned by
+	 *         {@code function}
+	 */
+	public static Object map(final double[] waveforms, final int recordLength, final DoubleFunction function)
+	{
+		final int numRecords = waveforms.length/recordLength;
+		// results by chunk, indexed by first record/RECORD_ALIGNMENT (unused entries remain empty)
+		final Object[] results = new Object[(numRecords + RECORD_ALIGNMENT - 1)/RECORD_ALIGNMENT];
+		final AtomicInteger numNullResults = new AtomicInteger();
+		forEachChunk(numRecords, recordLength, new RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				double[] records = doubleBuffer((toRecord - fromRecord)*recordLength, toRecord == numRecords);
+				System.arraycopy(waveforms, fromRecord*recordLength, records, 0, records.length);
+				Object result = function.apply(records, fromRecord);
+				if (result == null) {
+					numNullResults.incrementAndGet();
+				}
+				results[fromRecord/RECORD_ALIGNMENT] = result;
+			}
+		});
+		return numNullResults.get() > 0 ? null : concatenate(results);
+	}
+
+	// returns a buffer of exactly length points for a chunk, reusing the buffer the current thread keeps for chunks of its kind
+	private static float[] floatBuffer(int length, boolean isLastChunk)
+	{
+		Object[] buffers = chunkBuffers.get();
+		int kind = isLastChunk ? 1 : 0;
+		if (buffers[kind] instanceof float[] && ((float[])buffers[kind]).length == length) {
+			return (float[])buffers[kind];
+		}
+		float[] buffer = new float[length];
+		buffers[kind] = length <= MAX_CHUNK_POINTS ? buffer : null;
+		return buffer;
+	}
+
+	// returns a buffer of exactly length points for a chunk, reusing the buffer the current thread keeps for chunks of its kind
+	private static double[] doubleBuffer(int length, boolean isLastChunk)
+	{
+		Object[] buffers = chunkBuffers.get();
+		int kind = isLastChunk ? 1 : 0;
+		if (buffers[kind] instanceof double[] && ((double[])buffers[kind]).length == length) {
+			return (double[])buffers[kind];
+		}
+		double[] buffer = new double[length];
+		buffers[kind] = length <= MAX_CHUNK_POINTS ? buffer : null;
+		return buffer;
+	}
+
+	// concatenates the non-null arrays in results, in order
+	private static Object concatenate(Object[] results)
+	{
+		Class<?> componentType = null;
+		int totalLength = 0;
+		for (int i=0; i<results.length; i++) {
+			if (results[i] != null) {
+				componentType = results[i].getClass().getComponentType();
+				totalLength += Array.getLength(results[i]);
+			}
+		}
+		Object output = Array.newInstance(componentType, totalLength);
+		int offset = 0;
+		for (int i=0; i<results.length; i++) {
+			if (results[i] != null) {
+				int length = Array.getLength(results[i]);
+				System.arraycopy(results[i], 0, output, offset, length);
+				offset += length;
+			}
+		}
+		return output;
+	}
+
+}
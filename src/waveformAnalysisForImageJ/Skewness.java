@@ -118,8 +118,19 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 	 *                         output population skewness
 	 * @return array of skewness values of input waveforms
 	 */
-	public static float[] execute(float[] waveforms, int recordLength, boolean isSampleSkewness)
+	public static float[] execute(float[] waveforms, final int recordLength, final boolean isSampleSkewness)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, isSampleSkewness);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 2 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -127,6 +138,7 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 			
 			// allocate output array
 			float[] skewnesses = new float[numRecords];
+			MomentAccumulator moments = new MomentAccumulator(3);
 			
 			// loop over all records
 			for (int i=0; i<numRecords; i++) {
@@ -135,7 +147,9 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 				int offset = i*recordLength;
 				
 				// find skewness of current waveform
-				skewnesses[i] = (float)skewness(waveforms, offset, offset+recordLength, isSampleSkewness);
+				moments.clear();
+				moments.add(waveforms, offset, offset+recordLength);
+				skewnesses[i] = (float)moments.skewness(isSampleSkewness);
 
 			}
 			
@@ -164,8 +178,19 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 	 *                         output population skewness
 	 * @return array of skewness values of input waveforms
 	 */
-	public static double[] execute(double[] waveforms, int recordLength, boolean isSampleSkewness)
+	public static double[] execute(double[] waveforms, final int recordLength, final boolean isSampleSkewness)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, isSampleSkewness);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 2 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -173,6 +198,7 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 			
 			// allocate output array
 			double[] skewnesses = new double[numRecords];
+			MomentAccumulator moments = new MomentAccumulator(3);
 			
 			// loop over all records
 			for (int i=0; i<numRecords; i++) {
@@ -181,7 +207,9 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 				int offset = i*recordLength;
 				
 				// find skewness of current waveform
-				skewnesses[i] = (float)skewness(waveforms, offset, offset+recordLength, isSampleSkewness);
+				moments.clear();
+				moments.add(waveforms, offset, offset+recordLength);
+				skewnesses[i] = (float)moments.skewness(isSampleSkewness);
 
 			}
 			
@@ -192,56 +220,6 @@ public class Skewness implements ExtendedPlugInFilter, DialogListener
 		return null;
 	}
 	
-	private static double skewness(float[] a, int from, int to, boolean isSampleSkewness)
-	{
-		long n = 0;
-		double mean = 0.0;
-		double m2 = 0.0;
-		double m3 = 0.0;
-
-		for (int i = from; i < to; i++) {
-			n++;
-			double delta = a[i] - mean;
-			double deltaOverN = delta / n;
-			double term1 = delta * deltaOverN * (n-1);
-			mean += deltaOverN;
-			m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
-			m2 += term1;
-		}
-
-		double output = (m3/n)/Math.pow(m2/n, 1.5);
-		if (!isSampleSkewness) {
-			output *= Math.sqrt(n*(n-1))/(n-2);
-		}
-		
-		return output;
-	}
-	
-	private static double skewness(double[] a, int from, int to, boolean isSampleSkewness)
-	{
-		long n = 0;
-		double mean = 0.0;
-		double m2 = 0.0;
-		double m3 = 0.0;
-
-		for (int i = from; i < to; i++) {
-			n++;
-			double delta = a[i] - mean;
-			double deltaOverN = delta / n;
-			double term1 = delta * deltaOverN * (n-1);
-			mean += deltaOverN;
-			m3 += term1 * deltaOverN * (n - 2) - 3.0 * deltaOverN * m2;
-			m2 += term1;
-		}
-
-		double output = (m3/n)/Math.pow(m2/n, 1.5);
-		if (!isSampleSkewness) {
-			output *= Math.sqrt(n*(n-1))/(n-2);
-		}
-		
-		return output;
-	}
-	
     public void setNPasses(int nPasses) {}
 
 }
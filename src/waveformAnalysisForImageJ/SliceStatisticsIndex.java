@@ -0,0 +1,440 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ColorProcessor;
+import java.util.Arrays;
+
+/**
+ * Cached statistics of each slice of an image: minimum, maximum and mean pixel
+ * value, a histogram, and the minimum and maximum of each record (row). The
+ * index of an image is obtained with {@link #getIndex(ImagePlus)}, which
+ * stores it as a property of the image, so that later callers reuse it.
+ * Statistics are computed for a slice when first requested, and again only
+ * if the slice has been modified. Each slice is computed in parallel over its
+ * records (see {@link RecordPartitioner}).
+ * <p>
+ * A slice is recognized as modified when its pixel array has been replaced,
+ * for example by {@code ImageStack.setPixels} or a type conversion. Changes
+ * made to the pixel values in place cannot be detected, and must be reported
+ * with {@link #invalidate(int)} or {@link #invalidateAll()}; the index of
+ * a displayed image is invalidated whenever the image is updated without a
+ * change of slice, as after a filter has run on it, but images that are not
+ * displayed send no such notice. Slices of virtual stacks are assumed not to
+ * change. {@code NaN} pixels are ignored.
+ * 8-bit, 16-bit and 32-bit pixel arrays are read directly, without
+ * conversion to {@code float}; other types are converted.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class SliceStatisticsIndex
+{
+	/**
+	 * Number of histogram bins for each slice.
+	 */
+	public static final int NUM_BINS = 256;
+	private static final String PROPERTY_KEY = SliceStatisticsIndex.class.getName();
+	private static boolean isListening = false;
+	private final ImagePlus image;
+	private ImageStack stack;
+	private SliceStatistics[] slices;
+	// incremented by each invalidation, so that statistics computed meanwhile are discarded
+	private int generation = 0;
+	// slice displayed when the image was last updated
+	private int lastSlice;
+
+	// invalidates the index of an image updated without a change of slice, which is how ImageJ reports pixels changed in place
+	private static final ImageListener listener = new ImageListener()
+	{
+		public void imageOpened(ImagePlus imp)
+		{
+		}
+
+		public void imageClosed(ImagePlus imp)
+		{
+		}
+
+		public void imageUpdated(ImagePlus imp)
+		{
+			Object property = imp.getProperty(PROPERTY_KEY);
+			if (property instanceof SliceStatisticsIndex) {
+				((SliceStatisticsIndex)property).imageUpdated();
+			}
+		}
+	};
+
+	/**
+	 * Statistics of a single slice of an image.
+	 */
+	public static final class SliceStatistics
+	{
+		// pixel array the statistics were computed from (null for virtual stacks)
+		private final Object pixels;
+		private final double min;
+		private final double max;
+		private final double mean;
+		private final int[] histogram;
+		private final float[] recordMin;
+		private final float[] recordMax;
+
+		private SliceStatistics(Object pixels, double min, double max, double mean, int[] histogram, float[] recordMin, float[] recordMax)
+		{
+			this.pixels = pixels;
+			this.min = min;
+			this.max = max;
+			this.mean = mean;
+			this.histogram = histogram;
+			this.recordMin = recordMin;
+			this.recordMax = recordMax;
+		}
+
+		/**
+		 *
+		 * @return minimum pixel value of the slice, or {@code NaN} if it has
+		 *         no values
+		 */
+		public double getMin()
+		{
+			return min;
+		}
+
+		/**
+		 *
+		 * @return maximum pixel value of the slice, or {@code NaN} if it has
+		 *         no values
+		 */
+		public double getMax()
+		{
+			return max;
+		}
+
+		/**
+		 *
+		 * @return mean pixel value of the slice, or {@code NaN} if it has no
+		 *         values
+		 */
+		public double getMean()
+		{
+			return mean;
+		}
+
+		/**
+		 * Returns a copy of the histogram of the slice, with
+		 * {@link #NUM_BINS} bins of equal width spanning
+		 * {@link #getMin()} to {@link #getMax()}; the maximum value is
+		 * counted in the last bin.
+		 *
+		 * @return histogram of pixel values of the slice
+		 */
+		public int[] getHistogram()
+		{
+			return histogram.clone();
+		}
+
+		/**
+		 * Returns the minimum value of each record (row) of the slice, or
+		 * {@code NaN} for records with no values. The array is shared and
+		 * must not be modified.
+		 *
+		 * @return minimum value of each record
+		 */
+		public float[] getRecordMin()
+		{
+			return recordMin;
+		}
+
+		/**
+		 * Returns the maximum value of each record (row) of the slice, or
+		 * {@code NaN} for records with no values. The array is shared and
+		 * must not be modified.
+		 *
+		 * @return maximum value of each record
+		 */
+		public float[] getRecordMax()
+		{
+			return recordMax;
+		}
+	}
+
+	private SliceStatisticsIndex(ImagePlus image)
+	{
+		this.image = image;
+		lastSlice = image.getCurrentSlice();
+	}
+
+	/**
+	 * Returns the statistics index of {@code image}, creating it if
+	 * necessary. Output is null if {@code image==null}.
+	 *
+	 * @param image input image
+	 * @return statistics index of the image
+	 */
+	public static SliceStatisticsIndex getIndex(ImagePlus image)
+	{
+		if (image == null) {
+			return null;
+		}
+		synchronized (image) {
+			Object property = image.getProperty(PROPERTY_KEY);
+			if (property instanceof SliceStatisticsIndex) {
+				return (SliceStatisticsIndex)property;
+			}
+			SliceStatisticsIndex index = new SliceStatisticsIndex(image);
+			image.setProperty(PROPERTY_KEY, index);
+			startListening();
+			return index;
+		}
+	}
+
+	private static synchronized void startListening()
+	{
+		if (!isListening) {
+			ImagePlus.addImageListener(listener);
+			isListening = true;
+		}
+	}
+
+	/**
+	 * Returns the statistics of slice {@code slice} of the image, computing
+	 * them if the slice has not been indexed or has been modified. Output is
+	 * null if {@code slice} is out of range. Statistics are computed without
+	 * holding the lock of the index, so that different slices may be
+	 * computed concurrently.
+	 *
+	 * @param slice slice number, from 1 to the stack size
+	 * @return statistics of the slice
+	 */
+	public SliceStatistics getSlice(int slice)
+	{
+		ImageStack source;
+		Object pixels;
+		int computedGeneration;
+		synchronized (this) {
+			checkStack();
+			if (slice < 1 || slice > slices.length) {
+				return null;
+			}
+			source = stack;
+			SliceStatistics statistics = slices[slice - 1];
+			pixels = source.isVirtual() ? null : source.getPixels(slice);
+			if (statistics != null && statistics.pixels == pixels) {
+				return statistics;
+			}
+			computedGeneration = generation;
+		}
+
+		SliceStatistics statistics = compute(source.isVirtual() ? source.getProcessor(slice).getPixels() : pixels, pixels, source.getWidth(), source.getHeight());
+
+		// the statistics are kept only if the slice has not been invalidated meanwhile
+		synchronized (this) {
+			if (stack == source && generation == computedGeneration) {
+				slices[slice - 1] = statistics;
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Brings the statistics of all slices of the image up to date, computing
+	 * only those of slices that have not been indexed or have been modified.
+	 */
+	public void update()
+	{
+		int stackSize = image.getStackSize();
+		for (int slice = 1; slice <= stackSize; slice++) {
+			getSlice(slice);
+		}
+	}
+
+	/**
+	 * Returns the minimum and maximum pixel values over all slices of the
+	 * image, as a two-element array {@code {min, max}}, updating the index
+	 * as necessary.
+	 *
+	 * @return global minimum and maximum pixel values
+	 */
+	public double[] getGlobalMinAndMax()
+	{
+		double globalMin = Double.POSITIVE_INFINITY;
+		double globalMax = Double.NEGATIVE_INFINITY;
+		int stackSize = image.getStackSize();
+		for (int slice = 1; slice <= stackSize; slice++) {
+			SliceStatistics statistics = getSlice(slice);
+			if (statistics != null) {
+				if (statistics.min < globalMin) {
+					globalMin = statistics.min;
+				}
+				if (statistics.max > globalMax) {
+					globalMax = statistics.max;
+				}
+			}
+		}
+		return new double[]{globalMin, globalMax};
+	}
+
+	/**
+	 * Marks slice {@code slice} as modified, so that its statistics are
+	 * computed again when next requested.
+	 *
+	 * @param slice slice number, from 1 to the stack size
+	 */
+	public synchronized void invalidate(int slice)
+	{
+		if (slices != null && slice >= 1 && slice <= slices.length) {
+			slices[slice - 1] = null;
+		}
+		generation++;
+	}
+
+	/**
+	 * Marks all slices as modified, so that their statistics are computed
+	 * again when next requested.
+	 */
+	public synchronized void invalidateAll()
+	{
+		if (slices != null) {
+			Arrays.fill(slices, null);
+		}
+		generation++;
+	}
+
+	private synchronized void imageUpdated()
+	{
+		int slice = image.getCurrentSlice();
+		if (slice == lastSlice) {
+			invalidateAll();
+		}
+		lastSlice = slice;
+	}
+
+	// follows replacement of the image stack, keeping statistics of slices whose pixel arrays are unchanged
+	private void checkStack()
+	{
+		ImageStack current = image.getStack();
+		if (current == stack && slices != null && slices.length == current.getSize()) {
+			return;
+		}
+		SliceStatistics[] previous = slices;
+		slices = new SliceStatistics[current.getSize()];
+		if (previous != null && !current.isVirtual()) {
+			for (int slice = 1; slice <= slices.length; slice++) {
+				Object pixels = current.getPixels(slice);
+				for (int s = 0; s < previous.length; s++) {
+					if (previous[s] != null && previous[s].pixels == pixels) {
+						slices[slice - 1] = previous[s];
+						break;
+					}
+				}
+			}
+		}
+		stack = current;
+	}
+
+	// computes the statistics of a slice in two passes over its records, each split across threads
+	private static SliceStatistics compute(Object sliceValues, Object pixelArray, final int width, final int height)
+	{
+		PixelArray values = PixelArray.wrap(sliceValues);
+		if (values == null) {
+			// RGB pixels are converted as by ImageProcessor.convertToFloat()
+			values = PixelArray.wrap(new ColorProcessor(width, height, (int[])sliceValues).convertToFloat().getPixels());
+		}
+		final PixelArray pixels = values;
+		final float[] recordMin = new float[height];
+		final float[] recordMax = new float[height];
+		final double[] recordSum = new double[height];
+		final int[] recordCount = new int[height];
+
+		RecordPartitioner.forEachChunk(height, width, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				for (int i = fromRecord; i < toRecord; i++) {
+					float min = Float.POSITIVE_INFINITY;
+					float max = Float.NEGATIVE_INFINITY;
+					double sum = 0.0;
+					int count = 0;
+					for (int j = i * width; j < (i + 1) * width; j++) {
+						float value = pixels.get(j);
+						if (value == value) {
+							if (value < min) {
+								min = value;
+							}
+							if (value > max) {
+								max = value;
+							}
+							sum += value;
+							count++;
+						}
+					}
+					recordMin[i] = count > 0 ? min : Float.NaN;
+					recordMax[i] = count > 0 ? max : Float.NaN;
+					recordSum[i] = sum;
+					recordCount[i] = count;
+				}
+			}
+		});
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0.0;
+		long count = 0;
+		for (int i = 0; i < height; i++) {
+			if (recordCount[i] > 0) {
+				min = Math.min(min, recordMin[i]);
+				max = Math.max(max, recordMax[i]);
+				sum += recordSum[i];
+				count += recordCount[i];
+			}
+		}
+		if (count == 0) {
+			return new SliceStatistics(pixelArray, Double.NaN, Double.NaN, Double.NaN, new int[NUM_BINS], recordMin, recordMax);
+		}
+
+		// histogram partials by chunk, indexed by first record/RECORD_ALIGNMENT (unused entries remain empty)
+		final int[][] partials = new int[(height + RecordPartitioner.RECORD_ALIGNMENT - 1) / RecordPartitioner.RECORD_ALIGNMENT][];
+		final double histogramMin = min;
+		final double scale = max > min ? NUM_BINS / (max - min) : 0.0;
+		RecordPartitioner.forEachChunk(height, width, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				int[] histogram = new int[NUM_BINS];
+				for (int j = fromRecord * width; j < toRecord * width; j++) {
+					float value = pixels.get(j);
+					if (value == value) {
+						histogram[Math.min(NUM_BINS - 1, (int) ((value - histogramMin) * scale))]++;
+					}
+				}
+				partials[fromRecord / RecordPartitioner.RECORD_ALIGNMENT] = histogram;
+			}
+		});
+		int[] histogram = new int[NUM_BINS];
+		for (int c = 0; c < partials.length; c++) {
+			if (partials[c] != null) {
+				for (int b = 0; b < NUM_BINS; b++) {
+					histogram[b] += partials[c][b];
+				}
+			}
+		}
+
+		return new SliceStatistics(pixelArray, min, max, sum / count, histogram, recordMin, recordMax);
+	}
+
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import java.util.Arrays;
+
+/**
+ * Median of a sliding window of values, maintained in O({@code log k}) time
+ * per update, where {@code k} is the number of values in the window. Each
+ * value occupies a numbered slot ({@code 0<=slot<capacity}); a sliding window
+ * of fixed length {@code k} typically uses slot {@code i%k} for the value at
+ * index {@code i}, so that the value entering the window replaces the one
+ * leaving it in the same slot. The values are kept in two binary heaps over
+ * primitive arrays: a max-heap holding the smaller half of the values and a
+ * min-heap holding the larger half. Each slot records its position in its
+ * heap, so values leave the window by direct removal rather than lazy
+ * deletion.
+ * <p>
+ * As elsewhere in this package, no error checking is performed on slot
+ * numbers; adding to an occupied slot, or removing from an empty one, leaves
+ * the structure in an undefined state.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public final class SlidingMedian
+{
+	private final double[] values;
+	// heap position of each slot; low heap positions are stored as -(position+1), empty slots as NONE
+	private final int[] heapPosition;
+	// max-heap of the smaller half of the values (slot numbers)
+	private final int[] low;
+	// min-heap of the larger half of the values (slot numbers)
+	private final int[] high;
+	private int lowSize;
+	private int highSize;
+	private static final int NONE = Integer.MIN_VALUE;
+
+	/**
+	 * Creates an empty window with slots {@code 0..capacity-1}.
+	 *
+	 * @param capacity maximum number of values in the window
+	 */
+	public SlidingMedian(int capacity)
+	{
+		values = new double[capacity];
+		heapPosition = new int[capacity];
+		low = new int[capacity];
+		high = new int[capacity];
+		clear();
+	}
+
+	/**
+	 * Creates an empty window with slots {@code 0..capacity-1}, whose arrays
+	 * are borrowed from {@code scratch}. The window must not be used after
+	 * the arrays are released.
+	 *
+	 * @param capacity maximum number of values in the window
+	 * @param scratch  pool from which to borrow the arrays of the window
+	 */
+	public SlidingMedian(int capacity, WaveformUtils.Scratch scratch)
+	{
+		values = scratch.doubles(capacity);
+		heapPosition = scratch.ints(capacity);
+		low = scratch.ints(capacity);
+		high = scratch.ints(capacity);
+		clear();
+	}
+
+	/**
+	 * Removes all values from the window.
+	 */
+	public void clear()
+	{
+		Arrays.fill(heapPosition, NONE);
+		lowSize = 0;
+		highSize = 0;
+	}
+
+	/**
+	 *
+	 * @return number of values in the window
+	 */
+	public int size()
+	{
+		return lowSize + highSize;
+	}
+
+	/**
+	 * Adds {@code value} to the window in the empty slot {@code slot}.
+	 *
+	 * @param slot  empty slot
+	 * @param value value to add
+	 */
+	public void add(int slot, double value)
+	{
+		values[slot] = value;
+		if (lowSize == 0 || value <= values[low[0]]) {
+			low[lowSize] = slot;
+			heapPosition[slot] = -(lowSize + 1);
+			lowSize++;
+			siftUpLow(lowSize - 1);
+		} else {
+			high[highSize] = slot;
+			heapPosition[slot] = highSize;
+			highSize++;
+			siftUpHigh(highSize - 1);
+		}
+		rebalance();
+	}
+
+	/**
+	 * Removes the value in slot {@code slot} from the window.
+	 *
+	 * @param slot occupied slot
+	 */
+	public void remove(int slot)
+	{
+		int position = heapPosition[slot];
+		heapPosition[slot] = NONE;
+		if (position < 0) {
+			position = -position - 1;
+			lowSize--;
+			if (position < lowSize) {
+				// move the last value into the vacated position, then restore the heap order
+				int moved = low[lowSize];
+				low[position] = moved;
+				siftUpLow(position);
+				if (heapPosition[moved] == -(position + 1)) {
+					siftDownLow(position);
+				}
+			}
+		} else {
+			highSize--;
+			if (position < highSize) {
+				int moved = high[highSize];
+				high[position] = moved;
+				siftUpHigh(position);
+				if (heapPosition[moved] == position) {
+					siftDownHigh(position);
+				}
+			}
+		}
+		rebalance();
+	}
+
+	/**
+	 * Replaces the value in slot {@code slot} with {@code value}.
+	 *
+	 * @param slot  occupied slot
+	 * @param value new value
+	 */
+	public void replace(int slot, double value)
+	{
+		remove(slot);
+		add(slot, value);
+	}
+
+	/**
+	 * Returns the median of the values in the window; for an even number of
+	 * values, this is the smaller of the two central values. Output is
+	 * {@code NaN} if the window is empty.
+	 *
+	 * @return lower median of the values in the window
+	 */
+	public double lowerMedian()
+	{
+		return lowSize == 0 ? Double.NaN : values[low[0]];
+	}
+
+	/**
+	 * Returns the median of the values in the window; for an even number of
+	 * values, this is the larger of the two central values. Output is
+	 * {@code NaN} if the window is empty.
+	 *
+	 * @return upper median of the values in the window
+	 */
+	public double upperMedian()
+	{
+		return lowSize > highSize ? values[low[0]] : (highSize == 0 ? Double.NaN : values[high[0]]);
+	}
+
+	/**
+	 * Applies a median filter of length {@code 2*radius+1} to {@code a}. Near
+	 * the ends of the array the window is truncated, and values equal to
+	 * {@code valueToIgnore} are excluded from the window. For an even number
+	 * of values, the output is the mean of the two central values (rounded
+	 * toward zero); for windows with no values, it is {@code valueToIgnore}.
+	 * Output is {@code null} if {@code a==null}, and a copy of {@code a} if
+	 * {@code radius<=0}.
+	 *
+	 * @param a             input array
+	 * @param radius        radius of the moving window
+	 * @param valueToIgnore value marking elements to exclude
+	 * @return median-filtered copy of {@code a}
+	 */
+	public static final int[] medianFilter(int[] a, int radius, int valueToIgnore)
+	{
+		if (a == null) {
+			return null;
+		}
+		int[] filteredArray = new int[a.length];
+		if (radius <= 0) {
+			System.arraycopy(a, 0, filteredArray, 0, a.length);
+			return filteredArray;
+		}
+
+		int windowLength = 2 * radius + 1;
+		SlidingMedian window = new SlidingMedian(windowLength);
+		for (int i = 0; i < Math.min(radius, a.length); i++) {
+			if (a[i] != valueToIgnore) {
+				window.add(i % windowLength, a[i]);
+			}
+		}
+		for (int i = 0; i < a.length; i++) {
+			int indexIn = i + radius;
+			int indexOut = i - radius - 1;
+			if (indexOut >= 0 && a[indexOut] != valueToIgnore) {
+				window.remove(indexOut % windowLength);
+			}
+			if (indexIn < a.length && a[indexIn] != valueToIgnore) {
+				window.add(indexIn % windowLength, a[indexIn]);
+			}
+			int size = window.size();
+			if (size == 0) {
+				filteredArray[i] = valueToIgnore;
+			} else if (size % 2 == 1) {
+				filteredArray[i] = (int) window.lowerMedian();
+			} else {
+				filteredArray[i] = ((int) window.lowerMedian() + (int) window.upperMedian()) / 2;
+			}
+		}
+
+		return filteredArray;
+	}
+
+	// moves one value between the heaps so that the low heap holds half (rounded up) of the values
+	private void rebalance()
+	{
+		if (lowSize > highSize + 1) {
+			int slot = low[0];
+			lowSize--;
+			if (lowSize > 0) {
+				low[0] = low[lowSize];
+				heapPosition[low[0]] = -1;
+				siftDownLow(0);
+			}
+			high[highSize] = slot;
+			heapPosition[slot] = highSize;
+			highSize++;
+			siftUpHigh(highSize - 1);
+		} else if (highSize > lowSize) {
+			int slot = high[0];
+			highSize--;
+			if (highSize > 0) {
+				high[0] = high[highSize];
+				heapPosition[high[0]] = 0;
+				siftDownHigh(0);
+			}
+			low[lowSize] = slot;
+			heapPosition[slot] = -(lowSize + 1);
+			lowSize++;
+			siftUpLow(lowSize - 1);
+		}
+	}
+
+	private void siftUpLow(int position)
+	{
+		int slot = low[position];
+		double value = values[slot];
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (values[low[parent]] >= value) {
+				break;
+			}
+			low[position] = low[parent];
+			heapPosition[low[position]] = -(position + 1);
+			position = parent;
+		}
+		low[position] = slot;
+		heapPosition[slot] = -(position + 1);
+	}
+
+	private void siftDownLow(int position)
+	{
+		int slot = low[position];
+		double value = values[slot];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= lowSize) {
+				break;
+			}
+			if (child + 1 < lowSize && values[low[child + 1]] > values[low[child]]) {
+				child++;
+			}
+			if (values[low[child]] <= value) {
+				break;
+			}
+			low[position] = low[child];
+			heapPosition[low[position]] = -(position + 1);
+			position = child;
+		}
+		low[position] = slot;
+		heapPosition[slot] = -(position + 1);
+	}
+
+	private void siftUpHigh(int position)
+	{
+		int slot = high[position];
+		double value = values[slot];
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (values[high[parent]] <= value) {
+				break;
+			}
+			high[position] = high[parent];
+			heapPosition[high[position]] = position;
+			position = parent;
+		}
+		high[position] = slot;
+		heapPosition[slot] = position;
+	}
+
+	private void siftDownHigh(int position)
+	{
+		int slot = high[position];
+		double value = values[slot];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= highSize) {
+				break;
+			}
+			if (child + 1 < highSize && values[high[child + 1]] < values[high[child]]) {
+				child++;
+			}
+			if (values[high[child]] >= value) {
+				break;
+			}
+			high[position] = high[child];
+			heapPosition[high[position]] = position;
+			position = child;
+		}
+		high[position] = slot;
+		heapPosition[slot] = position;
+	}
+
+}
@@ -136,11 +136,22 @@ public class SmoothingSplineInterpolation implements ExtendedPlugInFilter, Dialo
 	 * @return
 	 */
 	public static final float[] execute(float[] waveforms, 
-										int recordLength, 
-										int interpolatedRecordLength, 
-										double smoothingParameter, 
-										double stdev)
+										final int recordLength, 
+										final int interpolatedRecordLength, 
+										final double smoothingParameter, 
+										final double stdev)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, interpolatedRecordLength, smoothingParameter, stdev);
+				}
+			});
+		}
+		
 		if (waveforms == null || recordLength <= 3 || waveforms.length < recordLength || waveforms.length%recordLength != 0) {
 			return null;
 		}
@@ -206,11 +217,22 @@ public class SmoothingSplineInterpolation implements ExtendedPlugInFilter, Dialo
 	 * @return
 	 */
 	public static final double[] execute(double[] waveforms, 
-										int recordLength, 
-										int interpolatedRecordLength, 
-										double smoothingParameter, 
-										double stdev)
+										final int recordLength, 
+										final int interpolatedRecordLength, 
+										final double smoothingParameter, 
+										final double stdev)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, interpolatedRecordLength, smoothingParameter, stdev);
+				}
+			});
+		}
+		
 		if (waveforms == null || recordLength <= 3 || waveforms.length < recordLength || waveforms.length%recordLength != 0) {
 			return null;
 		}
@@ -9,6 +9,7 @@ import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.ImageProcessor;
 import java.awt.AWTEvent;
 import java.awt.TextField;
+import java.util.Arrays;
 
 /**
  * Computes the (positive) frequency at which the power spectrum is maximum for
@@ -17,9 +18,8 @@ import java.awt.TextField;
  * frequency value of the {@code i}<SUP>th</SUP> waveform (row) and
  * {@code j}<SUP>th</SUP> slice is displayed in the {@code i}<SUP>th</SUP> row 
  * and {@code j}<SUP>th</SUP> column of the output image. Input waveforms are
- * zero-padded to the next largest power-of-2 length if the recordLength is not
- * already a power of 2, in order to compute the power spectrum using a
- * traditional FFT routine. Frequency values are given in units of
+ * zero-padded to the next largest power-of-2 length, to the next 2-3-5 product,
+ * or not at all, according to the user-selected FFT length. Frequency values are given in units of
  * {@code 1.0/samplingInterval}.
  *
  * @author Jon N. Marsh
@@ -40,6 +40,7 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 	private static int windowChoice = WaveformUtils.WindowType.RECTANGLE.ordinal();
 	private static double windowParameter = 0.5;
 	private static TextField windowParameterTextField;
+	private static int fftLengthChoiceIndex = 0;
     private final int flags = DOES_32 + DOES_STACKS + PARALLELIZE_STACKS + FINAL_PROCESSING;
 	
     public int setup(String arg, ImagePlus imp) 
@@ -82,6 +83,7 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 		gd.addNumericField("Window parameter", windowParameter, 4);
 		windowParameterTextField = (TextField)(gd.getNumericFields().get(1));
 		windowParameterTextField.setEnabled(WaveformUtils.WindowType.values()[windowChoice].usesParameter());
+		gd.addChoice("FFT length", WaveformUtils.FftLength.stringValues(), WaveformUtils.FftLength.values()[fftLengthChoiceIndex].toString());
 		gd.addDialogListener(this);
 		
         gd.showDialog();
@@ -97,6 +99,7 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 		deltaT = gd.getNextNumber();
 		windowChoice = gd.getNextChoiceIndex();
 		windowParameter = gd.getNextNumber();
+		fftLengthChoiceIndex = gd.getNextChoiceIndex();
 
 		windowParameterTextField.setEnabled(WaveformUtils.WindowType.values()[windowChoice].usesParameter());
 		
@@ -108,7 +111,17 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
         int currentSlice = pfr.getSliceNumber();
         float[] pixels = (float[])ip.getPixels();
 
-		float[] spectralMaxValues = execute(pixels, width, deltaT, WaveformUtils.WindowType.values()[windowChoice], windowParameter);
+		WaveformUtils.WindowType windowType = WaveformUtils.WindowType.values()[windowChoice];
+		WaveformUtils.FftLength fftLength = WaveformUtils.FftLength.values()[fftLengthChoiceIndex];
+		float[] spectralMaxValues;
+		if (SpectrumCache.isEnabled() && windowType == WaveformUtils.WindowType.RECTANGLE) {
+			// spectra of unwindowed records can be shared with other spectral plug-ins
+			int paddedWidth = fftLength.transformLength(width);
+			float[][] spectra = SpectrumCache.getPairedSpectra(imp.getID(), currentSlice, pixels, width, paddedWidth);
+			spectralMaxValues = execute(spectra, height, paddedWidth, deltaT);
+		} else {
+			spectralMaxValues = execute(pixels, width, deltaT, windowType, windowParameter, fftLength);
+		}
 		for (int i=0; i<height; i++) {
 			resultPixels[i*resultWidth+(currentSlice-1)] = spectralMaxValues[i];
 		}
@@ -140,6 +153,44 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 	 */
 	public static float[] execute(float[] waveforms, int recordLength, double deltaT, WaveformUtils.WindowType windowType, double windowParameter)
 	{
+		return execute(waveforms, recordLength, deltaT, windowType, windowParameter, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Returns an array representing the value at which the power spectrum is
+	 * largest for each record in {@code waveforms}, as described in
+	 * {@link #execute(float[], int, double, WaveformUtils.WindowType, double) execute},
+	 * except that input waveforms are zero-padded to the transform length
+	 * selected by {@code fftLength}. Note that the frequency resolution of
+	 * the result is {@code 1.0/(paddedLength*deltaT)}, so the choice of FFT
+	 * length can change the frequency reported for each record.
+	 *
+	 * @param waveforms       one-dimensional array composed of a series of
+	 *                        concatenated records, each of size equal to
+	 *                        {@code recordLength}
+	 * @param recordLength    size of each record in {@code waveforms}
+	 * @param deltaT          sampling interval
+	 * @param windowType      window function
+	 * @param windowParameter used only for window functions that require it,
+	 *                        ignored otherwise
+	 * @param fftLength       choice of FFT length used for each waveform
+	 * @return array of frequency values at which power spectrum is largest for
+	 *         each input waveform
+	 *
+	 */
+	public static float[] execute(float[] waveforms, final int recordLength, final double deltaT, final WaveformUtils.WindowType windowType, final double windowParameter, final WaveformUtils.FftLength fftLength)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, deltaT, windowType, windowParameter, fftLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -149,7 +200,7 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 			float[] spectralMaxValues = new float[numRecords];
 			
 			// determine padded record length
-			int paddedLength = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
+			int paddedLength = fftLength.transformLength(recordLength);
 			
 			// generate window function values
 			double[] window = WaveformUtils.windowFunction(windowType, recordLength, windowParameter, false);
@@ -157,45 +208,105 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 			// compute frequency spacing
 			double deltaF = 1.0/(paddedLength*deltaT);
 			
-			// loop over all records
-			for (int i=0; i<numRecords; i++) {
-				
-				// compute row offset
-				int offset = i*recordLength;
-				
-				// initialize temporary arrays
-				double[] realPadded = new double[paddedLength];
-				double[] imagPadded = new double[paddedLength];
+			// apply window function to each record
+			float[] windowedWaveforms = Arrays.copyOf(waveforms, numRecords*recordLength);
+			WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+			int mark = scratch.mark();
+			try {
+				float[] windowFloat = scratch.floats(recordLength);
 				for (int j=0; j<recordLength; j++) {
-					realPadded[j] = waveforms[offset+j]*window[j];
+					windowFloat[j] = (float)window[j];
 				}
-				
-				// compute FFT
-				WaveformUtils.fftComplexPowerOf2(realPadded, imagPadded, true);
-				
-				// find frequency of the power spectrum max value
-				double magSqrd = realPadded[i]*realPadded[0] + imagPadded[i]*imagPadded[0];
-				double freq = 0.0;
-				double maxValue = magSqrd;
-				double maxFreq = freq;
-				for (int j=1; j<(paddedLength/2)+1; j++) {
-					magSqrd = realPadded[j]*realPadded[j] + imagPadded[j]*imagPadded[j];
-					freq += deltaF;
-					if (magSqrd > maxValue) {
-						maxValue = magSqrd;
-						maxFreq = freq;
-					}
+				for (int i=0; i<numRecords; i++) {
+					ArrayKernels.INSTANCE.multiplyInPlace(windowedWaveforms, i*recordLength, windowFloat, 0, recordLength);
 				}
-				spectralMaxValues[i] = (float)maxFreq;
-
+			} finally {
+				scratch.release(mark);
 			}
 			
+			// compute power spectra, two records per complex FFT
+			float[] powerSpectra = WaveformUtils.powerSpectrumPairedWaveforms(windowedWaveforms, recordLength, paddedLength);
+			
+			// find frequency of the power spectrum max value for each record
+			spectralMaximumFrequencies(powerSpectra, paddedLength, deltaF, spectralMaxValues);
+			
 			return spectralMaxValues;
 				
 		}
 		
 		return null;
 	}
+
+	/**
+	 * Returns an array representing the value at which the power spectrum is
+	 * largest for each of {@code numRecords} records, computed from packed
+	 * spectra of the records that have already been computed by
+	 * {@link WaveformUtils#fftPairedWaveforms(float[], int, int)} (e.g.,
+	 * obtained from the {@link SpectrumCache}), so that no transforms are
+	 * computed. The result is that of
+	 * {@link #execute(float[], int, double, WaveformUtils.WindowType, double, WaveformUtils.FftLength) execute}
+	 * with a rectangular window. Output is null if
+	 * {@code pairedSpectra==null}, {@code numRecords<1},
+	 * {@code transformLength<1}, or the spectra are too short to hold
+	 * {@code numRecords} records.
+	 *
+	 * @param pairedSpectra   real and imaginary parts of the packed spectra
+	 * @param numRecords      number of records
+	 * @param transformLength length of the FFT used for each record
+	 * @param deltaT          sampling interval
+	 * @return array of frequency values at which power spectrum is largest for
+	 *         each input waveform
+	 */
+	public static float[] execute(final float[][] pairedSpectra, int numRecords, final int transformLength, final double deltaT)
+	{
+		if (pairedSpectra == null) {
+			return null;
+		}
+		
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.numThreads(numRecords, transformLength) > 1 && WaveformUtils.pairedSpectraOfRecords(pairedSpectra, 2*((numRecords - 1)/2), numRecords, transformLength) != null) {
+			final float[] spectralMaxValues = new float[numRecords];
+			RecordPartitioner.forEachChunk(numRecords, transformLength, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					float[][] spectra = WaveformUtils.pairedSpectraOfRecords(pairedSpectra, fromRecord, toRecord, transformLength);
+					float[] values = execute(spectra, toRecord - fromRecord, transformLength, deltaT);
+					System.arraycopy(values, 0, spectralMaxValues, fromRecord, values.length);
+				}
+			});
+			return spectralMaxValues;
+		}
+		
+		float[] powerSpectra = WaveformUtils.powerSpectrumPairedSpectra(pairedSpectra[0], pairedSpectra[1], numRecords, transformLength);
+		if (powerSpectra == null) {
+			return null;
+		}
+		
+		float[] spectralMaxValues = new float[numRecords];
+		spectralMaximumFrequencies(powerSpectra, transformLength, 1.0/(transformLength*deltaT), spectralMaxValues);
+		
+		return spectralMaxValues;
+	}
+	
+	private static void spectralMaximumFrequencies(float[] powerSpectra, int paddedLength, double deltaF, float[] spectralMaxValues)
+	{
+		int halfLength = paddedLength/2;
+		for (int i=0; i<spectralMaxValues.length; i++) {
+			int offset = i*(halfLength+1);
+			double freq = 0.0;
+			float maxValue = powerSpectra[offset];
+			double maxFreq = freq;
+			for (int j=1; j<=halfLength; j++) {
+				freq += deltaF;
+				if (powerSpectra[offset+j] > maxValue) {
+					maxValue = powerSpectra[offset+j];
+					maxFreq = freq;
+				}
+			}
+			spectralMaxValues[i] = (float)maxFreq;
+		}
+	}
 	
 	/**
 	 * Returns an array representing the value at which the power spectrum is
@@ -223,6 +334,44 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 	 */
 	public static double[] execute(double[] waveforms, int recordLength, double deltaT, WaveformUtils.WindowType windowType, double windowParameter)
 	{
+		return execute(waveforms, recordLength, deltaT, windowType, windowParameter, WaveformUtils.FftLength.NEXT_POWER_OF_2);
+	}
+
+	/**
+	 * Returns an array representing the value at which the power spectrum is
+	 * largest for each record in {@code waveforms}, as described in
+	 * {@link #execute(double[], int, double, WaveformUtils.WindowType, double) execute},
+	 * except that input waveforms are zero-padded to the transform length
+	 * selected by {@code fftLength}. Note that the frequency resolution of
+	 * the result is {@code 1.0/(paddedLength*deltaT)}, so the choice of FFT
+	 * length can change the frequency reported for each record.
+	 *
+	 * @param waveforms       one-dimensional array composed of a series of
+	 *                        concatenated records, each of size equal to
+	 *                        {@code recordLength}
+	 * @param recordLength    size of each record in {@code waveforms}
+	 * @param deltaT          sampling interval
+	 * @param windowType      window function
+	 * @param windowParameter used only for window functions that require it,
+	 *                        ignored otherwise
+	 * @param fftLength       choice of FFT length used for each waveform
+	 * @return array of frequency values at which power spectrum is largest for
+	 *         each input waveform
+	 *
+	 */
+	public static double[] execute(double[] waveforms, final int recordLength, final double deltaT, final WaveformUtils.WindowType windowType, final double windowParameter, final WaveformUtils.FftLength fftLength)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, deltaT, windowType, windowParameter, fftLength);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -232,7 +381,7 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 			double[] spectralMaxValues = new double[numRecords];
 			
 			// determine padded record length
-			int paddedLength = recordLength + WaveformUtils.amountToPadToNextPowerOf2(recordLength);
+			int paddedLength = fftLength.transformLength(recordLength);
 			
 			// generate window function values
 			double[] window = WaveformUtils.windowFunction(windowType, recordLength, windowParameter, false);
@@ -240,37 +389,30 @@ public class SpectralMaximum implements ExtendedPlugInFilter, DialogListener
 			// compute frequency spacing
 			double deltaF = 1.0/(paddedLength*deltaT);
 			
-			// loop over all records
+			// apply window function to each record
+			double[] windowedWaveforms = Arrays.copyOf(waveforms, numRecords*recordLength);
 			for (int i=0; i<numRecords; i++) {
-				
-				// compute row offset
-				int offset = i*recordLength;
-				
-				// initialize temporary arrays
-				double[] realPadded = new double[paddedLength];
-				double[] imagPadded = new double[paddedLength];
-				for (int j=0; j<recordLength; j++) {
-					realPadded[j] = waveforms[offset+j]*window[j];
-				}
-				
-				// compute FFT
-				WaveformUtils.fftComplexPowerOf2(realPadded, imagPadded, true);
-				
-				// find frequency of the power spectrum max value
-				double magSqrd = realPadded[i]*realPadded[0] + imagPadded[i]*imagPadded[0];
+				ArrayKernels.INSTANCE.multiplyInPlace(windowedWaveforms, i*recordLength, window, 0, recordLength);
+			}
+			
+			// compute power spectra, two records per complex FFT
+			int halfLength = paddedLength/2;
+			double[] powerSpectra = WaveformUtils.powerSpectrumPairedWaveforms(windowedWaveforms, recordLength, paddedLength);
+			
+			// find frequency of the power spectrum max value for each record
+			for (int i=0; i<numRecords; i++) {
+				int offset = i*(halfLength+1);
 				double freq = 0.0;
-				double maxValue = magSqrd;
+				double maxValue = powerSpectra[offset];
 				double maxFreq = freq;
-				for (int j=1; j<(paddedLength/2)+1; j++) {
-					magSqrd = realPadded[j]*realPadded[j] + imagPadded[j]*imagPadded[j];
+				for (int j=1; j<=halfLength; j++) {
 					freq += deltaF;
-					if (magSqrd > maxValue) {
-						maxValue = magSqrd;
+					if (powerSpectra[offset+j] > maxValue) {
+						maxValue = powerSpectra[offset+j];
 						maxFreq = freq;
 					}
 				}
 				spectralMaxValues[i] = maxFreq;
-
 			}
 			
 			return spectralMaxValues;
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.IJ;
+import ij.gui.GenericDialog;
+import ij.plugin.PlugIn;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Session-wide cache of the forward spectra of image slices, shared by the
+ * spectral plug-ins ({@link SpectralMaximum}, {@link ButterworthFilter} and
+ * {@link Envelope}) so that running several of them on the same stack, or
+ * re-running one of them with different parameters (e.g., while previewing),
+ * transforms each slice only once. Spectra are stored in the packed form
+ * computed by
+ * {@link WaveformUtils#fftPairedWaveforms(float[], int, int) fftPairedWaveforms},
+ * and are keyed by image ID, slice number, record length, transform length
+ * and a modification stamp. ImageJ does not keep a per-slice modification
+ * counter, so the stamp is a 64-bit hash of the slice's pixel values; a slice
+ * that is changed in any way is therefore never matched with its old spectra.
+ * The least recently used spectra are evicted when the total size of the
+ * cached spectra exceeds the memory budget.
+ * <p>
+ * The cache is off by default. Running this class as a plug-in shows a dialog
+ * for enabling or disabling the cache, setting its memory budget, and
+ * clearing it.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public class SpectrumCache implements PlugIn
+{
+	/**
+	 * Default memory budget in bytes.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024L * 1024L;
+
+	private static boolean enabled = false;
+	private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private static long memoryUsed = 0L;
+	private static final Map<Key, float[][]> cache = new LinkedHashMap<Key, float[][]>(16, 0.75f, true);
+
+	public void run(String arg)
+	{
+		GenericDialog gd = new GenericDialog("Spectrum Cache...");
+		gd.addCheckbox("Cache spectra", enabled);
+		gd.addNumericField("Memory budget", memoryBudget / (1024.0 * 1024.0), 0, 8, "MB");
+		gd.addCheckbox("Clear cache", false);
+		gd.addMessage("In use: " + IJ.d2s(getMemoryUsed() / (1024.0 * 1024.0), 1) + " MB");
+
+		gd.showDialog();
+		if (gd.wasCanceled()) {
+			return;
+		}
+
+		boolean enable = gd.getNextBoolean();
+		double budgetMB = gd.getNextNumber();
+		boolean clear = gd.getNextBoolean();
+		if (!gd.invalidNumber() && budgetMB >= 0.0) {
+			setMemoryBudget((long) (budgetMB * 1024.0 * 1024.0));
+		}
+		setEnabled(enable);
+		if (clear) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns true if the spectral plug-ins should use the cache.
+	 *
+	 * @return true if caching is enabled
+	 */
+	public static synchronized boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables caching. Disabling the cache also clears it.
+	 *
+	 * @param enable set to true to enable caching
+	 */
+	public static synchronized void setEnabled(boolean enable)
+	{
+		enabled = enable;
+		if (!enabled) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns the maximum total size of the cached spectra in bytes.
+	 *
+	 * @return memory budget in bytes
+	 */
+	public static synchronized long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the maximum total size of the cached spectra in bytes, evicting
+	 * the least recently used spectra if necessary. Negative values are
+	 * ignored.
+	 *
+	 * @param bytes memory budget in bytes
+	 */
+	public static synchronized void setMemoryBudget(long bytes)
+	{
+		if (bytes >= 0L) {
+			memoryBudget = bytes;
+			evict();
+		}
+	}
+
+	/**
+	 * Returns the total size of the cached spectra in bytes.
+	 *
+	 * @return memory used in bytes
+	 */
+	public static synchronized long getMemoryUsed()
+	{
+		return memoryUsed;
+	}
+
+	/**
+	 * Returns the number of slices whose spectra are currently cached.
+	 *
+	 * @return number of cache entries
+	 */
+	public static synchronized int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Removes all spectra from the cache.
+	 */
+	public static synchronized void clear()
+	{
+		cache.clear();
+		memoryUsed = 0L;
+	}
+
+	/**
+	 * Returns the packed forward spectra of the records in {@code pixels},
+	 * as computed by
+	 * {@link WaveformUtils#fftPairedWaveforms(float[], int, int) fftPairedWaveforms}.
+	 * If caching is enabled and the spectra of identical pixel values of the
+	 * same image and slice have already been computed with the same record
+	 * and transform lengths, the cached spectra are returned; otherwise they
+	 * are computed and, if caching is enabled and they fit within the memory
+	 * budget, added to the cache. The returned arrays may be shared with
+	 * other callers and must not be modified. Output is {@code null} if
+	 * {@code pixels==null}, {@code recordLength<1}, or
+	 * {@code transformLength<recordLength}.
+	 *
+	 * @param imageID         unique ID of the image (see
+	 *                        {@link ij.ImagePlus#getID()})
+	 * @param slice           slice number
+	 * @param pixels          records of the slice concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @return two-element array containing the real and imaginary parts of
+	 *         the packed spectra
+	 */
+	public static float[][] getPairedSpectra(int imageID, int slice, float[] pixels, int recordLength, int transformLength)
+	{
+		if (pixels == null || recordLength < 1 || transformLength < recordLength) {
+			return null;
+		}
+
+		Key key = null;
+		if (isEnabled()) {
+			key = new Key(imageID, slice, modificationStamp(pixels), recordLength, transformLength);
+			synchronized (SpectrumCache.class) {
+				float[][] spectra = cache.get(key);
+				if (spectra != null) {
+					return spectra;
+				}
+			}
+		}
+
+		// transforms are computed outside the lock so that slices can be processed in parallel
+		float[][] spectra = WaveformUtils.fftPairedWaveforms(pixels, recordLength, transformLength);
+
+		if (key != null) {
+			synchronized (SpectrumCache.class) {
+				long size = sizeOf(spectra);
+				if (enabled && size <= memoryBudget) {
+					float[][] previous = cache.put(key, spectra);
+					memoryUsed += size;
+					if (previous != null) {
+						memoryUsed -= sizeOf(previous);
+					}
+					evict();
+				}
+			}
+		}
+
+		return spectra;
+	}
+
+	/**
+	 * Returns a 64-bit hash of the bit patterns of the values in
+	 * {@code pixels}, used as a modification stamp for a slice. Returns
+	 * {@code 0} if {@code pixels==null}.
+	 *
+	 * @param pixels pixel values of a slice
+	 * @return modification stamp
+	 */
+	public static long modificationStamp(float[] pixels)
+	{
+		if (pixels == null) {
+			return 0L;
+		}
+
+		// 64-bit FNV-1a over 32-bit words
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < pixels.length; i++) {
+			hash ^= Float.floatToIntBits(pixels[i]);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= pixels.length;
+
+		return hash;
+	}
+
+	private static long sizeOf(float[][] spectra)
+	{
+		return 4L * (spectra[0].length + spectra[1].length);
+	}
+
+	private static void evict()
+	{
+		Iterator<float[][]> iterator = cache.values().iterator();
+		while (memoryUsed > memoryBudget && iterator.hasNext()) {
+			memoryUsed -= sizeOf(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	private static final class Key
+	{
+		private final int imageID;
+		private final int slice;
+		private final long stamp;
+		private final int recordLength;
+		private final int transformLength;
+
+		Key(int imageID, int slice, long stamp, int recordLength, int transformLength)
+		{
+			this.imageID = imageID;
+			this.slice = slice;
+			this.stamp = stamp;
+			this.recordLength = recordLength;
+			this.transformLength = transformLength;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return imageID == other.imageID
+				&& slice == other.slice
+				&& stamp == other.stamp
+				&& recordLength == other.recordLength
+				&& transformLength == other.transformLength;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int result = imageID;
+			result = 31 * result + slice;
+			result = 31 * result + (int) (stamp ^ (stamp >>> 32));
+			result = 31 * result + recordLength;
+			result = 31 * result + transformLength;
+			return result;
+		}
+	}
+
+}
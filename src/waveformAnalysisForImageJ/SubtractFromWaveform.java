@@ -5,7 +5,6 @@ import ij.process.*;
 import ij.gui.*;
 import java.awt.*;
 import ij.plugin.filter.*;
-import java.util.Arrays;
 
 /**
  * Subtracts the specified quantity of each waveform in an image from every 
@@ -93,8 +92,19 @@ public class SubtractFromWaveform implements ExtendedPlugInFilter, DialogListene
 	 *                     line to the entire waveform and subtracts from each
 	 *                     point the value of the line at that point
 	 */
-	public static final void execute(float[] waveforms, int recordLength, int operation)
+	public static final void execute(float[] waveforms, final int recordLength, final int operation)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, recordLength, operation);
+			}
+		})) {
+			return;
+		}
+		
 		if (waveforms != null && waveforms.length >= recordLength && recordLength > 0 && waveforms.length % recordLength == 0) {
 
 			// compute number of records
@@ -125,8 +135,7 @@ public class SubtractFromWaveform implements ExtendedPlugInFilter, DialogListene
 						int offset = i * recordLength;
 
 						// compute median for current record
-						float[] temp = Arrays.copyOfRange(waveforms, offset, offset + recordLength);
-						float median = WaveformUtils.medianAndSort(temp);
+						float median = WaveformUtils.median(waveforms, offset, offset + recordLength);
 
 						// subtract mean from current record in place
 						WaveformUtils.addScalarInPlace(waveforms, offset, offset + recordLength, -median);
@@ -179,8 +188,19 @@ public class SubtractFromWaveform implements ExtendedPlugInFilter, DialogListene
 
 	}
 	
-	public static final void execute(double[] waveforms, int recordLength, int operation)
+	public static final void execute(double[] waveforms, final int recordLength, final int operation)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, recordLength, operation);
+			}
+		})) {
+			return;
+		}
+		
 		if (waveforms != null && waveforms.length >= recordLength && recordLength > 0 && waveforms.length % recordLength == 0) {
 
 			// compute number of records
@@ -211,8 +231,7 @@ public class SubtractFromWaveform implements ExtendedPlugInFilter, DialogListene
 						int offset = i * recordLength;
 
 						// compute median for current record
-						double[] temp = Arrays.copyOfRange(waveforms, offset, offset + recordLength);
-						double median = WaveformUtils.medianAndSort(temp);
+						double median = WaveformUtils.median(waveforms, offset, offset + recordLength);
 
 						// subtract mean from current record in place
 						WaveformUtils.addScalarInPlace(waveforms, offset, offset + recordLength, -median);
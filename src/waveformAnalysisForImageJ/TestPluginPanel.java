@@ -321,43 +321,9 @@ public class TestPluginPanel implements ExtendedPlugInFilter, ActionListener, Do
 	// Applies a moving-window median filter to input array, ignoring any value equal to -1
 	private int[] medianFilter1D(int[] a, int radius)
 	{
-		int[] filteredArray = new int[a.length];
-		for (int i = 0; i < a.length; i++) {
-			filteredArray[i] = getMedianValueAtIndex(a, i, radius, -1);
-		}
-		return filteredArray;
+		return SlidingMedian.medianFilter(a, radius, -1);
 	}
 
-	// Returns the median value of a subset of the input array centered at index, of size 2*radius+1, ignoring any value equal to valueToIgnore
-	private int getMedianValueAtIndex(int[] a, int index, int radius, int valueToIgnore)
-	{
-		int minIndex = Math.max(0, index - radius);
-		int maxIndex = Math.min(a.length - 1, index + radius);
-		int span = (maxIndex - minIndex) + 1;
-		int[] temp = new int[span];
-		ArrayList<Integer> v = new ArrayList<Integer>();
-
-		System.arraycopy(a, minIndex, temp, 0, span);
-		Arrays.sort(temp);
-
-		for (int i = 0; i < span; i++) {
-			if (temp[i] != valueToIgnore) {
-				v.add(temp[i]);
-			}
-		}
-
-		int size = v.size();
-		if (size == 1) {
-			return (v.get(0));
-		} else if (size % 2 == 1) {
-			return (v.get((size - 1) / 2));
-		} else if (size != 0) {
-			return (int) ((v.get(size / 2) + v.get((size / 2) - 1)) / 2);
-		} else {
-			return valueToIgnore;
-		}
-	}	
-
 	// Returns the index of the first maximum peak value found which exceeds the specified threshold.  Returns -1 if no peaks above threshold are detected.
 	private int peakDetectMaximum(float[] a, float threshold)
 	{
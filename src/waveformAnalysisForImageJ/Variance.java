@@ -109,8 +109,19 @@ public class Variance implements ExtendedPlugInFilter
 	 *                            variance
 	 * @return array of variances of input waveforms
 	 */
-	public static float[] execute(float[] waveforms, int recordLength, boolean useUnbiasedEstimate)
+	public static float[] execute(float[] waveforms, final int recordLength, final boolean useUnbiasedEstimate)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, useUnbiasedEstimate);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 1 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -154,8 +165,19 @@ public class Variance implements ExtendedPlugInFilter
 	 *                            variance
 	 * @return array of variances of input waveforms
 	 */
-	public static double[] execute(double[] waveforms, int recordLength, boolean useUnbiasedEstimate)
+	public static double[] execute(double[] waveforms, final int recordLength, final boolean useUnbiasedEstimate)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, useUnbiasedEstimate);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 1 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
 			
 			// compute number of records
@@ -203,8 +203,19 @@ public class WaveformExtrema implements ExtendedPlugInFilter, DialogListener
 	 *         or if {@code waveforms.length} is not evenly divisible by
 	 *         {@code recordLength}.
 	 */
-	public static SignalExtrema[] execute(float[] waveforms, int recordLength, int interpolationMethod)
+	public static SignalExtrema[] execute(float[] waveforms, final int recordLength, final int interpolationMethod)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (SignalExtrema[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, interpolationMethod);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 3 && waveforms.length >= recordLength && waveforms.length % recordLength == 0) {
 
 			// compute number of records
@@ -303,8 +314,19 @@ public class WaveformExtrema implements ExtendedPlugInFilter, DialogListener
 	 *         or if {@code waveforms.length} is not evenly divisible by
 	 *         {@code recordLength}.
 	 */
-	public static SignalExtrema[] execute(double[] waveforms, int recordLength, int interpolationMethod)
+	public static SignalExtrema[] execute(double[] waveforms, final int recordLength, final int interpolationMethod)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (SignalExtrema[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, interpolationMethod);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 3 && waveforms.length >= recordLength && waveforms.length % recordLength == 0) {
 
 			// compute number of records
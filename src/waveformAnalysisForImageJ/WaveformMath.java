@@ -124,8 +124,19 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 	 *                  record in {@code waveforms} by {@code waveform} on an
 	 *                  element-by-element basis
 	 */
-	public static final void execute(float[] waveforms, float[] waveform, int operation)
+	public static final void execute(float[] waveforms, final float[] waveform, final int operation)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, (waveform == null ? 0 : waveform.length), new RecordPartitioner.FloatOperation()
+		{
+			public void process(float[] records, int fromRecord)
+			{
+				execute(records, waveform, operation);
+			}
+		})) {
+			return;
+		}
+		
 		if (waveforms != null && waveform != null) {
 
 			int recordLength = waveform.length;
@@ -149,9 +160,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 								offset = i * recordLength;
 
 								// perform operation in place
-								for (int j = 0; j < recordLength; j++) {
-									waveforms[offset + j] += waveform[j];
-								}
+								ArrayKernels.INSTANCE.addInPlace(waveforms, offset, waveform, 0, recordLength);
 
 							}
 							break;
@@ -165,9 +174,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 								offset = i * recordLength;
 
 								// perform operation in place
-								for (int j = 0; j < recordLength; j++) {
-									waveforms[offset + j] -= waveform[j];
-								}
+								ArrayKernels.INSTANCE.subtractInPlace(waveforms, offset, waveform, 0, recordLength);
 
 							}
 							break;
@@ -181,9 +188,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 								offset = i * recordLength;
 
 								// perform operation in place
-								for (int j = 0; j < recordLength; j++) {
-									waveforms[offset + j] *= waveform[j];
-								}
+								ArrayKernels.INSTANCE.multiplyInPlace(waveforms, offset, waveform, 0, recordLength);
 
 							}
 							break;
@@ -197,9 +202,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 								offset = i * recordLength;
 
 								// perform operation in place
-								for (int j = 0; j < recordLength; j++) {
-									waveforms[offset + j] /= waveform[j];
-								}
+								ArrayKernels.INSTANCE.divideInPlace(waveforms, offset, waveform, 0, recordLength);
 
 							}
 							break;
@@ -239,8 +242,19 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 	 *                  record in {@code waveforms} by {@code waveform} on an
 	 *                  element-by-element basis
 	 */
-	public static final void execute(double[] waveforms, double[] waveform, int operation)
+	public static final void execute(double[] waveforms, final double[] waveform, final int operation)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.processInPlace(waveforms, (waveform == null ? 0 : waveform.length), new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				execute(records, waveform, operation);
+			}
+		})) {
+			return;
+		}
+		
 		int recordLength = waveform.length;
 		
 		// compute number of records
@@ -258,9 +272,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 					offset = i*recordLength;
 					
 					// perform operation in place
-					for (int j=0; j<recordLength; j++) {
-						waveforms[offset+j] += waveform[j];
-					}
+					ArrayKernels.INSTANCE.addInPlace(waveforms, offset, waveform, 0, recordLength);
 					
 				}
 				break;
@@ -274,9 +286,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 					offset = i*recordLength;
 					
 					// perform operation in place
-					for (int j=0; j<recordLength; j++) {
-						waveforms[offset+j] -= waveform[j];
-					}
+					ArrayKernels.INSTANCE.subtractInPlace(waveforms, offset, waveform, 0, recordLength);
 					
 				}
 				break;
@@ -290,9 +300,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 					offset = i*recordLength;
 					
 					// perform operation in place
-					for (int j=0; j<recordLength; j++) {
-						waveforms[offset+j] *= waveform[j];
-					}
+					ArrayKernels.INSTANCE.multiplyInPlace(waveforms, offset, waveform, 0, recordLength);
 					
 				}
 				break;
@@ -306,9 +314,7 @@ public class WaveformMath implements ExtendedPlugInFilter, DialogListener
 					offset = i*recordLength;
 					
 					// perform operation in place
-					for (int j=0; j<recordLength; j++) {
-						waveforms[offset+j] /= waveform[j];
-					}
+					ArrayKernels.INSTANCE.divideInPlace(waveforms, offset, waveform, 0, recordLength);
 					
 				}
 				break;
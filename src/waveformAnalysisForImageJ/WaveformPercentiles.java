@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.GenericDialog;
+import ij.measure.ResultsTable;
+import ij.plugin.filter.ExtendedPlugInFilter;
+import ij.plugin.filter.PlugInFilterRunner;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.util.Tools;
+
+/**
+ * Estimates selected percentiles of each input waveform, and optionally of
+ * the whole image or stack, from {@link QuantileSketch quantile sketches}
+ * rather than by sorting. Each row in the input image is assumed to represent
+ * a single waveform. The percentiles are returned in a new image with one
+ * channel (slice) per percentile; the value of the {@code i}<SUP>th</SUP>
+ * waveform (row) and {@code j}<SUP>th</SUP> slice is displayed in the
+ * {@code i}<SUP>th</SUP> row and {@code j}<SUP>th</SUP> column of the channel.
+ * Whole-stack percentiles are computed by merging the sketches of each slice
+ * and are listed in a results table. Records of up to
+ * {@link QuantileSketch#DEFAULT_K} points are sketched exactly; otherwise the
+ * rank error is about 0.1% of the number of points.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public class WaveformPercentiles implements ExtendedPlugInFilter
+{
+
+	private static String percentilesString = "1 50 99";
+	private static boolean isStackPercentileReported = true;
+	private ImagePlus imp, resultImp;
+	private ImageStack resultStack;
+	private double[] percentiles;
+	private QuantileSketch[] sliceSketches;
+	private int width, height, stackSize;
+	private String title;
+	private PlugInFilterRunner pfr;
+	private final int flags = DOES_32 + DOES_STACKS + PARALLELIZE_STACKS + FINAL_PROCESSING;
+
+	public int setup(String arg, ImagePlus imp)
+	{
+		// perform final processing here
+		if (arg.equals("final")) {
+			if (resultImp != null) {
+				resultImp.show();
+				IJ.resetMinAndMax();
+			}
+			if (isStackPercentileReported && sliceSketches != null) {
+				reportStackPercentiles();
+			}
+			return DONE;
+		}
+
+		this.imp = imp;
+		if (imp == null) {
+			IJ.noImage();
+			return DONE;
+		}
+
+		width = imp.getWidth();
+		height = imp.getHeight();
+		stackSize = imp.getStackSize();
+		title = imp.getTitle();
+
+		return flags;
+	}
+
+	public int showDialog(ImagePlus imp, String command, PlugInFilterRunner pfr)
+	{
+		this.pfr = pfr;
+
+		GenericDialog gd = new GenericDialog("Waveform Percentiles...");
+		gd.addStringField("Percentiles (0-100)", percentilesString, 12);
+		gd.addCheckbox("Report percentiles of whole stack", isStackPercentileReported);
+		gd.showDialog();
+
+		if (gd.wasCanceled()) {
+			return DONE;
+		}
+
+		percentilesString = gd.getNextString();
+		isStackPercentileReported = gd.getNextBoolean();
+		percentiles = parsePercentiles(percentilesString);
+		if (percentiles == null) {
+			IJ.error("Waveform Percentiles", "Percentiles must be numbers from 0 to 100");
+			return DONE;
+		}
+
+		resultImp = IJ.createImage(title + " percentiles", "32-bit", stackSize, height, percentiles.length);
+		resultStack = resultImp.getStack();
+		for (int k=0; k<percentiles.length; k++) {
+			resultStack.setSliceLabel(IJ.d2s(percentiles[k], 3, 9) + "%", k+1);
+		}
+		resultImp.setDimensions(percentiles.length, 1, 1);
+		if (isStackPercentileReported) {
+			sliceSketches = new QuantileSketch[stackSize];
+		}
+
+		return flags;
+	}
+
+	public void run(ImageProcessor ip)
+	{
+		int currentSlice = pfr.getSliceNumber();
+		float[] pixels = (float[])ip.getPixels();
+
+		float[] results = execute(pixels, width, percentiles);
+		for (int k=0; k<percentiles.length; k++) {
+			float[] resultPixels = (float[])resultStack.getPixels(k+1);
+			for (int i=0; i<height; i++) {
+				resultPixels[i*stackSize+(currentSlice-1)] = results[i*percentiles.length+k];
+			}
+		}
+
+		if (sliceSketches != null) {
+			QuantileSketch sketch = new QuantileSketch();
+			sketch.add(pixels, 0, pixels.length);
+			sliceSketches[currentSlice-1] = sketch;
+		}
+	}
+
+	/**
+	 * Returns an array representing the approximate percentiles of each
+	 * record in {@code waveforms}, where each record has {@code recordLength}
+	 * elements, estimated from a {@link QuantileSketch} of each record. The
+	 * value of {@code percentiles[k]} for the {@code i}<SUP>th</SUP> record is
+	 * at index {@code i*percentiles.length+k} of the output. Output is null if
+	 * {@code waveforms==null}, {@code percentiles==null},
+	 * {@code recordLength<=0}, {@code waveforms.length<recordLength}, or if
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}.
+	 *
+	 * @param waveforms    one-dimensional array composed of a series of
+	 *                     concatenated records, each of size equal to
+	 *                     {@code recordLength}
+	 * @param recordLength size of each record in {@code waveforms}
+	 * @param percentiles  percentiles to estimate, from 0 to 100
+	 * @return array of percentiles of input waveforms
+	 */
+	public static float[] execute(float[] waveforms, final int recordLength, final double[] percentiles)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, percentiles);
+				}
+			});
+		}
+
+		if (waveforms != null && percentiles != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
+
+			// compute number of records
+			int numRecords = waveforms.length/recordLength;
+
+			// allocate output array
+			float[] results = new float[numRecords*percentiles.length];
+			QuantileSketch sketch = new QuantileSketch();
+			double[] q = new double[percentiles.length];
+			for (int k=0; k<q.length; k++) {
+				q[k] = percentiles[k]/100.0;
+			}
+
+			// loop over all records
+			for (int i=0; i<numRecords; i++) {
+
+				// compute row offset
+				int offset = i*recordLength;
+
+				// sketch current waveform
+				sketch.clear();
+				sketch.add(waveforms, offset, offset+recordLength);
+				double[] values = sketch.quantiles(q);
+				for (int k=0; k<q.length; k++) {
+					results[i*q.length+k] = (float)values[k];
+				}
+
+			}
+
+			return results;
+
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns an array representing the approximate percentiles of each
+	 * record in {@code waveforms}, where each record has {@code recordLength}
+	 * elements, estimated from a {@link QuantileSketch} of each record. The
+	 * value of {@code percentiles[k]} for the {@code i}<SUP>th</SUP> record is
+	 * at index {@code i*percentiles.length+k} of the output. Output is null if
+	 * {@code waveforms==null}, {@code percentiles==null},
+	 * {@code recordLength<=0}, {@code waveforms.length<recordLength}, or if
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}.
+	 *
+	 * @param waveforms    one-dimensional array composed of a series of
+	 *                     concatenated records, each of size equal to
+	 *                     {@code recordLength}
+	 * @param recordLength size of each record in {@code waveforms}
+	 * @param percentiles  percentiles to estimate, from 0 to 100
+	 * @return array of percentiles of input waveforms
+	 */
+	public static double[] execute(double[] waveforms, final int recordLength, final double[] percentiles)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, percentiles);
+				}
+			});
+		}
+
+		if (waveforms != null && percentiles != null && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
+
+			// compute number of records
+			int numRecords = waveforms.length/recordLength;
+
+			// allocate output array
+			double[] results = new double[numRecords*percentiles.length];
+			QuantileSketch sketch = new QuantileSketch();
+			double[] q = new double[percentiles.length];
+			for (int k=0; k<q.length; k++) {
+				q[k] = percentiles[k]/100.0;
+			}
+
+			// loop over all records
+			for (int i=0; i<numRecords; i++) {
+
+				// compute row offset
+				int offset = i*recordLength;
+
+				// sketch current waveform
+				sketch.clear();
+				sketch.add(waveforms, offset, offset+recordLength);
+				double[] values = sketch.quantiles(q);
+				System.arraycopy(values, 0, results, i*q.length, q.length);
+
+			}
+
+			return results;
+
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a {@link QuantileSketch} of all pixel values in {@code stack},
+	 * built by sketching each slice (in parallel, for large slices) and
+	 * merging the slice sketches in order. Output is null if
+	 * {@code stack==null}.
+	 *
+	 * @param stack input stack of any type
+	 * @return sketch of the pixel values of the stack
+	 */
+	public static QuantileSketch sketchStack(ImageStack stack)
+	{
+		if (stack == null) {
+			return null;
+		}
+		QuantileSketch sketch = new QuantileSketch();
+		for (int slice=1; slice<=stack.getSize(); slice++) {
+			ImageProcessor ip = stack.getProcessor(slice);
+			float[] pixels = ip instanceof FloatProcessor ? (float[])ip.getPixels() : (float[])ip.convertToFloat().getPixels();
+			sketch.add(pixels, 0, pixels.length);
+		}
+		return sketch;
+	}
+
+	/**
+	 * Parses a list of percentiles separated by spaces, commas or tabs, such
+	 * as {@code "1 50 99"}. Output is null if the list is empty or contains a
+	 * value that is not a number from 0 to 100.
+	 *
+	 * @param s list of percentiles
+	 * @return array of percentiles
+	 */
+	public static double[] parsePercentiles(String s)
+	{
+		if (s == null) {
+			return null;
+		}
+		String[] items = Tools.split(s, " ,\t");
+		double[] values = new double[items.length];
+		for (int k=0; k<items.length; k++) {
+			values[k] = Tools.parseDouble(items[k]);
+			if (!(values[k] >= 0.0 && values[k] <= 100.0)) {
+				return null;
+			}
+		}
+		return items.length > 0 ? values : null;
+	}
+
+	private void reportStackPercentiles()
+	{
+		QuantileSketch sketch = new QuantileSketch();
+		for (int s=0; s<sliceSketches.length; s++) {
+			if (sliceSketches[s] != null) {
+				sketch.combine(sliceSketches[s]);
+			}
+		}
+		double[] q = new double[percentiles.length];
+		for (int k=0; k<q.length; k++) {
+			q[k] = percentiles[k]/100.0;
+		}
+		double[] values = sketch.quantiles(q);
+
+		ResultsTable rt = new ResultsTable();
+		for (int k=0; k<percentiles.length; k++) {
+			rt.incrementCounter();
+			rt.addValue("Percentile", percentiles[k]);
+			rt.addValue("Value", values[k]);
+		}
+		rt.show(title + " stack percentiles");
+	}
+
+	public void setNPasses(int nPasses) {}
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2015 Jon N. Marsh.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package waveformAnalysisForImageJ;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.DialogListener;
+import ij.gui.GenericDialog;
+import ij.plugin.filter.ExtendedPlugInFilter;
+import ij.plugin.filter.PlugInFilterRunner;
+import ij.process.ImageProcessor;
+import java.awt.AWTEvent;
+
+/**
+ * Computes any selected subset of the mean, variance, skewness, kurtosis,
+ * minimum, maximum, range and sum of squares of each input waveform in a
+ * single pass over each record, and returns the results in a new image with
+ * one channel (slice) per selected statistic. Each row in the input image is
+ * assumed to represent a single waveform. A statistic of the
+ * {@code i}<SUP>th</SUP> waveform (row) and {@code j}<SUP>th</SUP> slice is
+ * displayed in the {@code i}<SUP>th</SUP> row and {@code j}<SUP>th</SUP>
+ * column of the channel for that statistic, as in the single-statistic
+ * plug-ins ({@link MeanValue}, {@link Variance}, {@link Skewness},
+ * {@link Kurtosis}, {@link MinimumValue}, {@link MaximumValue}, {@link Range}
+ * and {@link SumOfSquares}), whose results agree with those of this plug-in
+ * to within rounding error. The central moments are accumulated by a
+ * {@link MomentAccumulator}, only up to the highest order needed for the
+ * selected statistics.
+ *
+ * @author Jon N. Marsh
+ * @version 2015-04-07
+ */
+public class WaveformStatistics implements ExtendedPlugInFilter, DialogListener
+{
+
+	public static final int MEAN = 0, VARIANCE = 1, SKEWNESS = 2, KURTOSIS = 3, MINIMUM = 4, MAXIMUM = 5, RANGE = 6, SUM_OF_SQUARES = 7;
+	private static final String[] statisticLabels = {"Mean", "Variance", "Skewness", "Kurtosis", "Minimum", "Maximum", "Range", "Sum of squares"};
+	private static final String[] statisticHeading = {"Statistics"};
+	private static final boolean[] isStatisticSelected = {true, true, true, true, true, true, true, true};
+	private static boolean useUnbiasedEstimate = false;
+	private static boolean isSampleSkewness = true;
+	private ImagePlus imp, resultImp;
+	private ImageStack resultStack;
+	private int[] statistics;
+	private int width, height, stackSize;
+	private String title;
+	private GenericDialog gd;
+	private PlugInFilterRunner pfr;
+	private final int flags = DOES_32 + DOES_STACKS + PARALLELIZE_STACKS + FINAL_PROCESSING;
+
+	public int setup(String arg, ImagePlus imp)
+	{
+		// perform final processing here
+		if (arg.equals("final")) {
+			if (resultImp != null) {
+				resultImp.show();
+				IJ.resetMinAndMax();
+			}
+			return DONE;
+		}
+
+		this.imp = imp;
+		if (imp == null) {
+			IJ.noImage();
+			return DONE;
+		}
+
+		width = imp.getWidth();
+		height = imp.getHeight();
+		stackSize = imp.getStackSize();
+		title = imp.getTitle();
+
+		return flags;
+	}
+
+	public int showDialog(ImagePlus imp, String command, PlugInFilterRunner pfr)
+	{
+		this.pfr = pfr;
+
+		gd = new GenericDialog("Waveform Statistics...");
+		gd.addCheckboxGroup(4, 2, statisticLabels, isStatisticSelected, statisticHeading);
+		gd.addCheckbox("Use unbiased estimate of variance", useUnbiasedEstimate);
+		gd.addCheckbox("Sample skewness", isSampleSkewness);
+		gd.addDialogListener(this);
+		gd.showDialog();
+
+		if (gd.wasCanceled()) {
+			return DONE;
+		}
+
+		// list selected statistics in menu order
+		int numStatistics = 0;
+		for (int k=0; k<isStatisticSelected.length; k++) {
+			if (isStatisticSelected[k]) {
+				numStatistics++;
+			}
+		}
+		if (numStatistics == 0) {
+			return DONE;
+		}
+		statistics = new int[numStatistics];
+		for (int k=0, index=0; k<isStatisticSelected.length; k++) {
+			if (isStatisticSelected[k]) {
+				statistics[index++] = k;
+			}
+		}
+
+		// one channel per statistic, each with one column per input slice
+		resultImp = IJ.createImage(title + " statistics", "32-bit", stackSize, height, numStatistics);
+		resultStack = resultImp.getStack();
+		for (int k=0; k<numStatistics; k++) {
+			resultStack.setSliceLabel(statisticLabels[statistics[k]], k+1);
+		}
+		resultImp.setDimensions(numStatistics, 1, 1);
+
+		return flags;
+	}
+
+	public boolean dialogItemChanged(GenericDialog gd, AWTEvent e)
+	{
+		for (int k=0; k<isStatisticSelected.length; k++) {
+			isStatisticSelected[k] = gd.getNextBoolean();
+		}
+		useUnbiasedEstimate = gd.getNextBoolean();
+		isSampleSkewness = gd.getNextBoolean();
+
+		return true;
+	}
+
+	public void run(ImageProcessor ip)
+	{
+		int currentSlice = pfr.getSliceNumber();
+		float[] pixels = (float[])ip.getPixels();
+
+		float[] results = execute(pixels, width, statistics, useUnbiasedEstimate, isSampleSkewness);
+		for (int k=0; k<statistics.length; k++) {
+			float[] resultPixels = (float[])resultStack.getPixels(k+1);
+			for (int i=0; i<height; i++) {
+				resultPixels[i*stackSize+(currentSlice-1)] = results[i*statistics.length+k];
+			}
+		}
+	}
+
+	/**
+	 * Returns an array representing the selected statistics of each record in
+	 * {@code waveforms}, where each record has {@code recordLength} elements.
+	 * Statistics are identified by the constants {@link #MEAN},
+	 * {@link #VARIANCE}, {@link #SKEWNESS}, {@link #KURTOSIS},
+	 * {@link #MINIMUM}, {@link #MAXIMUM}, {@link #RANGE} and
+	 * {@link #SUM_OF_SQUARES}, and all are computed in a single pass over each
+	 * record. The value of {@code statistics[k]} for the {@code i}<SUP>th</SUP>
+	 * record is at index {@code i*statistics.length+k} of the output. The
+	 * variance is {@code NaN} for records of fewer than 2 points (unbiased
+	 * estimate only), and the skewness for records of fewer than 3 points.
+	 * Output is null if {@code waveforms==null}, {@code statistics==null},
+	 * {@code recordLength<=0}, {@code waveforms.length<recordLength}, if
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}, or if {@code statistics} contains an invalid
+	 * value.
+	 *
+	 * @param waveforms           one-dimensional array composed of a series of
+	 *                            concatenated records, each of size equal to
+	 *                            {@code recordLength}
+	 * @param recordLength        size of each record in {@code waveforms}
+	 * @param statistics          statistics to compute
+	 * @param useUnbiasedEstimate set to true to output an unbiased estimate of
+	 *                            variance
+	 * @param isSampleSkewness    set true to output sample skewness, false to
+	 *                            output population skewness
+	 * @return array of statistics of input waveforms
+	 */
+	public static float[] execute(float[] waveforms, final int recordLength, final int[] statistics, final boolean useUnbiasedEstimate, final boolean isSampleSkewness)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (float[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, statistics, useUnbiasedEstimate, isSampleSkewness);
+				}
+			});
+		}
+
+		int order = momentOrder(statistics);
+		if (waveforms != null && order >= 0 && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
+
+			// compute number of records
+			int numRecords = waveforms.length/recordLength;
+
+			// allocate output array
+			float[] results = new float[numRecords*statistics.length];
+			MomentAccumulator moments = new MomentAccumulator(order);
+
+			// loop over all records
+			for (int i=0; i<numRecords; i++) {
+
+				// compute row offset
+				int offset = i*recordLength;
+
+				// accumulate sums, extrema and central moments in a single pass
+				double sum = 0.0;
+				double sumOfSquares = 0.0;
+				float min = waveforms[offset];
+				float max = min;
+				moments.clear();
+				for (int j=offset; j<offset+recordLength; j++) {
+					float value = waveforms[j];
+					sum += value;
+					sumOfSquares += (double)value*value;
+					if (value > max) {
+						max = value;
+					}
+					if (value < min) {
+						min = value;
+					}
+					if (order > 1) {
+						moments.add(value);
+					}
+				}
+
+				for (int k=0; k<statistics.length; k++) {
+					results[i*statistics.length+k] = (float)statistic(statistics[k], recordLength, sum, sumOfSquares, min, max, moments, useUnbiasedEstimate, isSampleSkewness);
+				}
+
+			}
+
+			return results;
+
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns an array representing the selected statistics of each record in
+	 * {@code waveforms}, where each record has {@code recordLength} elements.
+	 * Statistics are identified by the constants {@link #MEAN},
+	 * {@link #VARIANCE}, {@link #SKEWNESS}, {@link #KURTOSIS},
+	 * {@link #MINIMUM}, {@link #MAXIMUM}, {@link #RANGE} and
+	 * {@link #SUM_OF_SQUARES}, and all are computed in a single pass over each
+	 * record. The value of {@code statistics[k]} for the {@code i}<SUP>th</SUP>
+	 * record is at index {@code i*statistics.length+k} of the output. The
+	 * variance is {@code NaN} for records of fewer than 2 points (unbiased
+	 * estimate only), and the skewness for records of fewer than 3 points.
+	 * Output is null if {@code waveforms==null}, {@code statistics==null},
+	 * {@code recordLength<=0}, {@code waveforms.length<recordLength}, if
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}, or if {@code statistics} contains an invalid
+	 * value.
+	 *
+	 * @param waveforms           one-dimensional array composed of a series of
+	 *                            concatenated records, each of size equal to
+	 *                            {@code recordLength}
+	 * @param recordLength        size of each record in {@code waveforms}
+	 * @param statistics          statistics to compute
+	 * @param useUnbiasedEstimate set to true to output an unbiased estimate of
+	 *                            variance
+	 * @param isSampleSkewness    set true to output sample skewness, false to
+	 *                            output population skewness
+	 * @return array of statistics of input waveforms
+	 */
+	public static double[] execute(double[] waveforms, final int recordLength, final int[] statistics, final boolean useUnbiasedEstimate, final boolean isSampleSkewness)
+	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, statistics, useUnbiasedEstimate, isSampleSkewness);
+				}
+			});
+		}
+
+		int order = momentOrder(statistics);
+		if (waveforms != null && order >= 0 && recordLength > 0 && waveforms.length >= recordLength && waveforms.length%recordLength == 0) {
+
+			// compute number of records
+			int numRecords = waveforms.length/recordLength;
+
+			// allocate output array
+			double[] results = new double[numRecords*statistics.length];
+			MomentAccumulator moments = new MomentAccumulator(order);
+
+			// loop over all records
+			for (int i=0; i<numRecords; i++) {
+
+				// compute row offset
+				int offset = i*recordLength;
+
+				// accumulate sums, extrema and central moments in a single pass
+				double sum = 0.0;
+				double sumOfSquares = 0.0;
+				double min = waveforms[offset];
+				double max = min;
+				moments.clear();
+				for (int j=offset; j<offset+recordLength; j++) {
+					double value = waveforms[j];
+					sum += value;
+					sumOfSquares += value*value;
+					if (value > max) {
+						max = value;
+					}
+					if (value < min) {
+						min = value;
+					}
+					if (order > 1) {
+						moments.add(value);
+					}
+				}
+
+				for (int k=0; k<statistics.length; k++) {
+					results[i*statistics.length+k] = statistic(statistics[k], recordLength, sum, sumOfSquares, min, max, moments, useUnbiasedEstimate, isSampleSkewness);
+				}
+
+			}
+
+			return results;
+
+		}
+
+		return null;
+	}
+
+	// highest order of central moment needed for the statistics (1 if none), or -1 for invalid input
+	private static int momentOrder(int[] statistics)
+	{
+		if (statistics == null) {
+			return -1;
+		}
+		int order = 1;
+		for (int k=0; k<statistics.length; k++) {
+			switch (statistics[k]) {
+				case VARIANCE:
+					order = Math.max(order, 2);
+					break;
+				case SKEWNESS:
+					order = Math.max(order, 3);
+					break;
+				case KURTOSIS:
+					order = Math.max(order, 4);
+					break;
+				case MEAN:
+				case MINIMUM:
+				case MAXIMUM:
+				case RANGE:
+				case SUM_OF_SQUARES:
+					break;
+				default:
+					return -1;
+			}
+		}
+		return order;
+	}
+
+	private static double statistic(int statistic, long n, double sum, double sumOfSquares, double min, double max, MomentAccumulator moments, boolean useUnbiasedEstimate, boolean isSampleSkewness)
+	{
+		switch (statistic) {
+			case MEAN:
+				return sum/n;
+			case VARIANCE:
+				return moments.variance(useUnbiasedEstimate);
+			case SKEWNESS:
+				return n < 3 ? Double.NaN : moments.skewness(isSampleSkewness);
+			case KURTOSIS:
+				return moments.kurtosis();
+			case MINIMUM:
+				return min;
+			case MAXIMUM:
+				return max;
+			case RANGE:
+				return max - min;
+			default:
+				return sumOfSquares;
+		}
+	}
+
+	public void setNPasses(int nPasses) {}
+
+}
@@ -134,6 +134,244 @@ public class WaveformUtils
 
 	}
 
+	/**
+	 * Choices of transform length for FFT-based processing of records of
+	 * arbitrary length
+	 */
+	public static enum FftLength
+	{
+
+		NEXT_POWER_OF_2("Next power of 2"),
+		NEXT_FAST_LENGTH("Next 2-3-5 product"),
+		RECORD_LENGTH("Record length (no padding)");
+
+		private final String stringValue;
+
+		private FftLength(String stringValue)
+		{
+			this.stringValue = stringValue;
+		}
+
+		/**
+		 * Static method for retrieving array of nicely formatted names of all
+		 * elements.
+		 *
+		 * @return array of nicely formatted name strings of all transform
+		 *         length choices in the enumeration
+		 */
+		public static String[] stringValues()
+		{
+			FftLength[] f = FftLength.values();
+			String[] s = new String[f.length];
+
+			for (int i = 0; i < f.length; i++) {
+				s[i] = f[i].toString();
+			}
+
+			return s;
+		}
+
+		/**
+		 * Returns the transform length used for records of the specified
+		 * length, which is never less than {@code recordLength}.
+		 *
+		 * @param recordLength number of points in each record
+		 * @return transform length
+		 */
+		public int transformLength(int recordLength)
+		{
+			switch (this) {
+				case NEXT_POWER_OF_2:
+					return recordLength + amountToPadToNextPowerOf2(recordLength);
+				case NEXT_FAST_LENGTH:
+					return nextFastFftLength(recordLength);
+				default:
+					return recordLength;
+			}
+		}
+
+		/**
+		 *
+		 * @return nicely formatted {@code String} representation of the
+		 *         transform length choice
+		 */
+		@Override
+		public String toString()
+		{
+			return stringValue;
+		}
+
+	}
+
+	// number of records transformed together by the batched FFT methods
+	private static final int FFT_BATCH_SIZE = 16;
+
+	// largest number of points in the blocks filtered together by the overlap-save methods
+	private static final int OVERLAP_SAVE_BATCH_POINTS = 1 << 16;
+
+	/**
+	 * Smallest moving window length ({@code 2*radius+1}) for which the
+	 * moving window plug-ins compute weighted sums by FFT (see
+	 * {@link #movingWindowWeightedSumOverlapSave(double[], int, double[]) movingWindowWeightedSumOverlapSave})
+	 * rather than directly
+	 */
+	public static final int OVERLAP_SAVE_WINDOW_LENGTH = 25;
+
+	//--------------------Scratch Methods-------------------------------------//
+	/**
+	 * Per-thread pool of temporary arrays, for kernels that would otherwise
+	 * allocate new temporaries for every record or every call. Arrays are
+	 * borrowed in stack order: a kernel records {@link #mark()}, borrows as
+	 * many arrays as it needs, and returns all of them at once with
+	 * {@link #release(int)}, typically in a {@code finally} block. Nested
+	 * kernels (e.g., an FFT called from a filter) borrow arrays above those
+	 * of their callers, so borrowed arrays are never shared.
+	 * <p>
+	 * Array lengths are rounded up to a power of 2 (size classes), so that an
+	 * array is reused by later requests of similar length, and borrowed arrays
+	 * may be longer than requested. Contents of borrowed arrays are
+	 * unspecified. Arrays longer than {@link #MAX_POOLED_LENGTH} are allocated
+	 * for each request and not retained, to limit the memory held by each
+	 * thread.
+	 */
+	public static final class Scratch
+	{
+		/**
+		 * Maximum length of arrays retained by the pool
+		 */
+		public static final int MAX_POOLED_LENGTH = 1 << 20;
+
+		private static final int MIN_POOLED_LENGTH = 16;
+
+		private static final ThreadLocal<Scratch> pool = new ThreadLocal<Scratch>()
+		{
+			@Override
+			protected Scratch initialValue()
+			{
+				return new Scratch();
+			}
+		};
+
+		// borrowed arrays occupy positions 0..top-1; arrays above top are free for reuse
+		private Object[] arrays = new Object[8];
+		private int top;
+
+		private Scratch()
+		{
+		}
+
+		/**
+		 * Returns the current stack position of the pool, to be passed to
+		 * {@link #release(int)} when the arrays borrowed after this call are
+		 * no longer needed.
+		 *
+		 * @return current stack position
+		 */
+		public int mark()
+		{
+			return top;
+		}
+
+		/**
+		 * Returns all arrays borrowed since the corresponding call to
+		 * {@link #mark()} to the pool.
+		 *
+		 * @param mark stack position returned by {@link #mark()}
+		 */
+		public void release(int mark)
+		{
+			top = mark;
+		}
+
+		/**
+		 * Borrows a {@code double} array with at least {@code length}
+		 * elements, of unspecified contents.
+		 *
+		 * @param length minimum length of the array
+		 * @return borrowed array
+		 */
+		public double[] doubles(int length)
+		{
+			Object a = next(length);
+			if (!(a instanceof double[]) || ((double[])a).length < length) {
+				a = new double[sizeClass(length)];
+				keep(a, length);
+			}
+			return (double[])a;
+		}
+
+		/**
+		 * Borrows a {@code float} array with at least {@code length}
+		 * elements, of unspecified contents.
+		 *
+		 * @param length minimum length of the array
+		 * @return borrowed array
+		 */
+		public float[] floats(int length)
+		{
+			Object a = next(length);
+			if (!(a instanceof float[]) || ((float[])a).length < length) {
+				a = new float[sizeClass(length)];
+				keep(a, length);
+			}
+			return (float[])a;
+		}
+
+		/**
+		 * Borrows an {@code int} array with at least {@code length} elements,
+		 * of unspecified contents.
+		 *
+		 * @param length minimum length of the array
+		 * @return borrowed array
+		 */
+		public int[] ints(int length)
+		{
+			Object a = next(length);
+			if (!(a instanceof int[]) || ((int[])a).length < length) {
+				a = new int[sizeClass(length)];
+				keep(a, length);
+			}
+			return (int[])a;
+		}
+
+		// advances the stack position, returning the free array previously kept there (if any)
+		private Object next(int length)
+		{
+			if (top == arrays.length) {
+				arrays = Arrays.copyOf(arrays, 2*arrays.length);
+			}
+			return arrays[top++];
+		}
+
+		private void keep(Object a, int length)
+		{
+			if (length <= MAX_POOLED_LENGTH) {
+				arrays[top - 1] = a;
+			}
+		}
+
+		private static int sizeClass(int length)
+		{
+			if (length <= MIN_POOLED_LENGTH) {
+				return MIN_POOLED_LENGTH;
+			}
+			if (length > MAX_POOLED_LENGTH) {
+				return length;
+			}
+			return Integer.highestOneBit(length - 1) << 1;
+		}
+	}
+
+	/**
+	 * Returns the scratch array pool of the current thread.
+	 *
+	 * @return scratch array pool
+	 */
+	public static final Scratch scratch()
+	{
+		return Scratch.pool.get();
+	}
+
 	//--------------------addScalar Methods-----------------------------------//
 	/**
 	 * Adds the specified value to each element in the input array and returns
@@ -205,9 +443,7 @@ public class WaveformUtils
 	 */
 	public static final void addScalarInPlace(double[] a, int from, int to, double value)
 	{
-		for (int i = from; i < to; i++) {
-			a[i] += value;
-		}
+		ArrayKernels.INSTANCE.addScalarInPlace(a, from, to, value);
 	}
 
 	/**
@@ -224,9 +460,7 @@ public class WaveformUtils
 	 */
 	public static final void addScalarInPlace(float[] a, int from, int to, float value)
 	{
-		for (int i = from; i < to; i++) {
-			a[i] += value;
-		}
+		ArrayKernels.INSTANCE.addScalarInPlace(a, from, to, value);
 	}
 
 	//--------------------multiplyScalar Methods------------------------------//
@@ -275,9 +509,7 @@ public class WaveformUtils
 	 */
 	public static final void multiplyScalarInPlace(double[] a, int from, int to, double value)
 	{
-		for (int i = from; i < to; i++) {
-			a[i] *= value;
-		}
+		ArrayKernels.INSTANCE.multiplyScalarInPlace(a, from, to, value);
 	}
 
 	/**
@@ -325,9 +557,7 @@ public class WaveformUtils
 	 */
 	public static final void multiplyScalarInPlace(float[] a, int from, int to, float value)
 	{
-		for (int i = from; i < to; i++) {
-			a[i] *= value;
-		}
+		ArrayKernels.INSTANCE.multiplyScalarInPlace(a, from, to, value);
 	}
 
 	//--------------------mean Methods----------------------------------------//
@@ -431,20 +661,9 @@ public class WaveformUtils
 	 */
 	public static final double[] meanAndVariance(double[] a, boolean useUnbiasedEstimate, int from, int to)
 	{
-		long n = 0;
-		double mean = 0.0;
-		double m2 = 0.0;
-
-		for (int i = from; i < to; i++) {
-			n++;
-			double x = a[i];
-			double delta = x - mean;
-			mean += delta / n;
-			m2 += delta * (x - mean);
-		}
-
-		double norm = useUnbiasedEstimate ? 1.0 / (n - 1) : 1.0 / n;
-		return new double[]{mean, m2 * norm};
+		MomentAccumulator moments = new MomentAccumulator(2);
+		moments.add(a, from, to);
+		return new double[]{moments.mean(), moments.variance(useUnbiasedEstimate)};
 	}
 
 	/**
@@ -485,20 +704,9 @@ public class WaveformUtils
 	 */
 	public static final double[] meanAndVariance(float[] a, boolean useUnbiasedEstimate, int from, int to)
 	{
-		long n = 0;
-		double mean = 0.0;
-		double m2 = 0.0;
-
-		for (int i = from; i < to; i++) {
-			n++;
-			double x = a[i];
-			double delta = x - mean;
-			mean += delta / n;
-			m2 += delta * (x - mean);
-		}
-
-		double norm = useUnbiasedEstimate ? 1.0 / (n - 1) : 1.0 / n;
-		return new double[]{mean, m2 * norm};
+		MomentAccumulator moments = new MomentAccumulator(2);
+		moments.add(a, from, to);
+		return new double[]{moments.mean(), moments.variance(useUnbiasedEstimate)};
 	}
 
 	//--------------------median Methods--------------------------------------//
@@ -541,14 +749,23 @@ public class WaveformUtils
 			int n = to - from;
 			if (n > 1) {
 				int halfN = n / 2;
-				final double[] temp = new double[n];
+				Scratch scratch = scratch();
+				int mark = scratch.mark();
+				final double[] temp = scratch.doubles(n);
 				System.arraycopy(a, from, temp, 0, n);
-				Arrays.sort(temp);
+				double median = selectInPlace(temp, 0, n, halfN);
 				if (n % 2 == 0) {
-					return (0.5 * (temp[halfN] + temp[halfN - 1]));
-				} else {
-					return temp[halfN];
+					// the lower middle value is the largest of those selected below it
+					double lower = temp[0];
+					for (int i = 1; i < halfN; i++) {
+						if (temp[i] > lower) {
+							lower = temp[i];
+						}
+					}
+					median = 0.5 * (median + lower);
 				}
+				scratch.release(mark);
+				return median;
 			} else if (n == 1) {
 				return a[from];
 			} else {
@@ -631,14 +848,23 @@ public class WaveformUtils
 			int n = to - from;
 			if (n > 1) {
 				int halfN = n / 2;
-				final float[] temp = new float[n];
+				Scratch scratch = scratch();
+				int mark = scratch.mark();
+				final float[] temp = scratch.floats(n);
 				System.arraycopy(a, from, temp, 0, n);
-				Arrays.sort(temp);
+				float median = selectInPlace(temp, 0, n, halfN);
 				if (n % 2 == 0) {
-					return (0.5f * (temp[halfN] + temp[halfN - 1]));
-				} else {
-					return temp[halfN];
+					// the lower middle value is the largest of those selected below it
+					float lower = temp[0];
+					for (int i = 1; i < halfN; i++) {
+						if (temp[i] > lower) {
+							lower = temp[i];
+						}
+					}
+					median = 0.5f * (median + lower);
 				}
+				scratch.release(mark);
+				return median;
 			} else if (n == 1) {
 				return a[from];
 			} else {
@@ -681,6 +907,209 @@ public class WaveformUtils
 		}
 	}
 
+	//--------------------select Methods--------------------------------------//
+	/**
+	 * Returns the {@code k}<SUP>th</SUP> smallest value (counting from zero)
+	 * in the specified range of an array, partially reordering the range so
+	 * that the value is at index {@code from+k}, with no larger values before
+	 * it and no smaller values after it. {@code NaN} values are moved to the
+	 * end of the range, where a sort would place them, and the output is
+	 * {@code NaN} if {@code k} falls among them. The selection is an
+	 * introselect: a quickselect using median-of-three pivots that takes
+	 * linear time on average, falling back to a sort of the remaining
+	 * subrange if partitioning fails to converge. No error checking is
+	 * performed on range limits or {@code k}; if the values are negative or
+	 * outside the range of the array, unexpected results may occur or a
+	 * runtime exception may be thrown.
+	 *
+	 * @param a    input array; the range is reordered in place
+	 * @param from initial index of the range, inclusive
+	 * @param to   final index of the range, exclusive
+	 * @param k    rank of the value to select, {@code 0<=k<to-from}
+	 * @return {@code k}<SUP>th</SUP> smallest value in the specified range
+	 */
+	public static final double selectInPlace(double[] a, int from, int to, int k)
+	{
+		// move NaN values to the end of the range
+		int end = to;
+		int i = from;
+		while (i < end) {
+			if (a[i] != a[i]) {
+				end--;
+				double temp = a[i];
+				a[i] = a[end];
+				a[end] = temp;
+			} else {
+				i++;
+			}
+		}
+
+		int target = from + k;
+		if (target >= end) {
+			return Double.NaN;
+		}
+
+		int lo = from;
+		int hi = end - 1;
+		int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(end - from));
+		while (hi > lo) {
+			if (depthLimit-- == 0) {
+				Arrays.sort(a, lo, hi + 1);
+				break;
+			}
+
+			// order the first, middle and last values, so that they bound the partition loops
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < a[lo]) {
+				double temp = a[mid];
+				a[mid] = a[lo];
+				a[lo] = temp;
+			}
+			if (a[hi] < a[mid]) {
+				double temp = a[hi];
+				a[hi] = a[mid];
+				a[mid] = temp;
+				if (a[mid] < a[lo]) {
+					temp = a[mid];
+					a[mid] = a[lo];
+					a[lo] = temp;
+				}
+			}
+			double pivot = a[mid];
+
+			// partition into values <= pivot in lo..j and >= pivot in i..hi
+			i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (a[i] < pivot) {
+					i++;
+				}
+				while (a[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					double temp = a[i];
+					a[i] = a[j];
+					a[j] = temp;
+					i++;
+					j--;
+				}
+			}
+
+			if (target <= j) {
+				hi = j;
+			} else if (target >= i) {
+				lo = i;
+			} else {
+				// values between j and i are equal to the pivot
+				break;
+			}
+		}
+
+		return a[target];
+	}
+
+	/**
+	 * Returns the {@code k}<SUP>th</SUP> smallest value (counting from zero)
+	 * in the specified range of an array, partially reordering the range so
+	 * that the value is at index {@code from+k}, with no larger values before
+	 * it and no smaller values after it. {@code NaN} values are moved to the
+	 * end of the range, where a sort would place them, and the output is
+	 * {@code NaN} if {@code k} falls among them. The selection is an
+	 * introselect: a quickselect using median-of-three pivots that takes
+	 * linear time on average, falling back to a sort of the remaining
+	 * subrange if partitioning fails to converge. No error checking is
+	 * performed on range limits or {@code k}; if the values are negative or
+	 * outside the range of the array, unexpected results may occur or a
+	 * runtime exception may be thrown.
+	 *
+	 * @param a    input array; the range is reordered in place
+	 * @param from initial index of the range, inclusive
+	 * @param to   final index of the range, exclusive
+	 * @param k    rank of the value to select, {@code 0<=k<to-from}
+	 * @return {@code k}<SUP>th</SUP> smallest value in the specified range
+	 */
+	public static final float selectInPlace(float[] a, int from, int to, int k)
+	{
+		// move NaN values to the end of the range
+		int end = to;
+		int i = from;
+		while (i < end) {
+			if (a[i] != a[i]) {
+				end--;
+				float temp = a[i];
+				a[i] = a[end];
+				a[end] = temp;
+			} else {
+				i++;
+			}
+		}
+
+		int target = from + k;
+		if (target >= end) {
+			return Float.NaN;
+		}
+
+		int lo = from;
+		int hi = end - 1;
+		int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(end - from));
+		while (hi > lo) {
+			if (depthLimit-- == 0) {
+				Arrays.sort(a, lo, hi + 1);
+				break;
+			}
+
+			// order the first, middle and last values, so that they bound the partition loops
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < a[lo]) {
+				float temp = a[mid];
+				a[mid] = a[lo];
+				a[lo] = temp;
+			}
+			if (a[hi] < a[mid]) {
+				float temp = a[hi];
+				a[hi] = a[mid];
+				a[mid] = temp;
+				if (a[mid] < a[lo]) {
+					temp = a[mid];
+					a[mid] = a[lo];
+					a[lo] = temp;
+				}
+			}
+			float pivot = a[mid];
+
+			// partition into values <= pivot in lo..j and >= pivot in i..hi
+			i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (a[i] < pivot) {
+					i++;
+				}
+				while (a[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					float temp = a[i];
+					a[i] = a[j];
+					a[j] = temp;
+					i++;
+					j--;
+				}
+			}
+
+			if (target <= j) {
+				hi = j;
+			} else if (target >= i) {
+				lo = i;
+			} else {
+				// values between j and i are equal to the pivot
+				break;
+			}
+		}
+
+		return a[target];
+	}
+
 	//--------------------FFT Methods-----------------------------------------//
 	/**
 	 * Computes complex FFT of real and imaginary input arrays (in place).	For
@@ -706,8 +1135,13 @@ public class WaveformUtils
 	 * input data range limits or length of real and imaginary input arrays. The
 	 * length of the input array range <b>must</b> be identical and equal to a
 	 * power of 2, otherwise a runtime exception may be thrown.	Normalization is
-	 * consistent with NI LabVIEW&reg FFT implementation.
-	 *
+	 * consistent with NI LabVIEW&reg FFT implementation. Records of
+	 * {@link FftPlan#STOCKHAM_THRESHOLD} points or more are transformed with a
+	 * self-sorting algorithm that avoids the cache-unfriendly bit-reversal
+	 * pass. Twiddle factors and permutations are taken from a cached {@link FftPlan};
+	 * callers transforming many records of the same length may obtain the plan
+	 * once and call {@link FftPlan#transform(double[], double[], int, boolean)}
+	 * directly.
 	 *
 	 * @param ar        input array containing the real part of the waveform
 	 * @param ai        input array containing the imaginary part of the
@@ -718,223 +1152,443 @@ public class WaveformUtils
 	 */
 	public static final void fftComplexPowerOf2(double ar[], double ai[], int from, int to, boolean isForward)
 	{
-		int n = to - from;
-		double scale = 1.0;
-		double c = -Math.PI;
-		if (!isForward) {
-			scale /= n;
-			c *= -1;
-		}
-		int i, j;
-		for (i = j = 0; i < n; ++i) {
-			if (j >= i) {
-				int ii = i + from;
-				int jj = j + from;
-				double tempr = ar[jj] * scale;
-				double tempi = ai[jj] * scale;
-				ar[jj] = ar[ii] * scale;
-				ai[jj] = ai[ii] * scale;
-				ar[ii] = tempr;
-				ai[ii] = tempi;
-			}
-			int m = n / 2;
-			while (m >= 1 && j >= m) {
-				j -= m;
-				m /= 2;
-			}
-			j += m;
-		}
-
-		int mmax, istep;
-		double delta, alpha, beta, temp, cosMDelta, cosMDeltaPlusOne, sinMDelta, sinMDeltaPlusOne, tr, ti;
-		for (mmax = 1, istep = 2 * mmax; mmax < n; mmax = istep, istep = 2 * mmax) {
-
-			// Set up trig recursions
-			delta = c / (double) mmax;
-			beta = Math.sin(delta);
-			temp = Math.sin(delta / 2.0);
-			alpha = 2.0 * temp * temp;
-			cosMDelta = 1.0;
-			sinMDelta = 0.0;
-
-			for (int m = 0; m < mmax; ++m) {
-				for (i = m; i < n; i += istep) {
-					j = i + mmax;
-					int ii = i + from;
-					int jj = j + from;
-					tr = cosMDelta * ar[jj] - sinMDelta * ai[jj];
-					ti = cosMDelta * ai[jj] + sinMDelta * ar[jj];
-					ar[jj] = ar[ii] - tr;
-					ai[jj] = ai[ii] - ti;
-					ar[ii] += tr;
-					ai[ii] += ti;
-				}
-				cosMDeltaPlusOne = cosMDelta - (alpha * cosMDelta + beta * sinMDelta);
-				sinMDeltaPlusOne = sinMDelta - (alpha * sinMDelta - beta * cosMDelta);
-				cosMDelta = cosMDeltaPlusOne;
-				sinMDelta = sinMDeltaPlusOne;
-			}
-		}
+		FftPlan.getInstance(to - from).transform(ar, ai, from, isForward);
 	}
 
 	/**
-	 * Computes complex FFT of real-valued input data (in place). Imaginary
-	 * input array values are ignored. The imaginary part of the transformed
-	 * input is stored in array {@code ai}, which must be the same as the real
-	 * input array {@code ar}. For efficiency, no null or length checking is
-	 * performed on real and imaginary input arrays. The length of the input
-	 * array range <b>must</b> be identical and equal to a power of 2, otherwise
-	 * a runtime exception may be thrown.Normalization is consistent with NI
+	 * Computes complex FFT of real and imaginary input arrays (in place). The
+	 * arrays may have any length; lengths that are not powers of 2 are
+	 * transformed with a mixed-radix algorithm if their only prime factors are
+	 * 2, 3, 5 and 7, and with Bluestein's algorithm otherwise (see
+	 * {@link FftPlan}). For efficiency, no error checking is performed on real
+	 * and imaginary input array lengths, which must be identical, otherwise a
+	 * runtime exception may be thrown. Normalization is consistent with NI
 	 * LabVIEW&reg FFT implementation.
 	 *
-	 * @param ar input array containing the real-valued waveform, which is
-	 *           transformed in place and subsequently holds the real portion of
-	 *           the transform
-	 * @param ai array which will hold complex part of the transform (any input
-	 *           values are ignored)
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param isForward	true for forward FFT, false for inverse FFT
 	 */
-	public static final void fftRealPowerOf2Forward(double ar[], double[] ai)
+	public static final void fftComplex(double ar[], double ai[], boolean isForward)
 	{
-		int nn = ar.length;
-		int n = nn / 2;
-		double delta = Math.PI / n;
-		double sinHalfDelta = Math.sin(0.5 * delta);
-		double alpha = 2 * sinHalfDelta * sinHalfDelta;
-		double beta = Math.sin(delta);
-
-		// initialize real and imaginary arrays with odd and even element indices of input real array
-		for (int i = 0; i < n; i++) {
-			ai[i] = ar[2 * i + 1];
-			ar[i] = ar[2 * i];
-		}
-
-		// perform forward FFT using first half of real and imaginary parts
-		fftComplexPowerOf2(ar, ai, 0, n, true);
-
-		// set up trig recursions
-		double cosNDelta = 1 - alpha;
-		double sinNDelta = beta;
-		double cosNPlusOneDelta, sinNPlusOneDelta;
-
-		// store intermediate results in second (redundant) half of input arrays
-		for (int i = 1; i < n; i++) {
-			ar[i + n] = 0.5 * (ar[i] + ar[n - i] + cosNDelta * (ai[i] + ai[n - i]) - sinNDelta * (ar[i] - ar[n - i]));
-			ai[i + n] = 0.5 * (ai[i] - ai[n - i] - sinNDelta * (ai[i] + ai[n - i]) - cosNDelta * (ar[i] - ar[n - i]));
-			cosNPlusOneDelta = cosNDelta - (alpha * cosNDelta + beta * sinNDelta);
-			sinNPlusOneDelta = sinNDelta - (alpha * sinNDelta - beta * cosNDelta);
-			cosNDelta = cosNPlusOneDelta;
-			sinNDelta = sinNPlusOneDelta;
-		}
-
-		// reorder results
-		double ar0 = ar[0] + ai[0];
-		double arn = ar[0] - ai[0];
-		ar[0] = ar0;
-		ai[0] = 0.0;
-		for (int i = 1; i < n; i++) {
-			ar[i] = ar[i + n];
-			ai[i] = ai[i + n];
-		}
-		ar[n] = arn;
-		ai[n] = 0.0;
-
-		// overwrite intermediate results with symmetric/antisymmetric copies
-		for (int i = 1; i < n; i++) {
-			ar[2 * n - i] = ar[i];
-			ai[2 * n - i] = -ai[i];
-		}
-
+		fftComplex(ar, ai, 0, ar.length, isForward);
 	}
 
-	public static final void fftRealPowerOf2Inverse(double ar[], double[] ai)
+	/**
+	 * Computes complex FFT of real and imaginary input arrays (in place) within
+	 * the specified range, which may have any length, as described in
+	 * {@link #fftComplex(double[], double[], boolean) fftComplex}. For
+	 * efficiency, no error checking is performed on input data range limits
+	 * or length of real and imaginary input arrays; invalid ranges may cause a
+	 * runtime exception to be thrown.
+	 *
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param from      initial index of the range to compute the FFT, inclusive
+	 * @param to        final index of the range to compute the FFT, exclusive
+	 * @param isForward	true for forward FFT, false for inverse FFT
+	 */
+	public static final void fftComplex(double ar[], double ai[], int from, int to, boolean isForward)
 	{
-		int nn = ar.length;
-		int n = nn / 2;
-		double delta = -Math.PI / n;
-		double sinHalfDelta = Math.sin(0.5 * delta);
-		double alpha = 2 * sinHalfDelta * sinHalfDelta;
-		double beta = Math.sin(delta);
-
-		// set up trig recursions
-		double cosNDelta = 1 - alpha;
-		double sinNDelta = beta;
-		double cosNPlusOneDelta, sinNPlusOneDelta;
-
-		// store intermediate results in second (redundant) half of input arrays
-		for (int i = 1; i < n; i++) {
-			ar[i + n] = 0.5 * (ar[i] + ar[n - i] + cosNDelta * (ai[i] + ai[n - i]) - sinNDelta * (ar[i] - ar[n - i]));
-			ai[i + n] = 0.5 * (ai[i] - ai[n - i] - sinNDelta * (ai[i] + ai[n - i]) - cosNDelta * (ar[i] - ar[n - i]));
-			cosNPlusOneDelta = cosNDelta - (alpha * cosNDelta + beta * sinNDelta);
-			sinNPlusOneDelta = sinNDelta - (alpha * sinNDelta - beta * cosNDelta);
-			cosNDelta = cosNPlusOneDelta;
-			sinNDelta = sinNPlusOneDelta;
-		}
-
-		// perform inverse FFT using second half of real and imaginary parts
-		fftComplexPowerOf2(ar, ai, n, nn, false);
-
-		// reorder results
-		double ar0 = ar[n] + ai[n];
-		double arn = ar[n] - ai[n];
-		ar[0] = ar0;
-		ai[0] = 0.0;
-		for (int i = 1; i < n; i++) {
-			ar[i] = ar[i + n];
-			ai[i] = ai[i + n];
-		}
-		ar[n] = arn;
-		ai[n] = 0.0;
-
-		// overwrite intermediate results with symmetric/antisymmetric copies
-		for (int i = 1; i < n; i++) {
-			ar[2 * n - i] = ar[i];
-			ai[2 * n - i] = -ai[i];
-		}
-
+		FftPlan.getInstance(to - from).transform(ar, ai, from, isForward);
 	}
 
-	//--------------------hilbertTransform Methods----------------------------//
 	/**
-	 * Computes discrete Hilbert transform of the input array (in place) using
-	 * FFTs. The transform operation is computed in place. For efficiency, no
-	 * error checking is performed on input data range limits or length of input
-	 * array. The input array length <b>must</b> be equal to a power of 2,
-	 * otherwise a runtime exception may be thrown.
+	 * Computes complex FFT of single-precision real and imaginary input arrays
+	 * (in place), as described in
+	 * {@link #fftComplex(double[], double[], boolean) fftComplex}. Power-of-2
+	 * lengths less than {@link FftPlan#STOCKHAM_THRESHOLD} are transformed
+	 * entirely in single precision, with an error
+	 * relative to the RMS value of the spectrum of order
+	 * {@code log2(n)} times the float machine epsilon (about 1e-7).
 	 *
-	 * @param a         input array
-	 * @param isForward true for forward Hilbert transform, false for inverse
-	 *                  Hilbert transform
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param isForward	true for forward FFT, false for inverse FFT
+	 */
+	public static final void fftComplex(float ar[], float ai[], boolean isForward)
+	{
+		fftComplex(ar, ai, 0, ar.length, isForward);
+	}
+
+	/**
+	 * Computes complex FFT of single-precision real and imaginary input arrays
+	 * (in place) within the specified range, as described in
+	 * {@link #fftComplex(float[], float[], boolean) fftComplex}.
+	 *
+	 * @param ar        input array containing the real part of the waveform
+	 * @param ai        input array containing the imaginary part of the
+	 *                  waveform
+	 * @param from      initial index of the range to compute the FFT, inclusive
+	 * @param to        final index of the range to compute the FFT, exclusive
+	 * @param isForward	true for forward FFT, false for inverse FFT
+	 */
+	public static final void fftComplex(float ar[], float ai[], int from, int to, boolean isForward)
+	{
+		FftPlan.getInstance(to - from).transform(ar, ai, from, isForward);
+	}
+
+	/**
+	 * Computes complex FFTs (in place) of a series of concatenated records,
+	 * each of length {@code recordLength}, whose real and imaginary parts are
+	 * stored in {@code realWaveforms} and {@code imagWaveforms}. Records are
+	 * transformed in groups, interleaved so that the butterflies of each group
+	 * run across records in a single inner loop (see
+	 * {@link FftPlan#transformInterleaved(double[], double[], int, boolean)}),
+	 * which is substantially faster than transforming records one at a time
+	 * when there are many short records, such as the rows of a B-scan.
+	 * {@code recordLength} may be any positive length. If
+	 * {@code recordLength<1} or the two arrays differ in length, the arrays are
+	 * left unchanged; any trailing partial record is also left unchanged.
+	 * Normalization is consistent with NI LabVIEW&reg FFT implementation.
+	 *
+	 * @param realWaveforms real parts of input records concatenated into 1-D
+	 *                      array
+	 * @param imagWaveforms imaginary parts of input records concatenated into
+	 *                      1-D array
+	 * @param recordLength  length of each record in points
+	 * @param isForward     true for forward FFT, false for inverse FFT
+	 */
+	public static final void fftComplexMultipleWaveformsInPlace(double[] realWaveforms, double[] imagWaveforms, int recordLength, boolean isForward)
+	{
+		if (recordLength < 1 || realWaveforms.length != imagWaveforms.length) {
+			return;
+		}
+
+		int numRecords = realWaveforms.length / recordLength;
+		int batchSize = Math.min(FFT_BATCH_SIZE, numRecords);
+		FftPlan plan = FftPlan.getInstance(recordLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] ar = scratch.doubles(recordLength * batchSize);
+			double[] ai = scratch.doubles(recordLength * batchSize);
+
+			for (int first = 0; first < numRecords; first += batchSize) {
+				int count = Math.min(batchSize, numRecords - first);
+
+				// interleave records so that element k of record r is at index k*count+r
+				for (int r = 0; r < count; r++) {
+					int offset = (first + r) * recordLength;
+					for (int k = 0, index = r; k < recordLength; k++, index += count) {
+						ar[index] = realWaveforms[offset + k];
+						ai[index] = imagWaveforms[offset + k];
+					}
+				}
+
+				plan.transformInterleaved(ar, ai, count, isForward);
+
+				for (int r = 0; r < count; r++) {
+					int offset = (first + r) * recordLength;
+					for (int k = 0, index = r; k < recordLength; k++, index += count) {
+						realWaveforms[offset + k] = ar[index];
+						imagWaveforms[offset + k] = ai[index];
+					}
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes complex FFTs (in place) of a series of concatenated records,
+	 * each of length {@code recordLength}, whose real and imaginary parts are
+	 * stored in {@code realWaveforms} and {@code imagWaveforms}. Records are
+	 * transformed in groups, interleaved so that the butterflies of each group
+	 * run across records in a single inner loop (see
+	 * {@link FftPlan#transformInterleaved(double[], double[], int, boolean)}),
+	 * which is substantially faster than transforming records one at a time
+	 * when there are many short records, such as the rows of a B-scan.
+	 * {@code recordLength} may be any positive length. If
+	 * {@code recordLength<1} or the two arrays differ in length, the arrays are
+	 * left unchanged; any trailing partial record is also left unchanged.
+	 * Normalization is consistent with NI LabVIEW&reg FFT implementation.
+	 *
+	 * @param realWaveforms real parts of input records concatenated into 1-D
+	 *                      array
+	 * @param imagWaveforms imaginary parts of input records concatenated into
+	 *                      1-D array
+	 * @param recordLength  length of each record in points
+	 * @param isForward     true for forward FFT, false for inverse FFT
+	 */
+	public static final void fftComplexMultipleWaveformsInPlace(float[] realWaveforms, float[] imagWaveforms, int recordLength, boolean isForward)
+	{
+		if (recordLength < 1 || realWaveforms.length != imagWaveforms.length) {
+			return;
+		}
+
+		int numRecords = realWaveforms.length / recordLength;
+		int batchSize = Math.min(FFT_BATCH_SIZE, numRecords);
+		FftPlan plan = FftPlan.getInstance(recordLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] ar = scratch.doubles(recordLength * batchSize);
+			double[] ai = scratch.doubles(recordLength * batchSize);
+
+			for (int first = 0; first < numRecords; first += batchSize) {
+				int count = Math.min(batchSize, numRecords - first);
+
+				// interleave records so that element k of record r is at index k*count+r
+				for (int r = 0; r < count; r++) {
+					int offset = (first + r) * recordLength;
+					for (int k = 0, index = r; k < recordLength; k++, index += count) {
+						ar[index] = realWaveforms[offset + k];
+						ai[index] = imagWaveforms[offset + k];
+					}
+				}
+
+				plan.transformInterleaved(ar, ai, count, isForward);
+
+				for (int r = 0; r < count; r++) {
+					int offset = (first + r) * recordLength;
+					for (int k = 0, index = r; k < recordLength; k++, index += count) {
+						realWaveforms[offset + k] = (float) ar[index];
+						imagWaveforms[offset + k] = (float) ai[index];
+					}
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes complex FFT of real-valued input data (in place). Imaginary
+	 * input array values are ignored. The imaginary part of the transformed
+	 * input is stored in array {@code ai}, which must be the same length as
+	 * the real input array {@code ar}. For efficiency, no null or length
+	 * checking is performed on real and imaginary input arrays. The length of
+	 * the input array range <b>must</b> be identical and equal to a power of
+	 * 2, otherwise a runtime exception may be thrown. Normalization is
+	 * consistent with NI LabVIEW&reg FFT implementation.
+	 *
+	 * @param ar input array containing the real-valued waveform, which is
+	 *           transformed in place and subsequently holds the real portion of
+	 *           the transform
+	 * @param ai array which will hold complex part of the transform (any input
+	 *           values are ignored)
+	 */
+	public static final void fftRealPowerOf2Forward(double ar[], double[] ai)
+	{
+		int n = ar.length;
+
+		// half spectrum is written over the first half of the input, which has already been read
+		FftPlan.getInstance(n).realForward(ar, 0, ar, ai);
+
+		// fill in redundant half of spectrum with complex conjugate values
+		for (int i = 1; i < n / 2; i++) {
+			ar[n - i] = ar[i];
+			ai[n - i] = -ai[i];
+		}
+	}
+
+	/**
+	 * Computes inverse FFT of the spectrum of real-valued data (in place). The
+	 * input spectrum in {@code ar} and {@code ai} is assumed to be conjugate
+	 * symmetric, so that only the elements with indices {@code 0} through
+	 * {@code ar.length/2} are used. On return {@code ar} holds the real-valued
+	 * waveform and {@code ai} is filled with zeros. The length of the input
+	 * arrays <b>must</b> be identical and equal to a power of 2, otherwise a
+	 * runtime exception may be thrown. Normalization is consistent with NI
+	 * LabVIEW&reg FFT implementation.
+	 *
+	 * @param ar input array containing the real part of the spectrum, which
+	 *           subsequently holds the real-valued waveform
+	 * @param ai input array containing the imaginary part of the spectrum,
+	 *           which is subsequently filled with zeros
+	 */
+	public static final void fftRealPowerOf2Inverse(double ar[], double[] ai)
+	{
+		FftPlan.getInstance(ar.length).realInverse(ar, ai, ar, 0);
+		Arrays.fill(ai, 0.0);
+	}
+
+	/**
+	 * Computes the non-redundant half of the FFT of real-valued data in the
+	 * specified range of {@code a}. For a range of length {@code n}, bins
+	 * {@code 0} through {@code n/2} of the spectrum are written to {@code re}
+	 * and {@code im}, which must each have at least {@code n/2+1} elements;
+	 * the remaining bins are the complex conjugates of these. The input array
+	 * is unchanged. For even {@code n} this requires roughly half the
+	 * computation and memory of a complex FFT with a zero-valued imaginary
+	 * part. The range may have any length, as described in
+	 * {@link #fftComplex(double[], double[], boolean) fftComplex}.
+	 * Normalization is consistent with NI LabVIEW&reg FFT implementation.
+	 *
+	 * @param a    input array containing real-valued data
+	 * @param from initial index of the range to transform, inclusive
+	 * @param to   final index of the range to transform, exclusive
+	 * @param re   output array for real part of the half spectrum
+	 * @param im   output array for imaginary part of the half spectrum
+	 */
+	public static final void fftRealHalfSpectrumForward(double[] a, int from, int to, double[] re, double[] im)
+	{
+		FftPlan.getInstance(to - from).realForward(a, from, re, im);
+	}
+
+	/**
+	 * Computes the real-valued inverse FFT from bins {@code 0} through
+	 * {@code n/2} of a conjugate-symmetric spectrum, where {@code n=to-from},
+	 * and writes the result into the specified range of {@code a}. This is the
+	 * inverse of
+	 * {@link #fftRealHalfSpectrumForward(double[], int, int, double[], double[]) fftRealHalfSpectrumForward}.
+	 * The imaginary part of bin {@code 0} (and of bin {@code n/2} for even
+	 * {@code n}) is ignored. The contents of {@code re} and {@code im} may be
+	 * used as workspace and overwritten. The range may have any length.
+	 *
+	 * @param re   real part of the half spectrum; overwritten
+	 * @param im   imaginary part of the half spectrum; overwritten
+	 * @param a    output array for real-valued data
+	 * @param from initial index of the output range, inclusive
+	 * @param to   final index of the output range, exclusive
+	 */
+	public static final void fftRealHalfSpectrumInverse(double[] re, double[] im, double[] a, int from, int to)
+	{
+		FftPlan.getInstance(to - from).realInverse(re, im, a, from);
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #fftRealHalfSpectrumForward(double[], int, int, double[], double[]) fftRealHalfSpectrumForward}.
+	 *
+	 * @param a    input array containing real-valued data
+	 * @param from initial index of the range to transform, inclusive
+	 * @param to   final index of the range to transform, exclusive
+	 * @param re   output array for real part of the half spectrum
+	 * @param im   output array for imaginary part of the half spectrum
+	 */
+	public static final void fftRealHalfSpectrumForward(float[] a, int from, int to, float[] re, float[] im)
+	{
+		FftPlan.getInstance(to - from).realForward(a, from, re, im);
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #fftRealHalfSpectrumInverse(double[], double[], double[], int, int) fftRealHalfSpectrumInverse}.
+	 *
+	 * @param re   real part of the half spectrum; overwritten
+	 * @param im   imaginary part of the half spectrum; overwritten
+	 * @param a    output array for real-valued data
+	 * @param from initial index of the output range, inclusive
+	 * @param to   final index of the output range, exclusive
+	 */
+	public static final void fftRealHalfSpectrumInverse(float[] re, float[] im, float[] a, int from, int to)
+	{
+		FftPlan.getInstance(to - from).realInverse(re, im, a, from);
+	}
+
+	//--------------------hilbertTransform Methods----------------------------//
+	/**
+	 * Computes discrete Hilbert transform of the input array (in place) using
+	 * FFTs. The transform operation is computed in place. For efficiency, no
+	 * error checking is performed on input data range limits or length of input
+	 * array. The input array length <b>must</b> be equal to a power of 2,
+	 * otherwise a runtime exception may be thrown.
+	 *
+	 * @param a         input array
+	 * @param isForward true for forward Hilbert transform, false for inverse
+	 *                  Hilbert transform
 	 */
 	public static final void fastHilbertTransformPowerOf2(double[] a, boolean isForward)
+	{
+		fastHilbertTransform(a, isForward);
+	}
+
+	/**
+	 * Computes discrete Hilbert transform of the input array (in place) using
+	 * FFTs. The input array may have any length, as described in
+	 * {@link #fftComplex(double[], double[], boolean) fftComplex}. The DC
+	 * component (and the Nyquist component for even lengths) is discarded.
+	 *
+	 * @param a         input array
+	 * @param isForward true for forward Hilbert transform, false for inverse
+	 *                  Hilbert transform
+	 */
+	public static final void fastHilbertTransform(double[] a, boolean isForward)
 	{
 		int n = a.length;
 		int nOver2 = n / 2;
 		double c = isForward ? 1.0 : -1.0;
+		FftPlan plan = FftPlan.getInstance(n);
+
+		// compute half spectrum
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] re = scratch.doubles(nOver2 + 1);
+			double[] im = scratch.doubles(nOver2 + 1);
+			plan.realForward(a, 0, re, im);
+
+			// zero out DC component, and Nyquist component if there is one
+			re[0] = im[0] = 0.0;
+			int lastPositive = nOver2;
+			if (n % 2 == 0) {
+				re[nOver2] = im[nOver2] = 0.0;
+				lastPositive--;
+			}
 
-		// create zero-valued imaginary component
-		double[] aIm = new double[n];
+			// multiply positive frequency components by -I (negative frequency components follow by symmetry)
+			for (int i = 1; i <= lastPositive; i++) {
+				double temp = re[i];
+				re[i] = c * im[i];
+				im[i] = -c * temp;
+			}
 
-		// perform FFT
-		fftRealPowerOf2Forward(a, aIm);
+			plan.realInverse(re, im, a, 0);
+		} finally {
+			scratch.release(mark);
+		}
+	}
 
-		// zero out DC and Nyquist components
-		a[0] = aIm[0] = a[nOver2] = aIm[nOver2] = 0.0;
+	/**
+	 * Computes discrete Hilbert transform of the single-precision input array
+	 * (in place) using FFTs, as described in
+	 * {@link #fastHilbertTransform(double[], boolean) fastHilbertTransform}.
+	 * No double-precision copy of the input is made.
+	 *
+	 * @param a         input array
+	 * @param isForward true for forward Hilbert transform, false for inverse
+	 *                  Hilbert transform
+	 */
+	public static final void fastHilbertTransform(float[] a, boolean isForward)
+	{
+		int n = a.length;
+		int nOver2 = n / 2;
+		float c = isForward ? 1.0f : -1.0f;
+		FftPlan plan = FftPlan.getInstance(n);
+
+		// compute half spectrum
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			float[] re = scratch.floats(nOver2 + 1);
+			float[] im = scratch.floats(nOver2 + 1);
+			plan.realForward(a, 0, re, im);
+
+			// zero out DC component, and Nyquist component if there is one
+			re[0] = im[0] = 0.0f;
+			int lastPositive = nOver2;
+			if (n % 2 == 0) {
+				re[nOver2] = im[nOver2] = 0.0f;
+				lastPositive--;
+			}
 
-		// multiply positive frequency components by -I
-		for (int i = 1; i < nOver2; i++) {
-			double temp = a[i];
-			a[i] = c * aIm[i];
-			aIm[i] = -c * temp;
-		}
+			// multiply positive frequency components by -I (negative frequency components follow by symmetry)
+			for (int i = 1; i <= lastPositive; i++) {
+				float temp = re[i];
+				re[i] = c * im[i];
+				im[i] = -c * temp;
+			}
 
-		// multiply negative frequency components by I
-		for (int i = nOver2 + 1; i < n; i++) {
-			double temp = a[i];
-			a[i] = -c * aIm[i];
-			aIm[i] = c * temp;
+			plan.realInverse(re, im, a, 0);
+		} finally {
+			scratch.release(mark);
 		}
-
-		fftComplexPowerOf2(a, aIm, false);
 	}
 
 	//--------------------power-of-2 Methods----------------------------------//
@@ -965,6 +1619,46 @@ public class WaveformUtils
 		return (n - highestOneBit == 0 ? 0 : highestOneBit * 2 - n);
 	}
 
+	/**
+	 * Returns the smallest integer greater than or equal to {@code n} whose
+	 * only prime factors are 2, 3 and 5. FFTs of such lengths are computed
+	 * efficiently by {@link #fftComplex(double[], double[], boolean) fftComplex}
+	 * without padding to a power of 2, which for most record lengths wastes
+	 * far less work and memory (e.g. a 2100-point record is transformed at
+	 * 2160 points rather than 4096). If {@code n<=1}, output is {@code 1}.
+	 *
+	 * @param n input integer
+	 * @return next 5-smooth integer not less than {@code n}
+	 */
+	public static final int nextFastFftLength(int n)
+	{
+		if (n <= 1) {
+			return 1;
+		}
+
+		// search all products 2^a*3^b*5^c not less than n
+		long best = Long.MAX_VALUE;
+		for (long p5 = 1; p5 < best; p5 *= 5) {
+			for (long p35 = p5; p35 < best; p35 *= 3) {
+				long p235 = p35;
+				while (p235 < n) {
+					p235 *= 2;
+				}
+				if (p235 < best) {
+					best = p235;
+				}
+				if (p35 >= n) {
+					break;
+				}
+			}
+			if (p5 >= n) {
+				break;
+			}
+		}
+
+		return (int) best;
+	}
+
 	//--------------------padArray Methods------------------------------------//
 	/**
 	 * Returns copy of input array padded to the next highest power-of-2 length
@@ -1329,11 +2023,15 @@ public class WaveformUtils
 	 * segment of the input array, multiplying the real and imaginary parts of
 	 * the transformed segment by {@code filterCoefficients} element-by-element,
 	 * and inverse Fourier transforming the result. The output is the filtered
-	 * segment; input array is unchanged. The length of the segment to be
-	 * filtered <b>must</b> be a power-of-2, otherwise unexpected results or
-	 * runtime errors may occur. No error checking is performed on range limits;
+	 * segment; input array is unchanged. The segment to be filtered may have
+	 * any length, although power-of-2 and 5-smooth lengths (see
+	 * {@link #nextFastFftLength(int)}) are fastest. No error checking is performed on range limits;
 	 * if the values are negative or outside the range of the array, a runtime
-	 * exception may be thrown.
+	 * exception may be thrown. Because the input is real-valued, the filter
+	 * coefficients are assumed to be symmetric
+	 * ({@code filterCoefficients[k]==filterCoefficients[n-k]}), and only the
+	 * first {@code n/2+1} coefficients are applied to the non-redundant half of
+	 * the spectrum.
 	 *
 	 * @param a                  input array (assumed to be real-valued)
 	 * @param from               initial index of the range of elements to
@@ -1349,30 +2047,39 @@ public class WaveformUtils
 	{
 		int n = to - from;
 
-		double[] re = Arrays.copyOfRange(a, from, to);
+		double[] out = Arrays.copyOfRange(a, from, to);
 		if (filterCoefficients.length != n) {
-			return re;
+			return out;
 		}
 
-		double[] im = new double[n];
+		FftPlan plan = FftPlan.getInstance(n);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] re = scratch.doubles(n / 2 + 1);
+			double[] im = scratch.doubles(n / 2 + 1);
+
+			plan.realForward(out, 0, re, im);
+			for (int i = 0; i <= n / 2; i++) {
+				re[i] *= filterCoefficients[i];
+				im[i] *= filterCoefficients[i];
+			}
+			plan.realInverse(re, im, out, 0);
 
-		fftComplexPowerOf2(re, im, true);
-		for (int i = 0; i < n; i++) {
-			re[i] *= filterCoefficients[i];
-			im[i] *= filterCoefficients[i];
+			return out;
+		} finally {
+			scratch.release(mark);
 		}
-		fftComplexPowerOf2(re, im, false);
-
-		return re;
 	}
 
 	/**
 	 * Filters input array by Fourier transform, multiplying the real and
 	 * imaginary parts by {@code filterCoefficients} element-by-element, and
 	 * inverse Fourier transforming the result. The output is the filtered
-	 * array; input array is unchanged. The length of the array to be filtered
-	 * <b>must</b> be a power of 2, otherwise unexpected results or runtime
-	 * errors may occur.
+	 * array; input array is unchanged. The array to be filtered may have any
+	 * length. Filter coefficients are assumed to be symmetric, as
+	 * described in
+	 * {@link #freqDomainFilter(double[], int, int, double[]) freqDomainFilter}.
 	 *
 	 * @param a	                 input array (assumed to be real-valued)
 	 * @param filterCoefficients frequency-domain filter coefficients; if length
@@ -1391,10 +2098,11 @@ public class WaveformUtils
 	 * transforming each waveform, multiplying the resulting real and imaginary
 	 * portions by {@code filterCoefficients} element-by-element, and inverse
 	 * Fourier transforming. Results are returned in place.
-	 * {@code waveformLength} <b>must</b> be a power of 2, otherwise unexpected
-	 * results or runtime errors may occur. If
+	 * {@code waveformLength} may be any positive length. If
 	 * {@code filterCoefficients.length!=waveformLength}, input array is left
-	 * unchanged.
+	 * unchanged. Only the non-redundant half of each spectrum is computed, so
+	 * filter coefficients are assumed to be symmetric, as described in
+	 * {@link #freqDomainFilter(double[], int, int, double[]) freqDomainFilter}.
 	 *
 	 * @param re
 	 * @param waveformLength
@@ -1407,17 +2115,936 @@ public class WaveformUtils
 		}
 
 		int numRecords = re.length / waveformLength;
-		double[] im = new double[waveformLength * numRecords];
+		int halfLength = waveformLength / 2;
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] specRe = scratch.doubles(halfLength + 1);
+			double[] specIm = scratch.doubles(halfLength + 1);
+			FftPlan plan = FftPlan.getInstance(waveformLength);
+
+			for (int i = 0; i < numRecords; i++) {
+				int offset = i * waveformLength;
+				plan.realForward(re, offset, specRe, specIm);
+				for (int j = 0; j <= halfLength; j++) {
+					specRe[j] *= filterCoefficients[j];
+					specIm[j] *= filterCoefficients[j];
+				}
+				plan.realInverse(specRe, specIm, re, offset);
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #freqDomainFilter(double[], int, int, double[]) freqDomainFilter}.
+	 *
+	 * @param a                  input array (assumed to be real-valued)
+	 * @param from               initial index of the range of elements to
+	 *                           filter
+	 * @param to                 final index of the range of elements to filter
+	 * @param filterCoefficients frequency-domain filter coefficients; if length
+	 *                           of array is not equal to {@code from-to},
+	 *                           return an unmodified copy of the input array
+	 *                           segment
+	 * @return filtered array segment
+	 */
+	public static final float[] freqDomainFilter(float[] a, int from, int to, float[] filterCoefficients)
+	{
+		int n = to - from;
+
+		float[] out = Arrays.copyOfRange(a, from, to);
+		if (filterCoefficients.length != n) {
+			return out;
+		}
+
+		FftPlan plan = FftPlan.getInstance(n);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			float[] re = scratch.floats(n / 2 + 1);
+			float[] im = scratch.floats(n / 2 + 1);
+
+			plan.realForward(out, 0, re, im);
+			for (int i = 0; i <= n / 2; i++) {
+				re[i] *= filterCoefficients[i];
+				im[i] *= filterCoefficients[i];
+			}
+			plan.realInverse(re, im, out, 0);
+
+			return out;
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #freqDomainFilter(double[], double[]) freqDomainFilter}.
+	 *
+	 * @param a	                 input array (assumed to be real-valued)
+	 * @param filterCoefficients frequency-domain filter coefficients; if length
+	 *                           of array is not equal to {@code a.length},
+	 *                           return an unmodified copy of the {@code a}
+	 * @return filtered array
+	 */
+	public static final float[] freqDomainFilter(float[] a, float[] filterCoefficients)
+	{
+		return freqDomainFilter(a, 0, a.length, filterCoefficients);
+	}
+
+	/**
+	 * Single-precision version of
+	 * {@link #freqDomainFilterMultipleWaveformsInPlace(double[], int, double[]) freqDomainFilterMultipleWaveformsInPlace}.
+	 *
+	 * @param re
+	 * @param waveformLength
+	 * @param filterCoefficients
+	 */
+	public static final void freqDomainFilterMultipleWaveformsInPlace(float[] re, int waveformLength, float[] filterCoefficients)
+	{
+		if (filterCoefficients.length != waveformLength) {
+			return;
+		}
+
+		int numRecords = re.length / waveformLength;
+		int halfLength = waveformLength / 2;
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			float[] specRe = scratch.floats(halfLength + 1);
+			float[] specIm = scratch.floats(halfLength + 1);
+			FftPlan plan = FftPlan.getInstance(waveformLength);
+
+			for (int i = 0; i < numRecords; i++) {
+				int offset = i * waveformLength;
+				plan.realForward(re, offset, specRe, specIm);
+				for (int j = 0; j <= halfLength; j++) {
+					specRe[j] *= filterCoefficients[j];
+					specIm[j] *= filterCoefficients[j];
+				}
+				plan.realInverse(specRe, specIm, re, offset);
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Filters a series of concatenated real-valued records, each of length
+	 * {@code recordLength}, by multiplying the spectrum of each record
+	 * (zero-padded to {@code transformLength}) by the complex frequency
+	 * response {@code responseRe+i*responseIm} and inverse transforming.
+	 * Results are truncated to {@code recordLength} and returned in place.
+	 * Adjacent records are processed in pairs, packed into the real and
+	 * imaginary parts of a single complex FFT, so that only one forward and
+	 * one inverse transform are computed per two records; if the number of
+	 * records is odd, the last record is paired with zeros. For the
+	 * filtered records to be real, and the pairs therefore separable, the
+	 * response must be Hermitian, i.e. {@code responseRe[k]==responseRe[n-k]}
+	 * and {@code responseIm[k]==-responseIm[n-k]}; this includes all
+	 * symmetric real-valued filters (for which {@code responseIm} may be
+	 * {@code null}) and the Hilbert transform. If {@code recordLength<1},
+	 * {@code transformLength<recordLength}, or the response arrays are not of
+	 * length {@code transformLength}, {@code waveforms} is left unchanged.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @param responseRe      real part of the frequency response
+	 * @param responseIm      imaginary part of the frequency response, or
+	 *                        {@code null} if the response is real
+	 */
+	public static final void freqDomainFilterPairedWaveformsInPlace(double[] waveforms, int recordLength, int transformLength, double[] responseRe, double[] responseIm)
+	{
+		if (recordLength < 1) {
+			return;
+		}
+		freqDomainFilterPairedWaveformsInPlace(waveforms, waveforms.length / recordLength, recordLength, transformLength, responseRe, responseIm);
+	}
+
+	/**
+	 * Filters the first {@code numRecords} records of {@code waveforms} as
+	 * described in
+	 * {@link #freqDomainFilterPairedWaveformsInPlace(double[], int, int, double[], double[]) freqDomainFilterPairedWaveformsInPlace};
+	 * any elements following those records are unchanged, which allows the
+	 * records to be held in a (borrowed) array that is longer than needed. If
+	 * {@code waveforms} holds fewer than {@code numRecords} records, it is
+	 * left unchanged.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param numRecords      number of records to filter
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @param responseRe      real part of the frequency response
+	 * @param responseIm      imaginary part of the frequency response, or
+	 *                        {@code null} if the response is real
+	 */
+	public static final void freqDomainFilterPairedWaveformsInPlace(double[] waveforms, int numRecords, int recordLength, int transformLength, double[] responseRe, double[] responseIm)
+	{
+		if (recordLength < 1
+			|| numRecords < 0
+			|| (long) numRecords * recordLength > waveforms.length
+			|| transformLength < recordLength
+			|| responseRe.length != transformLength
+			|| (responseIm != null && responseIm.length != transformLength)) {
+			return;
+		}
+
+		FftPlan plan = FftPlan.getInstance(transformLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] ar = scratch.doubles(transformLength);
+			double[] ai = scratch.doubles(transformLength);
+
+			for (int i = 0; i < numRecords; i += 2) {
+				int offset1 = i * recordLength;
+				int offset2 = offset1 + recordLength;
+				boolean hasPair = (i + 1 < numRecords);
+
+				// pack two records into real and imaginary parts (padding and missing partner are zero)
+				System.arraycopy(waveforms, offset1, ar, 0, recordLength);
+				Arrays.fill(ar, recordLength, transformLength, 0.0);
+				if (hasPair) {
+					System.arraycopy(waveforms, offset2, ai, 0, recordLength);
+					Arrays.fill(ai, recordLength, transformLength, 0.0);
+				} else {
+					Arrays.fill(ai, 0.0);
+				}
+
+				plan.transform(ar, ai, 0, true);
+				if (responseIm == null) {
+					for (int k = 0; k < transformLength; k++) {
+						ar[k] *= responseRe[k];
+						ai[k] *= responseRe[k];
+					}
+				} else {
+					for (int k = 0; k < transformLength; k++) {
+						double temp = ar[k] * responseRe[k] - ai[k] * responseIm[k];
+						ai[k] = ar[k] * responseIm[k] + ai[k] * responseRe[k];
+						ar[k] = temp;
+					}
+				}
+				plan.transform(ar, ai, 0, false);
+
+				// the response is Hermitian, so the filtered records are the real and imaginary parts
+				System.arraycopy(ar, 0, waveforms, offset1, recordLength);
+				if (hasPair) {
+					System.arraycopy(ai, 0, waveforms, offset2, recordLength);
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes the power spectrum (squared magnitude of bins {@code 0}
+	 * through {@code transformLength/2} of the FFT) of each of a series of
+	 * concatenated real-valued records of length {@code recordLength},
+	 * zero-padded to {@code transformLength}. Adjacent records are packed into
+	 * the real and imaginary parts of a single complex FFT, and their spectra
+	 * are separated using conjugate symmetry, so that only one transform is
+	 * computed per two records; if the number of records is odd, the last
+	 * record is paired with zeros. The input array is unchanged. Output is
+	 * {@code null} if {@code recordLength<1} or
+	 * {@code transformLength<recordLength}.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @return power spectra of the records concatenated into 1-D array, each
+	 *         of length {@code transformLength/2+1}
+	 */
+	public static final double[] powerSpectrumPairedWaveforms(double[] waveforms, int recordLength, int transformLength)
+	{
+		if (recordLength < 1 || transformLength < recordLength) {
+			return null;
+		}
+
+		int numRecords = waveforms.length / recordLength;
+		int halfLength = transformLength / 2;
+		double[] spectra = new double[numRecords * (halfLength + 1)];
+		FftPlan plan = FftPlan.getInstance(transformLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] ar = scratch.doubles(transformLength);
+			double[] ai = scratch.doubles(transformLength);
+
+			for (int i = 0; i < numRecords; i += 2) {
+				boolean hasPair = (i + 1 < numRecords);
+
+				// pack two records into real and imaginary parts (padding and missing partner are zero)
+				System.arraycopy(waveforms, i * recordLength, ar, 0, recordLength);
+				Arrays.fill(ar, recordLength, transformLength, 0.0);
+				if (hasPair) {
+					System.arraycopy(waveforms, (i + 1) * recordLength, ai, 0, recordLength);
+					Arrays.fill(ai, recordLength, transformLength, 0.0);
+				} else {
+					Arrays.fill(ai, 0.0);
+				}
+
+				plan.transform(ar, ai, 0, true);
+
+				// X[k]=(Z[k]+conj(Z[n-k]))/2 and Y[k]=(Z[k]-conj(Z[n-k]))/(2i)
+				int offset1 = i * (halfLength + 1);
+				int offset2 = offset1 + halfLength + 1;
+				for (int k = 0; k <= halfLength; k++) {
+					int m = (k == 0) ? 0 : transformLength - k;
+					double xr = 0.5 * (ar[k] + ar[m]);
+					double xi = 0.5 * (ai[k] - ai[m]);
+					spectra[offset1 + k] = xr * xr + xi * xi;
+					if (hasPair) {
+						double yr = 0.5 * (ai[k] + ai[m]);
+						double yi = 0.5 * (ar[m] - ar[k]);
+						spectra[offset2 + k] = yr * yr + yi * yi;
+					}
+				}
+			}
+
+			return spectra;
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Filters a series of concatenated real-valued records, each of length
+	 * {@code recordLength}, by multiplying the spectrum of each record
+	 * (zero-padded to {@code transformLength}) by the complex frequency
+	 * response {@code responseRe+i*responseIm} and inverse transforming.
+	 * Results are truncated to {@code recordLength} and returned in place.
+	 * Adjacent records are processed in pairs, packed into the real and
+	 * imaginary parts of a single complex FFT, so that only one forward and
+	 * one inverse transform are computed per two records; if the number of
+	 * records is odd, the last record is paired with zeros. For the
+	 * filtered records to be real, and the pairs therefore separable, the
+	 * response must be Hermitian, i.e. {@code responseRe[k]==responseRe[n-k]}
+	 * and {@code responseIm[k]==-responseIm[n-k]}; this includes all
+	 * symmetric real-valued filters (for which {@code responseIm} may be
+	 * {@code null}) and the Hilbert transform. If {@code recordLength<1},
+	 * {@code transformLength<recordLength}, or the response arrays are not of
+	 * length {@code transformLength}, {@code waveforms} is left unchanged.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @param responseRe      real part of the frequency response
+	 * @param responseIm      imaginary part of the frequency response, or
+	 *                        {@code null} if the response is real
+	 */
+	public static final void freqDomainFilterPairedWaveformsInPlace(float[] waveforms, int recordLength, int transformLength, float[] responseRe, float[] responseIm)
+	{
+		if (recordLength < 1) {
+			return;
+		}
+		freqDomainFilterPairedWaveformsInPlace(waveforms, waveforms.length / recordLength, recordLength, transformLength, responseRe, responseIm);
+	}
+
+	/**
+	 * Filters the first {@code numRecords} records of {@code waveforms} as
+	 * described in
+	 * {@link #freqDomainFilterPairedWaveformsInPlace(float[], int, int, float[], float[]) freqDomainFilterPairedWaveformsInPlace};
+	 * any elements following those records are unchanged, which allows the
+	 * records to be held in a (borrowed) array that is longer than needed. If
+	 * {@code waveforms} holds fewer than {@code numRecords} records, it is
+	 * left unchanged.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param numRecords      number of records to filter
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @param responseRe      real part of the frequency response
+	 * @param responseIm      imaginary part of the frequency response, or
+	 *                        {@code null} if the response is real
+	 */
+	public static final void freqDomainFilterPairedWaveformsInPlace(float[] waveforms, int numRecords, int recordLength, int transformLength, float[] responseRe, float[] responseIm)
+	{
+		if (recordLength < 1
+			|| numRecords < 0
+			|| (long) numRecords * recordLength > waveforms.length
+			|| transformLength < recordLength
+			|| responseRe.length != transformLength
+			|| (responseIm != null && responseIm.length != transformLength)) {
+			return;
+		}
+
+		FftPlan plan = FftPlan.getInstance(transformLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			float[] ar = scratch.floats(transformLength);
+			float[] ai = scratch.floats(transformLength);
+
+			for (int i = 0; i < numRecords; i += 2) {
+				int offset1 = i * recordLength;
+				int offset2 = offset1 + recordLength;
+				boolean hasPair = (i + 1 < numRecords);
+
+				// pack two records into real and imaginary parts (padding and missing partner are zero)
+				System.arraycopy(waveforms, offset1, ar, 0, recordLength);
+				Arrays.fill(ar, recordLength, transformLength, 0.0f);
+				if (hasPair) {
+					System.arraycopy(waveforms, offset2, ai, 0, recordLength);
+					Arrays.fill(ai, recordLength, transformLength, 0.0f);
+				} else {
+					Arrays.fill(ai, 0.0f);
+				}
 
-		for (int i = 0; i < numRecords; i++) {
-			int offset = i * waveformLength;
-			fftComplexPowerOf2(re, im, offset, offset + waveformLength, true);
-			for (int j = 0; j < waveformLength; j++) {
-				re[offset + j] *= filterCoefficients[j];
-				im[offset + j] *= filterCoefficients[j];
+				plan.transform(ar, ai, 0, true);
+				if (responseIm == null) {
+					for (int k = 0; k < transformLength; k++) {
+						ar[k] *= responseRe[k];
+						ai[k] *= responseRe[k];
+					}
+				} else {
+					for (int k = 0; k < transformLength; k++) {
+						float temp = ar[k] * responseRe[k] - ai[k] * responseIm[k];
+						ai[k] = ar[k] * responseIm[k] + ai[k] * responseRe[k];
+						ar[k] = temp;
+					}
+				}
+				plan.transform(ar, ai, 0, false);
+
+				// the response is Hermitian, so the filtered records are the real and imaginary parts
+				System.arraycopy(ar, 0, waveforms, offset1, recordLength);
+				if (hasPair) {
+					System.arraycopy(ai, 0, waveforms, offset2, recordLength);
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes the power spectrum (squared magnitude of bins {@code 0}
+	 * through {@code transformLength/2} of the FFT) of each of a series of
+	 * concatenated real-valued records of length {@code recordLength},
+	 * zero-padded to {@code transformLength}. Adjacent records are packed into
+	 * the real and imaginary parts of a single complex FFT, and their spectra
+	 * are separated using conjugate symmetry, so that only one transform is
+	 * computed per two records; if the number of records is odd, the last
+	 * record is paired with zeros. The input array is unchanged. Output is
+	 * {@code null} if {@code recordLength<1} or
+	 * {@code transformLength<recordLength}.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @return power spectra of the records concatenated into 1-D array, each
+	 *         of length {@code transformLength/2+1}
+	 */
+	public static final float[] powerSpectrumPairedWaveforms(float[] waveforms, int recordLength, int transformLength)
+	{
+		if (recordLength < 1 || transformLength < recordLength) {
+			return null;
+		}
+
+		int numRecords = waveforms.length / recordLength;
+		int halfLength = transformLength / 2;
+		float[] spectra = new float[numRecords * (halfLength + 1)];
+		FftPlan plan = FftPlan.getInstance(transformLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			float[] ar = scratch.floats(transformLength);
+			float[] ai = scratch.floats(transformLength);
+
+			for (int i = 0; i < numRecords; i += 2) {
+				boolean hasPair = (i + 1 < numRecords);
+
+				// pack two records into real and imaginary parts (padding and missing partner are zero)
+				System.arraycopy(waveforms, i * recordLength, ar, 0, recordLength);
+				Arrays.fill(ar, recordLength, transformLength, 0.0f);
+				if (hasPair) {
+					System.arraycopy(waveforms, (i + 1) * recordLength, ai, 0, recordLength);
+					Arrays.fill(ai, recordLength, transformLength, 0.0f);
+				} else {
+					Arrays.fill(ai, 0.0f);
+				}
+
+				plan.transform(ar, ai, 0, true);
+
+				// X[k]=(Z[k]+conj(Z[n-k]))/2 and Y[k]=(Z[k]-conj(Z[n-k]))/(2i)
+				int offset1 = i * (halfLength + 1);
+				int offset2 = offset1 + halfLength + 1;
+				for (int k = 0; k <= halfLength; k++) {
+					int m = (k == 0) ? 0 : transformLength - k;
+					float xr = 0.5f * (ar[k] + ar[m]);
+					float xi = 0.5f * (ai[k] - ai[m]);
+					spectra[offset1 + k] = xr * xr + xi * xi;
+					if (hasPair) {
+						float yr = 0.5f * (ai[k] + ai[m]);
+						float yi = 0.5f * (ar[m] - ar[k]);
+						spectra[offset2 + k] = yr * yr + yi * yi;
+					}
+				}
+			}
+
+			return spectra;
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes the forward FFTs of a series of concatenated real-valued
+	 * records of length {@code recordLength}, zero-padded to
+	 * {@code transformLength}, with adjacent records packed into the real and
+	 * imaginary parts of a single complex FFT as in
+	 * {@link #freqDomainFilterPairedWaveformsInPlace(float[], int, int, float[], float[]) freqDomainFilterPairedWaveformsInPlace}.
+	 * The spectrum of records {@code 2p} and {@code 2p+1} occupies elements
+	 * {@code p*transformLength} through {@code (p+1)*transformLength-1} of
+	 * the output arrays; if the number of records is odd, the last record is
+	 * paired with zeros. The packed spectra can be filtered or reduced to
+	 * power spectra later, without transforming the records again, using
+	 * {@link #freqDomainFilterPairedSpectra(float[], float[], float[], int, int, float[], float[]) freqDomainFilterPairedSpectra}
+	 * and
+	 * {@link #powerSpectrumPairedSpectra(float[], float[], int, int) powerSpectrumPairedSpectra}.
+	 * The input array is unchanged. Output is {@code null} if
+	 * {@code recordLength<1} or {@code transformLength<recordLength}.
+	 *
+	 * @param waveforms       input records concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @return two-element array containing the real and imaginary parts of
+	 *         the packed spectra
+	 */
+	public static final float[][] fftPairedWaveforms(float[] waveforms, int recordLength, int transformLength)
+	{
+		if (recordLength < 1 || transformLength < recordLength) {
+			return null;
+		}
+
+		int numRecords = waveforms.length / recordLength;
+		int numPairs = (numRecords + 1) / 2;
+		float[] re = new float[numPairs * transformLength];
+		float[] im = new float[numPairs * transformLength];
+		FftPlan plan = FftPlan.getInstance(transformLength);
+
+		for (int p = 0; p < numPairs; p++) {
+			int i = 2 * p;
+			int offset = p * transformLength;
+
+			// pack two records into real and imaginary parts (padding and missing partner are already zero)
+			System.arraycopy(waveforms, i * recordLength, re, offset, recordLength);
+			if (i + 1 < numRecords) {
+				System.arraycopy(waveforms, (i + 1) * recordLength, im, offset, recordLength);
 			}
-			fftComplexPowerOf2(re, im, offset, offset + waveformLength, false);
+
+			plan.transform(re, im, offset, true);
 		}
+
+		return new float[][]{re, im};
+	}
+
+	/**
+	 * Filters the records whose packed spectra were computed by
+	 * {@link #fftPairedWaveforms(float[], int, int) fftPairedWaveforms},
+	 * writing the filtered records, truncated to {@code recordLength}, into
+	 * {@code waveforms}. The result is the same as that of
+	 * {@link #freqDomainFilterPairedWaveformsInPlace(float[], int, int, float[], float[]) freqDomainFilterPairedWaveformsInPlace}
+	 * applied to the original records, but only the inverse transforms are
+	 * computed, and the spectra are unchanged so that they can be reused.
+	 * The response must be Hermitian. If {@code recordLength<1},
+	 * {@code transformLength<recordLength}, the response arrays are not of
+	 * length {@code transformLength}, or the spectra are too short for the
+	 * records in {@code waveforms}, {@code waveforms} is left unchanged.
+	 *
+	 * @param spectraRe       real part of the packed spectra
+	 * @param spectraIm       imaginary part of the packed spectra
+	 * @param waveforms       output records concatenated into 1-D array
+	 * @param recordLength    length of each record in points
+	 * @param transformLength length of the FFT used for each record
+	 * @param responseRe      real part of the frequency response
+	 * @param responseIm      imaginary part of the frequency response, or
+	 *                        {@code null} if the response is real
+	 */
+	public static final void freqDomainFilterPairedSpectra(float[] spectraRe, float[] spectraIm, float[] waveforms, int recordLength, int transformLength, float[] responseRe, float[] responseIm)
+	{
+		if (recordLength < 1
+			|| transformLength < recordLength
+			|| responseRe.length != transformLength
+			|| (responseIm != null && responseIm.length != transformLength)) {
+			return;
+		}
+
+		int numRecords = waveforms.length / recordLength;
+		int numPairs = (numRecords + 1) / 2;
+		if (spectraRe.length < numPairs * transformLength || spectraIm.length < numPairs * transformLength) {
+			return;
+		}
+
+		FftPlan plan = FftPlan.getInstance(transformLength);
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			float[] ar = scratch.floats(transformLength);
+			float[] ai = scratch.floats(transformLength);
+
+			for (int p = 0; p < numPairs; p++) {
+				int offset = p * transformLength;
+				if (responseIm == null) {
+					for (int k = 0; k < transformLength; k++) {
+						ar[k] = spectraRe[offset + k] * responseRe[k];
+						ai[k] = spectraIm[offset + k] * responseRe[k];
+					}
+				} else {
+					for (int k = 0; k < transformLength; k++) {
+						ar[k] = spectraRe[offset + k] * responseRe[k] - spectraIm[offset + k] * responseIm[k];
+						ai[k] = spectraRe[offset + k] * responseIm[k] + spectraIm[offset + k] * responseRe[k];
+					}
+				}
+				plan.transform(ar, ai, 0, false);
+
+				// the response is Hermitian, so the filtered records are the real and imaginary parts
+				System.arraycopy(ar, 0, waveforms, 2 * p * recordLength, recordLength);
+				if (2 * p + 1 < numRecords) {
+					System.arraycopy(ai, 0, waveforms, (2 * p + 1) * recordLength, recordLength);
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Computes the power spectra (squared magnitude of bins {@code 0}
+	 * through {@code transformLength/2}) of {@code numRecords} records whose
+	 * packed spectra were computed by
+	 * {@link #fftPairedWaveforms(float[], int, int) fftPairedWaveforms}. The
+	 * result is the same as that of
+	 * {@link #powerSpectrumPairedWaveforms(float[], int, int) powerSpectrumPairedWaveforms}
+	 * applied to the original records, but no transforms are computed. Output
+	 * is {@code null} if {@code numRecords<1}, {@code transformLength<1}, or
+	 * the spectra are too short to hold {@code numRecords} records.
+	 *
+	 * @param spectraRe       real part of the packed spectra
+	 * @param spectraIm       imaginary part of the packed spectra
+	 * @param numRecords      number of records
+	 * @param transformLength length of the FFT used for each record
+	 * @return power spectra of the records concatenated into 1-D array, each
+	 *         of length {@code transformLength/2+1}
+	 */
+	public static final float[] powerSpectrumPairedSpectra(float[] spectraRe, float[] spectraIm, int numRecords, int transformLength)
+	{
+		int numPairs = (numRecords + 1) / 2;
+		if (numRecords < 1
+			|| transformLength < 1
+			|| spectraRe.length < numPairs * transformLength
+			|| spectraIm.length < numPairs * transformLength) {
+			return null;
+		}
+
+		int halfLength = transformLength / 2;
+		float[] spectra = new float[numRecords * (halfLength + 1)];
+
+		for (int p = 0; p < numPairs; p++) {
+			int i = 2 * p;
+			boolean hasPair = (i + 1 < numRecords);
+			int from = p * transformLength;
+
+			// X[k]=(Z[k]+conj(Z[n-k]))/2 and Y[k]=(Z[k]-conj(Z[n-k]))/(2i)
+			int offset1 = i * (halfLength + 1);
+			int offset2 = offset1 + halfLength + 1;
+			for (int k = 0; k <= halfLength; k++) {
+				int m = from + ((k == 0) ? 0 : transformLength - k);
+				float xr = 0.5f * (spectraRe[from + k] + spectraRe[m]);
+				float xi = 0.5f * (spectraIm[from + k] - spectraIm[m]);
+				spectra[offset1 + k] = xr * xr + xi * xi;
+				if (hasPair) {
+					float yr = 0.5f * (spectraIm[from + k] + spectraIm[m]);
+					float yi = 0.5f * (spectraRe[m] - spectraRe[from + k]);
+					spectra[offset2 + k] = yr * yr + yi * yi;
+				}
+			}
+		}
+
+		return spectra;
+	}
+
+	/**
+	 * Returns copies of the parts of packed pair spectra, as computed by
+	 * {@link #fftPairedWaveforms(float[], int, int) fftPairedWaveforms}, that
+	 * hold the spectra of records {@code fromRecord} (inclusive) through
+	 * {@code toRecord} (exclusive), for processing a subset of the records.
+	 * Output is {@code null} if {@code pairedSpectra==null},
+	 * {@code fromRecord} is odd or negative, {@code toRecord<=fromRecord},
+	 * or the spectra are too short to hold {@code toRecord} records.
+	 *
+	 * @param pairedSpectra   real and imaginary parts of the packed spectra
+	 * @param fromRecord      index of first record (even)
+	 * @param toRecord        index after last record
+	 * @param transformLength length of the FFT used for each record
+	 * @return real and imaginary parts of the packed spectra of the records
+	 */
+	public static final float[][] pairedSpectraOfRecords(float[][] pairedSpectra, int fromRecord, int toRecord, int transformLength)
+	{
+		int from = (fromRecord / 2) * transformLength;
+		int to = ((toRecord + 1) / 2) * transformLength;
+		if (pairedSpectra == null
+			|| fromRecord < 0
+			|| fromRecord % 2 != 0
+			|| toRecord <= fromRecord
+			|| pairedSpectra[0].length < to
+			|| pairedSpectra[1].length < to) {
+			return null;
+		}
+
+		return new float[][]{Arrays.copyOfRange(pairedSpectra[0], from, to), Arrays.copyOfRange(pairedSpectra[1], from, to)};
+	}
+
+	/**
+	 * Computes the weighted sum of the values within a symmetric moving window
+	 * at each point of a series of concatenated records of length
+	 * {@code recordLength}, i.e.,
+	 * {@code y[j]=sum(weights[abs(k)]*x[j+k], k=-radius..radius)} where
+	 * {@code radius=weights.length-1}. At positions where part of the window
+	 * lies outside the bounds of the record, the record values are reflected
+	 * around the appropriate end point, as in
+	 * {@link MovingWindowWeightedAverage}. The sums are computed by
+	 * overlap-save FFT convolution: each mirrored record is split into
+	 * overlapping blocks, whose (power of 2) length is chosen to minimize the
+	 * total transform cost, and adjacent blocks are filtered in pairs as in
+	 * {@link #freqDomainFilterPairedWaveformsInPlace(double[], int, int, double[], double[]) freqDomainFilterPairedWaveformsInPlace}.
+	 * The cost is {@code O(n*log(radius))} per record rather than the
+	 * {@code O(n*radius)} of direct summation; results agree with direct
+	 * summation to within rounding error relative to the largest sums. The
+	 * input array is unchanged. Output is {@code null} if
+	 * {@code waveforms==null}, {@code weights==null},
+	 * {@code weights.length==0}, {@code recordLength<=2*radius+1}, or
+	 * {@code waveforms.length} is not evenly divisible by
+	 * {@code recordLength}.
+	 *
+	 * @param waveforms    input records concatenated into 1-D array
+	 * @param recordLength length of each record in points
+	 * @param weights      single-sided window weights, {@code weights[0]}
+	 *                     being the weight at the center of the window
+	 * @return moving window sums of the records concatenated into 1-D array
+	 */
+	public static final double[] movingWindowWeightedSumOverlapSave(double[] waveforms, int recordLength, double[] weights)
+	{
+		if (!isOverlapSaveInput(waveforms != null ? waveforms.length : -1, recordLength, weights)) {
+			return null;
+		}
+
+		double[] result = Arrays.copyOf(waveforms, waveforms.length);
+		movingWindowWeightedSumOverlapSaveInPlace(result, recordLength, weights, false);
+		return result;
+	}
+
+	/**
+	 * Replaces each value of a series of concatenated records with the
+	 * weighted sum of the values (or, if {@code squareValues} is true, of
+	 * their squares) within a symmetric moving window, computed as in
+	 * {@link #movingWindowWeightedSumOverlapSave(double[], int, double[]) movingWindowWeightedSumOverlapSave}.
+	 * Records are filtered in small batches, whose blocks are held in scratch
+	 * arrays ({@link #scratch()}), so that the memory used does not depend on
+	 * the number of records. If {@code waveforms==null},
+	 * {@code weights==null}, {@code weights.length==0},
+	 * {@code recordLength<=2*radius+1}, or {@code waveforms.length} is not
+	 * evenly divisible by {@code recordLength}, {@code waveforms} is left
+	 * unchanged.
+	 *
+	 * @param waveforms    input records concatenated into 1-D array
+	 * @param recordLength length of each record in points
+	 * @param weights      single-sided window weights, {@code weights[0]}
+	 *                     being the weight at the center of the window
+	 * @param squareValues true to sum the squares of the values
+	 */
+	public static final void movingWindowWeightedSumOverlapSaveInPlace(double[] waveforms, int recordLength, double[] weights, boolean squareValues)
+	{
+		if (!isOverlapSaveInput(waveforms != null ? waveforms.length : -1, recordLength, weights)) {
+			return;
+		}
+
+		int radius = weights.length - 1;
+		int numRecords = waveforms.length / recordLength;
+		int extendedLength = recordLength + 2 * radius;
+		int blockLength = overlapSaveBlockLength(recordLength, radius);
+		int stepLength = blockLength - 2 * radius;
+		int numBlocks = (recordLength + stepLength - 1) / stepLength;
+		int batchRecords = overlapSaveBatchRecords(numBlocks * blockLength);
+		double[] responseRe = overlapSaveResponse(blockLength, weights);
+
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] blocks = scratch.doubles(batchRecords * numBlocks * blockLength);
+			for (int fromRecord = 0; fromRecord < numRecords; fromRecord += batchRecords) {
+				int toRecord = Math.min(fromRecord + batchRecords, numRecords);
+
+				// blocks of mirrored records, overlapping by 2*radius (values past the extended record are zero)
+				for (int i = fromRecord; i < toRecord; i++) {
+					int offset = i * recordLength;
+					for (int b = 0; b < numBlocks; b++) {
+						int blockOffset = ((i - fromRecord) * numBlocks + b) * blockLength;
+						int start = b * stepLength;
+						int end = Math.min(start + blockLength, extendedLength);
+						for (int m = start; m < end; m++) {
+							double x = waveforms[offset + mirroredIndex(m - radius, recordLength)];
+							blocks[blockOffset + m - start] = squareValues ? x * x : x;
+						}
+						Arrays.fill(blocks, blockOffset + end - start, blockOffset + blockLength, 0.0);
+					}
+				}
+
+				freqDomainFilterPairedWaveformsInPlace(blocks, (toRecord - fromRecord) * numBlocks, blockLength, blockLength, responseRe, null);
+
+				// the outputs of each block not affected by circular wrap-around are at indices radius..blockLength-radius-1
+				for (int i = fromRecord; i < toRecord; i++) {
+					int offset = i * recordLength;
+					for (int b = 0; b < numBlocks; b++) {
+						int blockOffset = ((i - fromRecord) * numBlocks + b) * blockLength + radius;
+						int start = b * stepLength;
+						int count = Math.min(stepLength, recordLength - start);
+						System.arraycopy(blocks, blockOffset, waveforms, offset + start, count);
+					}
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/**
+	 * Replaces each value of a series of concatenated records with the
+	 * weighted sum of the values (or, if {@code squareValues} is true, of
+	 * their squares) within a symmetric moving window, as in
+	 * {@link #movingWindowWeightedSumOverlapSaveInPlace(double[], int, double[], boolean) movingWindowWeightedSumOverlapSaveInPlace}.
+	 * The sums are computed in double precision, so the records are not
+	 * copied to a {@code double} array as a whole.
+	 *
+	 * @param waveforms    input records concatenated into 1-D array
+	 * @param recordLength length of each record in points
+	 * @param weights      single-sided window weights, {@code weights[0]}
+	 *                     being the weight at the center of the window
+	 * @param squareValues true to sum the squares of the values
+	 */
+	public static final void movingWindowWeightedSumOverlapSaveInPlace(float[] waveforms, int recordLength, double[] weights, boolean squareValues)
+	{
+		if (!isOverlapSaveInput(waveforms != null ? waveforms.length : -1, recordLength, weights)) {
+			return;
+		}
+
+		int radius = weights.length - 1;
+		int numRecords = waveforms.length / recordLength;
+		int extendedLength = recordLength + 2 * radius;
+		int blockLength = overlapSaveBlockLength(recordLength, radius);
+		int stepLength = blockLength - 2 * radius;
+		int numBlocks = (recordLength + stepLength - 1) / stepLength;
+		int batchRecords = overlapSaveBatchRecords(numBlocks * blockLength);
+		double[] responseRe = overlapSaveResponse(blockLength, weights);
+
+		Scratch scratch = scratch();
+		int mark = scratch.mark();
+		try {
+			double[] blocks = scratch.doubles(batchRecords * numBlocks * blockLength);
+			for (int fromRecord = 0; fromRecord < numRecords; fromRecord += batchRecords) {
+				int toRecord = Math.min(fromRecord + batchRecords, numRecords);
+
+				// blocks of mirrored records, overlapping by 2*radius (values past the extended record are zero)
+				for (int i = fromRecord; i < toRecord; i++) {
+					int offset = i * recordLength;
+					for (int b = 0; b < numBlocks; b++) {
+						int blockOffset = ((i - fromRecord) * numBlocks + b) * blockLength;
+						int start = b * stepLength;
+						int end = Math.min(start + blockLength, extendedLength);
+						for (int m = start; m < end; m++) {
+							double x = waveforms[offset + mirroredIndex(m - radius, recordLength)];
+							blocks[blockOffset + m - start] = squareValues ? x * x : x;
+						}
+						Arrays.fill(blocks, blockOffset + end - start, blockOffset + blockLength, 0.0);
+					}
+				}
+
+				freqDomainFilterPairedWaveformsInPlace(blocks, (toRecord - fromRecord) * numBlocks, blockLength, blockLength, responseRe, null);
+
+				// the outputs of each block not affected by circular wrap-around are at indices radius..blockLength-radius-1
+				for (int i = fromRecord; i < toRecord; i++) {
+					int offset = i * recordLength;
+					for (int b = 0; b < numBlocks; b++) {
+						int blockOffset = ((i - fromRecord) * numBlocks + b) * blockLength + radius;
+						int start = b * stepLength;
+						int count = Math.min(stepLength, recordLength - start);
+						for (int j = 0; j < count; j++) {
+							waveforms[offset + start + j] = (float) blocks[blockOffset + j];
+						}
+					}
+				}
+			}
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	private static boolean isOverlapSaveInput(int length, int recordLength, double[] weights)
+	{
+		return length >= 0
+			&& weights != null
+			&& weights.length != 0
+			&& recordLength > 2 * weights.length - 1
+			&& length % recordLength == 0;
+	}
+
+	// (power of 2) block length minimizing (number of blocks)*N*log(N)
+	private static int overlapSaveBlockLength(int recordLength, int radius)
+	{
+		int extendedLength = recordLength + 2 * radius;
+		int blockLength = 0;
+		double minCost = Double.POSITIVE_INFINITY;
+		for (int n = FftLength.NEXT_POWER_OF_2.transformLength(4 * radius + 2); ; n *= 2) {
+			int numBlocks = (recordLength + n - 2 * radius - 1) / (n - 2 * radius);
+			double cost = (double) numBlocks * n * Math.log(n);
+			if (cost < minCost) {
+				minCost = cost;
+				blockLength = n;
+			}
+			if (n >= extendedLength) {
+				break;
+			}
+		}
+		return blockLength;
+	}
+
+	// number of records whose blocks are filtered together; a power of 2 dividing RECORD_ALIGNMENT, so that blocks are paired the same whether or not the records are split by RecordPartitioner
+	private static int overlapSaveBatchRecords(int pointsPerRecord)
+	{
+		int batchRecords = RecordPartitioner.RECORD_ALIGNMENT;
+		while (batchRecords > 1 && (long) batchRecords * pointsPerRecord > OVERLAP_SAVE_BATCH_POINTS) {
+			batchRecords /= 2;
+		}
+		return batchRecords;
+	}
+
+	// frequency response of the window, centered at index 0 (real, since the window is symmetric)
+	private static double[] overlapSaveResponse(int blockLength, double[] weights)
+	{
+		int radius = weights.length - 1;
+		double[] responseRe = new double[blockLength];
+		double[] responseIm = new double[blockLength];
+		responseRe[0] = weights[0];
+		for (int k = 1; k <= radius; k++) {
+			responseRe[k] = responseRe[blockLength - k] = weights[k];
+		}
+		FftPlan.getInstance(blockLength).transform(responseRe, responseIm, true);
+		return responseRe;
+	}
+
+	// index of the point m of a record of length recordLength, reflected around the end points
+	private static int mirroredIndex(int m, int recordLength)
+	{
+		if (m < 0) {
+			return -m;
+		} else if (m > recordLength - 1) {
+			return 2 * (recordLength - 1) - m;
+		}
+		return m;
 	}
 
 	//--------------------maxIndex/minIndex Methods---------------------------//
@@ -1449,6 +3076,37 @@ public class WaveformUtils
 		return index;
 	}
 
+	/**
+	 * Returns the index of the maximum value in the specified range of array
+	 * a. If {@code a==null} or the range is empty, the return value is
+	 * {@code -1}. If several elements have the same value equal to the
+	 * maximum value in the range, the returned value is the index of the
+	 * first instance of the maximum value.
+	 *
+	 * @param a
+	 * @param from initial index of the range, inclusive
+	 * @param to   final index of the range, exclusive
+	 * @return index of maximum value or {@code -1} if {@code from>=to} or
+	 *         {@code a==null}
+	 */
+	public static final int maxIndex(double[] a, int from, int to)
+	{
+		int index = -1;
+
+		if (a != null && from < to) {
+			double max = a[from];
+			index = from;
+			for (int i = from + 1; i < to; i++) {
+				if (a[i] > max) {
+					max = a[i];
+					index = i;
+				}
+			}
+		}
+
+		return index;
+	}
+
 	/**
 	 * Returns the index of the maximum value in array a. If {@code a==null} or
 	 * {@code a.length==0}, the return value is {@code -1}. If several elements
@@ -2855,7 +4513,11 @@ public class WaveformUtils
 	/**
 	 * Compute the global minimum and maximum pixel values of an input ImageJ
 	 * {@code ImagePlus} object. The min and max values are computed over all
-	 * slices of an image. If {@code image} is null, the return value is null.
+	 * slices of an image. For a displayed image they are taken from the
+	 * {@link SliceStatisticsIndex} of the image, so that only slices modified
+	 * since the last call are examined again; an image that is not displayed
+	 * is examined in full, as changes to its pixels cannot be observed. If
+	 * {@code image} is null, the return value is null.
 	 *
 	 * @param image input {@code ImagePlus} object
 	 * @return two-element {@code double} array whose first value is the global
@@ -2867,7 +4529,9 @@ public class WaveformUtils
 	{
 		double[] minAndMax = null;
 
-		if (image != null) {
+		if (image != null && image.getWindow() != null) {
+			minAndMax = SliceStatisticsIndex.getIndex(image).getGlobalMinAndMax();
+		} else if (image != null) {
 			double globalMin = Double.POSITIVE_INFINITY;
 			double globalMax = Double.NEGATIVE_INFINITY;
 			int stackSize = image.getStackSize();
@@ -138,8 +138,19 @@ public class ZeroCrossingLocations implements ExtendedPlugInFilter, DialogListen
 	 *         no zero-crossings occur in an individual record, the
 	 *         corresponding subarray is of length zero.
 	 */
-	public static double[][][] execute(float[] waveforms, int recordLength, int interpolationMethod)
+	public static double[][][] execute(float[] waveforms, final int recordLength, final int interpolationMethod)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[][][])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.FloatFunction()
+			{
+				public Object apply(float[] records, int fromRecord)
+				{
+					return execute(records, recordLength, interpolationMethod);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 3 && waveforms.length >= recordLength && waveforms.length % recordLength == 0) {
 
 			// compute number of records
@@ -249,8 +260,19 @@ public class ZeroCrossingLocations implements ExtendedPlugInFilter, DialogListen
 	 *         no zero-crossings occur in an individual record, the
 	 *         corresponding subarray is of length zero.
 	 */
-	public static double[][][] execute(double[] waveforms, int recordLength, int interpolationMethod)
+	public static double[][][] execute(double[] waveforms, final int recordLength, final int interpolationMethod)
 	{
+		// split large inputs into chunks of records processed in parallel
+		if (RecordPartitioner.isParallel(waveforms, recordLength)) {
+			return (double[][][])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+			{
+				public Object apply(double[] records, int fromRecord)
+				{
+					return execute(records, recordLength, interpolationMethod);
+				}
+			});
+		}
+		
 		if (waveforms != null && recordLength > 3 && waveforms.length >= recordLength && waveforms.length % recordLength == 0) {
 
 			// compute number of records
@@ -0,0 +1,185 @@
+package waveformAnalysisForImageJTestPackage;
+
+import waveformAnalysisForImageJ.ArrayKernels;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the kernels selected for the running JVM, which must give results
+ * identical to the scalar loops whether or not they are vectorized.
+ *
+ * @author jnm
+ */
+public class ArrayKernelsTest
+{
+
+	private static final ArrayKernels kernels = ArrayKernels.INSTANCE;
+
+	/**
+	 * Test of scalar and element-by-element methods, of class ArrayKernels.
+	 */
+	@Test
+	public void testElementwise()
+	{
+		System.out.println("elementwise kernels, vectorized=" + kernels.isVectorized());
+		Random random = new Random(11);
+		for (int length : new int[]{0, 1, 3, 8, 17, 64, 1001}) {
+			int from = 3;
+			double[] a = new double[length + 2 * from];
+			double[] b = new double[length + from];
+			float[] af = new float[a.length];
+			float[] bf = new float[b.length];
+			for (int i = 0; i < a.length; i++) {
+				af[i] = (float) (a[i] = random.nextGaussian());
+			}
+			for (int i = 0; i < b.length; i++) {
+				bf[i] = (float) (b[i] = random.nextGaussian() + 3.0);
+			}
+
+			for (int operation = 0; operation < 6; operation++) {
+				double[] expResult = Arrays.copyOf(a, a.length);
+				float[] expResultFloat = Arrays.copyOf(af, af.length);
+				double[] result = Arrays.copyOf(a, a.length);
+				float[] resultFloat = Arrays.copyOf(af, af.length);
+				for (int k = 0; k < length; k++) {
+					switch (operation) {
+						case 0:
+							expResult[from + k] += 0.3;
+							expResultFloat[from + k] += 0.3f;
+							break;
+						case 1:
+							expResult[from + k] *= 0.3;
+							expResultFloat[from + k] *= 0.3f;
+							break;
+						case 2:
+							expResult[from + k] += b[1 + k];
+							expResultFloat[from + k] += bf[1 + k];
+							break;
+						case 3:
+							expResult[from + k] -= b[1 + k];
+							expResultFloat[from + k] -= bf[1 + k];
+							break;
+						case 4:
+							expResult[from + k] *= b[1 + k];
+							expResultFloat[from + k] *= bf[1 + k];
+							break;
+						default:
+							expResult[from + k] /= b[1 + k];
+							expResultFloat[from + k] /= bf[1 + k];
+							break;
+					}
+				}
+				switch (operation) {
+					case 0:
+						kernels.addScalarInPlace(result, from, from + length, 0.3);
+						kernels.addScalarInPlace(resultFloat, from, from + length, 0.3f);
+						break;
+					case 1:
+						kernels.multiplyScalarInPlace(result, from, from + length, 0.3);
+						kernels.multiplyScalarInPlace(resultFloat, from, from + length, 0.3f);
+						break;
+					case 2:
+						kernels.addInPlace(result, from, b, 1, length);
+						kernels.addInPlace(resultFloat, from, bf, 1, length);
+						break;
+					case 3:
+						kernels.subtractInPlace(result, from, b, 1, length);
+						kernels.subtractInPlace(resultFloat, from, bf, 1, length);
+						break;
+					case 4:
+						kernels.multiplyInPlace(result, from, b, 1, length);
+						kernels.multiplyInPlace(resultFloat, from, bf, 1, length);
+						break;
+					default:
+						kernels.divideInPlace(result, from, b, 1, length);
+						kernels.divideInPlace(resultFloat, from, bf, 1, length);
+						break;
+				}
+				assertArrayEquals(expResult, result, 0.0);
+				assertArrayEquals(expResultFloat, resultFloat, 0.0f);
+			}
+		}
+	}
+
+	/**
+	 * Test of butterflies method, of class ArrayKernels.
+	 */
+	@Test
+	public void testButterflies()
+	{
+		System.out.println("butterflies");
+		Random random = new Random(12);
+		for (int length : new int[]{1, 8, 13, 64}) {
+			double[] ar = new double[2 * length + 5];
+			double[] ai = new double[ar.length];
+			double[] wr = new double[length + 2];
+			double[] wi = new double[wr.length];
+			for (int k = 0; k < ar.length; k++) {
+				ar[k] = random.nextGaussian();
+				ai[k] = random.nextGaussian();
+			}
+			for (int k = 0; k < wr.length; k++) {
+				double theta = random.nextDouble() * 2.0 * Math.PI;
+				wr[k] = Math.cos(theta);
+				wi[k] = Math.sin(theta);
+			}
+			float[] arf = new float[ar.length];
+			float[] aif = new float[ar.length];
+			float[] wrf = new float[wr.length];
+			float[] wif = new float[wr.length];
+			for (int k = 0; k < ar.length; k++) {
+				arf[k] = (float) ar[k];
+				aif[k] = (float) ai[k];
+			}
+			for (int k = 0; k < wr.length; k++) {
+				wrf[k] = (float) wr[k];
+				wif[k] = (float) wi[k];
+			}
+
+			for (boolean isForward : new boolean[]{true, false}) {
+				// reference: butterflies with twiddle factor wr-sign*i*wi, as in the radix-2 FFT
+				double sign = isForward ? -1.0 : 1.0;
+				int i = 2;
+				int j = 2 + length;
+				double[] expResultRe = Arrays.copyOf(ar, ar.length);
+				double[] expResultIm = Arrays.copyOf(ai, ai.length);
+				float[] expResultReFloat = Arrays.copyOf(arf, arf.length);
+				float[] expResultImFloat = Arrays.copyOf(aif, aif.length);
+				for (int k = 0; k < length; k++) {
+					double cr = wr[1 + k];
+					double ci = sign * wi[1 + k];
+					double tr = cr * expResultRe[j + k] - ci * expResultIm[j + k];
+					double ti = cr * expResultIm[j + k] + ci * expResultRe[j + k];
+					expResultRe[j + k] = expResultRe[i + k] - tr;
+					expResultIm[j + k] = expResultIm[i + k] - ti;
+					expResultRe[i + k] += tr;
+					expResultIm[i + k] += ti;
+
+					float crf = wrf[1 + k];
+					float cif = (float) sign * wif[1 + k];
+					float trf = crf * expResultReFloat[j + k] - cif * expResultImFloat[j + k];
+					float tif = crf * expResultImFloat[j + k] + cif * expResultReFloat[j + k];
+					expResultReFloat[j + k] = expResultReFloat[i + k] - trf;
+					expResultImFloat[j + k] = expResultImFloat[i + k] - tif;
+					expResultReFloat[i + k] += trf;
+					expResultImFloat[i + k] += tif;
+				}
+
+				double[] resultRe = Arrays.copyOf(ar, ar.length);
+				double[] resultIm = Arrays.copyOf(ai, ai.length);
+				kernels.butterflies(resultRe, resultIm, i, j, length, wr, wi, 1, isForward);
+				assertArrayEquals(expResultRe, resultRe, 0.0);
+				assertArrayEquals(expResultIm, resultIm, 0.0);
+
+				float[] resultReFloat = Arrays.copyOf(arf, arf.length);
+				float[] resultImFloat = Arrays.copyOf(aif, aif.length);
+				kernels.butterflies(resultReFloat, resultImFloat, i, j, length, wrf, wif, 1, isForward);
+				assertArrayEquals(expResultReFloat, resultReFloat, 0.0f);
+				assertArrayEquals(expResultImFloat, resultImFloat, 0.0f);
+			}
+		}
+	}
+
+}
@@ -2,6 +2,7 @@ package waveformAnalysisForImageJTestPackage;
 
 
 import waveformAnalysisForImageJ.Envelope;
+import waveformAnalysisForImageJ.WaveformUtils;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -17,6 +18,13 @@ import static org.junit.Assert.*;
 
 public class EnvelopeTest
 {
+	/**
+	 * Envelopes of {@code float[]} waveforms are computed entirely in single
+	 * precision, so they are only required to agree with double-precision
+	 * reference values to within a few float ulps of the largest envelope
+	 * value (here about 4).
+	 */
+	private static final float FLOAT_TOLERANCE = 4.0f * Math.ulp(4.0f);
 	
 	public EnvelopeTest()
 	{
@@ -53,32 +61,32 @@ public class EnvelopeTest
 		int recordLength = 8;
 		Envelope.execute(waveforms, recordLength, false);
 		float[] expResult = new float[] {1.567516088485718f, 1.426831960678101f, 2.199042081832886f, 2.03891396522522f, 3.007140398025513f, 3.215454816818237f, 2.159678936004639f, 1.489238142967224f};
-		assertArrayEquals(expResult, waveforms, Math.ulp(1.0f));
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
 
 		waveforms = new float[] {1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f};
 		recordLength = 8;
 		Envelope.execute(waveforms, recordLength, true);
 		expResult = new float[] {1.4908828864758450f, 1.5170611624290058f, 2.0860037002907990f, 2.1616648477759197f, 2.8824500375224984f, 3.2946586210789053f, 2.2203239768946097f, 1.4083519041382770f};
-		assertArrayEquals(expResult, waveforms, Math.ulp(1.0f));
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
 
 		waveforms = new float[] {1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f};
 		recordLength = 8;
 		Envelope.execute(waveforms, recordLength, false);
 		expResult = new float[] {1.567516088485718f, 1.426831960678101f, 2.199042081832886f, 2.03891396522522f, 3.007140398025513f, 3.215454816818237f, 2.159678936004639f, 1.489238142967224f};
-		assertArrayEquals(expResult, waveforms, Math.ulp(1.0f));
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
 		
 		waveforms = new float[] {1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f, 1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f};
 		recordLength = 8;
 		Envelope.execute(waveforms, recordLength, false);
 		expResult = new float[] {1.567516088485718f, 1.426831960678101f, 2.199042081832886f, 2.03891396522522f, 3.007140398025513f, 3.215454816818237f, 2.159678936004639f, 1.489238142967224f, 1.567516088485718f, 1.426831960678101f, 2.199042081832886f, 2.03891396522522f, 3.007140398025513f, 3.215454816818237f, 2.159678936004639f, 1.489238142967224f};
-		assertArrayEquals(expResult, waveforms, Math.ulp(1.0f));
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
 
 		
 		waveforms = new float[] {1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f, -1.0f, 2.0f};
 		recordLength = 10;
 		Envelope.execute(waveforms, recordLength, false);
 		expResult = new float[] {1.5578115082694171f, 1.4727930412398540f, 2.1807600916290708f, 2.0072751180434869f, 3.0484247110291984f, 3.7383969927501579f, 2.8952565090260505f, 1.2518840334714916f, 1.5578115082694171f, 2.0716339192295456f};
-		assertArrayEquals(expResult, waveforms, Math.ulp(1.0f));
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
 	}
 
 	/**
@@ -121,4 +129,32 @@ public class EnvelopeTest
 	}
 
 
+	/**
+	 * Test of execute method with selectable FFT length, of class Envelope.
+	 */
+	@Test
+	public void testExecute_4args()
+	{
+		System.out.println("execute");
+		float[] waveforms = new float[] {1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f};
+		Envelope.execute(waveforms, 8, false, WaveformUtils.FftLength.RECORD_LENGTH);
+		float[] expResult = new float[] {1.567516088485718f, 1.426831960678101f, 2.199042081832886f, 2.03891396522522f, 3.007140398025513f, 3.215454816818237f, 2.159678936004639f, 1.489238142967224f};
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
+
+		waveforms = new float[] {1.0f, -1.0f, 2.0f, -2.0f, 3.0f, -2.0f, -1.0f, 1.0f, -1.0f, 2.0f};
+		Envelope.execute(waveforms, 10, false, WaveformUtils.FftLength.RECORD_LENGTH);
+		expResult = new float[] {2.4919809276557157f, 1.5595705113268166f, 2.330720957086066f, 2.026221312936986f, 3.014043504530097f, 3.521196291858732f, 2.6257241269790534f, 1.0413732506647497f, 1.2565370819040653f, 2.603629282021536f};
+		assertArrayEquals(expResult, waveforms, FLOAT_TOLERANCE);
+
+		double[] waveformsDouble = new double[] {1.0, -1.0, 2.0, -2.0, 3.0, -2.0, -1.0, 1.0, -1.0};
+		Envelope.execute(waveformsDouble, 9, false, WaveformUtils.FftLength.RECORD_LENGTH);
+		double[] expResultDouble = new double[] {1.220115425703944, 1.5230071643695313, 2.1246413260085495, 2.002459480958783, 3.0789315808176005, 3.949539258137698, 3.0763109121923344, 1.611781606465177, 1.5898471567522887};
+		assertArrayEquals(expResultDouble, waveformsDouble, 1e-14);
+
+		// next 2-3-5 length for 9 points is the record length itself
+		waveformsDouble = new double[] {1.0, -1.0, 2.0, -2.0, 3.0, -2.0, -1.0, 1.0, -1.0};
+		Envelope.execute(waveformsDouble, 9, false, WaveformUtils.FftLength.NEXT_FAST_LENGTH);
+		assertArrayEquals(expResultDouble, waveformsDouble, 1e-14);
+	}
+
 }
@@ -2,6 +2,7 @@ package waveformAnalysisForImageJTestPackage;
 
 
 import waveformAnalysisForImageJ.FFTComplex;
+import waveformAnalysisForImageJ.FftPlan;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -109,4 +110,40 @@ public class FFTComplexTest
 		assertArrayEquals(expResultIm, result[1], Math.ulp(1.0));		
 	}
 	
+	/**
+	 * Test of execute method for records long enough to use the
+	 * self-sorting FFT, of class FFTComplex.
+	 */
+	@Test
+	public void testExecute_4args_longRecords()
+	{
+		System.out.println("execute, long records");
+		for (int recordLength : new int[]{FftPlan.STOCKHAM_THRESHOLD / 2, FftPlan.STOCKHAM_THRESHOLD, 1 << 16}) {
+
+			// two records: complex exponentials at bins 3 and recordLength-5
+			double[] realWaveforms = new double[2 * recordLength];
+			double[] imagWaveforms = new double[2 * recordLength];
+			int[] bins = new int[]{3, recordLength - 5};
+			for (int i = 0; i < 2; i++) {
+				for (int j = 0; j < recordLength; j++) {
+					double theta = 2.0 * Math.PI * (((long) bins[i] * j) % recordLength) / recordLength;
+					realWaveforms[i * recordLength + j] = Math.cos(theta);
+					imagWaveforms[i * recordLength + j] = Math.sin(theta);
+				}
+			}
+
+			double[][] result = FFTComplex.execute(realWaveforms, imagWaveforms, true, recordLength);
+			double[] expResultRe = new double[2 * recordLength];
+			double[] expResultIm = new double[2 * recordLength];
+			expResultRe[bins[0]] = recordLength;
+			expResultRe[recordLength + bins[1]] = recordLength;
+			assertArrayEquals(expResultRe, result[0], 1e-9);
+			assertArrayEquals(expResultIm, result[1], 1e-9);
+
+			result = FFTComplex.execute(result[0], result[1], false, recordLength);
+			assertArrayEquals(realWaveforms, result[0], 1e-12);
+			assertArrayEquals(imagWaveforms, result[1], 1e-12);
+		}
+	}
+
 }
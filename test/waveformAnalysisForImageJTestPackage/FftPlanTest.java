@@ -0,0 +1,305 @@
+package waveformAnalysisForImageJTestPackage;
+
+import waveformAnalysisForImageJ.FftPlan;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jnm
+ */
+public class FftPlanTest
+{
+
+	/**
+	 * Test of getInstance method, of class FftPlan.
+	 */
+	@Test
+	public void testGetInstance()
+	{
+		System.out.println("getInstance");
+		FftPlan plan = FftPlan.getInstance(2048);
+		assertEquals(2048, plan.length());
+		assertSame(plan, FftPlan.getInstance(2048));
+		assertNull(FftPlan.getInstance(0));
+		assertEquals(2100, FftPlan.getInstance(2100).length());
+		assertEquals(13, FftPlan.getInstance(13).length());
+	}
+
+	/**
+	 * Test of getMemoryBudget and setMemoryBudget methods, of class FftPlan.
+	 */
+	@Test
+	public void testSetMemoryBudget()
+	{
+		System.out.println("setMemoryBudget");
+		long budget = FftPlan.getMemoryBudget();
+		try {
+			FftPlan plan = FftPlan.getInstance(4096);
+			assertTrue(plan.getMemorySize() >= 16L * 4096);
+			assertTrue(FftPlan.getMemoryUsed() >= plan.getMemorySize());
+			assertTrue(FftPlan.getMemoryUsed() <= FftPlan.getMemoryBudget());
+
+			// plans are evicted to fit a smaller budget, and larger plans are no longer cached
+			FftPlan.setMemoryBudget(plan.getMemorySize());
+			assertTrue(FftPlan.getMemoryUsed() <= plan.getMemorySize());
+			FftPlan larger = FftPlan.getInstance(8192);
+			assertNotSame(larger, FftPlan.getInstance(8192));
+			assertTrue(FftPlan.getMemoryUsed() <= plan.getMemorySize());
+
+			FftPlan.setMemoryBudget(-1L);
+			assertEquals(plan.getMemorySize(), FftPlan.getMemoryBudget());
+			FftPlan.setMemoryBudget(0L);
+			assertEquals(0L, FftPlan.getMemoryUsed());
+			assertEquals(1000, FftPlan.getInstance(1000).length());
+			assertEquals(0L, FftPlan.getMemoryUsed());
+		} finally {
+			FftPlan.setMemoryBudget(budget);
+		}
+		FftPlan plan = FftPlan.getInstance(1000);
+		assertSame(plan, FftPlan.getInstance(1000));
+	}
+
+	/**
+	 * Test of transform method, of class FftPlan.
+	 */
+	@Test
+	public void testTransform()
+	{
+		System.out.println("transform");
+		FftPlan plan = FftPlan.getInstance(8);
+		double[] ar = new double[]{7.0, 6.0, 1.0, 1.0, 2.0, 2.0, 1.0, 1.0, 0.0, 0.0};
+		double[] ai = new double[ar.length];
+		plan.transform(ar, ai, 2, true);
+		double[] expResultRe = new double[]{7.0, 6.0, 8.0, -1.4142135623730951, 0.0, 1.4142135623730951, 0.0, 1.4142135623730951, 0.0, -1.4142135623730951};
+		double[] expResultIm = new double[]{0.0, 0.0, 0.0, -3.414213562373095, 0.0, 0.5857864376269049, 0.0, -0.5857864376269049, 0.0, 3.414213562373095};
+		assertArrayEquals(expResultRe, ar, Math.ulp(10.0));
+		assertArrayEquals(expResultIm, ai, Math.ulp(10.0));
+
+		plan.transform(ar, ai, 2, false);
+		expResultRe = new double[]{7.0, 6.0, 1.0, 1.0, 2.0, 2.0, 1.0, 1.0, 0.0, 0.0};
+		expResultIm = new double[ar.length];
+		assertArrayEquals(expResultRe, ar, Math.ulp(10.0));
+		assertArrayEquals(expResultIm, ai, Math.ulp(10.0));
+	}
+
+	/**
+	 * Test of transform method for lengths that are not powers of 2, of class
+	 * FftPlan.
+	 */
+	@Test
+	public void testTransformArbitraryLength()
+	{
+		System.out.println("transform (arbitrary length)");
+		Random random = new Random(4321);
+		for (int n : new int[]{3, 6, 15, 49, 210, 2100, 13, 97, 1000, 2046}) {
+			FftPlan plan = FftPlan.getInstance(n);
+			double[] ar = new double[n];
+			double[] ai = new double[n];
+			for (int i = 0; i < n; i++) {
+				ar[i] = random.nextGaussian();
+				ai[i] = random.nextGaussian();
+			}
+			double[] arCopy = Arrays.copyOf(ar, n);
+			double[] aiCopy = Arrays.copyOf(ai, n);
+
+			// reference result from direct evaluation of the DFT
+			double[] expResultRe = new double[n];
+			double[] expResultIm = new double[n];
+			for (int k = 0; k < n; k++) {
+				for (int j = 0; j < n; j++) {
+					double angle = -2.0 * Math.PI * ((long) j * k % n) / n;
+					double c = Math.cos(angle);
+					double s = Math.sin(angle);
+					expResultRe[k] += arCopy[j] * c - aiCopy[j] * s;
+					expResultIm[k] += arCopy[j] * s + aiCopy[j] * c;
+				}
+			}
+
+			double tolerance = 1e-12 * n;
+			plan.transform(ar, ai, true);
+			assertArrayEquals(expResultRe, ar, tolerance);
+			assertArrayEquals(expResultIm, ai, tolerance);
+
+			plan.transform(ar, ai, false);
+			assertArrayEquals(arCopy, ar, 1e-12);
+			assertArrayEquals(aiCopy, ai, 1e-12);
+		}
+	}
+
+	/**
+	 * Test of transform method for power-of-2 lengths at and above
+	 * {@code STOCKHAM_THRESHOLD}, of class FftPlan.
+	 */
+	@Test
+	public void testTransformLongPowerOf2()
+	{
+		System.out.println("transform (long power of 2)");
+		Random random = new Random(77);
+		for (int n : new int[]{FftPlan.STOCKHAM_THRESHOLD, 4 * FftPlan.STOCKHAM_THRESHOLD}) {
+			FftPlan plan = FftPlan.getInstance(n);
+			double[] ar = new double[n + 1];
+			double[] ai = new double[n + 1];
+			for (int i = 0; i < ar.length; i++) {
+				ar[i] = random.nextGaussian();
+				ai[i] = random.nextGaussian();
+			}
+			double[] arCopy = Arrays.copyOf(ar, ar.length);
+			double[] aiCopy = Arrays.copyOf(ai, ai.length);
+
+			// transform at an offset, and compare selected bins with direct evaluation of the DFT
+			plan.transform(ar, ai, 1, true);
+			for (int k : new int[]{0, 1, 17, n / 2, n - 1}) {
+				double expResultRe = 0.0;
+				double expResultIm = 0.0;
+				for (int j = 0; j < n; j++) {
+					double angle = -2.0 * Math.PI * ((long) j * k % n) / n;
+					expResultRe += arCopy[j + 1] * Math.cos(angle) - aiCopy[j + 1] * Math.sin(angle);
+					expResultIm += arCopy[j + 1] * Math.sin(angle) + aiCopy[j + 1] * Math.cos(angle);
+				}
+				assertEquals(expResultRe, ar[k + 1], 1e-9);
+				assertEquals(expResultIm, ai[k + 1], 1e-9);
+			}
+			assertEquals(arCopy[0], ar[0], 0.0);
+
+			plan.transform(ar, ai, 1, false);
+			assertArrayEquals(arCopy, ar, 1e-12);
+			assertArrayEquals(aiCopy, ai, 1e-12);
+		}
+	}
+
+	/**
+	 * Test of realForward and realInverse methods, of class FftPlan.
+	 */
+	@Test
+	public void testRealForwardAndInverse()
+	{
+		System.out.println("realForward/realInverse");
+		Random random = new Random(1234);
+		for (int n : new int[]{1, 2, 4, 64, 2048, 3, 6, 13, 30, 2100}) {
+			FftPlan plan = FftPlan.getInstance(n);
+			double[] a = new double[n + 3];
+			for (int i = 0; i < a.length; i++) {
+				a[i] = random.nextGaussian();
+			}
+			double[] aCopy = Arrays.copyOf(a, a.length);
+
+			// reference result from complex transform with zero imaginary part
+			double[] expResultRe = Arrays.copyOfRange(a, 3, n + 3);
+			double[] expResultIm = new double[n];
+			plan.transform(expResultRe, expResultIm, true);
+
+			double[] re = new double[n / 2 + 1];
+			double[] im = new double[n / 2 + 1];
+			plan.realForward(a, 3, re, im);
+			assertArrayEquals(aCopy, a, 0.0);
+			assertArrayEquals(Arrays.copyOf(expResultRe, n / 2 + 1), re, 1e-12);
+			assertArrayEquals(Arrays.copyOf(expResultIm, n / 2 + 1), im, 1e-12);
+
+			double[] result = new double[n + 3];
+			plan.realInverse(re, im, result, 3);
+			assertArrayEquals(Arrays.copyOfRange(aCopy, 3, n + 3), Arrays.copyOfRange(result, 3, n + 3), 1e-12);
+		}
+	}
+
+	/**
+	 * Test of transformInterleaved method, of class FftPlan.
+	 */
+	@Test
+	public void testTransformInterleaved()
+	{
+		System.out.println("transformInterleaved");
+		Random random = new Random(99);
+		int count = 5;
+		for (int n : new int[]{1, 2, 64, 12, 13}) {
+			FftPlan plan = FftPlan.getInstance(n);
+			double[] ar = new double[n * count];
+			double[] ai = new double[n * count];
+			for (int i = 0; i < ar.length; i++) {
+				ar[i] = random.nextGaussian();
+				ai[i] = random.nextGaussian();
+			}
+			double[] arCopy = Arrays.copyOf(ar, ar.length);
+			double[] aiCopy = Arrays.copyOf(ai, ai.length);
+
+			plan.transformInterleaved(ar, ai, count, true);
+			for (int r = 0; r < count; r++) {
+				double[] expResultRe = new double[n];
+				double[] expResultIm = new double[n];
+				double[] resultRe = new double[n];
+				double[] resultIm = new double[n];
+				for (int k = 0; k < n; k++) {
+					expResultRe[k] = arCopy[k * count + r];
+					expResultIm[k] = aiCopy[k * count + r];
+					resultRe[k] = ar[k * count + r];
+					resultIm[k] = ai[k * count + r];
+				}
+				plan.transform(expResultRe, expResultIm, true);
+				assertArrayEquals(expResultRe, resultRe, 1e-12);
+				assertArrayEquals(expResultIm, resultIm, 1e-12);
+			}
+
+			plan.transformInterleaved(ar, ai, count, false);
+			assertArrayEquals(arCopy, ar, 1e-12);
+			assertArrayEquals(aiCopy, ai, 1e-12);
+		}
+	}
+
+	/**
+	 * Accuracy contract for single-precision transforms: the RMS difference
+	 * between the float transform and the double-precision transform of the
+	 * same data, relative to the RMS value of the spectrum, must not exceed
+	 * {@code max(1,log2(n))} times the float unit roundoff (2^-24), and a
+	 * real forward/inverse round trip must reproduce the input to within
+	 * twice that bound.
+	 */
+	@Test
+	public void testFloatAccuracy()
+	{
+		System.out.println("transform/realForward/realInverse, floats");
+		double unitRoundoff = Math.ulp(1.0f) / 2.0;
+		Random random = new Random(5);
+		for (int n : new int[]{2, 8, 64, 2048, 65536, 6, 2100, 13}) {
+			FftPlan plan = FftPlan.getInstance(n);
+			double bound = Math.max(1.0, Math.log(n) / Math.log(2.0)) * unitRoundoff;
+
+			float[] ar = new float[n];
+			float[] ai = new float[n];
+			double[] expResultRe = new double[n];
+			double[] expResultIm = new double[n];
+			for (int i = 0; i < n; i++) {
+				expResultRe[i] = ar[i] = (float) random.nextGaussian();
+				expResultIm[i] = ai[i] = (float) random.nextGaussian();
+			}
+			plan.transform(expResultRe, expResultIm, true);
+			plan.transform(ar, ai, true);
+			double error = 0.0;
+			double reference = 0.0;
+			for (int i = 0; i < n; i++) {
+				error += (ar[i] - expResultRe[i]) * (ar[i] - expResultRe[i]) + (ai[i] - expResultIm[i]) * (ai[i] - expResultIm[i]);
+				reference += expResultRe[i] * expResultRe[i] + expResultIm[i] * expResultIm[i];
+			}
+			assertTrue("n=" + n, Math.sqrt(error / reference) <= bound);
+
+			float[] a = new float[n];
+			for (int i = 0; i < n; i++) {
+				a[i] = (float) random.nextGaussian();
+			}
+			float[] re = new float[n / 2 + 1];
+			float[] im = new float[n / 2 + 1];
+			float[] result = new float[n];
+			plan.realForward(a, 0, re, im);
+			plan.realInverse(re, im, result, 0);
+			error = 0.0;
+			reference = 0.0;
+			for (int i = 0; i < n; i++) {
+				error += (result[i] - a[i]) * (result[i] - a[i]);
+				reference += a[i] * a[i];
+			}
+			assertTrue("n=" + n, Math.sqrt(error / reference) <= 2.0 * bound);
+		}
+	}
+
+}
@@ -0,0 +1,446 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.Roi;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.GateDetector;
+import waveformAnalysisForImageJ.GateIndex;
+import waveformAnalysisForImageJ.QuantileSketch;
+
+/**
+ *
+ * @author jnm
+ */
+public class GateDetectorTest
+{
+
+	private static boolean isDetected(float[] a, int offset, int j, float threshold, int method)
+	{
+		float value = a[offset+j];
+		switch (method) {
+			case GateDetector.PEAK:
+				return value > threshold && value > a[offset+j-1] && value > a[offset+j+1];
+			case GateDetector.THRESHOLD:
+				return value > threshold;
+			case GateDetector.RISING_CROSSING:
+				return a[offset+j-1] < threshold && a[offset+j+1] >= threshold;
+			case GateDetector.FALLING_CROSSING:
+				return a[offset+j-1] > threshold && a[offset+j+1] <= threshold;
+			default:
+				return value < threshold && value < a[offset+j-1] && value < a[offset+j+1];
+		}
+	}
+
+	// gates found by scanning each record, with missing gates set to -1
+	private static short[] scan(float[] a, int recordLength, int searchStart, int offset, float threshold, int method, boolean isBackward)
+	{
+		int numRecords = a.length/recordLength;
+		short[] gates = new short[numRecords];
+		for (int i=0; i<numRecords; i++) {
+			gates[i] = -1;
+			int from = isBackward ? 2 : searchStart+1;
+			int to = isBackward ? recordLength-1-searchStart : recordLength-2;
+			for (int k=from; k<to; k++) {
+				int j = isBackward ? to-1-(k-from) : k;
+				if ((method == GateDetector.THRESHOLD || (j >= 1 && j < recordLength-1)) && isDetected(a, i*recordLength, j, threshold, method)) {
+					gates[i] = (short)(isBackward ? j-offset : j+offset);
+					break;
+				}
+			}
+		}
+		return gates;
+	}
+
+	/**
+	 * Test of detect method, of class GateDetector, for each detection method
+	 * and search direction.
+	 */
+	@Test
+	public void testDetect()
+	{
+		System.out.println("detect");
+		int recordLength = 200;
+		int numRecords = 50;
+		// values rounded to tenths, so that plateaus and values equal to the threshold occur
+		Random random = new Random(29);
+		float[] a = new float[recordLength*numRecords];
+		for (int i=0; i<a.length; i++) {
+			a[i] = Math.round(10.0*random.nextGaussian())/10.0f;
+		}
+		for (int method=GateDetector.PEAK; method<=GateDetector.NADIR; method++) {
+			for (int direction=0; direction<2; direction++) {
+				boolean isBackward = direction == 1;
+				float threshold = method == GateDetector.NADIR ? -2.5f : 2.5f;
+				GateDetector detector = new GateDetector(new GateDetector.Parameters().setSearchStartPoint(20).setOffsetPoint(3).setThreshold(threshold, false)
+					.setDetectionMethod(method).setBackward(isBackward));
+				short[] expected = scan(a, recordLength, 20, 3, threshold, method, isBackward);
+				GateDetector.fillMissingGates(expected, numRecords, 1);
+				assertArrayEquals(expected, detector.detect(a, recordLength));
+			}
+		}
+	}
+
+	/**
+	 * Test of detect method, of class GateDetector, with a 16-bit stack,
+	 * which must give the same gates as its float values.
+	 */
+	@Test
+	public void testDetect_stack()
+	{
+		System.out.println("detect stack");
+		int width = 100;
+		int height = 20;
+		Random random = new Random(30);
+		ImageStack shortStack = new ImageStack(width, height);
+		ImageStack floatStack = new ImageStack(width, height);
+		for (int s=0; s<4; s++) {
+			short[] shorts = new short[width*height];
+			float[] floats = new float[width*height];
+			for (int i=0; i<shorts.length; i++) {
+				shorts[i] = (short)random.nextInt(65536);
+				floats[i] = shorts[i] & 0xffff;
+			}
+			shortStack.addSlice(null, shorts);
+			floatStack.addSlice(null, floats);
+		}
+		GateDetector detector = new GateDetector(new GateDetector.Parameters().setThreshold(99.0f, true).setSmoothing(GateDetector.MEDIAN, 1.0));
+		short[] gates = detector.detect(shortStack);
+		assertEquals(height*4, gates.length);
+		assertArrayEquals(detector.detect(floatStack), gates);
+
+		Roi[] rois = detector.createRois(gates, height);
+		assertEquals(4, rois.length);
+		assertEquals(3, rois[2].getPosition());
+		assertEquals(2*height, rois[2].getPolygon().npoints);
+		assertEquals(gates[2*height], rois[2].getPolygon().xpoints[0]);
+		assertEquals(4, detector.gate(shortStack, gates, false).getSize());
+		assertEquals(10, detector.gate(shortStack, gates, false).getWidth());
+	}
+
+	/**
+	 * Test of detectSlices method, of class GateDetector, which must give the
+	 * gates of a scan of each slice, without filling missing gates.
+	 */
+	@Test
+	public void testDetectSlices()
+	{
+		System.out.println("detectSlices");
+		int width = 80;
+		int height = 15;
+		Random random = new Random(32);
+		ImageStack stack = new ImageStack(width, height);
+		float[] all = new float[width*height*3];
+		for (int s=0; s<3; s++) {
+			float[] floats = new float[width*height];
+			for (int i=0; i<floats.length; i++) {
+				floats[i] = Math.round(10.0*random.nextGaussian())/10.0f;
+			}
+			System.arraycopy(floats, 0, all, s*floats.length, floats.length);
+			stack.addSlice(null, floats);
+		}
+		GateDetector detector = new GateDetector(new GateDetector.Parameters().setSearchStartPoint(5).setOffsetPoint(2).setThreshold(95.0f, true).setBackward(true));
+		float threshold = detector.getThresholdLevel(stack);
+		assertEquals(1.6f, threshold, 0.2f);
+		short[] gates = new short[height*3];
+		assertTrue(detector.detectSlices(stack, 2, 3, threshold, gates));
+		short[] expected = scan(all, width, 5, 2, threshold, GateDetector.PEAK, true);
+		Arrays.fill(expected, 0, height, (short)0);
+		assertArrayEquals(expected, gates);
+		assertTrue(detector.detectSlices(stack, 1, 1, threshold, gates));
+		assertArrayEquals(scan(all, width, 5, 2, threshold, GateDetector.PEAK, true), gates);
+
+		assertFalse(detector.detectSlices((ImageStack)null, 1, 1, threshold, gates));
+		assertFalse(detector.detectSlices(stack, 1, 1, threshold, new short[height]));
+		assertFalse(detector.detectSlices(stack, 0, 1, threshold, gates));
+		assertFalse(detector.detectSlices(stack, 3, 4, threshold, gates));
+		assertFalse(new GateDetector(new GateDetector.Parameters().setGateLength(81)).detectSlices(stack, 1, 1, threshold, gates));
+		assertEquals(2.5f, new GateDetector(new GateDetector.Parameters().setThreshold(2.5f, false)).getThresholdLevel((ImageStack)null), 0.0f);
+	}
+
+	/**
+	 * Test of detectSlices method, of class GateDetector, with a gate index,
+	 * which must give the gates of a scan of each slice for each detection
+	 * method and search direction, and follow changes to the slices.
+	 */
+	@Test
+	public void testDetectSlices_index()
+	{
+		System.out.println("detectSlices index");
+		int width = 120;
+		int height = 40;
+		Random random = new Random(33);
+		ImageStack stack = new ImageStack(width, height);
+		for (int s=0; s<3; s++) {
+			float[] floats = new float[width*height];
+			for (int i=0; i<floats.length; i++) {
+				floats[i] = Math.round(10.0*random.nextGaussian())/10.0f;
+			}
+			stack.addSlice(null, floats);
+		}
+		ImagePlus image = new ImagePlus("", stack);
+		GateIndex index = GateIndex.create(image);
+		assertNull(GateIndex.create(null));
+		for (int method=GateDetector.PEAK; method<=GateDetector.NADIR; method++) {
+			for (int direction=0; direction<2; direction++) {
+				for (int trial=0; trial<3; trial++) {
+					float threshold = Math.round(20.0*random.nextGaussian())/10.0f;
+					GateDetector detector = new GateDetector(new GateDetector.Parameters().setSearchStartPoint(random.nextInt(width-1)).setOffsetPoint(4)
+						.setThreshold(threshold, false).setDetectionMethod(method).setBackward(direction == 1));
+					short[] expected = new short[height*3];
+					short[] gates = new short[height*3];
+					assertTrue(detector.detectSlices(stack, 1, 3, threshold, expected));
+					assertTrue(detector.detectSlices(index, 1, 3, threshold, gates));
+					assertArrayEquals(expected, gates);
+				}
+			}
+		}
+		assertTrue(index.isIndexed(2));
+		assertTrue(index.getMemoryUsed() > 0L);
+
+		// changes in place are seen once reported, and replaced pixel arrays at once
+		GateDetector detector = new GateDetector(new GateDetector.Parameters().setThreshold(1.0f, false));
+		float[] pixels = (float[])stack.getPixels(2);
+		Arrays.fill(pixels, 0.0f);
+		pixels[5*width+50] = 2.0f;
+		index.invalidate(2);
+		assertFalse(index.isIndexed(2));
+		short[] expected = new short[height*3];
+		short[] gates = new short[height*3];
+		assertTrue(detector.detectSlices(stack, 1, 3, 1.0f, expected));
+		assertTrue(detector.detectSlices(index, 1, 3, 1.0f, gates));
+		assertArrayEquals(expected, gates);
+		assertEquals(50, gates[height+5]);
+		stack.setPixels(new float[width*height], 3);
+		assertFalse(index.isIndexed(3));
+		assertTrue(detector.detectSlices(index, 3, 3, 1.0f, gates));
+		assertEquals(-1, gates[2*height]);
+		index.invalidateAll();
+		assertEquals(0L, index.getMemoryUsed());
+
+		// slices are scanned rather than indexed when their indices exceed the budget
+		long budget = GateIndex.getMemoryBudget();
+		try {
+			GateIndex.setMemoryBudget(0L);
+			index = GateIndex.create(image);
+			for (int method=GateDetector.PEAK; method<=GateDetector.NADIR; method++) {
+				GateDetector scanning = new GateDetector(new GateDetector.Parameters().setThreshold(0.5f, false).setDetectionMethod(method));
+				assertTrue(scanning.detectSlices(stack, 1, 3, 0.5f, expected));
+				assertTrue(scanning.detectSlices(index, 1, 3, 0.5f, gates));
+				assertArrayEquals(expected, gates);
+			}
+			assertFalse(index.isIndexed(1));
+			assertNull(index.getPeakIndex(1));
+			assertEquals(0L, index.getMemoryUsed());
+		} finally {
+			GateIndex.setMemoryBudget(budget);
+		}
+		assertFalse(detector.detectSlices((GateIndex)null, 1, 1, 1.0f, gates));
+	}
+
+	/**
+	 * Test of getThresholdLevel method, of class GateDetector, with a gate
+	 * index, whose sketch is reused until the image changes.
+	 */
+	@Test
+	public void testGetThresholdLevel_index()
+	{
+		System.out.println("getThresholdLevel index");
+		int width = 100;
+		int height = 30;
+		Random random = new Random(34);
+		ImageStack stack = new ImageStack(width, height);
+		for (int s=0; s<2; s++) {
+			float[] floats = new float[width*height];
+			for (int i=0; i<floats.length; i++) {
+				floats[i] = (float)random.nextGaussian();
+			}
+			stack.addSlice(null, floats);
+		}
+		GateIndex index = GateIndex.create(new ImagePlus("", stack));
+		GateDetector detector = new GateDetector(new GateDetector.Parameters().setThreshold(90.0f, true));
+		assertEquals(detector.getThresholdLevel(stack), detector.getThresholdLevel(index), 0.0f);
+		assertSame(index.getSketch(), index.getSketch());
+		assertTrue(Float.isNaN(detector.getThresholdLevel((GateIndex)null)));
+
+		// the sketch is made again after a slice is replaced or reported changed
+		QuantileSketch sketch = index.getSketch();
+		float[] replacement = new float[width*height];
+		Arrays.fill(replacement, 10.0f);
+		stack.setPixels(replacement, 2);
+		assertNotSame(sketch, index.getSketch());
+		assertEquals(10.0f, detector.getThresholdLevel(index), 0.0f);
+		sketch = index.getSketch();
+		Arrays.fill(replacement, 20.0f);
+		index.invalidate(2);
+		assertNotSame(sketch, index.getSketch());
+		assertEquals(20.0f, detector.getThresholdLevel(index), 0.0f);
+	}
+
+	/**
+	 * Test of the parameters of class GateDetector.
+	 */
+	@Test
+	public void testParameters()
+	{
+		System.out.println("parameters");
+		GateDetector.Parameters parameters = new GateDetector.Parameters().setGateLength(20);
+		GateDetector detector = new GateDetector(parameters);
+		parameters.setGateLength(30);
+		assertEquals(20, detector.getParameters().getGateLength());
+
+		float[] a = new float[1000];
+		assertNotNull(detector.detect(a, 100));
+		assertNull(detector.detect(a, 7));
+		assertNull(detector.detect((float[])null, 100));
+		assertNull(new GateDetector(new GateDetector.Parameters().setGateLength(101)).detect(a, 100));
+		assertNull(new GateDetector(new GateDetector.Parameters().setSearchStartPoint(99)).detect(a, 100));
+		assertNull(new GateDetector(new GateDetector.Parameters().setThreshold(101.0f, true)).detect(a, 100));
+		assertNull(new GateDetector(new GateDetector.Parameters().setDetectionMethod(5)).detect(a, 100));
+
+		// gate start positions must fit in a short
+		assertNotNull(detector.detect(new float[Short.MAX_VALUE], Short.MAX_VALUE));
+		assertNull(detector.detect(new float[Short.MAX_VALUE+1], Short.MAX_VALUE+1));
+		assertNotNull(new GateDetector(new GateDetector.Parameters().setOffsetPoint(Short.MAX_VALUE-100)).detect(a, 100));
+		assertNull(new GateDetector(new GateDetector.Parameters().setOffsetPoint(Short.MAX_VALUE-99)).detect(a, 100));
+		assertNull(new GateDetector(new GateDetector.Parameters().setOffsetPoint(Integer.MIN_VALUE)).detect(a, 100));
+
+		// no gates are detected in constant waveforms
+		short[] gates = detector.detect(a, 100);
+		for (int i=0; i<gates.length; i++) {
+			assertEquals(-1, gates[i]);
+		}
+	}
+
+	// missing gates set to the average of the valid gates at the nearest (Euclidean) distance, by comparison with every valid gate
+	private static short[] fillByBruteForce(short[] gates, int width, int height)
+	{
+		short[] filled = gates.clone();
+		for (int y=0; y<height; y++) {
+			for (int x=0; x<width; x++) {
+				if (gates[y*width+x] >= 0) {
+					continue;
+				}
+				long best = Long.MAX_VALUE;
+				long sum = 0;
+				long count = 0;
+				for (int i=0; i<gates.length; i++) {
+					if (gates[i] >= 0) {
+						long dx = i%width - x;
+						long dy = i/width - y;
+						long d = dx*dx + dy*dy;
+						if (d < best) {
+							best = d;
+							sum = 0;
+							count = 0;
+						}
+						if (d == best) {
+							sum += gates[i];
+							count++;
+						}
+					}
+				}
+				if (count > 0) {
+					filled[y*width+x] = (short)(sum/count);
+				}
+			}
+		}
+		return filled;
+	}
+
+	/**
+	 * Test of fillMissingGates method, of class GateDetector, against the
+	 * average of the nearest valid gates.
+	 */
+	@Test
+	public void testFillMissingGates()
+	{
+		System.out.println("fillMissingGates");
+		int width = 37;
+		int height = 23;
+		Random random = new Random(31);
+		short[] gates = new short[width*height];
+		for (int i=0; i<gates.length; i++) {
+			gates[i] = random.nextInt(10) == 0 ? (short)random.nextInt(500) : (short)(-1);
+		}
+		short[] expected = fillByBruteForce(gates, width, height);
+		GateDetector.fillMissingGates(gates, width, height);
+		assertArrayEquals(expected, gates);
+	}
+
+	/**
+	 * Test of fillMissingGates method, of class GateDetector, with gates at
+	 * equal distances, a single valid gate, and no valid gates.
+	 */
+	@Test
+	public void testFillMissingGates_special()
+	{
+		System.out.println("fillMissingGates special cases");
+		int width = 17;
+		int height = 13;
+
+		// valid gates on a lattice, so that many missing gates are equally far from two or four of them
+		short[] gates = new short[width*height];
+		for (int y=0; y<height; y++) {
+			for (int x=0; x<width; x++) {
+				gates[y*width+x] = (x%4 == 0 && y%4 == 0) ? (short)(10*x + 7*y + 1) : (short)(-1);
+			}
+		}
+		short[] expected = fillByBruteForce(gates, width, height);
+		GateDetector.fillMissingGates(gates, width, height);
+		assertArrayEquals(expected, gates);
+		// midway between the gates at (0,0), (4,0), (0,4) and (4,4)
+		assertEquals((1 + 41 + 29 + 69)/4, gates[2*width+2]);
+
+		// two valid gates, so that the middle column is equally far from both
+		gates = new short[width*height];
+		Arrays.fill(gates, (short)(-1));
+		gates[6*width] = 100;
+		gates[6*width+16] = 201;
+		expected = fillByBruteForce(gates, width, height);
+		GateDetector.fillMissingGates(gates, width, height);
+		assertArrayEquals(expected, gates);
+		assertEquals(150, gates[6*width+8]);
+
+		// a single valid gate fills the whole map
+		gates = new short[width*height];
+		Arrays.fill(gates, (short)(-1));
+		gates[5*width+3] = 42;
+		GateDetector.fillMissingGates(gates, width, height);
+		for (int i=0; i<gates.length; i++) {
+			assertEquals(42, gates[i]);
+		}
+
+		// a map with no valid gates is unchanged
+		gates = new short[width*height];
+		Arrays.fill(gates, (short)(-1));
+		GateDetector.fillMissingGates(gates, width, height);
+		for (int i=0; i<gates.length; i++) {
+			assertEquals(-1, gates[i]);
+		}
+	}
+
+	/**
+	 * Test of fillMissingGates method, of class GateDetector, with nearest
+	 * valid gates whose average is not an integer, which is rounded down.
+	 */
+	@Test
+	public void testFillMissingGates_rounding()
+	{
+		System.out.println("fillMissingGates rounding");
+		// two gates of odd sum, equally far from the middle gate
+		short[] gates = new short[] {3, -1, 4};
+		GateDetector.fillMissingGates(gates, 3, 1);
+		assertArrayEquals(new short[] {3, 3, 4}, gates);
+
+		// four gates at the corners, equally far from the center, whose average of 2.75 is rounded down rather than to the nearest integer
+		gates = new short[] {2, -1, 3, -1, -1, -1, 3, -1, 3};
+		GateDetector.fillMissingGates(gates, 3, 3);
+		assertEquals(2, gates[4]);
+		assertArrayEquals(fillByBruteForce(new short[] {2, -1, 3, -1, -1, -1, 3, -1, 3}, 3, 3), gates);
+	}
+
+}
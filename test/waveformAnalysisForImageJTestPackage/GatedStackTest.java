@@ -0,0 +1,178 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.GateDetector;
+import waveformAnalysisForImageJ.GatedStack;
+
+/**
+ *
+ * @author jnm
+ */
+public class GatedStackTest
+{
+
+	private static ImageStack randomStack(int width, int height, int stackSize, long seed)
+	{
+		Random random = new Random(seed);
+		ImageStack stack = new ImageStack(width, height);
+		for (int s=0; s<stackSize; s++) {
+			short[] pixels = new short[width*height];
+			for (int i=0; i<pixels.length; i++) {
+				pixels[i] = (short)random.nextInt(65536);
+			}
+			stack.addSlice("slice " + (s+1), pixels);
+		}
+		return stack;
+	}
+
+	// gated slice computed directly from the source pixels
+	private static float[] gate(short[] pixels, int width, int height, int[] gates, int gateOffset, int gateLength, boolean isFullLength, boolean isBackward, float[] weights)
+	{
+		int outputWidth = isFullLength ? width : gateLength;
+		float[] gated = new float[outputWidth*height];
+		for (int i=0; i<height; i++) {
+			int position = gates[gateOffset+i] < 0 ? 0 : gates[gateOffset+i];
+			int start = isBackward ? position-gateLength+1 : position;
+			for (int j=0; j<gateLength; j++) {
+				if (start+j >= 0 && start+j < width) {
+					float value = (pixels[i*width+start+j] & 0xffff)*(weights != null ? weights[j] : 1.0f);
+					gated[i*outputWidth + (isFullLength ? start+j : j)] = value;
+				}
+			}
+		}
+		return gated;
+	}
+
+	/**
+	 * Test of getProcessor method, of class GatedStack.
+	 */
+	@Test
+	public void testGetProcessor()
+	{
+		System.out.println("getProcessor");
+		int width = 120;
+		int height = 40;
+		int stackSize = 3;
+		int gateLength = 30;
+		ImageStack source = randomStack(width, height, stackSize, 25);
+		Random random = new Random(26);
+		int[] gates = new int[height*stackSize];
+		for (int i=0; i<gates.length; i++) {
+			gates[i] = random.nextInt(width+20) - 10;
+		}
+		gates[0] = -1;
+		gates[1] = width - 5;
+		float[] weights = new float[gateLength];
+		for (int j=0; j<gateLength; j++) {
+			weights[j] = 0.5f + j/(float)gateLength;
+		}
+
+		for (int mode=0; mode<8; mode++) {
+			boolean isFullLength = mode%2 == 1;
+			float[] w = mode%4 < 2 ? null : weights;
+			boolean isBackward = mode >= 4;
+			GatedStack stack = GatedStack.create(source, gates, gateLength, isFullLength, isBackward, w);
+			assertEquals(isFullLength ? width : gateLength, stack.getWidth());
+			assertEquals(height, stack.getHeight());
+			assertEquals(stackSize, stack.getSize());
+			assertEquals("slice 2", stack.getSliceLabel(2));
+			for (int slice=1; slice<=stackSize; slice++) {
+				float[] expected = gate((short[])source.getPixels(slice), width, height, gates, (slice-1)*height, gateLength, isFullLength, isBackward, w);
+				assertArrayEquals(expected, (float[])stack.getPixels(slice), 0.0f);
+			}
+		}
+
+		// short gate positions give the same slices
+		short[] shortGates = new short[gates.length];
+		for (int i=0; i<gates.length; i++) {
+			shortGates[i] = (short)gates[i];
+		}
+		assertArrayEquals((float[])GatedStack.create(source, gates, gateLength, true, false, null).getPixels(3), (float[])GatedStack.create(source, shortGates, gateLength, true, false, null).getPixels(3), 0.0f);
+
+		// an image of the stack is 32-bit and virtual
+		ImagePlus imp = new ImagePlus("gated", GatedStack.create(source, gates, gateLength, false, false, null));
+		assertEquals(32, imp.getBitDepth());
+		assertEquals(stackSize, imp.getStackSize());
+		assertTrue(imp.getStack().isVirtual());
+	}
+
+	/**
+	 * Test of getProcessor method, of class GatedStack, with gates extending
+	 * backward from their positions, as gates found by backward searches.
+	 */
+	@Test
+	public void testGetProcessor_backward()
+	{
+		System.out.println("getProcessor backward");
+		ImageStack source = new ImageStack(20, 3);
+		float[] pixels = new float[60];
+		for (int i=0; i<pixels.length; i++) {
+			pixels[i] = 1 + i%20;
+		}
+		source.addSlice(null, pixels);
+		int[] gates = new int[] {10, 2, 25};
+		float[] segments = (float[])GatedStack.create(source, gates, 4, false, true, null).getPixels(1);
+		assertArrayEquals(new float[] {8, 9, 10, 11, 0, 1, 2, 3, 0, 0, 0, 0}, segments, 0.0f);
+		float[] waveforms = (float[])GatedStack.create(source, gates, 4, true, true, null).getPixels(1);
+		assertArrayEquals(new float[] {8, 9, 10, 11}, Arrays.copyOfRange(waveforms, 7, 11), 0.0f);
+		assertEquals(3.0f, waveforms[20+2], 0.0f);
+		assertEquals(0.0f, waveforms[20+3], 0.0f);
+
+		// the gated data of a backward detector lies on the side of its ROIs
+		short[] shortGates = new short[] {10, 2, 25};
+		GateDetector detector = new GateDetector(new GateDetector.Parameters().setBackward(true).setGateLength(4));
+		assertArrayEquals(segments, (float[])detector.gate(source, shortGates, false).getPixels(1), 0.0f);
+		assertEquals(10 - 4, detector.createRois(shortGates, 3)[0].getPolygon().xpoints[5]);
+	}
+
+	/**
+	 * Test of the slice cache, of class GatedStack.
+	 */
+	@Test
+	public void testCache()
+	{
+		System.out.println("cache");
+		ImageStack source = randomStack(50, 10, 5, 27);
+		GatedStack stack = GatedStack.create(source, new int[50], 20, false, false, null);
+		assertEquals(GatedStack.DEFAULT_CACHE_SIZE, stack.getCacheSize());
+		stack.setCacheSize(2);
+		Object first = stack.getPixels(1);
+		assertSame(first, stack.getPixels(1));
+		stack.getPixels(2);
+		stack.getPixels(1);
+		stack.getPixels(3);
+		// slice 2 was least recently used, so slice 1 is still cached
+		assertSame(first, stack.getPixels(1));
+		Object second = stack.getPixels(2);
+		assertSame(second, stack.getPixels(2));
+		stack.getPixels(4);
+		// slice 1 was least recently used, so it is built again
+		assertNotSame(first, stack.getPixels(1));
+		assertArrayEquals((float[])first, (float[])stack.getPixels(1), 0.0f);
+		stack.setCacheSize(0);
+		assertNotSame(stack.getPixels(5), stack.getPixels(5));
+	}
+
+	/**
+	 * Test of create method, of class GatedStack.
+	 */
+	@Test
+	public void testCreate()
+	{
+		System.out.println("create");
+		ImageStack source = randomStack(50, 10, 2, 28);
+		assertNull(GatedStack.create(null, new int[20], 10, false, false, null));
+		assertNull(GatedStack.create(source, (int[])null, 10, false, false, null));
+		assertNull(GatedStack.create(source, new int[19], 10, false, false, null));
+		assertNull(GatedStack.create(source, new int[20], 0, false, false, null));
+		assertNull(GatedStack.create(source, new int[20], 51, false, false, null));
+		assertNull(GatedStack.create(source, new int[20], 10, false, false, new float[9]));
+		assertNotNull(GatedStack.create(source, new int[20], 50, true, false, new float[50]));
+	}
+
+}
@@ -0,0 +1,155 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.Prefs;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.Kurtosis;
+import waveformAnalysisForImageJ.MomentAccumulator;
+import waveformAnalysisForImageJ.WaveformUtils;
+
+/**
+ *
+ * @author jnm
+ */
+public class MomentAccumulatorTest
+{
+	private int threads;
+
+	@Before
+	public void setUp()
+	{
+		threads = Prefs.getThreads();
+	}
+
+	@After
+	public void tearDown()
+	{
+		Prefs.setThreads(threads);
+	}
+
+	/**
+	 * Test of add and statistics methods, of class MomentAccumulator.
+	 */
+	@Test
+	public void testAdd()
+	{
+		System.out.println("add");
+		double[] waveforms = new double[] {1.0, 5.0, 2.0, 3.0, 2.2, -1.0, 4.0, 5.0, 0.0, 0.0, 3.2, -0.5, 1.1, 2.2, 1.1, 4.0};
+		MomentAccumulator moments = new MomentAccumulator();
+		assertEquals(0, moments.count());
+		assertTrue(Double.isNaN(moments.mean()));
+		moments.add(waveforms, 0, 8);
+		assertEquals(8, moments.count());
+		assertEquals(2.65, moments.mean(), 1e-12);
+		assertEquals(-0.5465406598681920, moments.skewness(false), 1e-12);
+		assertEquals(-0.43820740653602647, moments.skewness(true), 1e-12);
+		assertEquals(Kurtosis.execute(new double[] {1.0, 5.0, 2.0, 3.0, 2.2, -1.0, 4.0, 5.0}, 8)[0], moments.kurtosis(), 0.0);
+
+		// values added one at a time give the same moments as a range
+		MomentAccumulator single = new MomentAccumulator();
+		for (int i=0; i<8; i++) {
+			single.add(waveforms[i]);
+		}
+		assertEquals(moments.variance(true), single.variance(true), 0.0);
+		assertEquals(moments.kurtosis(), single.kurtosis(), 0.0);
+
+		// lower orders match Welford's mean and variance, and omit higher statistics
+		MomentAccumulator variance = new MomentAccumulator(2);
+		variance.add(waveforms, 8, 16);
+		double[] meanAndVariance = WaveformUtils.meanAndVariance(waveforms, false, 8, 16);
+		assertEquals(meanAndVariance[0], variance.mean(), 0.0);
+		assertEquals(meanAndVariance[1], variance.variance(false), 0.0);
+		assertTrue(Double.isNaN(variance.skewness(true)));
+		assertTrue(Double.isNaN(new MomentAccumulator(3).kurtosis()));
+
+		moments.clear();
+		assertEquals(0, moments.count());
+	}
+
+	/**
+	 * Test of combine method, of class MomentAccumulator.
+	 */
+	@Test
+	public void testCombine()
+	{
+		System.out.println("combine");
+		Random random = new Random(16);
+		double[] a = new double[10000];
+		for (int i=0; i<a.length; i++) {
+			a[i] = 1000.0 + Math.exp(random.nextGaussian());
+		}
+		MomentAccumulator whole = new MomentAccumulator();
+		whole.add(a, 0, a.length);
+
+		int[] splits = new int[] {0, 1, 17, 4000, 9999, 10000};
+		for (int s=0; s<splits.length; s++) {
+			MomentAccumulator head = new MomentAccumulator();
+			MomentAccumulator tail = new MomentAccumulator();
+			head.add(a, 0, splits[s]);
+			tail.add(a, splits[s], a.length);
+			head.combine(tail);
+			assertEquals(whole.count(), head.count());
+			assertEquals(whole.mean(), head.mean(), 1e-12*Math.abs(whole.mean()));
+			assertEquals(whole.variance(false), head.variance(false), 1e-10*whole.variance(false));
+			assertEquals(whole.skewness(true), head.skewness(true), 1e-9);
+			assertEquals(whole.kurtosis(), head.kurtosis(), 1e-9);
+		}
+
+		// merging many small pieces in a tree
+		MomentAccumulator[] pieces = new MomentAccumulator[100];
+		for (int p=0; p<pieces.length; p++) {
+			pieces[p] = new MomentAccumulator();
+			pieces[p].add(a, p*100, (p+1)*100);
+		}
+		for (int stride=1; stride<pieces.length; stride*=2) {
+			for (int p=0; p+stride<pieces.length; p+=2*stride) {
+				pieces[p].combine(pieces[p+stride]);
+			}
+		}
+		assertEquals(whole.count(), pieces[0].count());
+		assertEquals(whole.variance(true), pieces[0].variance(true), 1e-10*whole.variance(true));
+		assertEquals(whole.skewness(false), pieces[0].skewness(false), 1e-9);
+		assertEquals(whole.kurtosis(), pieces[0].kurtosis(), 1e-9);
+	}
+
+	/**
+	 * Test that long ranges give the same moments for any number of threads.
+	 */
+	@Test
+	public void testAdd_longRange()
+	{
+		System.out.println("add long range");
+		Random random = new Random(17);
+		double[] a = new double[300000];
+		for (int i=0; i<a.length; i++) {
+			a[i] = 1000.0 + Math.exp(random.nextGaussian());
+		}
+		float[] b = new float[a.length];
+		for (int i=0; i<a.length; i++) {
+			b[i] = (float)a[i];
+		}
+		double[][] results = new double[2][];
+		for (int pass=0; pass<2; pass++) {
+			Prefs.setThreads(pass == 0 ? 1 : 4);
+			MomentAccumulator moments = new MomentAccumulator();
+			moments.add(a, 5, a.length);
+			MomentAccumulator floatMoments = new MomentAccumulator();
+			floatMoments.add(b, 5, b.length);
+			results[pass] = new double[] {moments.mean(), moments.variance(true), moments.skewness(true), moments.kurtosis(), floatMoments.mean(), floatMoments.kurtosis()};
+		}
+		assertArrayEquals(results[0], results[1], 0.0);
+
+		MomentAccumulator streamed = new MomentAccumulator();
+		for (int i=5; i<a.length; i++) {
+			streamed.add(a[i]);
+		}
+		assertEquals(streamed.mean(), results[0][0], 1e-12*streamed.mean());
+		assertEquals(streamed.variance(true), results[0][1], 1e-9*streamed.variance(true));
+		assertEquals(streamed.skewness(true), results[0][2], 1e-8);
+		assertEquals(streamed.kurtosis(), results[0][3], 1e-8);
+	}
+
+}
@@ -3,6 +3,7 @@ package waveformAnalysisForImageJTestPackage;
 
 import waveformAnalysisForImageJ.MovingWindowSumOfSquares;
 import waveformAnalysisForImageJ.WaveformUtils;
+import java.util.Arrays;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -136,4 +137,63 @@ public class MovingWindowSumOfSquaresTest
 		
 	}
 
+	/**
+	 * Test of execute method, of class MovingWindowSumOfSquares, for windows
+	 * long enough to use FFT convolution.
+	 */
+	@Test
+	public void testExecute_longWindow()
+	{
+		System.out.println("execute (FFT convolution)");
+		int recordLength = 300;
+		int numRecords = 3;
+		for (int radius : new int[]{WaveformUtils.OVERLAP_SAVE_WINDOW_LENGTH/2, 40, 149}) {
+			double[] weights = WaveformUtils.windowFunctionSingleSided(WaveformUtils.WindowType.HAMMING, radius, 0.0, true);
+			double[] waveforms = new double[recordLength*numRecords];
+			for (int i=0; i<waveforms.length; i++) {
+				waveforms[i] = Math.sin(0.05*i) + 0.3*Math.cos(0.7*i);
+			}
+			// zero segment, where the sums of squares are (exactly) zero
+			for (int i=100; i<200; i++) {
+				waveforms[i] = 0.0;
+			}
+			double[] expResult = new double[waveforms.length];
+			for (int i=0; i<waveforms.length; i++) {
+				int offset = i - i%recordLength;
+				for (int k=-radius; k<=radius; k++) {
+					int index = i%recordLength + k;
+					if (index < 0) {
+						index = -index;
+					} else if (index > recordLength-1) {
+						index = 2*(recordLength-1) - index;
+					}
+					double x = weights[Math.abs(k)]*waveforms[offset+index];
+					expResult[i] += x*x;
+				}
+			}
+			for (boolean logOutput : new boolean[]{false, true}) {
+				double[] result = Arrays.copyOf(waveforms, waveforms.length);
+				float[] resultFloat = new float[waveforms.length];
+				for (int i=0; i<waveforms.length; i++) {
+					resultFloat[i] = (float)waveforms[i];
+				}
+				MovingWindowSumOfSquares.execute(result, recordLength, radius, WaveformUtils.WindowType.HAMMING, 0.0, logOutput);
+				MovingWindowSumOfSquares.execute(resultFloat, recordLength, radius, WaveformUtils.WindowType.HAMMING, 0.0, logOutput);
+				for (int i=0; i<waveforms.length; i++) {
+					if (logOutput) {
+						// compare where the sums are well above rounding error
+						if (expResult[i] > 1e-6) {
+							assertEquals(Math.log10(expResult[i]), result[i], 1e-9);
+							assertEquals(Math.log10(expResult[i]), resultFloat[i], 1e-3);
+						}
+					} else {
+						assertEquals(expResult[i], result[i], 1e-12);
+						assertEquals(expResult[i], resultFloat[i], 1e-5);
+						assertTrue(result[i] >= 0.0);
+					}
+				}
+			}
+		}
+	}
+
 }
@@ -83,4 +83,61 @@ public class MovingWindowVarianceTest
 		assertArrayEquals(expResult, waveforms, Math.ulp(10.0));
 	}
 
+	/**
+	 * Test of execute method, of class MovingWindowVariance, for long records
+	 * and large windows, against a two-pass computation at each point.
+	 */
+	@Test
+	public void testExecute_longRecords()
+	{
+		System.out.println("execute (long records)");
+		int recordLength = 5000;
+		int numRecords = 2;
+		for (int radius : new int[]{1, 7, 200, 2400}) {
+			for (boolean useUnbiasedEstimateOfVariance : new boolean[]{false, true}) {
+				// large offset and a constant segment to exercise cancellation
+				double[] waveforms = new double[recordLength*numRecords];
+				for (int i=0; i<waveforms.length; i++) {
+					waveforms[i] = (i%recordLength > 1000 && i%recordLength < 2000) ? 1000.0 : 1000.0 + Math.sin(0.01*i) + 0.1*Math.cos(1.3*i);
+				}
+				int windowLength = 2*radius + 1;
+				double[] expResult = new double[waveforms.length];
+				for (int i=0; i<waveforms.length; i++) {
+					int offset = i - i%recordLength;
+					double[] window = new double[windowLength];
+					double mean = 0.0;
+					for (int k=-radius; k<=radius; k++) {
+						int index = i%recordLength + k;
+						if (index < 0) {
+							index = -index;
+						} else if (index > recordLength-1) {
+							index = 2*(recordLength-1) - index;
+						}
+						window[k+radius] = waveforms[offset+index];
+						mean += window[k+radius];
+					}
+					mean /= windowLength;
+					for (int k=0; k<windowLength; k++) {
+						expResult[i] += (window[k] - mean)*(window[k] - mean);
+					}
+					expResult[i] /= useUnbiasedEstimateOfVariance ? windowLength - 1 : windowLength;
+				}
+				// float input is the same as double input rounded to float
+				float[] waveformsFloat = new float[waveforms.length];
+				double[] roundedWaveforms = new double[waveforms.length];
+				for (int i=0; i<waveforms.length; i++) {
+					waveformsFloat[i] = (float)waveforms[i];
+					roundedWaveforms[i] = waveformsFloat[i];
+				}
+				MovingWindowVariance.execute(waveforms, recordLength, radius, useUnbiasedEstimateOfVariance);
+				assertArrayEquals(expResult, waveforms, 1e-10);
+				MovingWindowVariance.execute(roundedWaveforms, recordLength, radius, useUnbiasedEstimateOfVariance);
+				MovingWindowVariance.execute(waveformsFloat, recordLength, radius, useUnbiasedEstimateOfVariance);
+				for (int i=0; i<waveforms.length; i++) {
+					assertEquals(roundedWaveforms[i], waveformsFloat[i], 1e-6*(1.0 + roundedWaveforms[i]));
+				}
+			}
+		}
+	}
+
 }
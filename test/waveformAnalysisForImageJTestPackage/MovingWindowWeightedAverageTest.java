@@ -102,4 +102,46 @@ public class MovingWindowWeightedAverageTest
 		assertArrayEquals(expResult, waveforms, Math.ulp(0.0));
 	}
 
+	/**
+	 * Test of execute method, of class MovingWindowWeightedAverage, for
+	 * windows long enough to use FFT convolution.
+	 */
+	@Test
+	public void testExecute_longWindow()
+	{
+		System.out.println("execute (FFT convolution)");
+		int recordLength = 300;
+		int numRecords = 3;
+		for (int radius : new int[]{WaveformUtils.OVERLAP_SAVE_WINDOW_LENGTH/2, 40, 149}) {
+			double[] weights = WaveformUtils.windowFunctionSingleSided(WaveformUtils.WindowType.HAMMING, radius, 0.0, true);
+			double[] waveforms = new double[recordLength*numRecords];
+			for (int i=0; i<waveforms.length; i++) {
+				waveforms[i] = Math.sin(0.05*i) + 0.3*Math.cos(0.7*i) + 2.0;
+			}
+			double[] expResult = new double[waveforms.length];
+			for (int i=0; i<waveforms.length; i++) {
+				int offset = i - i%recordLength;
+				for (int k=-radius; k<=radius; k++) {
+					int index = i%recordLength + k;
+					if (index < 0) {
+						index = -index;
+					} else if (index > recordLength-1) {
+						index = 2*(recordLength-1) - index;
+					}
+					expResult[i] += weights[Math.abs(k)]*waveforms[offset+index];
+				}
+			}
+			float[] waveformsFloat = new float[waveforms.length];
+			float[] expResultFloat = new float[waveforms.length];
+			for (int i=0; i<waveforms.length; i++) {
+				waveformsFloat[i] = (float)waveforms[i];
+				expResultFloat[i] = (float)expResult[i];
+			}
+			MovingWindowWeightedAverage.execute(waveforms, recordLength, radius, WaveformUtils.WindowType.HAMMING, 0.0);
+			assertArrayEquals(expResult, waveforms, 1e-12);
+			MovingWindowWeightedAverage.execute(waveformsFloat, recordLength, radius, WaveformUtils.WindowType.HAMMING, 0.0);
+			assertArrayEquals(expResultFloat, waveformsFloat, 1e-5f);
+		}
+	}
+
 }
@@ -0,0 +1,178 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.Prefs;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.PeakIndex;
+
+/**
+ *
+ * @author jnm
+ */
+public class PeakIndexTest
+{
+	private int threads;
+
+	@Before
+	public void setUp()
+	{
+		threads = Prefs.getThreads();
+	}
+
+	@After
+	public void tearDown()
+	{
+		Prefs.setThreads(threads);
+	}
+
+	private static boolean isPeak(float[] a, int offset, int j)
+	{
+		return a[offset+j] > a[offset+j-1] && a[offset+j] > a[offset+j+1];
+	}
+
+	private static boolean isNadir(float[] a, int offset, int j)
+	{
+		return a[offset+j] < a[offset+j-1] && a[offset+j] < a[offset+j+1];
+	}
+
+	/**
+	 * Test of the search methods, of class PeakIndex, against direct scans of
+	 * each record.
+	 */
+	@Test
+	public void testSearch()
+	{
+		System.out.println("search");
+		int recordLength = 300;
+		int numRecords = 40;
+		// values rounded to tenths, so that plateaus, equal values and thresholds equal to values all occur
+		Random random = new Random(21);
+		float[] a = new float[recordLength*numRecords];
+		for (int i=0; i<a.length; i++) {
+			a[i] = Math.round(10.0*random.nextGaussian())/10.0f;
+		}
+		a[5*recordLength+100] = Float.NaN;
+		PeakIndex index = PeakIndex.build(a, recordLength);
+		assertEquals(numRecords, index.getNumRecords());
+		assertEquals(recordLength, index.getRecordLength());
+		random = new Random(22);
+		for (int trial=0; trial<4000; trial++) {
+			int record = random.nextInt(numRecords);
+			int offset = record*recordLength;
+			int from = random.nextInt(recordLength+1);
+			int to = from + random.nextInt(recordLength+1-from);
+			float threshold = Math.round(20.0*random.nextGaussian())/10.0f;
+
+			int[] expected = new int[] {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1};
+			for (int j=Math.max(from, 1); j<Math.min(to, recordLength-1); j++) {
+				if (isPeak(a, offset, j) && a[offset+j] > threshold) {
+					expected[0] = expected[0] < 0 ? j : expected[0];
+					expected[1] = j;
+				}
+				if (isNadir(a, offset, j) && a[offset+j] < threshold) {
+					expected[2] = expected[2] < 0 ? j : expected[2];
+					expected[7] = j;
+				}
+				if (a[offset+j-1] < threshold && a[offset+j+1] >= threshold) {
+					expected[5] = expected[5] < 0 ? j : expected[5];
+					expected[8] = j;
+				}
+				if (a[offset+j-1] > threshold && a[offset+j+1] <= threshold) {
+					expected[6] = expected[6] < 0 ? j : expected[6];
+					expected[9] = j;
+				}
+			}
+			for (int j=from; j<to; j++) {
+				if (a[offset+j] > threshold) {
+					expected[3] = expected[3] < 0 ? j : expected[3];
+					expected[4] = j;
+				}
+			}
+			int[] actual = new int[] {index.firstPeakAbove(record, from, to, threshold), index.lastPeakAbove(record, from, to, threshold), index.firstNadirBelow(record, from, to, threshold),
+				index.firstValueAbove(record, from, to, threshold), index.lastValueAbove(record, from, to, threshold), index.firstRisingCrossing(record, from, to, threshold),
+				index.firstFallingCrossing(record, from, to, threshold), index.lastNadirBelow(record, from, to, threshold), index.lastRisingCrossing(record, from, to, threshold),
+				index.lastFallingCrossing(record, from, to, threshold)};
+			assertArrayEquals(expected, actual);
+		}
+		assertEquals(-1, index.firstPeakAbove(numRecords, 0, recordLength, -100.0f));
+		assertEquals(-1, index.firstValueAbove(-1, 0, recordLength, -100.0f));
+	}
+
+	/**
+	 * Test of build method, of class PeakIndex.
+	 */
+	@Test
+	public void testBuild()
+	{
+		System.out.println("build");
+		assertNull(PeakIndex.build(null, 10));
+		assertNull(PeakIndex.build(new float[10], 0));
+		assertNull(PeakIndex.build(new float[10], 3));
+		assertNull(PeakIndex.build(new float[2], 3));
+
+		// indexes built on one thread and on several give the same results
+		int recordLength = 500;
+		Random random = new Random(23);
+		float[] a = new float[recordLength*300];
+		for (int i=0; i<a.length; i++) {
+			a[i] = Math.round(10.0*random.nextGaussian())/10.0f;
+		}
+		Prefs.setThreads(1);
+		PeakIndex serial = PeakIndex.build(a, recordLength);
+		Prefs.setThreads(4);
+		PeakIndex parallel = PeakIndex.build(a, recordLength);
+		assertEquals(serial.getMemorySize(), parallel.getMemorySize());
+		assertTrue(serial.getMemorySize() > 0L);
+		for (int record=0; record<300; record++) {
+			assertEquals(serial.firstPeakAbove(record, 10, 490, 1.5f), parallel.firstPeakAbove(record, 10, 490, 1.5f));
+			assertEquals(serial.lastValueAbove(record, 0, 400, 2.0f), parallel.lastValueAbove(record, 0, 400, 2.0f));
+		}
+	}
+
+	/**
+	 * Test of build method, of class PeakIndex, with 16-bit and 8-bit pixel
+	 * arrays, which must give the same results as their float values.
+	 */
+	@Test
+	public void testBuild_pixels()
+	{
+		System.out.println("build pixels");
+		assertNull(PeakIndex.build(new int[10], 5));
+		int recordLength = 200;
+		int numRecords = 30;
+		Random random = new Random(24);
+		short[] shorts = new short[recordLength*numRecords];
+		byte[] bytes = new byte[recordLength*numRecords];
+		float[] shortValues = new float[shorts.length];
+		float[] byteValues = new float[bytes.length];
+		for (int i=0; i<shorts.length; i++) {
+			shorts[i] = (short)random.nextInt(65536);
+			bytes[i] = (byte)random.nextInt(256);
+			shortValues[i] = shorts[i] & 0xffff;
+			byteValues[i] = bytes[i] & 0xff;
+		}
+		PeakIndex[] indices = new PeakIndex[] {PeakIndex.build(shorts, recordLength), PeakIndex.build(bytes, recordLength)};
+		PeakIndex[] expectedIndices = new PeakIndex[] {PeakIndex.build(shortValues, recordLength), PeakIndex.build(byteValues, recordLength)};
+		float[] scales = new float[] {65536.0f, 256.0f};
+		for (int k=0; k<indices.length; k++) {
+			for (int trial=0; trial<1000; trial++) {
+				int record = random.nextInt(numRecords);
+				int from = random.nextInt(recordLength+1);
+				int to = from + random.nextInt(recordLength+1-from);
+				float threshold = (float)Math.floor(scales[k]*random.nextDouble());
+				PeakIndex index = indices[k];
+				PeakIndex expected = expectedIndices[k];
+				assertArrayEquals(new int[] {expected.firstPeakAbove(record, from, to, threshold), expected.lastPeakAbove(record, from, to, threshold),
+					expected.firstNadirBelow(record, from, to, threshold), expected.firstValueAbove(record, from, to, threshold),
+					expected.firstRisingCrossing(record, from, to, threshold), expected.lastFallingCrossing(record, from, to, threshold)},
+					new int[] {index.firstPeakAbove(record, from, to, threshold), index.lastPeakAbove(record, from, to, threshold),
+					index.firstNadirBelow(record, from, to, threshold), index.firstValueAbove(record, from, to, threshold),
+					index.firstRisingCrossing(record, from, to, threshold), index.lastFallingCrossing(record, from, to, threshold)});
+			}
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.Prefs;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.QuantileSketch;
+
+/**
+ *
+ * @author jnm
+ */
+public class QuantileSketchTest
+{
+	private int threads;
+
+	@Before
+	public void setUp()
+	{
+		threads = Prefs.getThreads();
+	}
+
+	@After
+	public void tearDown()
+	{
+		Prefs.setThreads(threads);
+	}
+
+	// fraction of values in sorted array a that are less than or equal to x
+	private static double rankOf(double[] a, double x)
+	{
+		int index = Arrays.binarySearch(a, x);
+		if (index < 0) {
+			return (double)(-index - 1)/a.length;
+		}
+		while (index + 1 < a.length && a[index + 1] == x) {
+			index++;
+		}
+		return (double)(index + 1)/a.length;
+	}
+
+	/**
+	 * Test of quantile method, of class QuantileSketch.
+	 */
+	@Test
+	public void testQuantile_exact()
+	{
+		System.out.println("quantile");
+		QuantileSketch sketch = new QuantileSketch();
+		assertTrue(Double.isNaN(sketch.quantile(0.5)));
+		sketch.add(new double[] {5.0, 1.0, Double.NaN, 4.0, 2.0, 3.0}, 0, 6);
+		assertEquals(5, sketch.count());
+		assertEquals(1.0, sketch.quantile(0.0), 0.0);
+		assertEquals(3.0, sketch.quantile(0.5), 0.0);
+		assertEquals(5.0, sketch.quantile(1.0), 0.0);
+		assertEquals(2.0, sketch.quantile(0.4), 0.0);
+		assertArrayEquals(new double[] {1.0, 5.0, 4.0}, sketch.quantiles(new double[] {0.01, 0.99, 0.8}), 0.0);
+		assertNull(sketch.quantiles(null));
+
+		sketch.clear();
+		assertEquals(0, sketch.count());
+		sketch.add(new float[] {2.0f, 1.0f}, 0, 2);
+		assertEquals(1.0, sketch.quantile(0.5), 0.0);
+	}
+
+	/**
+	 * Test of the rank error of QuantileSketch on long streams.
+	 */
+	@Test
+	public void testQuantile_rankError()
+	{
+		System.out.println("quantile rank error");
+		Random random = new Random(18);
+		double[] a = new double[200000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = Math.exp(2.0*random.nextGaussian());
+		}
+		QuantileSketch sketch = new QuantileSketch();
+		for (int i = 0; i < a.length; i++) {
+			sketch.add(a[i]);
+		}
+		double[] sorted = a.clone();
+		Arrays.sort(sorted);
+		double[] q = new double[] {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+		double[] estimates = sketch.quantiles(q);
+		for (int j = 0; j < q.length; j++) {
+			assertEquals(q[j], rankOf(sorted, estimates[j]), 0.01);
+		}
+		assertEquals(sorted[0], sketch.quantile(0.0), 0.0);
+		assertEquals(sorted[a.length - 1], sketch.quantile(1.0), 0.0);
+	}
+
+	/**
+	 * Test of combine method, of class QuantileSketch.
+	 */
+	@Test
+	public void testCombine()
+	{
+		System.out.println("combine");
+		Random random = new Random(19);
+		double[] a = new double[100000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = random.nextGaussian() + (i < 50000 ? 0.0 : 5.0);
+		}
+		QuantileSketch[] parts = new QuantileSketch[37];
+		int partLength = (a.length + parts.length - 1)/parts.length;
+		QuantileSketch merged = new QuantileSketch();
+		for (int p = 0; p < parts.length; p++) {
+			parts[p] = new QuantileSketch();
+			parts[p].add(a, p*partLength, Math.min(a.length, (p + 1)*partLength));
+			merged.combine(parts[p]);
+		}
+		assertEquals(a.length, merged.count());
+		double[] sorted = a.clone();
+		Arrays.sort(sorted);
+		double[] q = new double[] {0.01, 0.3, 0.5, 0.7, 0.99};
+		double[] estimates = merged.quantiles(q);
+		for (int j = 0; j < q.length; j++) {
+			assertEquals(q[j], rankOf(sorted, estimates[j]), 0.01);
+		}
+	}
+
+	/**
+	 * Test that long ranges give the same quantiles for any number of threads.
+	 */
+	@Test
+	public void testAdd_longRange()
+	{
+		System.out.println("add long range");
+		Random random = new Random(20);
+		float[] a = new float[2200000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = (float)random.nextGaussian();
+		}
+		double[] q = new double[] {0.01, 0.5, 0.99};
+		double[][] results = new double[2][];
+		for (int pass = 0; pass < 2; pass++) {
+			Prefs.setThreads(pass == 0 ? 1 : 4);
+			QuantileSketch sketch = new QuantileSketch();
+			sketch.add(a, 3, a.length);
+			results[pass] = sketch.quantiles(q);
+		}
+		assertArrayEquals(results[0], results[1], 0.0);
+		assertEquals(0.0, results[0][1], 0.02);
+		assertEquals(2.326, results[0][2], 0.1);
+	}
+
+}
@@ -0,0 +1,216 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.Prefs;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.AverageWaveforms;
+import waveformAnalysisForImageJ.Envelope;
+import waveformAnalysisForImageJ.FFTComplex;
+import waveformAnalysisForImageJ.MeanValue;
+import waveformAnalysisForImageJ.MovingWindowMedian;
+import waveformAnalysisForImageJ.RecordPartitioner;
+import waveformAnalysisForImageJ.SpectralMaximum;
+import waveformAnalysisForImageJ.WaveformUtils;
+
+/**
+ *
+ * @author jnm
+ */
+public class RecordPartitionerTest
+{
+	private int threads;
+
+	@Before
+	public void setUp()
+	{
+		threads = Prefs.getThreads();
+	}
+
+	@After
+	public void tearDown()
+	{
+		Prefs.setThreads(threads);
+	}
+
+	/**
+	 * Test of forEachChunk method, of class RecordPartitioner.
+	 */
+	@Test
+	public void testForEachChunk()
+	{
+		System.out.println("forEachChunk");
+		Prefs.setThreads(4);
+		final int numRecords = 1000;
+		int recordLength = 256;
+		assertEquals(4, RecordPartitioner.numThreads(numRecords, recordLength));
+		assertEquals(1, RecordPartitioner.numThreads(numRecords, 8));
+		assertEquals(1, RecordPartitioner.numThreads(RecordPartitioner.RECORD_ALIGNMENT, 4096));
+
+		// every record is visited exactly once, in aligned chunks
+		final AtomicInteger[] visits = new AtomicInteger[numRecords];
+		for (int i=0; i<numRecords; i++) {
+			visits[i] = new AtomicInteger();
+		}
+		RecordPartitioner.forEachChunk(numRecords, recordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				assertEquals(0, fromRecord%RecordPartitioner.RECORD_ALIGNMENT);
+				// nested calls are not split again
+				assertEquals(1, RecordPartitioner.numThreads(numRecords, 4096));
+				for (int i=fromRecord; i<toRecord; i++) {
+					visits[i].incrementAndGet();
+				}
+			}
+		});
+		for (int i=0; i<numRecords; i++) {
+			assertEquals(1, visits[i].get());
+		}
+
+		// chunks of long inputs are limited in size
+		final int longRecordLength = 4096;
+		RecordPartitioner.forEachChunk(numRecords, longRecordLength, new RecordPartitioner.RecordRangeOperation()
+		{
+			public void process(int fromRecord, int toRecord)
+			{
+				assertTrue((toRecord - fromRecord)*longRecordLength <= RecordPartitioner.MAX_CHUNK_POINTS);
+			}
+		});
+
+		// exceptions thrown by an operation are rethrown to the caller
+		try {
+			RecordPartitioner.forEachChunk(numRecords, recordLength, new RecordPartitioner.RecordRangeOperation()
+			{
+				public void process(int fromRecord, int toRecord)
+				{
+					if (toRecord == numRecords) {
+						throw new IllegalStateException();
+					}
+				}
+			});
+			fail("exception not rethrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test of processInPlace and map methods, of class RecordPartitioner.
+	 */
+	@Test
+	public void testProcessInPlaceAndMap()
+	{
+		System.out.println("processInPlace/map");
+		Prefs.setThreads(4);
+		int numRecords = 200;
+		final int recordLength = 300;
+		double[] waveforms = new double[numRecords*recordLength];
+		assertTrue(RecordPartitioner.isParallel(waveforms, recordLength));
+		assertFalse(RecordPartitioner.isParallel(waveforms, recordLength + 1));
+		assertFalse(RecordPartitioner.isParallel((double[])null, recordLength));
+
+		assertTrue(RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				for (int i=0; i<records.length; i++) {
+					records[i] = fromRecord + i/recordLength;
+				}
+			}
+		}));
+		for (int i=0; i<waveforms.length; i++) {
+			assertEquals(i/recordLength, waveforms[i], 0.0);
+		}
+
+		double[] result = (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+		{
+			public Object apply(double[] records, int fromRecord)
+			{
+				return MeanValue.execute(records, recordLength);
+			}
+		});
+		assertEquals(numRecords, result.length);
+		for (int i=0; i<numRecords; i++) {
+			assertEquals(i, result[i], 0.0);
+		}
+
+		// chunk buffers reused by a later call hold the records of that call
+		for (int i=0; i<waveforms.length; i++) {
+			waveforms[i] = -waveforms[i];
+		}
+		result = (double[])RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+		{
+			public Object apply(double[] records, int fromRecord)
+			{
+				return MeanValue.execute(records, recordLength);
+			}
+		});
+		for (int i=0; i<numRecords; i++) {
+			assertEquals(-i, result[i], 0.0);
+		}
+
+		// a null result from any chunk gives a null result
+		assertNull(RecordPartitioner.map(waveforms, recordLength, new RecordPartitioner.DoubleFunction()
+		{
+			public Object apply(double[] records, int fromRecord)
+			{
+				return fromRecord == 0 ? null : new double[records.length/recordLength];
+			}
+		}));
+
+		Prefs.setThreads(1);
+		assertFalse(RecordPartitioner.processInPlace(waveforms, recordLength, new RecordPartitioner.DoubleOperation()
+		{
+			public void process(double[] records, int fromRecord)
+			{
+				fail("records split with a single thread");
+			}
+		}));
+	}
+
+	/**
+	 * Test that plug-ins give identical results when their input is split
+	 * across threads.
+	 */
+	@Test
+	public void testSerialAndParallelResultsIdentical()
+	{
+		System.out.println("serial/parallel results");
+		int numRecords = 150;
+		int recordLength = 500;
+		Random random = new Random(5);
+		Random imagRandom = new Random(6);
+		float[] waveforms = new float[numRecords*recordLength];
+		float[] imagWaveforms = new float[numRecords*recordLength];
+		for (int i=0; i<waveforms.length; i++) {
+			waveforms[i] = (float)random.nextGaussian();
+			imagWaveforms[i] = (float)imagRandom.nextGaussian();
+		}
+		float[][] serial = new float[7][];
+		float[][] parallel = new float[7][];
+		for (int pass=0; pass<2; pass++) {
+			Prefs.setThreads(pass == 0 ? 1 : 4);
+			float[][] results = pass == 0 ? serial : parallel;
+
+			results[0] = waveforms.clone();
+			MovingWindowMedian.execute(results[0], recordLength, 7);
+			results[1] = waveforms.clone();
+			Envelope.execute(results[1], recordLength, true);
+			results[2] = SpectralMaximum.execute(waveforms, recordLength, 1.0, WaveformUtils.WindowType.HANNING, 0.0);
+			results[3] = MeanValue.execute(waveforms, recordLength);
+			results[4] = AverageWaveforms.execute(waveforms, recordLength);
+			float[][] spectra = FFTComplex.execute(waveforms, imagWaveforms, true, recordLength);
+			results[5] = spectra[0];
+			results[6] = spectra[1];
+		}
+		for (int k=0; k<serial.length; k++) {
+			assertNotNull(serial[k]);
+			assertArrayEquals(serial[k], parallel[k], 0.0f);
+		}
+	}
+
+}
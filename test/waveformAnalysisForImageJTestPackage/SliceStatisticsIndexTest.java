@@ -0,0 +1,216 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import java.awt.EventQueue;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.SliceStatisticsIndex;
+import waveformAnalysisForImageJ.WaveformUtils;
+
+/**
+ *
+ * @author jnm
+ */
+public class SliceStatisticsIndexTest
+{
+	private int threads;
+
+	@Before
+	public void setUp()
+	{
+		threads = Prefs.getThreads();
+	}
+
+	@After
+	public void tearDown()
+	{
+		Prefs.setThreads(threads);
+	}
+
+	private static ImagePlus randomImage(int width, int height, int stackSize, long seed)
+	{
+		Random random = new Random(seed);
+		ImageStack stack = new ImageStack(width, height);
+		for (int s=0; s<stackSize; s++) {
+			float[] pixels = new float[width*height];
+			for (int i=0; i<pixels.length; i++) {
+				pixels[i] = (float)(s + random.nextGaussian());
+			}
+			stack.addSlice(null, pixels);
+		}
+		return new ImagePlus("random", stack);
+	}
+
+	/**
+	 * Test of getSlice method, of class SliceStatisticsIndex.
+	 */
+	@Test
+	public void testGetSlice()
+	{
+		System.out.println("getSlice");
+		float[] pixels = new float[] {1.0f, 5.0f, 2.0f, Float.NaN, -1.0f, 4.0f, 3.0f, 0.0f, Float.NaN, Float.NaN, Float.NaN, Float.NaN};
+		ImageStack stack = new ImageStack(4, 3);
+		stack.addSlice(null, pixels);
+		ImagePlus imp = new ImagePlus("test", stack);
+		SliceStatisticsIndex index = SliceStatisticsIndex.getIndex(imp);
+		assertSame(index, SliceStatisticsIndex.getIndex(imp));
+		assertNull(index.getSlice(0));
+		assertNull(index.getSlice(2));
+
+		SliceStatisticsIndex.SliceStatistics statistics = index.getSlice(1);
+		assertEquals(-1.0, statistics.getMin(), 0.0);
+		assertEquals(5.0, statistics.getMax(), 0.0);
+		assertEquals(2.0, statistics.getMean(), 1e-12);
+		assertArrayEquals(new float[] {5.0f, 4.0f, Float.NaN}, statistics.getRecordMax(), 0.0f);
+		assertArrayEquals(new float[] {1.0f, -1.0f, Float.NaN}, statistics.getRecordMin(), 0.0f);
+		int[] histogram = statistics.getHistogram();
+		assertEquals(SliceStatisticsIndex.NUM_BINS, histogram.length);
+		assertEquals(1, histogram[0]);
+		assertEquals(1, histogram[SliceStatisticsIndex.NUM_BINS-1]);
+		int total = 0;
+		for (int b=0; b<histogram.length; b++) {
+			total += histogram[b];
+		}
+		assertEquals(7, total);
+
+		// in-place changes are seen only after invalidation
+		pixels[0] = 9.0f;
+		assertSame(statistics, index.getSlice(1));
+		index.invalidate(1);
+		assertEquals(9.0, index.getSlice(1).getMax(), 0.0);
+
+		// replacing the pixel array is detected
+		stack.setPixels(new float[12], 1);
+		assertEquals(0.0, index.getSlice(1).getMax(), 0.0);
+		assertEquals(0.0f, index.getSlice(1).getRecordMax()[0], 0.0f);
+	}
+
+	/**
+	 * Test of getGlobalMinAndMax and update methods, of class
+	 * SliceStatisticsIndex.
+	 */
+	@Test
+	public void testGetGlobalMinAndMax()
+	{
+		System.out.println("getGlobalMinAndMax");
+		ImagePlus imp = randomImage(300, 200, 5, 19);
+		ImageStack stack = imp.getStack();
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int slice=1; slice<=stack.getSize(); slice++) {
+			float[] pixels = (float[])stack.getPixels(slice);
+			for (int i=0; i<pixels.length; i++) {
+				min = Math.min(min, pixels[i]);
+				max = Math.max(max, pixels[i]);
+			}
+		}
+		SliceStatisticsIndex index = SliceStatisticsIndex.getIndex(imp);
+		assertArrayEquals(new double[] {min, max}, index.getGlobalMinAndMax(), 0.0);
+		assertNull(WaveformUtils.getGlobalMinAndMax(null));
+
+		// only the replaced slice is computed again
+		SliceStatisticsIndex.SliceStatistics first = index.getSlice(1);
+		float[] replacement = new float[300*200];
+		replacement[123] = 1000.0f;
+		stack.setPixels(replacement, 3);
+		index.update();
+		assertSame(first, index.getSlice(1));
+		assertEquals(1000.0, index.getGlobalMinAndMax()[1], 0.0);
+
+		// values changed in place are seen once the slice is invalidated
+		((float[])stack.getPixels(2))[10] = 2000.0f;
+		assertEquals(1000.0, index.getGlobalMinAndMax()[1], 0.0);
+		index.invalidate(2);
+		assertEquals(2000.0, index.getGlobalMinAndMax()[1], 0.0);
+	}
+
+	// waits for image listeners, which ImageJ notifies on the event dispatch thread
+	private static void waitForListeners() throws Exception
+	{
+		EventQueue.invokeAndWait(new Runnable()
+		{
+			public void run()
+			{
+			}
+		});
+	}
+
+	/**
+	 * Test that the index of an image is invalidated when the image is
+	 * updated without a change of slice, as a displayed image is after a
+	 * filter has changed its pixels in place, and not when the slice changes.
+	 */
+	@Test
+	public void testGetSlice_imageUpdated() throws Exception
+	{
+		System.out.println("getSlice imageUpdated");
+		ImageStack stack = randomImage(50, 40, 3, 21).getStack();
+		// updates as from a displayed image
+		ImagePlus imp = new ImagePlus("updated", stack)
+		{
+			@Override
+			public void updateAndDraw()
+			{
+				notifyListeners(UPDATED);
+			}
+		};
+		waitForListeners();
+		SliceStatisticsIndex index = SliceStatisticsIndex.getIndex(imp);
+		SliceStatisticsIndex.SliceStatistics first = index.getSlice(1);
+		imp.setSlice(2);
+		imp.updateAndDraw();
+		waitForListeners();
+		assertSame(first, index.getSlice(1));
+
+		((float[])stack.getPixels(1))[10] = 100.0f;
+		imp.updateAndDraw();
+		waitForListeners();
+		assertNotSame(first, index.getSlice(1));
+		assertEquals(100.0, index.getSlice(1).getMax(), 0.0);
+	}
+
+	/**
+	 * Test that statistics are the same for any number of threads.
+	 */
+	@Test
+	public void testGetSlice_threads()
+	{
+		System.out.println("getSlice threads");
+		ImagePlus imp = randomImage(1000, 256, 2, 20);
+		SliceStatisticsIndex.SliceStatistics[] statistics = new SliceStatisticsIndex.SliceStatistics[2];
+		for (int pass=0; pass<2; pass++) {
+			Prefs.setThreads(pass == 0 ? 1 : 4);
+			SliceStatisticsIndex index = SliceStatisticsIndex.getIndex(imp);
+			index.invalidateAll();
+			statistics[pass] = index.getSlice(2);
+		}
+		assertEquals(statistics[0].getMean(), statistics[1].getMean(), 0.0);
+		assertArrayEquals(statistics[0].getRecordMax(), statistics[1].getRecordMax(), 0.0f);
+		assertArrayEquals(statistics[0].getHistogram(), statistics[1].getHistogram());
+	}
+
+	/**
+	 * Test of getSlice method, of class SliceStatisticsIndex, with 16-bit
+	 * pixels, which are read as unsigned values.
+	 */
+	@Test
+	public void testGetSlice_short()
+	{
+		System.out.println("getSlice short");
+		short[] pixels = new short[] {1, (short)60000, 2, 7, 3, 5};
+		ImageStack stack = new ImageStack(3, 2);
+		stack.addSlice(null, pixels);
+		SliceStatisticsIndex.SliceStatistics statistics = SliceStatisticsIndex.getIndex(new ImagePlus("short", stack)).getSlice(1);
+		assertEquals(1.0, statistics.getMin(), 0.0);
+		assertEquals(60000.0, statistics.getMax(), 0.0);
+		assertEquals(60018.0/6.0, statistics.getMean(), 1e-9);
+		assertArrayEquals(new float[] {60000.0f, 7.0f}, statistics.getRecordMax(), 0.0f);
+		assertArrayEquals(new float[] {1.0f, 3.0f}, statistics.getRecordMin(), 0.0f);
+	}
+
+}
@@ -0,0 +1,114 @@
+package waveformAnalysisForImageJTestPackage;
+
+import waveformAnalysisForImageJ.SlidingMedian;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jnm
+ */
+public class SlidingMedianTest
+{
+
+	/**
+	 * Test of add, remove, replace, lowerMedian and upperMedian methods, of
+	 * class SlidingMedian, against sorting the occupied slots.
+	 */
+	@Test
+	public void testMedians()
+	{
+		System.out.println("lowerMedian/upperMedian");
+		Random random = new Random(3);
+		int capacity = 25;
+		SlidingMedian window = new SlidingMedian(capacity);
+		assertTrue(Double.isNaN(window.lowerMedian()));
+		assertTrue(Double.isNaN(window.upperMedian()));
+
+		double[] values = new double[capacity];
+		boolean[] occupied = new boolean[capacity];
+		for (int step = 0; step < 20000; step++) {
+			int slot = random.nextInt(capacity);
+			// small integers, so that there are many ties
+			double value = random.nextInt(10);
+			if (!occupied[slot]) {
+				window.add(slot, value);
+				occupied[slot] = true;
+				values[slot] = value;
+			} else if (random.nextBoolean()) {
+				window.remove(slot);
+				occupied[slot] = false;
+			} else {
+				window.replace(slot, value);
+				values[slot] = value;
+			}
+
+			double[] sorted = new double[capacity];
+			int size = 0;
+			for (int k = 0; k < capacity; k++) {
+				if (occupied[k]) {
+					sorted[size++] = values[k];
+				}
+			}
+			Arrays.sort(sorted, 0, size);
+			assertEquals(size, window.size());
+			if (size > 0) {
+				assertEquals(sorted[(size - 1) / 2], window.lowerMedian(), 0.0);
+				assertEquals(sorted[size / 2], window.upperMedian(), 0.0);
+			}
+		}
+
+		window.clear();
+		assertEquals(0, window.size());
+	}
+
+	/**
+	 * Test of medianFilter method, of class SlidingMedian.
+	 */
+	@Test
+	public void testMedianFilter()
+	{
+		System.out.println("medianFilter");
+		int[] a = new int[] {5, -1, 3, 8, 8, -1, -1, -1, 2, 7, 1, 4};
+		int radius = 1;
+		int[] expResult = new int[] {5, 4, 5, 8, 8, 8, -1, 2, 4, 2, 4, 2};
+		int[] result = SlidingMedian.medianFilter(a, radius, -1);
+		assertArrayEquals(expResult, result);
+
+		// compare with sorting each (truncated) window
+		Random random = new Random(4);
+		for (int trial = 0; trial < 200; trial++) {
+			a = new int[1 + random.nextInt(60)];
+			for (int i = 0; i < a.length; i++) {
+				a[i] = random.nextInt(4) == 0 ? -1 : random.nextInt(100);
+			}
+			radius = random.nextInt(8);
+			expResult = new int[a.length];
+			for (int i = 0; i < a.length; i++) {
+				int[] window = new int[2 * radius + 1];
+				int size = 0;
+				for (int k = Math.max(0, i - radius); k <= Math.min(a.length - 1, i + radius); k++) {
+					if (a[k] != -1) {
+						window[size++] = a[k];
+					}
+				}
+				Arrays.sort(window, 0, size);
+				if (radius == 0) {
+					expResult[i] = a[i];
+				} else if (size == 0) {
+					expResult[i] = -1;
+				} else if (size % 2 == 1) {
+					expResult[i] = window[(size - 1) / 2];
+				} else {
+					expResult[i] = (window[size / 2] + window[size / 2 - 1]) / 2;
+				}
+			}
+			assertArrayEquals(expResult, SlidingMedian.medianFilter(a, radius, -1));
+		}
+
+		assertNull(SlidingMedian.medianFilter(null, 1, -1));
+	}
+
+}
@@ -0,0 +1,123 @@
+package waveformAnalysisForImageJTestPackage;
+
+import waveformAnalysisForImageJ.ButterworthFilter;
+import waveformAnalysisForImageJ.Envelope;
+import waveformAnalysisForImageJ.SpectralMaximum;
+import waveformAnalysisForImageJ.SpectrumCache;
+import waveformAnalysisForImageJ.WaveformUtils;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jnm
+ */
+public class SpectrumCacheTest
+{
+
+	@After
+	public void tearDown()
+	{
+		SpectrumCache.setEnabled(false);
+		SpectrumCache.setMemoryBudget(SpectrumCache.DEFAULT_MEMORY_BUDGET);
+	}
+
+	private static float[] testWaveforms(int recordLength, int numRecords, double phase)
+	{
+		float[] waveforms = new float[recordLength * numRecords];
+		for (int i = 0; i < waveforms.length; i++) {
+			waveforms[i] = (float) (Math.sin(0.3 * i + phase) + 0.5 * Math.cos(0.01 * i * i) + 0.25);
+		}
+		return waveforms;
+	}
+
+	/**
+	 * Test of getPairedSpectra method, of class SpectrumCache.
+	 */
+	@Test
+	public void testGetPairedSpectra()
+	{
+		System.out.println("getPairedSpectra");
+		float[] pixels = testWaveforms(100, 5, 0.0);
+		float[][] expResult = WaveformUtils.fftPairedWaveforms(pixels, 100, 128);
+
+		// disabled: spectra are computed but not stored
+		float[][] result = SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 128);
+		assertArrayEquals(expResult[0], result[0], 0.0f);
+		assertArrayEquals(expResult[1], result[1], 0.0f);
+		assertEquals(0, SpectrumCache.size());
+
+		// enabled: second request for identical pixels returns the cached spectra
+		SpectrumCache.setEnabled(true);
+		result = SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 128);
+		assertArrayEquals(expResult[0], result[0], 0.0f);
+		assertSame(result, SpectrumCache.getPairedSpectra(1, 1, Arrays.copyOf(pixels, pixels.length), 100, 128));
+		assertEquals(1, SpectrumCache.size());
+		assertEquals(4L * 2 * 3 * 128, SpectrumCache.getMemoryUsed());
+
+		// different slice, transform length, or pixel values are new entries
+		assertNotSame(result, SpectrumCache.getPairedSpectra(1, 2, pixels, 100, 128));
+		assertNotSame(result, SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 100));
+		pixels[17] += 1.0f;
+		assertNotSame(result, SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 128));
+		assertEquals(4, SpectrumCache.size());
+
+		// least recently used entries are evicted to stay within budget
+		SpectrumCache.clear();
+		pixels[17] -= 1.0f;
+		SpectrumCache.setMemoryBudget(2L * 4L * 2 * 3 * 128);
+		float[][] first = SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 128);
+		float[][] second = SpectrumCache.getPairedSpectra(1, 2, pixels, 100, 128);
+		assertSame(first, SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 128));
+		SpectrumCache.getPairedSpectra(1, 3, pixels, 100, 128);
+		assertEquals(2, SpectrumCache.size());
+		assertSame(first, SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 128));
+		assertNotSame(second, SpectrumCache.getPairedSpectra(1, 2, pixels, 100, 128));
+
+		SpectrumCache.setMemoryBudget(0L);
+		assertEquals(0, SpectrumCache.size());
+		assertEquals(0L, SpectrumCache.getMemoryUsed());
+
+		assertNull(SpectrumCache.getPairedSpectra(1, 1, null, 100, 128));
+		assertNull(SpectrumCache.getPairedSpectra(1, 1, pixels, 100, 64));
+	}
+
+	/**
+	 * Test that the spectral plug-ins give the same results from cached
+	 * spectra as from the waveforms.
+	 */
+	@Test
+	public void testCachedSpectraInPlugins()
+	{
+		System.out.println("spectral plug-ins with cached spectra");
+		int recordLength = 100;
+		int numRecords = 5;
+		SpectrumCache.setEnabled(true);
+		for (WaveformUtils.FftLength fftLength : WaveformUtils.FftLength.values()) {
+			int transformLength = fftLength.transformLength(recordLength);
+			float[] pixels = testWaveforms(recordLength, numRecords, fftLength.ordinal());
+			float[][] spectra = SpectrumCache.getPairedSpectra(7, 1, pixels, recordLength, transformLength);
+
+			float[] expResult = SpectralMaximum.execute(pixels, recordLength, 0.01, WaveformUtils.WindowType.RECTANGLE, 0.0, fftLength);
+			float[] result = SpectralMaximum.execute(spectra, numRecords, transformLength, 0.01);
+			assertArrayEquals(expResult, result, 0.0f);
+
+			expResult = Arrays.copyOf(pixels, pixels.length);
+			ButterworthFilter.execute(expResult, recordLength, 0.01, 10.0, 2, true, fftLength);
+			result = Arrays.copyOf(pixels, pixels.length);
+			ButterworthFilter.execute(result, recordLength, 0.01, 10.0, 2, true, transformLength, spectra);
+			assertArrayEquals(expResult, result, 0.0f);
+
+			for (boolean subtractMean : new boolean[]{false, true}) {
+				expResult = Arrays.copyOf(pixels, pixels.length);
+				Envelope.execute(expResult, recordLength, subtractMean, fftLength);
+				result = Arrays.copyOf(pixels, pixels.length);
+				Envelope.execute(result, recordLength, subtractMean, transformLength, spectra);
+				assertArrayEquals(expResult, result, 1e-5f);
+			}
+		}
+	}
+
+}
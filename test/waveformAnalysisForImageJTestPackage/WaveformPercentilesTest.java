@@ -0,0 +1,108 @@
+package waveformAnalysisForImageJTestPackage;
+
+import ij.ImageStack;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.MaximumValue;
+import waveformAnalysisForImageJ.MinimumValue;
+import waveformAnalysisForImageJ.QuantileSketch;
+import waveformAnalysisForImageJ.WaveformPercentiles;
+
+/**
+ *
+ * @author jnm
+ */
+public class WaveformPercentilesTest
+{
+
+	public WaveformPercentilesTest()
+	{
+	}
+
+	/**
+	 * Test of execute method, of class WaveformPercentiles.
+	 */
+	@Test
+	public void testExecute_floatArr_int()
+	{
+		System.out.println("execute");
+		float[] waveforms = new float[] {1.0f, 5.0f, 2.0f, 3.0f, 2.2f, -1.0f, 4.0f, 5.0f, 0.0f, 0.0f, 3.2f, -0.5f, 1.1f, 2.2f, 1.1f, 4.0f};
+		int recordLength = 8;
+		double[] percentiles = new double[] {0.0, 50.0, 100.0};
+		float[] expResult = new float[] {-1.0f, 2.2f, 5.0f, -0.5f, 1.1f, 4.0f};
+		float[] result = WaveformPercentiles.execute(waveforms, recordLength, percentiles);
+		assertArrayEquals(expResult, result, 0.0f);
+
+		assertNull(WaveformPercentiles.execute((float[])null, recordLength, percentiles));
+		assertNull(WaveformPercentiles.execute(waveforms, recordLength, null));
+		assertNull(WaveformPercentiles.execute(waveforms, 5, percentiles));
+	}
+
+	/**
+	 * Test of execute method, of class WaveformPercentiles.
+	 */
+	@Test
+	public void testExecute_doubleArr_int()
+	{
+		System.out.println("execute");
+		Random random = new Random(21);
+		int recordLength = 5000;
+		double[] waveforms = new double[10*recordLength];
+		for (int i = 0; i < waveforms.length; i++) {
+			waveforms[i] = random.nextGaussian();
+		}
+		double[] result = WaveformPercentiles.execute(waveforms, recordLength, new double[] {0.0, 50.0, 99.0, 100.0});
+		double[] minValues = MinimumValue.execute(waveforms, recordLength);
+		double[] maxValues = MaximumValue.execute(waveforms, recordLength);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(minValues[i], result[4*i], 0.0);
+			assertEquals(maxValues[i], result[4*i + 3], 0.0);
+
+			// ranks of the estimates are within 1% of the requested ranks
+			double[] sorted = Arrays.copyOfRange(waveforms, i*recordLength, (i + 1)*recordLength);
+			Arrays.sort(sorted);
+			assertEquals(0.5, (Arrays.binarySearch(sorted, result[4*i + 1]) + 1.0)/recordLength, 0.01);
+			assertEquals(0.99, (Arrays.binarySearch(sorted, result[4*i + 2]) + 1.0)/recordLength, 0.01);
+		}
+	}
+
+	/**
+	 * Test of sketchStack method, of class WaveformPercentiles.
+	 */
+	@Test
+	public void testSketchStack()
+	{
+		System.out.println("sketchStack");
+		ImageStack stack = new ImageStack(10, 10);
+		for (int slice = 0; slice < 4; slice++) {
+			short[] pixels = new short[100];
+			for (int i = 0; i < 100; i++) {
+				pixels[i] = (short)(slice*100 + i);
+			}
+			stack.addSlice("", pixels);
+		}
+		QuantileSketch sketch = WaveformPercentiles.sketchStack(stack);
+		assertEquals(400, sketch.count());
+		assertEquals(0.0, sketch.quantile(0.0), 0.0);
+		assertEquals(399.0, sketch.quantile(1.0), 0.0);
+		assertEquals(200.0, sketch.quantile(0.5), 4.0);
+		assertNull(WaveformPercentiles.sketchStack(null));
+	}
+
+	/**
+	 * Test of parsePercentiles method, of class WaveformPercentiles.
+	 */
+	@Test
+	public void testParsePercentiles()
+	{
+		System.out.println("parsePercentiles");
+		assertArrayEquals(new double[] {1.0, 50.0, 99.5}, WaveformPercentiles.parsePercentiles("1, 50 99.5"), 0.0);
+		assertNull(WaveformPercentiles.parsePercentiles("1 101"));
+		assertNull(WaveformPercentiles.parsePercentiles("1 x"));
+		assertNull(WaveformPercentiles.parsePercentiles(""));
+		assertNull(WaveformPercentiles.parsePercentiles(null));
+	}
+
+}
@@ -0,0 +1,110 @@
+package waveformAnalysisForImageJTestPackage;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import waveformAnalysisForImageJ.Kurtosis;
+import waveformAnalysisForImageJ.MaximumValue;
+import waveformAnalysisForImageJ.MeanValue;
+import waveformAnalysisForImageJ.MinimumValue;
+import waveformAnalysisForImageJ.Range;
+import waveformAnalysisForImageJ.Skewness;
+import waveformAnalysisForImageJ.SumOfSquares;
+import waveformAnalysisForImageJ.Variance;
+import waveformAnalysisForImageJ.WaveformStatistics;
+
+/**
+ *
+ * @author jnm
+ */
+public class WaveformStatisticsTest
+{
+	private static final int[] allStatistics = {WaveformStatistics.MEAN, WaveformStatistics.VARIANCE, WaveformStatistics.SKEWNESS, WaveformStatistics.KURTOSIS, WaveformStatistics.MINIMUM, WaveformStatistics.MAXIMUM, WaveformStatistics.RANGE, WaveformStatistics.SUM_OF_SQUARES};
+
+	public WaveformStatisticsTest()
+	{
+	}
+
+	private static double[] column(double[] results, int numStatistics, int k)
+	{
+		double[] column = new double[results.length/numStatistics];
+		for (int i=0; i<column.length; i++) {
+			column[i] = results[i*numStatistics+k];
+		}
+		return column;
+	}
+
+	private static float[] column(float[] results, int numStatistics, int k)
+	{
+		float[] column = new float[results.length/numStatistics];
+		for (int i=0; i<column.length; i++) {
+			column[i] = results[i*numStatistics+k];
+		}
+		return column;
+	}
+
+	/**
+	 * Test of execute method, of class WaveformStatistics.
+	 */
+	@Test
+	public void testExecute_floatArr_int()
+	{
+		System.out.println("execute");
+		float[] waveforms = new float[] {1.0f, 5.0f, 2.0f, 3.0f, 2.2f, -1.0f, 4.0f, 5.0f, 0.0f, 0.0f, 3.2f, -0.5f, 1.1f, 2.2f, 1.1f, 4.0f};
+		int recordLength = 8;
+		float[] result = WaveformStatistics.execute(waveforms, recordLength, allStatistics, true, false);
+		assertArrayEquals(MeanValue.execute(waveforms, recordLength), column(result, 8, 0), 1e-6f);
+		assertArrayEquals(Variance.execute(waveforms, recordLength, true), column(result, 8, 1), 1e-5f);
+		assertArrayEquals(new float[] {-0.5465406598681920f, 0.5478861364760020f}, column(result, 8, 2), 1e-6f);
+		assertArrayEquals(Kurtosis.execute(waveforms, recordLength), column(result, 8, 3), 1e-5f);
+		assertArrayEquals(MinimumValue.execute(waveforms, recordLength), column(result, 8, 4), 0.0f);
+		assertArrayEquals(MaximumValue.execute(waveforms, recordLength), column(result, 8, 5), 0.0f);
+		assertArrayEquals(Range.execute(waveforms, recordLength), column(result, 8, 6), 0.0f);
+		assertArrayEquals(SumOfSquares.execute(waveforms, recordLength), column(result, 8, 7), 1e-5f);
+
+		// subset in arbitrary order
+		int[] statistics = new int[] {WaveformStatistics.SKEWNESS, WaveformStatistics.MINIMUM};
+		result = WaveformStatistics.execute(waveforms, recordLength, statistics, false, true);
+		assertArrayEquals(new float[] {-0.43820740653602647f, -1.0f, 0.4392861877835291f, -0.5f}, result, 1e-6f);
+
+		assertNull(WaveformStatistics.execute((float[])null, recordLength, statistics, false, true));
+		assertNull(WaveformStatistics.execute(waveforms, recordLength, null, false, true));
+		assertNull(WaveformStatistics.execute(waveforms, 0, statistics, false, true));
+		assertNull(WaveformStatistics.execute(waveforms, 5, statistics, false, true));
+		assertNull(WaveformStatistics.execute(waveforms, recordLength, new int[] {8}, false, true));
+	}
+
+	/**
+	 * Test of execute method, of class WaveformStatistics.
+	 */
+	@Test
+	public void testExecute_doubleArr_int()
+	{
+		System.out.println("execute");
+		Random random = new Random(15);
+		int recordLength = 100;
+		double[] waveforms = new double[20*recordLength];
+		for (int i=0; i<waveforms.length; i++) {
+			waveforms[i] = random.nextGaussian() + 0.1*i/recordLength;
+		}
+		for (int b=0; b<2; b++) {
+			boolean flag = b == 0;
+			double[] result = WaveformStatistics.execute(waveforms, recordLength, allStatistics, flag, flag);
+			assertArrayEquals(MeanValue.execute(waveforms, recordLength), column(result, 8, 0), 1e-12);
+			assertArrayEquals(Variance.execute(waveforms, recordLength, flag), column(result, 8, 1), 1e-12);
+			// Skewness rounds its double results to float precision
+			assertArrayEquals(Skewness.execute(waveforms, recordLength, flag), column(result, 8, 2), 1e-6);
+			assertArrayEquals(Kurtosis.execute(waveforms, recordLength), column(result, 8, 3), 1e-12);
+			assertArrayEquals(MinimumValue.execute(waveforms, recordLength), column(result, 8, 4), 0.0);
+			assertArrayEquals(MaximumValue.execute(waveforms, recordLength), column(result, 8, 5), 0.0);
+			assertArrayEquals(Range.execute(waveforms, recordLength), column(result, 8, 6), 0.0);
+			assertArrayEquals(SumOfSquares.execute(waveforms, recordLength), column(result, 8, 7), 1e-10);
+		}
+
+		double[] result = WaveformStatistics.execute(waveforms, recordLength, new int[] {WaveformStatistics.RANGE}, false, false);
+		assertArrayEquals(Range.execute(waveforms, recordLength), result, 0.0);
+		assertEquals(0, WaveformStatistics.execute(waveforms, recordLength, new int[0], false, false).length);
+		assertNull(WaveformStatistics.execute((double[])null, recordLength, allStatistics, false, false));
+	}
+
+}
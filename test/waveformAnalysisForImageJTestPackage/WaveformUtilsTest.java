@@ -1,7 +1,20 @@
 package waveformAnalysisForImageJTestPackage;
 
+import ij.Prefs;
+import waveformAnalysisForImageJ.AlignWaveforms;
+import waveformAnalysisForImageJ.BinomialFilter;
+import waveformAnalysisForImageJ.ButterworthFilter;
+import waveformAnalysisForImageJ.Envelope;
+import waveformAnalysisForImageJ.FftPlan;
+import waveformAnalysisForImageJ.MovingWindowMedian;
+import waveformAnalysisForImageJ.MovingWindowVariance;
+import waveformAnalysisForImageJ.MovingWindowWeightedAverage;
+import waveformAnalysisForImageJ.RecordPartitioner;
 import waveformAnalysisForImageJ.WaveformUtils;
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assume;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -495,6 +508,108 @@ public class WaveformUtilsTest
 		assertArrayEquals(a, aSorted, 0.0f);
 	}
 
+	/**
+	 * Test of selectInPlace method, of class WaveformUtils.
+	 */
+	@Test
+	public void testSelectInPlace_doubleArr()
+	{
+		System.out.println("selectInPlace");
+		Random random = new Random(17);
+		int[] lengths = new int[]{1, 2, 3, 7, 64, 1001};
+		for (int l = 0; l < lengths.length; l++) {
+			int n = lengths[l];
+			double[] a = new double[n + 4];
+			for (int trial = 0; trial < 10; trial++) {
+				for (int i = 0; i < a.length; i++) {
+					// few distinct values in odd trials, to exercise runs of equal values
+					a[i] = trial % 2 == 0 ? random.nextGaussian() : random.nextInt(3);
+				}
+				if (trial == 4) {
+					a[2] = Double.NaN;
+					a[n] = Double.NaN;
+				}
+				double[] aSorted = Arrays.copyOfRange(a, 2, n + 2);
+				Arrays.sort(aSorted);
+				int k = random.nextInt(n);
+				double[] b = a.clone();
+				assertEquals(aSorted[k], WaveformUtils.selectInPlace(b, 2, n + 2, k), 0.0);
+				for (int i = 2; i < n + 2; i++) {
+					if (i < k + 2) {
+						assertFalse(b[i] > b[k + 2]);
+					} else if (i > k + 2) {
+						assertFalse(b[i] < b[k + 2]);
+					}
+				}
+				assertEquals(a[0], b[0], 0.0);
+				assertEquals(a[n + 3], b[n + 3], 0.0);
+				double[] bSorted = Arrays.copyOfRange(b, 2, n + 2);
+				Arrays.sort(bSorted);
+				assertArrayEquals(aSorted, bSorted, 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Test of selectInPlace method, of class WaveformUtils.
+	 */
+	@Test
+	public void testSelectInPlace_floatArr()
+	{
+		System.out.println("selectInPlace");
+		Random random = new Random(18);
+		float[] a = new float[1000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = (float)random.nextGaussian();
+		}
+		float[] aSorted = a.clone();
+		Arrays.sort(aSorted);
+		int[] ranks = new int[]{0, 1, 499, 500, 998, 999};
+		for (int r = 0; r < ranks.length; r++) {
+			assertEquals(aSorted[ranks[r]], WaveformUtils.selectInPlace(a.clone(), 0, a.length, ranks[r]), 0.0f);
+		}
+
+		// already sorted and reversed input
+		float[] b = aSorted.clone();
+		assertEquals(aSorted[300], WaveformUtils.selectInPlace(b, 0, b.length, 300), 0.0f);
+		for (int i = 0; i < b.length; i++) {
+			b[i] = aSorted[b.length - 1 - i];
+		}
+		assertEquals(aSorted[700], WaveformUtils.selectInPlace(b, 0, b.length, 700), 0.0f);
+
+		b = new float[]{2.0f, Float.NaN, 1.0f};
+		assertTrue(Float.isNaN(WaveformUtils.selectInPlace(b, 0, 3, 2)));
+		assertEquals(2.0f, WaveformUtils.selectInPlace(b, 0, 3, 1), 0.0f);
+	}
+
+	/**
+	 * Test that median agrees with the middle values of a sorted copy.
+	 */
+	@Test
+	public void testMedian_randomRanges()
+	{
+		System.out.println("median");
+		Random random = new Random(19);
+		for (int n = 1; n < 200; n += 7) {
+			float[] a = new float[n];
+			double[] b = new double[n];
+			for (int i = 0; i < n; i++) {
+				a[i] = random.nextInt(20);
+				b[i] = random.nextGaussian();
+			}
+			float[] aCopy = a.clone();
+			float[] aSorted = a.clone();
+			Arrays.sort(aSorted);
+			double[] bSorted = b.clone();
+			Arrays.sort(bSorted);
+			float expA = n % 2 == 0 ? 0.5f * (aSorted[n / 2] + aSorted[n / 2 - 1]) : aSorted[n / 2];
+			double expB = n % 2 == 0 ? 0.5 * (bSorted[n / 2] + bSorted[n / 2 - 1]) : bSorted[n / 2];
+			assertEquals(expA, WaveformUtils.median(a), 0.0f);
+			assertEquals(expB, WaveformUtils.median(b), 0.0);
+			assertArrayEquals(aCopy, a, 0.0f);
+		}
+	}
+
 	/**
 	 * Test of fftComplexPowerOf2 method, of class WaveformUtils.
 	 */
@@ -592,6 +707,38 @@ public class WaveformUtilsTest
 		
 	}	
 	
+	/**
+	 * Test of fftRealHalfSpectrumForward method, of class WaveformUtils.
+	 */
+	@Test
+	public void testFftRealHalfSpectrumForward()
+	{
+		System.out.println("fftRealHalfSpectrumForward");
+		double[] a = new double[]{0.0, 1, 4, 3, -2, -2.2, 0, 3, -1};
+		double[] re = new double[5];
+		double[] im = new double[5];
+		WaveformUtils.fftRealHalfSpectrumForward(a, 1, 9, re, im);
+		double[] expResultRe = new double[]{5.8, 6.7355339059327379, -7.2, -0.3355339059327377, 3.8};
+		double[] expResultIm = new double[]{0.0, -2.1213203435596428, -7.0, -2.1213203435596428, 0.0};
+		assertArrayEquals(expResultRe, re, Math.ulp(10.0));
+		assertArrayEquals(expResultIm, im, Math.ulp(10.0));
+	}
+
+	/**
+	 * Test of fftRealHalfSpectrumInverse method, of class WaveformUtils.
+	 */
+	@Test
+	public void testFftRealHalfSpectrumInverse()
+	{
+		System.out.println("fftRealHalfSpectrumInverse");
+		double[] re = new double[]{5.8, 6.7355339059327379, -7.2, -0.3355339059327377, 3.8};
+		double[] im = new double[]{0.0, -2.1213203435596428, -7.0, -2.1213203435596428, 0.0};
+		double[] a = new double[9];
+		WaveformUtils.fftRealHalfSpectrumInverse(re, im, a, 1, 9);
+		double[] expResult = new double[]{0.0, 1, 4, 3, -2, -2.2, 0, 3, -1};
+		assertArrayEquals(expResult, a, Math.ulp(10.0));
+	}
+
 	/**
 	 * Test of hilbertTransform method, of class WaveformUtils.
 	 */
@@ -611,6 +758,138 @@ public class WaveformUtilsTest
 
 	}
 
+	/**
+	 * Test of fastHilbertTransform method for lengths that are not powers of
+	 * 2, of class WaveformUtils.
+	 */
+	@Test
+	public void testFastHilbertTransform()
+	{
+		System.out.println("fastHilbertTransform");
+		double[] a = new double[]{1.0, -1.0, 2.0, -2.0, 3.0, -2.0, -1.0, 1.0, -1.0, 2.0};
+		WaveformUtils.fastHilbertTransform(a, true);
+		double[] expResult = new double[]{2.282535639108367, -1.1967707298393406, 1.1967707298393404, -0.32491969623290606, -0.29061701120214467, 2.89807234654342, -2.42784414470944, 0.2906170112021448, -0.7608452130361234, -1.6669989316733165};
+		assertArrayEquals(expResult, a, 1e-14);
+
+		a = new double[]{1.0, -1.0, 2.0, -2.0, 3.0, -2.0, -1.0, 1.0, -1.0};
+		WaveformUtils.fastHilbertTransform(a, true);
+		expResult = new double[]{0.6990576886357207, -1.1487170333554388, 0.7170082037071593, -0.09921679737684579, -0.6926901755878797, 3.4057099629256276, -2.909241968017379, 1.2640569397536912, -1.235966820684656};
+		assertArrayEquals(expResult, a, 1e-14);
+	}
+
+	/**
+	 * Test of fastHilbertTransform method for single-precision input, of
+	 * class WaveformUtils. Results must agree with the double-precision
+	 * transform to within a few float ulps of the largest value.
+	 */
+	@Test
+	public void testFastHilbertTransform_floatArr()
+	{
+		System.out.println("fastHilbertTransform, floats");
+		for (int n : new int[]{8, 10, 9, 2048}) {
+			double[] a = new double[n];
+			float[] aFloat = new float[n];
+			for (int i = 0; i < n; i++) {
+				aFloat[i] = (float) (a[i] = Math.sin(0.3 * i) + 0.5 * Math.cos(1.7 * i));
+			}
+			WaveformUtils.fastHilbertTransform(a, true);
+			WaveformUtils.fastHilbertTransform(aFloat, true);
+			for (int i = 0; i < n; i++) {
+				assertEquals(a[i], aFloat[i], 8 * Math.ulp(2.0f));
+			}
+		}
+	}
+
+	/**
+	 * Test of freqDomainFilter method for single-precision input, of class
+	 * WaveformUtils.
+	 */
+	@Test
+	public void testFreqDomainFilter_floatArr()
+	{
+		System.out.println("freqDomainFilter, floats");
+		int n = 12;
+		double[] a = new double[n];
+		float[] aFloat = new float[n];
+		double[] coeffs = new double[n];
+		float[] coeffsFloat = new float[n];
+		for (int i = 0; i < n; i++) {
+			aFloat[i] = (float) (a[i] = Math.sin(0.3 * i) + 0.5 * Math.cos(1.7 * i));
+			coeffsFloat[i] = (float) (coeffs[i] = 1.0 / (1.0 + Math.min(i, n - i)));
+		}
+		double[] expResult = WaveformUtils.freqDomainFilter(a, coeffs);
+		float[] result = WaveformUtils.freqDomainFilter(aFloat, coeffsFloat);
+		for (int i = 0; i < n; i++) {
+			assertEquals(expResult[i], result[i], 4 * Math.ulp(2.0f));
+		}
+
+		WaveformUtils.freqDomainFilterMultipleWaveformsInPlace(aFloat, n, coeffsFloat);
+		assertArrayEquals(result, aFloat, 0.0f);
+	}
+
+	/**
+	 * Test of fftComplex method, of class WaveformUtils.
+	 */
+	@Test
+	public void testFftComplex()
+	{
+		System.out.println("fftComplex");
+		double[] ar = new double[]{7.0, 1.0, 2.0, 0.0, 1.0, 1.0, 0.0};
+		double[] ai = new double[ar.length];
+		WaveformUtils.fftComplex(ar, ai, 1, 7, true);
+		double[] expResultRe = new double[]{7.0, 5.0, 0.5, 0.5, -1.0, 0.5, 0.5};
+		double[] expResultIm = new double[]{0.0, 0.0, -0.8660254037844386, -2.598076211353316, 0.0, 2.598076211353316, 0.8660254037844386};
+		assertArrayEquals(expResultRe, ar, 1e-14);
+		assertArrayEquals(expResultIm, ai, 1e-14);
+
+		WaveformUtils.fftComplex(ar, ai, 1, 7, false);
+		expResultRe = new double[]{7.0, 1.0, 2.0, 0.0, 1.0, 1.0, 0.0};
+		expResultIm = new double[ar.length];
+		assertArrayEquals(expResultRe, ar, 1e-14);
+		assertArrayEquals(expResultIm, ai, 1e-14);
+	}
+
+	/**
+	 * Test of fftComplexMultipleWaveformsInPlace method, of class
+	 * WaveformUtils.
+	 */
+	@Test
+	public void testFftComplexMultipleWaveformsInPlace()
+	{
+		System.out.println("fftComplexMultipleWaveformsInPlace");
+		int recordLength = 8;
+		int numRecords = 37;
+		double[] ar = new double[recordLength * numRecords];
+		double[] ai = new double[ar.length];
+		float[] arFloat = new float[ar.length];
+		float[] aiFloat = new float[ar.length];
+		for (int i = 0; i < ar.length; i++) {
+			arFloat[i] = (float) (ar[i] = Math.sin(0.37 * i));
+			aiFloat[i] = (float) (ai[i] = Math.cos(1.1 * i));
+		}
+		double[] expResultRe = Arrays.copyOf(ar, ar.length);
+		double[] expResultIm = Arrays.copyOf(ai, ai.length);
+		for (int i = 0; i < numRecords; i++) {
+			WaveformUtils.fftComplexPowerOf2(expResultRe, expResultIm, i * recordLength, (i + 1) * recordLength, true);
+		}
+
+		WaveformUtils.fftComplexMultipleWaveformsInPlace(ar, ai, recordLength, true);
+		assertArrayEquals(expResultRe, ar, 1e-14);
+		assertArrayEquals(expResultIm, ai, 1e-14);
+
+		WaveformUtils.fftComplexMultipleWaveformsInPlace(arFloat, aiFloat, recordLength, true);
+		for (int i = 0; i < ar.length; i++) {
+			assertEquals(expResultRe[i], arFloat[i], 1e-5);
+			assertEquals(expResultIm[i], aiFloat[i], 1e-5);
+		}
+
+		WaveformUtils.fftComplexMultipleWaveformsInPlace(ar, ai, recordLength, false);
+		for (int i = 0; i < ar.length; i++) {
+			assertEquals(Math.sin(0.37 * i), ar[i], 1e-14);
+			assertEquals(Math.cos(1.1 * i), ai[i], 1e-14);
+		}
+	}
+
 	/**
 	 * Test of isPowerOf2 method, of class WaveformUtils.
 	 */
@@ -652,6 +931,36 @@ public class WaveformUtilsTest
 		assertEquals(expResult, result);
 	}
 
+	/**
+	 * Test of nextFastFftLength method, of class WaveformUtils.
+	 */
+	@Test
+	public void testNextFastFftLength()
+	{
+		System.out.println("nextFastFftLength");
+		assertEquals(1, WaveformUtils.nextFastFftLength(0));
+		assertEquals(1, WaveformUtils.nextFastFftLength(1));
+		assertEquals(8, WaveformUtils.nextFastFftLength(7));
+		assertEquals(512, WaveformUtils.nextFastFftLength(509));
+		assertEquals(512, WaveformUtils.nextFastFftLength(512));
+		assertEquals(2160, WaveformUtils.nextFastFftLength(2100));
+		assertEquals(2187, WaveformUtils.nextFastFftLength(2161));
+		assertEquals(1000000, WaveformUtils.nextFastFftLength(999999));
+	}
+
+	/**
+	 * Test of FftLength enumeration, of class WaveformUtils.
+	 */
+	@Test
+	public void testFftLength()
+	{
+		System.out.println("FftLength");
+		assertEquals(4096, WaveformUtils.FftLength.NEXT_POWER_OF_2.transformLength(2100));
+		assertEquals(2160, WaveformUtils.FftLength.NEXT_FAST_LENGTH.transformLength(2100));
+		assertEquals(2100, WaveformUtils.FftLength.RECORD_LENGTH.transformLength(2100));
+		assertEquals(WaveformUtils.FftLength.values().length, WaveformUtils.FftLength.stringValues().length);
+	}
+
 	/**
 	 * Test of padToPowerOf2 method, of class WaveformUtils.
 	 */
@@ -1008,6 +1317,241 @@ public class WaveformUtilsTest
 		assertArrayEquals(a, expResult, 0.0f);
 	}
 
+	/**
+	 * Test of freqDomainFilterPairedWaveformsInPlace method, of class
+	 * WaveformUtils, for an odd number of records and zero padding.
+	 */
+	@Test
+	public void testFreqDomainFilterPairedWaveformsInPlace()
+	{
+		System.out.println("freqDomainFilterPairedWaveformsInPlace");
+		int recordLength = 10;
+		int transformLength = 16;
+		int numRecords = 3;
+		double[] waveforms = new double[recordLength * numRecords];
+		for (int i = 0; i < waveforms.length; i++) {
+			waveforms[i] = Math.sin(0.3 * i) + 0.5 * Math.cos(1.7 * i);
+		}
+		double[] coeffs = new double[transformLength];
+		for (int k = 0; k < transformLength; k++) {
+			coeffs[k] = 1.0 / (1.0 + Math.min(k, transformLength - k));
+		}
+
+		// reference: each record padded and filtered separately
+		double[] expResult = new double[waveforms.length];
+		for (int i = 0; i < numRecords; i++) {
+			double[] padded = Arrays.copyOfRange(waveforms, i * recordLength, i * recordLength + transformLength);
+			Arrays.fill(padded, recordLength, transformLength, 0.0);
+			double[] filtered = WaveformUtils.freqDomainFilter(padded, coeffs);
+			System.arraycopy(filtered, 0, expResult, i * recordLength, recordLength);
+		}
+
+		float[] waveformsFloat = new float[waveforms.length];
+		float[] coeffsFloat = new float[transformLength];
+		for (int i = 0; i < waveforms.length; i++) {
+			waveformsFloat[i] = (float) waveforms[i];
+		}
+		for (int k = 0; k < transformLength; k++) {
+			coeffsFloat[k] = (float) coeffs[k];
+		}
+
+		WaveformUtils.freqDomainFilterPairedWaveformsInPlace(waveforms, recordLength, transformLength, coeffs, null);
+		assertArrayEquals(expResult, waveforms, 1e-14);
+
+		WaveformUtils.freqDomainFilterPairedWaveformsInPlace(waveformsFloat, recordLength, transformLength, coeffsFloat, null);
+		for (int i = 0; i < waveforms.length; i++) {
+			assertEquals(expResult[i], waveformsFloat[i], 4 * Math.ulp(2.0f));
+		}
+
+		// a Hilbert transform response must reproduce fastHilbertTransform
+		int n = 9;
+		double[] a = new double[]{1.0, -1.0, 2.0, -2.0, 3.0, -2.0, -1.0, 1.0, -1.0, 2.0, 0.5, -0.5, 1.0, 2.0, 0.0, 1.0, -3.0, 1.0};
+		double[] responseRe = new double[n];
+		double[] responseIm = new double[n];
+		for (int k = 1; 2 * k < n; k++) {
+			responseIm[k] = -1.0;
+			responseIm[n - k] = 1.0;
+		}
+		expResult = Arrays.copyOf(a, a.length);
+		for (int i = 0; i < 2; i++) {
+			double[] record = Arrays.copyOfRange(a, i * n, (i + 1) * n);
+			WaveformUtils.fastHilbertTransform(record, true);
+			System.arraycopy(record, 0, expResult, i * n, n);
+		}
+		WaveformUtils.freqDomainFilterPairedWaveformsInPlace(a, n, n, responseRe, responseIm);
+		assertArrayEquals(expResult, a, 1e-14);
+	}
+
+	/**
+	 * Test of powerSpectrumPairedWaveforms method, of class WaveformUtils,
+	 * for an odd number of records and zero padding.
+	 */
+	@Test
+	public void testPowerSpectrumPairedWaveforms()
+	{
+		System.out.println("powerSpectrumPairedWaveforms");
+		int recordLength = 7;
+		int numRecords = 5;
+		for (int transformLength : new int[]{7, 8, 9}) {
+			int halfLength = transformLength / 2;
+			double[] waveforms = new double[recordLength * numRecords];
+			float[] waveformsFloat = new float[waveforms.length];
+			for (int i = 0; i < waveforms.length; i++) {
+				waveformsFloat[i] = (float) (waveforms[i] = Math.sin(0.3 * i * i) + 0.5 * Math.cos(1.7 * i));
+			}
+
+			// reference: half spectrum of each record computed separately
+			double[] expResult = new double[numRecords * (halfLength + 1)];
+			double[] re = new double[halfLength + 1];
+			double[] im = new double[halfLength + 1];
+			for (int i = 0; i < numRecords; i++) {
+				double[] padded = Arrays.copyOfRange(waveforms, i * recordLength, i * recordLength + transformLength);
+				Arrays.fill(padded, recordLength, transformLength, 0.0);
+				WaveformUtils.fftRealHalfSpectrumForward(padded, 0, transformLength, re, im);
+				for (int k = 0; k <= halfLength; k++) {
+					expResult[i * (halfLength + 1) + k] = re[k] * re[k] + im[k] * im[k];
+				}
+			}
+
+			double[] result = WaveformUtils.powerSpectrumPairedWaveforms(waveforms, recordLength, transformLength);
+			assertArrayEquals(expResult, result, 1e-12);
+
+			float[] resultFloat = WaveformUtils.powerSpectrumPairedWaveforms(waveformsFloat, recordLength, transformLength);
+			for (int i = 0; i < expResult.length; i++) {
+				assertEquals(expResult[i], resultFloat[i], 1e-5);
+			}
+		}
+
+		assertNull(WaveformUtils.powerSpectrumPairedWaveforms(new double[8], 8, 4));
+	}
+
+	/**
+	 * Test of movingWindowWeightedSumOverlapSave method, of class WaveformUtils.
+	 */
+	@Test
+	public void testMovingWindowWeightedSumOverlapSave()
+	{
+		System.out.println("movingWindowWeightedSumOverlapSave");
+		double[] waveforms = new double[] {1.0, 5.0, 2.0, 3.0, 2.2, -1.0, 4.0, 5.0, 0.0, 0.0, 3.2, -0.5, 1.1, 2.2, 1.1, 4.0};
+		double[] weights = new double[] {0.5, 0.25, 0.125};
+		// mirrored ends, as in MovingWindowWeightedAverage
+		double[] expResult = new double[] {3.5, 4.25, 3.4, 3.05, 2.35, 2.05, 3.775, 4.25, 0.8, 0.7375, 1.6125, 1.1, 1.5125, 2.0875, 2.375, 3.1};
+		double[] result = WaveformUtils.movingWindowWeightedSumOverlapSave(waveforms, 8, weights);
+		assertArrayEquals(expResult, result, 1e-14);
+
+		assertNull(WaveformUtils.movingWindowWeightedSumOverlapSave(null, 8, weights));
+		assertNull(WaveformUtils.movingWindowWeightedSumOverlapSave(waveforms, 8, null));
+		assertNull(WaveformUtils.movingWindowWeightedSumOverlapSave(waveforms, 8, new double[0]));
+		assertNull(WaveformUtils.movingWindowWeightedSumOverlapSave(waveforms, 5, weights));
+		assertNull(WaveformUtils.movingWindowWeightedSumOverlapSave(waveforms, 16, new double[9]));
+	}
+
+	/**
+	 * Test of movingWindowWeightedSumOverlapSaveInPlace method, of class
+	 * WaveformUtils.
+	 */
+	@Test
+	public void testMovingWindowWeightedSumOverlapSaveInPlace()
+	{
+		System.out.println("movingWindowWeightedSumOverlapSaveInPlace");
+		// enough records to be filtered in several batches
+		int numRecords = 70;
+		int recordLength = 300;
+		double[] weights = new double[21];
+		for (int k=0; k<weights.length; k++) {
+			weights[k] = 1.0/(k + 1);
+		}
+		Random random = new Random(3);
+		double[] waveforms = new double[numRecords*recordLength];
+		float[] floatWaveforms = new float[waveforms.length];
+		for (int i=0; i<waveforms.length; i++) {
+			floatWaveforms[i] = (float)random.nextGaussian();
+			waveforms[i] = floatWaveforms[i];
+		}
+
+		// direct summation, with the record values reflected around the end points
+		int radius = weights.length - 1;
+		double[] expResult = new double[waveforms.length];
+		double[] expSquares = new double[waveforms.length];
+		for (int i=0; i<numRecords; i++) {
+			for (int j=0; j<recordLength; j++) {
+				for (int k=-radius; k<=radius; k++) {
+					int index = Math.abs(j + k);
+					if (index > recordLength - 1) {
+						index = 2*(recordLength - 1) - index;
+					}
+					double x = waveforms[i*recordLength + index];
+					expResult[i*recordLength + j] += weights[Math.abs(k)]*x;
+					expSquares[i*recordLength + j] += weights[Math.abs(k)]*x*x;
+				}
+			}
+		}
+
+		assertArrayEquals(expResult, WaveformUtils.movingWindowWeightedSumOverlapSave(waveforms, recordLength, weights), 1e-12);
+		double[] squares = Arrays.copyOf(waveforms, waveforms.length);
+		WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(squares, recordLength, weights, true);
+		assertArrayEquals(expSquares, squares, 1e-12);
+
+		float[] floatSums = Arrays.copyOf(floatWaveforms, floatWaveforms.length);
+		WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(floatSums, recordLength, weights, false);
+		for (int i=0; i<waveforms.length; i++) {
+			assertEquals((float)expResult[i], floatSums[i], 1e-5f);
+		}
+
+		// invalid input is left unchanged
+		float[] unchanged = Arrays.copyOf(floatWaveforms, floatWaveforms.length);
+		WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(unchanged, recordLength + 1, weights, false);
+		WaveformUtils.movingWindowWeightedSumOverlapSaveInPlace(unchanged, recordLength, new double[0], false);
+		assertArrayEquals(floatWaveforms, unchanged, 0.0f);
+	}
+
+	/**
+	 * Test of fftPairedWaveforms, freqDomainFilterPairedSpectra and
+	 * powerSpectrumPairedSpectra methods, of class WaveformUtils.
+	 */
+	@Test
+	public void testFftPairedWaveforms()
+	{
+		System.out.println("fftPairedWaveforms");
+		int recordLength = 7;
+		int numRecords = 5;
+		for (int transformLength : new int[]{7, 8, 9}) {
+			float[] waveforms = new float[recordLength * numRecords];
+			for (int i = 0; i < waveforms.length; i++) {
+				waveforms[i] = (float) (Math.sin(0.3 * i * i) + 0.5 * Math.cos(1.7 * i));
+			}
+			float[] waveformsCopy = Arrays.copyOf(waveforms, waveforms.length);
+
+			float[][] spectra = WaveformUtils.fftPairedWaveforms(waveforms, recordLength, transformLength);
+			assertArrayEquals(waveformsCopy, waveforms, 0.0f);
+			assertEquals(3 * transformLength, spectra[0].length);
+			assertEquals(3 * transformLength, spectra[1].length);
+
+			float[] expResult = WaveformUtils.powerSpectrumPairedWaveforms(waveforms, recordLength, transformLength);
+			float[] result = WaveformUtils.powerSpectrumPairedSpectra(spectra[0], spectra[1], numRecords, transformLength);
+			assertArrayEquals(expResult, result, 0.0f);
+
+			// Hilbert transform response (Hermitian)
+			float[] responseRe = new float[transformLength];
+			float[] responseIm = new float[transformLength];
+			for (int k = 1; 2 * k < transformLength; k++) {
+				responseIm[k] = -1.0f;
+				responseIm[transformLength - k] = 1.0f;
+			}
+			float[][] spectraCopy = new float[][]{Arrays.copyOf(spectra[0], spectra[0].length), Arrays.copyOf(spectra[1], spectra[1].length)};
+			expResult = Arrays.copyOf(waveforms, waveforms.length);
+			WaveformUtils.freqDomainFilterPairedWaveformsInPlace(expResult, recordLength, transformLength, responseRe, responseIm);
+			result = new float[waveforms.length];
+			WaveformUtils.freqDomainFilterPairedSpectra(spectra[0], spectra[1], result, recordLength, transformLength, responseRe, responseIm);
+			assertArrayEquals(expResult, result, 0.0f);
+			assertArrayEquals(spectraCopy[0], spectra[0], 0.0f);
+			assertArrayEquals(spectraCopy[1], spectra[1], 0.0f);
+		}
+
+		assertNull(WaveformUtils.fftPairedWaveforms(new float[8], 8, 4));
+		assertNull(WaveformUtils.powerSpectrumPairedSpectra(new float[8], new float[8], 5, 4));
+	}
+
 	/**
 	 * Test of maxIndex method, of class WaveformUtils.
 	 */
@@ -2096,4 +2640,166 @@ public class WaveformUtilsTest
 		System.out.println("a="+a+", b="+b+", c="+c+", expected roots: "+Arrays.toString(expResult));
 		assertArrayEquals(expResult, result, Math.ulp(1.0));
 	}
+
+	/**
+	 * Test of the Scratch class, of class WaveformUtils.
+	 */
+	@Test
+	public void testScratch()
+	{
+		System.out.println("scratch");
+		WaveformUtils.Scratch scratch = WaveformUtils.scratch();
+		int mark = scratch.mark();
+		double[] a = scratch.doubles(100);
+		float[] b = scratch.floats(10);
+		double[] c = scratch.doubles(100);
+		assertTrue(a.length >= 100 && b.length >= 10 && c.length >= 100);
+		assertNotSame(a, c);
+		scratch.release(mark);
+
+		// arrays are reused after release, for requests in the same size class
+		assertSame(a, scratch.doubles(90));
+		assertSame(b, scratch.floats(12));
+		int nestedMark = scratch.mark();
+		assertSame(c, scratch.doubles(120));
+		scratch.release(nestedMark);
+		scratch.release(mark);
+		assertEquals(mark, scratch.mark());
+
+		// very long arrays are not retained
+		int length = WaveformUtils.Scratch.MAX_POOLED_LENGTH + 1;
+		double[] d = scratch.doubles(length);
+		assertEquals(length, d.length);
+		scratch.release(mark);
+		assertNotSame(d, scratch.doubles(length));
+		scratch.release(mark);
+	}
+
+	/**
+	 * Test that the per-record loops of kernels that borrow scratch arrays
+	 * allocate nothing once the pool has been filled: the number of bytes
+	 * allocated per call must not depend on the number of records, whether
+	 * the records are processed serially or split across threads (in which
+	 * case the bytes allocated by all threads are counted).
+	 */
+	@Test
+	public void testScratch_allocationFree()
+	{
+		System.out.println("scratch (allocation rate)");
+		try {
+			Class.forName("com.sun.management.ThreadMXBean");
+		} catch (ClassNotFoundException e) {
+			Assume.assumeNoException(e);
+		}
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		int recordLength = 100;
+		final float[] seed = new float[recordLength];
+		Random random = new Random(2);
+		for (int j=0; j<recordLength; j++) {
+			seed[j] = (float)random.nextGaussian();
+		}
+		int threads = Prefs.getThreads();
+		try {
+			Prefs.setThreads(4);
+			int parallelRecords = 2*RecordPartitioner.MIN_PARALLEL_POINTS/recordLength;
+			assertEquals(1, RecordPartitioner.numThreads(128, recordLength));
+			assertEquals(4, RecordPartitioner.numThreads(parallelRecords, recordLength));
+			for (int kernel=0; kernel<9; kernel++) {
+				long fewRecords = bytesPerCall(threadBean, kernel, 8, recordLength, seed);
+				long manyRecords = bytesPerCall(threadBean, kernel, 128, recordLength, seed);
+				System.out.println("kernel " + kernel + ": " + fewRecords + " and " + manyRecords + " bytes per call");
+				// a per-record temporary would add at least 120*recordLength bytes per call
+				assertTrue(manyRecords - fewRecords < 1024);
+
+				// above the parallel threshold, a per-chunk copy would add at least 3*parallelRecords*recordLength bytes per call
+				fewRecords = bytesPerCall(threadBean, kernel, parallelRecords, recordLength, seed);
+				manyRecords = bytesPerCall(threadBean, kernel, 4*parallelRecords, recordLength, seed);
+				System.out.println("kernel " + kernel + " (parallel): " + fewRecords + " and " + manyRecords + " bytes per call");
+				assertTrue(manyRecords - fewRecords < 1024);
+			}
+		} finally {
+			Prefs.setThreads(threads);
+		}
+	}
+
+	// average number of bytes allocated by all threads per call of a kernel, after warming up
+	private static long bytesPerCall(com.sun.management.ThreadMXBean threadBean, int kernel, int numRecords, int recordLength, float[] seed)
+	{
+		float[] waveforms = new float[numRecords*recordLength];
+		Random random = new Random(1);
+		for (int i=0; i<waveforms.length; i++) {
+			waveforms[i] = (float)random.nextGaussian();
+		}
+		float[] imag = new float[waveforms.length];
+		FftPlan mixedRadixPlan = FftPlan.getInstance(recordLength);
+		FftPlan bluesteinPlan = FftPlan.getInstance(recordLength + 1);
+		float[] ar = new float[recordLength + 1];
+		float[] ai = new float[recordLength + 1];
+
+		int numCalls = 200;
+		long start = 0;
+		for (int call=0; call<2*numCalls; call++) {
+			if (call == numCalls) {
+				start = allocatedBytes(threadBean);
+			}
+			switch (kernel) {
+				case 0:
+					MovingWindowVariance.execute(waveforms, recordLength, 5, true);
+					break;
+				case 1:
+					BinomialFilter.execute(waveforms, recordLength, 2);
+					break;
+				case 2:
+					MovingWindowMedian.execute(waveforms, recordLength, 5);
+					break;
+				case 3:
+					AlignWaveforms.execute(waveforms, seed, 0, recordLength);
+					break;
+				case 4:
+					Envelope.execute(waveforms, recordLength, true, WaveformUtils.FftLength.NEXT_FAST_LENGTH);
+					break;
+				case 5:
+					ButterworthFilter.execute(waveforms, recordLength, 0.1, 2.0, 2, true, WaveformUtils.FftLength.RECORD_LENGTH);
+					break;
+				case 6:
+					// mixed-radix and Bluestein transforms of each record
+					for (int i=0; i<numRecords; i++) {
+						System.arraycopy(waveforms, i*recordLength, ar, 0, recordLength);
+						mixedRadixPlan.transform(ar, ai, 0, true);
+						bluesteinPlan.transform(ar, ai, 0, false);
+					}
+					break;
+				case 7:
+					// overlap-save FFT convolution
+					MovingWindowWeightedAverage.execute(waveforms, recordLength, 20, WaveformUtils.WindowType.BLACKMAN, 0.0);
+					break;
+				default:
+					WaveformUtils.fftComplexMultipleWaveformsInPlace(waveforms, imag, recordLength, true);
+			}
+			// keep values bounded
+			for (int i=0; i<waveforms.length; i++) {
+				if (!(Math.abs(waveforms[i]) < 1.0e6f)) {
+					waveforms[i] = (float)random.nextGaussian();
+				}
+			}
+		}
+		return (allocatedBytes(threadBean) - start)/numCalls;
+	}
+
+	// total number of bytes allocated by the live threads
+	private static long allocatedBytes(com.sun.management.ThreadMXBean threadBean)
+	{
+		long total = 0;
+		for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
 }